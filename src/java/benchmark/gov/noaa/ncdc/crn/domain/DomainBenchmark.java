@@ -0,0 +1,147 @@
+package gov.noaa.ncdc.crn.domain;
+
+import gov.noaa.ncdc.crn.util.MathUtils;
+
+import java.math.BigDecimal;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the per-value costs of the domain objects: constructing an ElementValue, converting Flags to and from
+ * their int and BitSet forms, and hashing and looking up StationDateElements. Each benchmark works through a day of
+ * synthetic values for one station so that no single value is constant-folded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DomainBenchmark {
+    private static final int STATION_ID = 1026;
+
+    private int[] datetimeIds;
+    private int[] elementIds;
+    private BigDecimal[] values;
+    private long[] unscaledValues;
+    private int[] flagInts;
+    private BitSet[] flagBits;
+    private Map<StationDateElement, ElementValue> hashMap;
+    private ElementValueIndex index;
+
+    @Setup
+    public void setUp() {
+        List<ElementValue> synthetic = SyntheticValues.hourly(STATION_ID, 24, 30, 1026L);
+        int size = synthetic.size();
+        datetimeIds = new int[size];
+        elementIds = new int[size];
+        values = new BigDecimal[size];
+        unscaledValues = new long[size];
+        flagInts = new int[size];
+        flagBits = new BitSet[size];
+        hashMap = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            ElementValue value = synthetic.get(i);
+            datetimeIds[i] = value.getDatetimeId();
+            elementIds[i] = value.getElementId();
+            values[i] = value.getValue();
+            unscaledValues[i] = value.hasValue() ? value.longUnscaled() : 0;
+            flagInts[i] = value.getFlagInt();
+            flagBits[i] = MathUtils.unsignedIntToBitSet(value.getFlagInt());
+            hashMap.put(value.getStaDateElement(), value);
+        }
+        index = new ElementValueIndex(synthetic);
+    }
+
+    @Benchmark
+    public void elementValueFromBigDecimal(Blackhole blackhole) {
+        for (int i = 0; i < values.length; i++) {
+            blackhole.consume(new ElementValue(STATION_ID, datetimeIds[i], elementIds[i], values[i], flagInts[i], 1,
+                    1));
+        }
+    }
+
+    @Benchmark
+    public void elementValueFromUnscaled(Blackhole blackhole) {
+        for (int i = 0; i < values.length; i++) {
+            blackhole.consume(new ElementValue(STATION_ID, datetimeIds[i], elementIds[i], unscaledValues[i], 1,
+                    flagInts[i], 1, 1));
+        }
+    }
+
+    @Benchmark
+    public int flagsValueOf() {
+        int flagged = 0;
+        for (int flagInt : flagInts) {
+            if (Flags.valueOf(flagInt).isFlagged()) {
+                flagged++;
+            }
+        }
+        return flagged;
+    }
+
+    @Benchmark
+    public int flagsToBitSet() {
+        int cardinality = 0;
+        for (int flagInt : flagInts) {
+            cardinality += MathUtils.unsignedIntToBitSet(flagInt).cardinality();
+        }
+        return cardinality;
+    }
+
+    @Benchmark
+    public int flagsFromBitSet() {
+        int sum = 0;
+        for (BitSet bits : flagBits) {
+            sum += MathUtils.bitSetToUnsignedInt(bits);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int stationDateElementHashCode() {
+        int hash = 0;
+        for (int i = 0; i < datetimeIds.length; i++) {
+            hash += new StationDateElement(STATION_ID, datetimeIds[i], elementIds[i]).hashCode();
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public long stationDateElementPackKey() {
+        long sum = 0;
+        for (int i = 0; i < datetimeIds.length; i++) {
+            sum += StationDateElement.packKey(STATION_ID, datetimeIds[i], elementIds[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void hashMapGet(Blackhole blackhole) {
+        for (int i = 0; i < datetimeIds.length; i++) {
+            blackhole.consume(hashMap.get(new StationDateElement(STATION_ID, datetimeIds[i], elementIds[i])));
+        }
+    }
+
+    @Benchmark
+    public void elementValueIndexGet(Blackhole blackhole) {
+        for (int i = 0; i < datetimeIds.length; i++) {
+            blackhole.consume(index.get(STATION_ID, datetimeIds[i], elementIds[i]));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package gov.noaa.ncdc.crn.domain;
+
+import gov.noaa.ncdc.crn.util.DatetimeCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds repeatable hourly ElementValues for the benchmarks, shaped like a station's data as read from the database:
+ * a run of hours, each with the same elements, tenths-scaled values, the occasional missing value and few flags.
+ */
+public final class SyntheticValues {
+    /** the first hour of 2009 UTC */
+    public static final int FIRST_DATETIME_ID = DatetimeCodec.parse("2009010101");
+
+    private SyntheticValues() {
+    }
+
+    /**
+     * Returns a station's values for a run of hours
+     * @param stationId the station
+     * @param hours the number of hours from {@link #FIRST_DATETIME_ID}
+     * @param elements the number of elements per hour, with elementIds from 400
+     * @param seed the seed of the values
+     * @return a new List of hours times elements ElementValues, in datetime then element order
+     */
+    public static List<ElementValue> hourly(int stationId, int hours, int elements, long seed) {
+        Random random = new Random(seed);
+        List<ElementValue> values = new ArrayList<>(hours * elements);
+        for (int hour = 0; hour < hours; hour++) {
+            for (int element = 0; element < elements; element++) {
+                int datetimeId = FIRST_DATETIME_ID + hour;
+                int elementId = 400 + element;
+                int flags = random.nextInt(50) == 0 ? 1 << random.nextInt(8) : 0;
+                if (random.nextInt(100) == 0) {
+                    values.add(new ElementValue(stationId, datetimeId, elementId, null, flags, 1, 1));
+                } else {
+                    values.add(new ElementValue(stationId, datetimeId, elementId, random.nextInt(2001) - 1000, 1,
+                            flags, 1, 1));
+                }
+            }
+        }
+        return values;
+    }
+}
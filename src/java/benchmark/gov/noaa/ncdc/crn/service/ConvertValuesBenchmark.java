@@ -0,0 +1,64 @@
+package gov.noaa.ncdc.crn.service;
+
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueIndex;
+import gov.noaa.ncdc.crn.domain.StationDateElement;
+import gov.noaa.ncdc.crn.domain.SyntheticValues;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the grouping of a station's ElementValues by hour and element which
+ * {@link ObservationService#getObservationsWithData(int, int, int)} does after reading them, for the HashMap the
+ * ElementDao returns and an ElementValueIndex.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConvertValuesBenchmark {
+
+    /** a day and a month of hours */
+    @Param({ "24", "744" })
+    private int hours;
+
+    private Map<StationDateElement, ElementValue> hashMap;
+    private ElementValueIndex index;
+
+    @Setup
+    public void setUp() {
+        List<ElementValue> values = SyntheticValues.hourly(1026, hours, 30, 1026L);
+        hashMap = new HashMap<>();
+        for (ElementValue value : values) {
+            hashMap.put(value.getStaDateElement(), value);
+        }
+        index = new ElementValueIndex(values);
+    }
+
+    @Benchmark
+    public Map<Integer, Map<Integer, ElementValue>> convertHashMap() {
+        return ObservationService.convertValues(hashMap);
+    }
+
+    @Benchmark
+    public Map<Integer, Map<Integer, ElementValue>> convertElementValueIndex() {
+        return ObservationService.convertValues(index);
+    }
+}
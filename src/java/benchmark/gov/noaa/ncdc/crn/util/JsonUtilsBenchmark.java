@@ -0,0 +1,111 @@
+package gov.noaa.ncdc.crn.util;
+
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.Observation;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+import gov.noaa.ncdc.crn.domain.Station;
+import gov.noaa.ncdc.crn.domain.SyntheticValues;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Benchmarks JsonUtils serialization of a day of one station's ElementValues and of a network's Station map, each way,
+ * and of an hour's ObservationWithData in the JsonUtils.GSON and the ObservationWithDataTypeAdapter layouts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonUtilsBenchmark {
+    private static final Type ELEMENT_VALUE_LIST_TYPE = new TypeToken<List<ElementValue>>() {
+    }.getType();
+    private static final int STATIONS = 250;
+
+    private List<ElementValue> values;
+    private String valuesJson;
+    private Map<Integer, Station> stations;
+    private String stationsJson;
+    private ObservationWithData owd;
+    private String owdJson;
+    private String owdCompactJson;
+    private final ObservationWithDataTypeAdapter owdAdapter = new ObservationWithDataTypeAdapter();
+
+    @Setup
+    public void setUp() throws IOException {
+        values = SyntheticValues.hourly(1026, 24, 30, 1026L);
+        valuesJson = JsonUtils.GSON.toJson(values, ELEMENT_VALUE_LIST_TYPE);
+        stations = new HashMap<>();
+        for (int stationId = 1000; stationId < 1000 + STATIONS; stationId++) {
+            stations.put(stationId, new Station(stationId, "NC", "Asheville", "8 SSW", 1, null, null, null, null,
+                    -5, "-82.56", "35.42", 682, null, null, null, 0, false, null, null, false));
+        }
+        stationsJson = JsonUtils.stationMapToJson(stations);
+        owd = new ObservationWithData(new Observation(1026, SyntheticValues.FIRST_DATETIME_ID, 8, 1, "file", 1));
+        owd.setElementValues(new HashMap<Integer, ElementValue>());
+        for (ElementValue value : values.subList(0, 30)) {
+            owd.getElementValues().put(value.getElementId(), value);
+        }
+        owdJson = JsonUtils.GSON.toJson(owd);
+        owdCompactJson = owdAdapter.toJson(owd);
+    }
+
+    @Benchmark
+    public String elementValuesToJson() {
+        return JsonUtils.GSON.toJson(values, ELEMENT_VALUE_LIST_TYPE);
+    }
+
+    @Benchmark
+    public List<ElementValue> elementValuesFromJson() {
+        return JsonUtils.GSON.fromJson(valuesJson, ELEMENT_VALUE_LIST_TYPE);
+    }
+
+    @Benchmark
+    public String stationMapToJson() {
+        return JsonUtils.stationMapToJson(stations);
+    }
+
+    @Benchmark
+    public Map<Integer, Station> stationMapFromJson() {
+        return JsonUtils.stationMapFromJson(stationsJson);
+    }
+
+    @Benchmark
+    public String observationWithDataToJson() {
+        return JsonUtils.GSON.toJson(owd);
+    }
+
+    @Benchmark
+    public ObservationWithData observationWithDataFromJson() {
+        return JsonUtils.GSON.fromJson(owdJson, ObservationWithData.class);
+    }
+
+    @Benchmark
+    public String observationWithDataToCompactJson() throws IOException {
+        return owdAdapter.toJson(owd);
+    }
+
+    @Benchmark
+    public ObservationWithData observationWithDataFromCompactJson() throws IOException {
+        return owdAdapter.fromJson(owdCompactJson);
+    }
+}
@@ -0,0 +1,114 @@
+package gov.noaa.ncdc.crn.util;
+
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.SyntheticValues;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks CRN rounding and the statistics of a month of one element's hourly values, through both the BigDecimal
+ * and the unscaled long forms of MathUtils.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MathUtilsBenchmark {
+    private List<BigDecimal> values;
+    private String[] strings;
+    private long[] unscaledValues;
+    private BitSet nulls;
+
+    @Setup
+    public void setUp() {
+        List<ElementValue> synthetic = SyntheticValues.hourly(1026, 31 * 24, 1, 439L);
+        values = new ArrayList<>(synthetic.size());
+        strings = new String[synthetic.size()];
+        unscaledValues = new long[synthetic.size()];
+        nulls = new BitSet();
+        for (int i = 0; i < synthetic.size(); i++) {
+            ElementValue value = synthetic.get(i);
+            if (value.hasValue()) {
+                // hundredths, so rounding to tenths has work to do
+                unscaledValues[i] = value.longUnscaled() * 10 + i % 10;
+                values.add(BigDecimal.valueOf(unscaledValues[i], 2));
+                strings[i] = values.get(i).toString();
+            } else {
+                nulls.set(i);
+                values.add(null);
+                strings[i] = "0";
+            }
+        }
+    }
+
+    @Benchmark
+    public void roundBigDecimal(Blackhole blackhole) {
+        for (long unscaledValue : unscaledValues) {
+            blackhole.consume(MathUtils.round(BigDecimal.valueOf(unscaledValue, 2), 1));
+        }
+    }
+
+    @Benchmark
+    public void roundString(Blackhole blackhole) {
+        for (String string : strings) {
+            blackhole.consume(MathUtils.round(string, 1));
+        }
+    }
+
+    @Benchmark
+    public long roundUnscaled() {
+        long sum = 0;
+        for (long unscaledValue : unscaledValues) {
+            sum += MathUtils.roundUnscaled(unscaledValue, 2, 1);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public BigDecimal averageCollection() {
+        return MathUtils.average(values, 1);
+    }
+
+    @Benchmark
+    public BigDecimal averageUnscaled() {
+        return MathUtils.average(unscaledValues, 2, nulls, 1);
+    }
+
+    @Benchmark
+    public BigDecimal sumCollection() {
+        return MathUtils.sum(values);
+    }
+
+    @Benchmark
+    public BigDecimal sumUnscaled() {
+        return MathUtils.sum(unscaledValues, 2, nulls);
+    }
+
+    @Benchmark
+    public BigDecimal maximumCollection() {
+        return MathUtils.maximum(values);
+    }
+
+    @Benchmark
+    public BigDecimal maximumUnscaled() {
+        return MathUtils.maximum(unscaledValues, 2, nulls);
+    }
+}
@@ -0,0 +1,111 @@
+package gov.noaa.ncdc.crn.util;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the TimeUtils time zone conversions and datetimeId arithmetic over a year of hours, against the Calendar
+ * arithmetic they replace.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimeUtilsBenchmark {
+    private static final int HOURS = 365 * 24;
+
+    /** US/Eastern has daylight saving time, America/Phoenix does not */
+    @Param({ "US/Eastern", "America/Phoenix" })
+    private String zone;
+
+    private String[] dates;
+    private int[] datetimeIds;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        dates = new String[HOURS];
+        datetimeIds = new int[HOURS];
+        int first = DatetimeCodec.parse("2009010101");
+        for (int i = 0; i < HOURS; i++) {
+            datetimeIds[i] = first + i;
+            dates[i] = DatetimeCodec.format(first + i);
+        }
+    }
+
+    /** Cycles through the hours of the year, so every conversion sees a different hour */
+    private int nextHour() {
+        next = next == HOURS - 1 ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public String convertFromUTC() {
+        return TimeUtils.convertFromUTC(dates[nextHour()], zone);
+    }
+
+    @Benchmark
+    public String convertToUTC() {
+        return TimeUtils.convertToUTC(dates[nextHour()], zone);
+    }
+
+    @Benchmark
+    public String convertLSTFromUTC() {
+        return TimeUtils.convertLSTFromUTC(dates[nextHour()], zone);
+    }
+
+    @Benchmark
+    public String convertLSTToUTC() {
+        return TimeUtils.convertLSTToUTC(dates[nextHour()], zone);
+    }
+
+    @Benchmark
+    public String calendarFromUTC() {
+        Calendar utc = TimeUtils.createCalendar(dates[nextHour()], "UTC");
+        return TimeUtils.getYYYYMMDDHH24(TimeUtils.changeTimeZone(utc, zone));
+    }
+
+    @Benchmark
+    public int zoneOffsetsToLocalTime() {
+        return ZoneOffsets.forZone(zone).toLocalTime(datetimeIds[nextHour()]);
+    }
+
+    @Benchmark
+    public String getObservationDay() {
+        return TimeUtils.getObservationDay(dates[nextHour()]);
+    }
+
+    @Benchmark
+    public int parseDatetimeCodec() {
+        return DatetimeCodec.parse(dates[nextHour()]);
+    }
+
+    @Benchmark
+    public int parseCalendar() {
+        return TimeUtils.computeDateTimeId(TimeUtils.createUTCCalendar(dates[nextHour()]));
+    }
+
+    @Benchmark
+    public String formatDatetimeCodec() {
+        return DatetimeCodec.format(datetimeIds[nextHour()]);
+    }
+
+    @Benchmark
+    public String formatCalendar() {
+        return TimeUtils.getYYYYMMDDHH24(TimeUtils.computeCalendarDate(datetimeIds[nextHour()]));
+    }
+}
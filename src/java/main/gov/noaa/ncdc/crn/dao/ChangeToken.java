@@ -0,0 +1,138 @@
+package gov.noaa.ncdc.crn.dao;
+
+import gov.noaa.ncdc.crn.domain.Observation;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
+
+/**
+ * A resumable position in the stream of Observation changes read by
+ * {@link ObservationDao#getObservationChanges(ChangeToken, int, boolean)}. Changes are ordered by modification time
+ * (the later of an Observation's lastModified and timeLoaded), then stationId, then datetimeId; a token marks the last
+ * change read, so reading from it returns only the changes which follow.
+ * <p>
+ * Tokens are immutable. {@link #toString()} and {@link #parse(String)} convert a token to and from a String, so
+ * consumers can store it between runs.
+ */
+public class ChangeToken {
+    private final Timestamp modified;
+    private final int stationId;
+    private final int datetimeId;
+
+    private ChangeToken(Timestamp modified, int stationId, int datetimeId) {
+        this.modified = modified;
+        this.stationId = stationId;
+        this.datetimeId = datetimeId;
+    }
+
+    /**
+     * Returns a token from which the Observations modified after the watermark are read
+     * @param watermark the time after which to read changes
+     * @return a token for changes after watermark
+     */
+    public static ChangeToken since(Date watermark) {
+        Preconditions.checkNotNull(watermark, "watermark not nullable");
+        Timestamp modified =
+                watermark instanceof Timestamp ? copy((Timestamp) watermark) : new Timestamp(watermark.getTime());
+        // follows every Observation modified at the watermark
+        return new ChangeToken(modified, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a token from which the changes following an Observation are read
+     * @param ob the last Observation read
+     * @return a token for the changes following ob
+     * @throws IllegalArgumentException if ob has neither lastModified nor timeLoaded
+     */
+    public static ChangeToken after(Observation ob) {
+        Timestamp modified = modificationTime(ob);
+        Preconditions.checkArgument(modified != null, "Observation has no modification time");
+        return new ChangeToken(copy(modified), ob.getStationId(), ob.getDatetimeId());
+    }
+
+    /**
+     * Returns the time an Observation was last changed, the later of its lastModified and timeLoaded
+     * @param ob the Observation
+     * @return the modification time, or null if ob has neither
+     */
+    public static Timestamp modificationTime(Observation ob) {
+        Timestamp lastModified = ob.getLastModified();
+        Timestamp timeLoaded = ob.getTimeLoaded();
+        if (lastModified == null) {
+            return timeLoaded;
+        }
+        return timeLoaded != null && timeLoaded.after(lastModified) ? timeLoaded : lastModified;
+    }
+
+    /**
+     * Parses a token from the form returned by {@link #toString()}
+     * @param token the String form of a token
+     * @return the token
+     * @throws IllegalArgumentException if token is not in the String form of a token
+     */
+    public static ChangeToken parse(String token) {
+        Preconditions.checkNotNull(token, "token not nullable");
+        String[] parts = Iterables.toArray(Splitter.on(':').split(token), String.class);
+        Preconditions.checkArgument(parts.length == 4, "invalid change token %s", token);
+        try {
+            Timestamp modified = new Timestamp(Long.parseLong(parts[0]));
+            modified.setNanos(Integer.parseInt(parts[1]));
+            return new ChangeToken(modified, Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException or nanos out of range
+            throw new IllegalArgumentException("invalid change token " + token, e);
+        }
+    }
+
+    private static Timestamp copy(Timestamp timestamp) {
+        Timestamp copy = new Timestamp(timestamp.getTime());
+        copy.setNanos(timestamp.getNanos());
+        return copy;
+    }
+
+    /** @return the modification time of the last change read */
+    public Timestamp getModified() {
+        return copy(modified);
+    }
+
+    /** @return the stationId of the last change read */
+    public int getStationId() {
+        return stationId;
+    }
+
+    /** @return the datetimeId of the last change read */
+    public int getDatetimeId() {
+        return datetimeId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof ChangeToken) {
+            ChangeToken t = (ChangeToken) o;
+            return modified.equals(t.modified) && stationId == t.stationId && datetimeId == t.datetimeId;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(modified, stationId, datetimeId);
+    }
+
+    /**
+     * Returns the String form of the token, {@code millis:nanos:stationId:datetimeId}, which {@link #parse(String)}
+     * reads
+     */
+    @Override
+    public String toString() {
+        return modified.getTime() + ":" + modified.getNanos() + ":" + stationId + ":" + datetimeId;
+    }
+}
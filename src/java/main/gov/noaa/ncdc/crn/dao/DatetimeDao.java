@@ -8,6 +8,11 @@ import java.util.Map;
 
 import org.springframework.dao.DataAccessException;
 
+/**
+ * Reads datetimes. When crn.datetimes.computed is true, Datetimes and datetimeIds are computed by
+ * {@link gov.noaa.ncdc.crn.util.DatetimeCodec} instead of read from the datetime table, and dates which predate the
+ * CRN epoch have no datetimeId.
+ */
 public interface DatetimeDao {
 
     /**
@@ -82,4 +87,15 @@ public interface DatetimeDao {
      * @throws DataAccessException (unchecked)
      */
     public abstract Map<Integer, Datetime> getDatetimeMap(Collection<Integer> datetimeIds) throws DataAccessException;
+
+    /**
+     * Compares the datetime table with the Datetimes computed by {@link gov.noaa.ncdc.crn.util.DatetimeCodec} for a
+     * datetime range; used to check that the database-free mode (crn.datetimes.computed) agrees with the table
+     * @param beginDatetimeId begin datetimeId
+     * @param endDatetimeId end datetimeId
+     * @return a List<Integer> of the datetimeIds in the range whose row is missing or differs from the computed one
+     * @throws DataAccessException (unchecked)
+     */
+    public abstract List<Integer> findDatetimeMismatches(int beginDatetimeId, int endDatetimeId)
+            throws DataAccessException;
 }
@@ -1,8 +1,11 @@
 package gov.noaa.ncdc.crn.dao;
 
 import gov.noaa.ncdc.crn.domain.Element;
+import gov.noaa.ncdc.crn.domain.ElementCatalog;
 import gov.noaa.ncdc.crn.domain.ElementGroup;
 import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueBlock;
+import gov.noaa.ncdc.crn.domain.ElementValueIndex;
 import gov.noaa.ncdc.crn.domain.StationDateElement;
 
 import java.util.Collection;
@@ -28,6 +31,16 @@ public interface ElementDao {
     public Map<StationDateElement, ElementValue> getElementValues(Map<String, Object> params)
             throws DataAccessException;
 
+    /**
+     * Retrieves from the database the same values as getElementValues(Map) into an ElementValueIndex, which costs far
+     * less than a HashMap for long ranges. For internal bulk reads only: MyBatis does not use its second-level cache for
+     * a statement read through a ResultHandler, so these reads are never cached.
+     * @param params a parameter name-value map with the same keys as getElementValues(Map)
+     * @return an ElementValueIndex of the values
+     * @throws DataAccessException (unchecked)
+     */
+    public ElementValueIndex getElementValueIndex(Map<String, Object> params) throws DataAccessException;
+
     /**
      * Retrieves from the database a Map<Integer, ElementValue> of values for a single station/date mapped by elementId.
      * @param datetimeId the datetimeId to retrieve the values for
@@ -51,6 +64,24 @@ public interface ElementDao {
     public Map<StationDateElement, ElementValue> getElementValuesLST(Map<String, Object> params)
             throws DataAccessException;
 
+    /**
+     * Retrieves from the database an ElementValueBlock based on the parameter map submitted; selects the same values
+     * as getElementValues(Map) without creating an ElementValue per row.
+     * @param params a parameter name-value map with the same keys as getElementValues(Map)
+     * @return an ElementValueBlock of the values in result set order
+     * @throws DataAccessException (unchecked)
+     */
+    public ElementValueBlock getElementValueBlock(Map<String, Object> params) throws DataAccessException;
+
+    /**
+     * Retrieves from the database an ElementValueBlock for a LST day or month; selects the same values as
+     * getElementValuesLST(Map) without creating an ElementValue per row.
+     * @param params a parameter name-value map with the same keys as getElementValuesLST(Map)
+     * @return an ElementValueBlock of the values in result set order
+     * @throws DataAccessException (unchecked)
+     */
+    public ElementValueBlock getElementValueBlockLST(Map<String, Object> params) throws DataAccessException;
+
     /**
      * Retrieves from the database a Map<StationDateElement, ElementValue> based on when the observation was last
      * modified.
@@ -165,7 +196,22 @@ public interface ElementDao {
     public List<ElementGroup> getElementGroups() throws DataAccessException;
 
     /**
-     * Inserts a new element in the database
+     * Returns the ElementCatalog of all Elements and ElementGroups. The catalog is read once and kept until
+     * {@link #refreshElementCatalog()} or an element insert replaces it.
+     * @return the ElementCatalog
+     * @throws DataAccessException (unchecked) if the catalog has to be read and reading fails
+     */
+    public ElementCatalog getElementCatalog() throws DataAccessException;
+
+    /**
+     * Reads the Elements and ElementGroups again and replaces the ElementCatalog with a new one
+     * @return the new ElementCatalog
+     * @throws DataAccessException (unchecked)
+     */
+    public ElementCatalog refreshElementCatalog() throws DataAccessException;
+
+    /**
+     * Inserts a new element in the database and replaces the ElementCatalog with one which includes it
      * @param element The element to insert
      * @throws DataAccessException (unchecked)
      */
@@ -174,6 +220,8 @@ public interface ElementDao {
     /**
      * Inserts element values (facts and flags) for an existing observation into the database. Updates the observation's
      * modification timestamp. There <em>must</em> be an observation in the database for the station/datetime already.
+     * Values are written in partitions of crn.insert.valueBatchSize (default 100); when crn.insert.bulk is true each
+     * partition's facts and flags are written by a single multi-row statement.
      * @param values The values to insert
      * @throws DataAccessException (unchecked)
      */
@@ -0,0 +1,54 @@
+package gov.noaa.ncdc.crn.dao;
+
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Objects;
+
+/**
+ * A page of Observation changes read by {@link ObservationDao#getObservationChanges(ChangeToken, int, boolean)}, in
+ * change order, with the token from which to read the next page.
+ */
+public class ObservationChanges {
+    private final List<ObservationWithData> observations;
+    private final ChangeToken nextToken;
+    private final boolean more;
+
+    public ObservationChanges(List<ObservationWithData> observations, ChangeToken nextToken, boolean more) {
+        this.observations = Collections.unmodifiableList(observations);
+        this.nextToken = nextToken;
+        this.more = more;
+    }
+
+    /**
+     * Returns the changed Observations in change order; their values are only populated when requested
+     * @return the changed Observations
+     */
+    public List<ObservationWithData> getObservations() {
+        return observations;
+    }
+
+    /**
+     * Returns the token from which to read the changes after this page; the token read from if the page is empty
+     * @return the token for the next page
+     */
+    public ChangeToken getNextToken() {
+        return nextToken;
+    }
+
+    /**
+     * Returns true if the page was full, so more changes may follow
+     * @return true if more changes may follow
+     */
+    public boolean hasMore() {
+        return more;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("observations", observations.size()).add("nextToken", nextToken)
+                .add("more", more).toString();
+    }
+}
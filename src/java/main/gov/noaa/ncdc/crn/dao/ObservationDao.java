@@ -1,6 +1,7 @@
 package gov.noaa.ncdc.crn.dao;
 
 import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueChanges;
 import gov.noaa.ncdc.crn.domain.Observation;
 import gov.noaa.ncdc.crn.domain.ObservationWithData;
 import gov.noaa.ncdc.crn.domain.StationDate;
@@ -62,6 +63,31 @@ public interface ObservationDao {
     public abstract Map<Integer, Observation> getObservations(int startDatetimeId, int endDatetimeId, int stationId)
             throws DataAccessException;
 
+    /**
+     * Streams the ObservationWithData for a station for a datetime range to the callback in datetime order, including
+     * all the observed and calculated values currently in the database. The range is not limited in length; at most one
+     * window of Observations and one hour of ElementValues is held in memory at a time.
+     * @param startDatetimeId The beginning observation time
+     * @param endDatetimeId The end observation time
+     * @param stationId The station
+     * @param callback receives each ObservationWithData in datetime order
+     * @throws DataAccessException (unchecked)
+     */
+    public abstract void streamObservationsWithData(int startDatetimeId, int endDatetimeId, int stationId,
+            ResultCallback<ObservationWithData> callback) throws DataAccessException;
+
+    /**
+     * Returns a page of the Observations, across all stations, changed after a token, in the order of
+     * {@link ChangeToken}. An Observation changes when it is loaded or modified, e.g. when its values are updated.
+     * @param from the position after which to read changes
+     * @param limit the maximum number of Observations in the page
+     * @param includeValues true to read the Observations' ElementValues as well
+     * @return the page of changes and the token from which to read the next page
+     * @throws DataAccessException (unchecked)
+     */
+    public abstract ObservationChanges getObservationChanges(ChangeToken from, int limit, boolean includeValues)
+            throws DataAccessException;
+
     /**
      * Returns a Map<Integer,Observation> of most recent Observations for all stations; maps stationId to Observation.
      * @return A Map<Integer,Observation> of the most recent Observations for all stations
@@ -203,6 +229,8 @@ public interface ObservationDao {
      * relevant database load times with current UTC timestamp. Expects that there are no constraint violations present.
      * Throws a DataAccessException if anything already exists in the database. Note this implementation returns void
      * because it is executed as a batch statement and the number of rows affected by the insert is unavailable.
+     * Observations are written in partitions of crn.insert.observationBatchSize (default 100); the values of each
+     * partition are written together, in partitions of crn.insert.valueBatchSize.
      * @param observations the observations to insert
      * @throws DataAccessException (unchecked) if any constraint violations or if some other data access exception is
      * thrown
@@ -234,4 +262,17 @@ public interface ObservationDao {
      * @throws IllegalArgumentException when ElementValue.value is null and the Element is observed not calculated
      */
     public abstract void updateElementValues(Collection<ElementValue> values);
+
+    /**
+     * Like {@link #updateElementValues(Collection)}, but writes only what differs from the database. The stored values
+     * are read per station in ranges of at most a week of the requested hours, and only the facts which are new or
+     * whose value changed, the flags which changed, and the calculated values to delete are written, so unchanged
+     * values neither cost a statement nor touch modification times. Values which are null and not calculated are
+     * skipped and counted as such.
+     * @param values The ElementValues to alter
+     * @return the changes written
+     * @throws DataAccessException (unchecked)
+     */
+    public abstract ElementValueChanges upsertElementValues(Collection<ElementValue> values)
+            throws DataAccessException;
 }
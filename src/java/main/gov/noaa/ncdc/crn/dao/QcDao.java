@@ -1,6 +1,7 @@
 package gov.noaa.ncdc.crn.dao;
 
 import gov.noaa.ncdc.crn.domain.QcDeltaParam;
+import gov.noaa.ncdc.crn.domain.QcParameterTable;
 import gov.noaa.ncdc.crn.domain.QcRangeParam;
 
 import java.util.Map;
@@ -67,4 +68,19 @@ public interface QcDao {
     public abstract Map<Integer, QcDeltaParam> getQcDeltaParams(int streamId, int stationId, int month)
             throws DataAccessException;
 
+    /**
+     * Returns the QcParameterTable of all QC range and delta parameters, which backs the other methods. The table is
+     * read on first use and kept until {@link #reloadQcParameters()}.
+     * @return the QcParameterTable
+     * @throws DataAccessException (unchecked) if the table has to be read and reading fails
+     */
+    public abstract QcParameterTable getQcParameterTable() throws DataAccessException;
+
+    /**
+     * Reads the QC parameters and stream elements again and replaces the QcParameterTable with a new one
+     * @return the new QcParameterTable
+     * @throws DataAccessException (unchecked)
+     */
+    public abstract QcParameterTable reloadQcParameters() throws DataAccessException;
+
 }
@@ -0,0 +1,41 @@
+package gov.noaa.ncdc.crn.dao;
+
+import java.util.Collection;
+
+import org.springframework.dao.DataAccessException;
+
+/**
+ * Deletes whole ranges of data for many stations with a few set-based statements per table. Unlike the range deletes
+ * of {@link ObservationDao}, which join the caller's transaction, each station is deleted on its own connection and
+ * each table in chunks of at most a configured number of rows, each chunk committed in its own transaction to bound
+ * undo volume. A delete which fails part way may therefore leave part of a range deleted; as the deletes are
+ * idempotent, repeating the call completes it.
+ */
+public interface RangeDeleteDao {
+
+    /**
+     * Deletes the observations for the stations within a range of datetimes, including all facts, flags, and
+     * ob_loadlogs. Stations are deleted in parallel.
+     * @param stationIds the stations whose observations to delete
+     * @param beginDatetimeId the beginning of the range of datetimeIds to delete
+     * @param endDatetimeId the end of the range of datetimeIds to delete
+     * @return the number of rows removed from each table
+     * @throws DataAccessException (unchecked) if a delete fails; rows removed by committed chunks stay removed
+     */
+    public RangeDeleteResult deleteObservations(Collection<Integer> stationIds, int beginDatetimeId, int endDatetimeId)
+            throws DataAccessException;
+
+    /**
+     * Deletes the facts and flags of calculated elements for the stations within a range of datetimes. Stations are
+     * deleted in parallel.
+     * @param stationIds the stations whose values to delete
+     * @param beginDatetimeId the beginning of the range of datetimeIds to delete
+     * @param endDatetimeId the end of the range of datetimeIds to delete
+     * @param elementIds the ids of the calculated elements to delete; ids of elements which are not calculated are
+     * ignored
+     * @return the number of rows removed from each table
+     * @throws DataAccessException (unchecked) if a delete fails; rows removed by committed chunks stay removed
+     */
+    public RangeDeleteResult deleteCalculatedValues(Collection<Integer> stationIds, int beginDatetimeId,
+            int endDatetimeId, int... elementIds) throws DataAccessException;
+}
@@ -0,0 +1,90 @@
+package gov.noaa.ncdc.crn.dao;
+
+import com.google.common.base.Objects;
+
+/**
+ * The number of rows removed from each table by a {@link RangeDeleteDao} delete, and the number of transactions it was
+ * committed in. Immutable; results of separate deletes are combined with {@link #plus(RangeDeleteResult)}.
+ */
+public class RangeDeleteResult {
+    /** a result of no rows removed */
+    public static final RangeDeleteResult NONE = new RangeDeleteResult(0, 0, 0, 0, 0);
+
+    private final long flags;
+    private final long facts;
+    private final long obLoadlogs;
+    private final long observations;
+    private final int transactions;
+
+    public RangeDeleteResult(long flags, long facts, long obLoadlogs, long observations, int transactions) {
+        this.flags = flags;
+        this.facts = facts;
+        this.obLoadlogs = obLoadlogs;
+        this.observations = observations;
+        this.transactions = transactions;
+    }
+
+    /**
+     * Returns the sum of this and another result
+     * @param other the result to add
+     * @return a new result with the counts of both
+     */
+    public RangeDeleteResult plus(RangeDeleteResult other) {
+        return new RangeDeleteResult(flags + other.flags, facts + other.facts, obLoadlogs + other.obLoadlogs,
+                observations + other.observations, transactions + other.transactions);
+    }
+
+    /** @return the number of flags removed */
+    public long getFlags() {
+        return flags;
+    }
+
+    /** @return the number of facts removed */
+    public long getFacts() {
+        return facts;
+    }
+
+    /** @return the number of ob_loadlogs removed */
+    public long getObLoadlogs() {
+        return obLoadlogs;
+    }
+
+    /** @return the number of observations removed */
+    public long getObservations() {
+        return observations;
+    }
+
+    /** @return the number of rows removed from all tables */
+    public long getTotal() {
+        return flags + facts + obLoadlogs + observations;
+    }
+
+    /** @return the number of transactions the rows were removed in */
+    public int getTransactions() {
+        return transactions;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof RangeDeleteResult) {
+            RangeDeleteResult r = (RangeDeleteResult) o;
+            return flags == r.flags && facts == r.facts && obLoadlogs == r.obLoadlogs
+                    && observations == r.observations && transactions == r.transactions;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(flags, facts, obLoadlogs, observations, transactions);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("flags", flags).add("facts", facts).add("obLoadlogs", obLoadlogs)
+                .add("observations", observations).add("transactions", transactions).toString();
+    }
+}
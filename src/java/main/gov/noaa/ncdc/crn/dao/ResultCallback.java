@@ -0,0 +1,16 @@
+package gov.noaa.ncdc.crn.dao;
+
+/**
+ * {@code ResultCallback} receives the results of a streaming read one at a time, in the order documented by the method
+ * producing them. Implementations should not retain references to results they no longer need; that is what keeps the
+ * memory footprint of a streaming read bounded.
+ * @param <T> the type of result delivered
+ */
+public interface ResultCallback<T> {
+
+    /**
+     * Handles a single result of a streaming read
+     * @param result the next result
+     */
+    public abstract void handle(T result);
+}
@@ -1,8 +1,11 @@
 package gov.noaa.ncdc.crn.dao;
 
+import gov.noaa.ncdc.crn.domain.RainGaugeTimeline;
 import gov.noaa.ncdc.crn.domain.Station;
+import gov.noaa.ncdc.crn.domain.StationRegistry;
 
 import java.util.Map;
+import java.util.SortedMap;
 
 import org.springframework.dao.DataAccessException;
 
@@ -30,6 +33,21 @@ public interface StationDao {
      */
     public abstract Map<String, Station> getWbanStationMap() throws DataAccessException;
 
+    /**
+     * Returns the StationRegistry of all Stations. The registry is read on first use and read again once it is older
+     * than {@code crn.stations.maxAgeSeconds} (default 300; 0 keeps it until {@link #refreshStationRegistry()}).
+     * @return the StationRegistry
+     * @throws DataAccessException (unchecked) if the registry has to be read and reading fails
+     */
+    public abstract StationRegistry getStationRegistry() throws DataAccessException;
+
+    /**
+     * Reads the Stations again and replaces the StationRegistry with a new one
+     * @return the new StationRegistry
+     * @throws DataAccessException (unchecked)
+     */
+    public abstract StationRegistry refreshStationRegistry() throws DataAccessException;
+
     /**
      * Retrieves a Station from a parameter map. Parameters supported are stationId, id (can be wban, coop, or goes),
      * and state/location/vector. A unique station is expected to be found, and an exception will be thrown if multiple
@@ -125,4 +143,29 @@ public interface StationDao {
      * @throws DataAccessException (unchecked)
      */
     public abstract Integer getStationRainGaugeDepth(int stationId, int datetimeId);
+
+    /**
+     * Retrieves the rain gauge depth for a station at the beginning of a range of datetimes and at each datetime in
+     * the range where it changes
+     * @param stationId of the station
+     * @param begin the first datetimeId
+     * @param end the last datetimeId, inclusive
+     * @return SortedMap{@code <Integer,Integer>} from datetimeId to depth in mm, empty if the station has no gauges
+     */
+    public abstract SortedMap<Integer, Integer> getStationRainGaugeDepths(int stationId, int begin, int end);
+
+    /**
+     * Retrieves the rain gauge timeline of a station, which resolves its depth for any datetime or range of datetimes.
+     * Timelines are read once for all stations and read again after {@link #invalidateRainGauges()} or once older
+     * than {@code crn.stations.maxAgeSeconds}.
+     * @param stationId of the station
+     * @return the RainGaugeTimeline of the station, or null if it has no gauges
+     */
+    public abstract RainGaugeTimeline getRainGaugeTimeline(int stationId);
+
+    /**
+     * Discards the rain gauge timelines so they are read again on next use, e.g. after a gauge installation is
+     * recorded
+     */
+    public abstract void invalidateRainGauges();
 }
@@ -3,15 +3,20 @@ package gov.noaa.ncdc.crn.dao.mybatis;
 import static gov.noaa.ncdc.crn.domain.CrnDomains.DATETIME_ID;
 import gov.noaa.ncdc.crn.dao.DatetimeDao;
 import gov.noaa.ncdc.crn.domain.Datetime;
+import gov.noaa.ncdc.crn.domain.DatetimeRange;
 import gov.noaa.ncdc.crn.persistence.DatetimeMapper;
+import gov.noaa.ncdc.crn.util.DatetimeCodec;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.stereotype.Repository;
 
 import com.google.common.collect.Maps;
@@ -21,50 +26,59 @@ public class DatetimeDaoImpl implements DatetimeDao {
 
     @Autowired
     private DatetimeMapper mapper;
+    /** compute datetimes rather than read them from the datetime table */
+    private boolean computed = false;
+
+    /**
+     * Sets whether Datetimes and datetimeIds are computed by {@link DatetimeCodec} rather than read from the datetime
+     * table. Defaults to false.
+     * @param computed true to compute datetimes without the database
+     */
+    @Value("${crn.datetimes.computed:false}")
+    public void setComputed(boolean computed) {
+        this.computed = computed;
+    }
 
     @Override
     public Integer getDatetimeId(final String YYYYMMDDHH24) throws DataAccessException {
+        if (computed) {
+            int datetimeId = parse(YYYYMMDDHH24);
+            return datetimeId >= 0 ? datetimeId : null;
+        }
         return mapper.selectDatetimeIds(YYYYMMDDHH24);
     }
 
     @Override
     public Datetime getDatetime(final String YYYYMMDDHH24) throws DataAccessException {
+        if (computed) {
+            return getDatetime(parse(YYYYMMDDHH24));
+        }
         return mapper.selectDatetimes(YYYYMMDDHH24);
     }
 
     @Override
     public List<Integer> getDatetimeIds(final String beginYYYYMMDDHH24, final String endYYYYMMDDHH24)
             throws DataAccessException {
-        int begin = mapper.selectDatetimeIds(beginYYYYMMDDHH24);
-        int end = mapper.selectDatetimeIds(endYYYYMMDDHH24);
-        int curr = begin;
-        List<Integer> ids = new ArrayList<>();
-        while (curr <= end) {
-            ids.add(curr++);
-        }
-        return ids;
+        int begin = getDatetimeId(beginYYYYMMDDHH24);
+        int end = getDatetimeId(endYYYYMMDDHH24);
+        return new ArrayList<>(new DatetimeRange(begin, Math.max(begin - 1, end)).asList());
     }
 
     @Override
     public List<Datetime> getDatetimeList(final String beginYYYYMMDDHH24, final String endYYYYMMDDHH24)
             throws DataAccessException {
-        Datetime begin = mapper.selectDatetimes(beginYYYYMMDDHH24);
-        Datetime curr = begin;
-        List<Datetime> datetimes = new ArrayList<>();
-        while (curr.getDatetime0_23().compareTo(endYYYYMMDDHH24) <= 0) {
-            datetimes.add(curr);
-            curr = curr.next();
-        }
-        return datetimes;
+        int begin = getDatetimeId(beginYYYYMMDDHH24);
+        // the end need not be in the table
+        return getDatetimeList(begin, parse(endYYYYMMDDHH24));
     }
 
-    private List<Datetime> getDatetimeList(final int beginId, final int endId) throws DataAccessException {
-        Datetime begin = mapper.selectDatetimes(beginId);
-        Datetime curr = begin;
-        List<Datetime> datetimes = new ArrayList<>();
-        while (curr.getDatetimeId() <= endId) {
-            datetimes.add(curr);
-            curr = curr.next();
+    /**
+     * Computes the Datetimes of a range; the ids are consecutive hours, so only the first has to exist
+     */
+    private static List<Datetime> getDatetimeList(final int beginId, final int endId) {
+        List<Datetime> datetimes = new ArrayList<>(Math.max(0, endId - beginId + 1));
+        for (int datetimeId = beginId; datetimeId <= endId; datetimeId++) {
+            datetimes.add(DatetimeCodec.toDatetime(datetimeId));
         }
         return datetimes;
     }
@@ -78,6 +92,9 @@ public class DatetimeDaoImpl implements DatetimeDao {
 
     @Override
     public Datetime getDatetime(final int datetimeId) throws DataAccessException {
+        if (computed) {
+            return datetimeId >= 0 ? DatetimeCodec.toDatetime(datetimeId) : null;
+        }
         return mapper.selectDatetimes(datetimeId);
     }
 
@@ -90,7 +107,42 @@ public class DatetimeDaoImpl implements DatetimeDao {
 
     @Override
     public Map<Integer, Datetime> getDatetimeMap(final Collection<Integer> datetimeIds) throws DataAccessException {
+        if (computed) {
+            Map<Integer, Datetime> datetimes = new HashMap<>();
+            for (Integer datetimeId : datetimeIds) {
+                if (datetimeId >= 0) {
+                    datetimes.put(datetimeId, DatetimeCodec.toDatetime(datetimeId));
+                }
+            }
+            return datetimes;
+        }
         return mapper.selectDatetimes(datetimeIds);
     }
 
+    @Override
+    public List<Integer> findDatetimeMismatches(final int beginDatetimeId, final int endDatetimeId)
+            throws DataAccessException {
+        Map<Integer, Datetime> rows = new HashMap<>();
+        for (Datetime row : mapper.selectDatetimes(DatetimeCodec.format(beginDatetimeId),
+                DatetimeCodec.format(endDatetimeId))) {
+            rows.put(row.getDatetimeId(), row);
+        }
+        List<Integer> mismatches = new ArrayList<>();
+        for (int datetimeId = beginDatetimeId; datetimeId <= endDatetimeId; datetimeId++) {
+            Datetime row = rows.get(datetimeId);
+            if (row == null || !row.getDatetime0_23().equals(DatetimeCodec.format(datetimeId))) {
+                mismatches.add(datetimeId);
+            }
+        }
+        return mismatches;
+    }
+
+    private static int parse(final String YYYYMMDDHH24) throws DataAccessException {
+        try {
+            return DatetimeCodec.parse(YYYYMMDDHH24);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new InvalidDataAccessApiUsageException("invalid date " + YYYYMMDDHH24, e);
+        }
+    }
+
 }
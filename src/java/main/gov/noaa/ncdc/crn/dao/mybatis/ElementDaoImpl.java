@@ -2,8 +2,11 @@ package gov.noaa.ncdc.crn.dao.mybatis;
 
 import gov.noaa.ncdc.crn.dao.ElementDao;
 import gov.noaa.ncdc.crn.domain.Element;
+import gov.noaa.ncdc.crn.domain.ElementCatalog;
 import gov.noaa.ncdc.crn.domain.ElementGroup;
 import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueBlock;
+import gov.noaa.ncdc.crn.domain.ElementValueIndex;
 import gov.noaa.ncdc.crn.domain.StationDateElement;
 import gov.noaa.ncdc.crn.persistence.ElementMapper;
 
@@ -14,11 +17,12 @@ import java.util.Map;
 
 import org.apache.ibatis.session.SqlSession;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Repository;
 
 import com.google.common.base.Function;
-import com.google.common.base.Predicates;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 
@@ -29,6 +33,34 @@ public class ElementDaoImpl implements ElementDao {
     @Autowired
     SqlSession sqlSession;
     private static int THROTTLE = 100;
+    /** number of values written per batch when inserting; crn.insert.valueBatchSize */
+    private int insertPartitionSize = THROTTLE;
+    /** whether each partition of inserted values is written by a single multi-row statement; crn.insert.bulk */
+    private boolean bulkInsert = false;
+    /** replaced as a whole; null until first read */
+    private volatile ElementCatalog catalog;
+    /** serializes reloads so an older catalog never replaces a newer one */
+    private final Object catalogLock = new Object();
+
+    /**
+     * Sets the number of values written per batch by {@link #insertElementValues(Collection)}
+     * @param insertPartitionSize the number of values per batch
+     */
+    @Value("${crn.insert.valueBatchSize:100}")
+    public void setInsertPartitionSize(int insertPartitionSize) {
+        Preconditions.checkArgument(insertPartitionSize > 0, "insertPartitionSize must be positive");
+        this.insertPartitionSize = insertPartitionSize;
+    }
+
+    /**
+     * Sets whether {@link #insertElementValues(Collection)} writes the facts and flags of each partition with a single
+     * multi-row statement rather than a statement per fact and flag
+     * @param bulkInsert true for multi-row inserts
+     */
+    @Value("${crn.insert.bulk:false}")
+    public void setBulkInsert(boolean bulkInsert) {
+        this.bulkInsert = bulkInsert;
+    }
 
     @Override
     public Map<StationDateElement, ElementValue> getElementValues(Map<String, Object> params)
@@ -36,6 +68,13 @@ public class ElementDaoImpl implements ElementDao {
         return mapper.selectElementValues(params);
     }
 
+    @Override
+    public ElementValueIndex getElementValueIndex(Map<String, Object> params) throws DataAccessException {
+        ElementValueIndexHandler handler = new ElementValueIndexHandler();
+        mapper.selectElementValues(params, handler);
+        return handler.getIndex();
+    }
+
     @Override
     public Map<Integer, ElementValue> getElementValues(int datetimeId, int stationId) throws DataAccessException {
         return mapper.selectElementValues(datetimeId, stationId);
@@ -47,6 +86,20 @@ public class ElementDaoImpl implements ElementDao {
         return mapper.selectElementValuesLST(params);
     }
 
+    @Override
+    public ElementValueBlock getElementValueBlock(Map<String, Object> params) throws DataAccessException {
+        ElementValueBlockHandler handler = new ElementValueBlockHandler(new ElementValueBlock());
+        mapper.selectElementValueRows(params, handler);
+        return handler.getBlock();
+    }
+
+    @Override
+    public ElementValueBlock getElementValueBlockLST(Map<String, Object> params) throws DataAccessException {
+        ElementValueBlockHandler handler = new ElementValueBlockHandler(new ElementValueBlock());
+        mapper.selectElementValueRowsLST(params, handler);
+        return handler.getBlock();
+    }
+
     @Override
     public Map<StationDateElement, ElementValue> getElementValuesForHours(Map<String, Object> params)
             throws DataAccessException {
@@ -75,12 +128,12 @@ public class ElementDaoImpl implements ElementDao {
 
     @Override
     public Element getElement(String name) throws DataAccessException {
-        return getElementsByName().get(name);
+        return getElementCatalog().get(name);
     }
 
     @Override
     public Map<String, Element> getElementsByName(Collection<String> names) throws DataAccessException {
-        return Maps.filterKeys(mapper.selectElementsByName(), Predicates.in(names));
+        return getElementCatalog().getElementsByName(names);
     }
 
     @Override
@@ -125,23 +178,46 @@ public class ElementDaoImpl implements ElementDao {
         return mapper.selectElementGroups();
     }
 
+    @Override
+    public ElementCatalog getElementCatalog() throws DataAccessException {
+        ElementCatalog current = catalog;
+        return current != null ? current : refreshElementCatalog();
+    }
+
+    @Override
+    public ElementCatalog refreshElementCatalog() throws DataAccessException {
+        synchronized (catalogLock) {
+            ElementCatalog refreshed =
+                    new ElementCatalog(mapper.selectElements().values(), mapper.selectElementGroups());
+            catalog = refreshed;
+            return refreshed;
+        }
+    }
+
     @Override
     public void insertElement(Element element) throws DataAccessException {
         mapper.insertElement(element);
+        // readers keep the previous catalog until the new one is in place
+        refreshElementCatalog();
     }
 
     @Override
     public void insertElementValues(Collection<ElementValue> values) throws DataAccessException {
         /* partitioning to avoid max cursors when values.size() is large */
-        Iterable<List<ElementValue>> partitions = Iterables.partition(values, THROTTLE);
+        Iterable<List<ElementValue>> partitions = Iterables.partition(values, insertPartitionSize);
         for (List<ElementValue> partition : partitions) {
+            if (bulkInsert) {
+                mapper.insertValues(partition);
+                sqlSession.flushStatements();
+                continue;
+            }
             Collection<ElementValue> flaggedValues = new ArrayList<>();
             for (ElementValue value : partition) {
                 mapper.insertFact(value);
                 /*
                  * separating fact from flag inserts to prevent new cursor from being retrieved during batch processing
                  */
-                if (value.getFlags().isFlagged()) {
+                if (value.getFlagInt() != 0) {
                     flaggedValues.add(value);
                 }
             }
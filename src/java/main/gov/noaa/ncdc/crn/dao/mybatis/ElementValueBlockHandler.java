@@ -0,0 +1,29 @@
+package gov.noaa.ncdc.crn.dao.mybatis;
+
+import gov.noaa.ncdc.crn.domain.ElementValueBlock;
+
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+
+/**
+ * Appends each {@link ElementValueRow} of a fact/flag row statement to an {@link ElementValueBlock}. The row is dropped
+ * as soon as it has been copied, so no per-value objects survive the read.
+ */
+class ElementValueBlockHandler implements ResultHandler {
+    private final ElementValueBlock block;
+
+    ElementValueBlockHandler(ElementValueBlock block) {
+        this.block = block;
+    }
+
+    @Override
+    public void handleResult(ResultContext context) {
+        ElementValueRow row = (ElementValueRow) context.getResultObject();
+        block.add(row.getStationId(), row.getDatetimeId(), row.getElementId(), row.getValue(), row.getFlags(), row
+                .getDecimalPlaces(), row.getPublishedDecimalPlaces());
+    }
+
+    ElementValueBlock getBlock() {
+        return block;
+    }
+}
@@ -0,0 +1,25 @@
+package gov.noaa.ncdc.crn.dao.mybatis;
+
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueIndex;
+
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+
+/**
+ * Adds each ElementValue of a statement to an {@link ElementValueIndex} in place of the {@code HashMap} MyBatis builds
+ * for {@code @MapKey("staDateElement")}. As with {@code @MapKey}, a later row replaces an earlier one with the same
+ * ids.
+ */
+class ElementValueIndexHandler implements ResultHandler {
+    private final ElementValueIndex index = new ElementValueIndex();
+
+    @Override
+    public void handleResult(ResultContext context) {
+        index.put((ElementValue) context.getResultObject());
+    }
+
+    ElementValueIndex getIndex() {
+        return index;
+    }
+}
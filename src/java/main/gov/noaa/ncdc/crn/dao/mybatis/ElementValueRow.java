@@ -0,0 +1,74 @@
+package gov.noaa.ncdc.crn.dao.mybatis;
+
+import java.math.BigDecimal;
+
+/**
+ * The result type of the fact/flag row statements which fill an {@link gov.noaa.ncdc.crn.domain.ElementValueBlock}.
+ * It holds a row's columns as read, without the map entries of a resultType map row or the StationDateElement and
+ * Flags of an ElementValue, and is dropped as soon as it has been copied into the block.
+ */
+public class ElementValueRow {
+    private int stationId;
+    private int datetimeId;
+    private int elementId;
+    private BigDecimal value;
+    private Integer flags;
+    private Integer decimalPlaces;
+    private Integer publishedDecimalPlaces;
+
+    public int getStationId() {
+        return stationId;
+    }
+
+    public void setStationId(int stationId) {
+        this.stationId = stationId;
+    }
+
+    public int getDatetimeId() {
+        return datetimeId;
+    }
+
+    public void setDatetimeId(int datetimeId) {
+        this.datetimeId = datetimeId;
+    }
+
+    public int getElementId() {
+        return elementId;
+    }
+
+    public void setElementId(int elementId) {
+        this.elementId = elementId;
+    }
+
+    public BigDecimal getValue() {
+        return value;
+    }
+
+    public void setValue(BigDecimal value) {
+        this.value = value;
+    }
+
+    public Integer getFlags() {
+        return flags;
+    }
+
+    public void setFlags(Integer flags) {
+        this.flags = flags;
+    }
+
+    public Integer getDecimalPlaces() {
+        return decimalPlaces;
+    }
+
+    public void setDecimalPlaces(Integer decimalPlaces) {
+        this.decimalPlaces = decimalPlaces;
+    }
+
+    public Integer getPublishedDecimalPlaces() {
+        return publishedDecimalPlaces;
+    }
+
+    public void setPublishedDecimalPlaces(Integer publishedDecimalPlaces) {
+        this.publishedDecimalPlaces = publishedDecimalPlaces;
+    }
+}
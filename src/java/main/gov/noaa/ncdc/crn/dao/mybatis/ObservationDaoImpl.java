@@ -2,9 +2,16 @@ package gov.noaa.ncdc.crn.dao.mybatis;
 
 import static com.google.common.base.Predicates.not;
 import static com.google.common.collect.Collections2.filter;
+import gov.noaa.ncdc.crn.dao.ChangeToken;
 import gov.noaa.ncdc.crn.dao.ElementDao;
+import gov.noaa.ncdc.crn.dao.ObservationChanges;
 import gov.noaa.ncdc.crn.dao.ObservationDao;
+import gov.noaa.ncdc.crn.dao.ResultCallback;
+import gov.noaa.ncdc.crn.domain.CrnDomains;
+import gov.noaa.ncdc.crn.domain.DatetimeRange;
 import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueChanges;
+import gov.noaa.ncdc.crn.domain.ElementValueIndex;
 import gov.noaa.ncdc.crn.domain.ElementValues;
 import gov.noaa.ncdc.crn.domain.Observation;
 import gov.noaa.ncdc.crn.domain.ObservationWithData;
@@ -12,20 +19,30 @@ import gov.noaa.ncdc.crn.domain.StationDate;
 import gov.noaa.ncdc.crn.persistence.ElementMapper;
 import gov.noaa.ncdc.crn.persistence.ObservationMapper;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Repository;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
 
 @Repository
 public class ObservationDaoImpl implements ObservationDao {
@@ -38,6 +55,34 @@ public class ObservationDaoImpl implements ObservationDao {
     @Autowired
     private SqlSession sqlSession;
     private static int THROTTLE = 100;
+    /** number of observations written per batch when inserting; crn.insert.observationBatchSize */
+    private int insertPartitionSize = THROTTLE;
+    // number of hours of Observations held in memory at once while streaming
+    static final int STREAM_WINDOW_HOURS = 31 * 24;
+    // widest range of hours read at once for the stored values of a set of hours
+    static final int VALUE_READ_WINDOW_HOURS = 7 * 24;
+
+    public ObservationDaoImpl() {
+    }
+
+    // for unit tests
+    ObservationDaoImpl(ObservationMapper mapper, ElementMapper elementMapper, ElementDao elementDao,
+            SqlSession sqlSession) {
+        this.mapper = mapper;
+        this.elementMapper = elementMapper;
+        this.elementDao = elementDao;
+        this.sqlSession = sqlSession;
+    }
+
+    /**
+     * Sets the number of observations written per batch by {@link #insertObservations(Collection)}
+     * @param insertPartitionSize the number of observations per batch
+     */
+    @Value("${crn.insert.observationBatchSize:100}")
+    public void setInsertPartitionSize(int insertPartitionSize) {
+        Preconditions.checkArgument(insertPartitionSize > 0, "insertPartitionSize must be positive");
+        this.insertPartitionSize = insertPartitionSize;
+    }
 
     @Override
     public Observation getObservation(final int datetimeId, final int stationId) throws DataAccessException {
@@ -67,6 +112,142 @@ public class ObservationDaoImpl implements ObservationDao {
         return mapper.selectObservations(startDatetimeId, endDatetimeId, stationId);
     }
 
+    @Override
+    public void streamObservationsWithData(final int startDatetimeId, final int endDatetimeId, final int stationId,
+            final ResultCallback<ObservationWithData> callback) throws DataAccessException {
+        Preconditions.checkArgument(endDatetimeId >= startDatetimeId, "end datetime before begin datetime");
+        Preconditions.checkNotNull(callback, "callback is required");
+        /*
+         * walk the range a window at a time; only the window's Observations are held while its values are streamed
+         */
+        for (int begin = startDatetimeId; begin <= endDatetimeId; begin += STREAM_WINDOW_HOURS) {
+            int end = Math.min(endDatetimeId, begin + STREAM_WINDOW_HOURS - 1);
+            Map<Integer, Observation> obs = mapper.selectObservations(begin, end, stationId);
+            if (obs.isEmpty()) {
+                continue;
+            }
+            Map<String, Object> params = new HashMap<>();
+            params.put("begin", begin);
+            params.put("end", end);
+            params.put("stationId", stationId);
+            ObservationAssembler assembler = new ObservationAssembler(obs, callback);
+            elementMapper.selectOrderedElementValues(params, assembler);
+            assembler.finish();
+        }
+    }
+
+    @Override
+    public ObservationChanges getObservationChanges(final ChangeToken from, final int limit,
+            final boolean includeValues) throws DataAccessException {
+        Preconditions.checkNotNull(from, "from token is required");
+        Preconditions.checkArgument(limit > 0, "limit must be positive");
+        List<Observation> obs =
+                mapper.selectObservationsModifiedSince(from.getModified(), from.getStationId(), from.getDatetimeId(),
+                        limit);
+        List<ObservationWithData> changes = new ArrayList<>(obs.size());
+        for (Observation ob : obs) {
+            changes.add(new ObservationWithData(ob, new HashMap<Integer, ElementValue>()));
+        }
+        if (includeValues && !changes.isEmpty()) {
+            addElementValues(changes);
+        }
+        ChangeToken next = obs.isEmpty() ? from : ChangeToken.after(obs.get(obs.size() - 1));
+        return new ObservationChanges(changes, next, obs.size() == limit);
+    }
+
+    /**
+     * Reads the values of the Observations with a range read per station for each window of the station's changed
+     * hours, adding them to the Observations
+     */
+    private void addElementValues(final List<ObservationWithData> obs) {
+        Map<Integer, Collection<ObservationWithData>> byStation = Multimaps.index(obs, CrnDomains.STATION_ID).asMap();
+        for (Map.Entry<Integer, Collection<ObservationWithData>> station : byStation.entrySet()) {
+            Map<Integer, ObservationWithData> byDatetime = new HashMap<>();
+            for (ObservationWithData ob : station.getValue()) {
+                byDatetime.put(ob.getDatetimeId(), ob);
+            }
+            for (DatetimeRange window : readWindows(byDatetime.keySet())) {
+                Map<String, Object> params = new HashMap<>();
+                params.put("stationId", station.getKey());
+                params.put("begin", window.getBegin());
+                params.put("end", window.getEnd());
+                for (ElementValue value : elementDao.getElementValueIndex(params).values()) {
+                    // a window may include hours which did not change
+                    ObservationWithData ob = byDatetime.get(value.getDatetimeId());
+                    if (ob != null) {
+                        ob.getElementValues().put(value.getElementId(), value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges a window of Observations with the datetime-ordered ElementValue rows of the same window, handing each
+     * ObservationWithData to the callback as soon as its hour is complete. Observations without any values are passed
+     * along with an empty value map so the callback sees every hour in order.
+     */
+    static class ObservationAssembler implements ResultHandler {
+        private final Map<Integer, Observation> observations;
+        private final List<Integer> datetimeIds;
+        private final ResultCallback<ObservationWithData> callback;
+        private int next = 0;
+        private Observation current;
+        private Map<Integer, ElementValue> values;
+
+        ObservationAssembler(final Map<Integer, Observation> observations,
+                final ResultCallback<ObservationWithData> callback) {
+            this.observations = observations;
+            this.datetimeIds = new ArrayList<>(observations.keySet());
+            Collections.sort(datetimeIds);
+            this.callback = callback;
+        }
+
+        @Override
+        public void handleResult(final ResultContext context) {
+            ElementValue value = (ElementValue) context.getResultObject();
+            int datetimeId = value.getDatetimeId();
+            if (current == null || current.getDatetimeId() != datetimeId) {
+                advanceTo(datetimeId);
+            }
+            // a value without an Observation can not be represented; drop it
+            if (current != null && current.getDatetimeId() == datetimeId) {
+                values.put(value.getElementId(), value);
+            }
+        }
+
+        /**
+         * Hands the remaining Observations in the window to the callback
+         */
+        void finish() {
+            advanceTo(Integer.MAX_VALUE);
+        }
+
+        /**
+         * Emits the current hour and any value-less hours before datetimeId, then makes datetimeId current if it has an
+         * Observation
+         */
+        private void advanceTo(final int datetimeId) {
+            emitCurrent();
+            while (next < datetimeIds.size() && datetimeIds.get(next) < datetimeId) {
+                Observation ob = observations.get(datetimeIds.get(next++));
+                callback.handle(new ObservationWithData(ob, new HashMap<Integer, ElementValue>()));
+            }
+            if (next < datetimeIds.size() && datetimeIds.get(next) == datetimeId) {
+                current = observations.get(datetimeIds.get(next++));
+                values = new HashMap<>();
+            }
+        }
+
+        private void emitCurrent() {
+            if (current != null) {
+                callback.handle(new ObservationWithData(current, values));
+                current = null;
+                values = null;
+            }
+        }
+    }
+
     @Override
     public Map<Integer, Observation> getCurrentObservations() throws DataAccessException {
         return mapper.selectCurrentObservations();
@@ -151,32 +332,21 @@ public class ObservationDaoImpl implements ObservationDao {
     public void deleteObservations(final int stationId, final int beginDatetimeId, final int endDatetimeId)
             throws DataAccessException {
         /*
-         * very slow when try to delete a large range; call recursively with a subset
+         * one set-based statement per table for the whole range; RangeDeleteDao bounds the rows per transaction for
+         * long ranges
          */
-        if (endDatetimeId - beginDatetimeId > THROTTLE) {
-            deleteObservations(stationId, beginDatetimeId, beginDatetimeId + THROTTLE - 1);
-            deleteObservations(stationId, beginDatetimeId + THROTTLE, endDatetimeId);
-        } else {
-            mapper.deleteObLoadlogs(stationId, beginDatetimeId, endDatetimeId);
-            elementMapper.deleteFlags(stationId, beginDatetimeId, endDatetimeId);
-            elementMapper.deleteFacts(stationId, beginDatetimeId, endDatetimeId);
-            mapper.deleteObservations(stationId, beginDatetimeId, endDatetimeId);
-        }
+        mapper.deleteObLoadlogs(stationId, beginDatetimeId, endDatetimeId);
+        elementMapper.deleteFlags(stationId, beginDatetimeId, endDatetimeId);
+        elementMapper.deleteFacts(stationId, beginDatetimeId, endDatetimeId);
+        mapper.deleteObservations(stationId, beginDatetimeId, endDatetimeId);
     }
 
     // Note that the return value is nonsensical when mybatis in BATCH mode
     @Override
     public int deleteCalculatedValues(final Integer stationId, final int beginDatetimeId, final int endDatetimeId,
             final int... elementIds) throws DataAccessException {
-        int factCount = 0;
-        if (endDatetimeId - beginDatetimeId > THROTTLE) {
-            factCount += deleteCalculatedValues(stationId, beginDatetimeId, beginDatetimeId + THROTTLE - 1, elementIds);
-            factCount += deleteCalculatedValues(stationId, beginDatetimeId + THROTTLE, endDatetimeId, elementIds);
-        } else {
-            elementMapper.deleteCalculatedFlags(stationId, beginDatetimeId, endDatetimeId, elementIds);
-            factCount += elementMapper.deleteCalculatedFacts(stationId, beginDatetimeId, endDatetimeId, elementIds);
-        }
-        return factCount;
+        elementMapper.deleteCalculatedFlags(stationId, beginDatetimeId, endDatetimeId, elementIds);
+        return elementMapper.deleteCalculatedFacts(stationId, beginDatetimeId, endDatetimeId, elementIds);
     }
 
     @Override
@@ -221,6 +391,76 @@ public class ObservationDaoImpl implements ObservationDao {
         }
     }
 
+    @Override
+    public ElementValueChanges upsertElementValues(final Collection<ElementValue> values) throws DataAccessException {
+        ElementValueChanges changes = ElementValueChanges.diff(getStoredValues(values), values, IS_CALCULATED);
+        deleteCalculatedValues(changes.getDeletes());
+        // facts before flags; a new flag requires its fact
+        for (List<ElementValue> partition : Iterables.partition(changes.getFactWrites(), THROTTLE)) {
+            for (ElementValue value : partition) {
+                elementMapper.updateFact(value);
+            }
+            sqlSession.flushStatements();
+        }
+        for (List<ElementValue> partition : Iterables.partition(changes.getFlagWrites(), THROTTLE)) {
+            for (ElementValue value : partition) {
+                elementMapper.updateFlag(value);
+            }
+            sqlSession.flushStatements();
+        }
+        return changes;
+    }
+
+    /**
+     * Reads the stored values for the station/datetime/elements of the values, with a range read per station for each
+     * window of the station's datetimes, covering the station's elements.
+     * @param values The values whose stored values to read
+     * @return the stored values; may include values for other combinations of the stations' datetimes and elements
+     */
+    private ElementValueIndex getStoredValues(final Collection<ElementValue> values) {
+        Map<Integer, Collection<ElementValue>> byStation = Multimaps.index(values, CrnDomains.STATION_ID).asMap();
+        ElementValueIndex stored = new ElementValueIndex(values.size());
+        for (Map.Entry<Integer, Collection<ElementValue>> station : byStation.entrySet()) {
+            Set<Integer> datetimeIds = new HashSet<>();
+            Set<Integer> elementIds = new HashSet<>();
+            for (ElementValue value : station.getValue()) {
+                datetimeIds.add(value.getDatetimeId());
+                elementIds.add(value.getElementId());
+            }
+            for (DatetimeRange window : readWindows(datetimeIds)) {
+                Map<String, Object> params = new HashMap<>();
+                params.put("stationId", station.getKey());
+                params.put("begin", window.getBegin());
+                params.put("end", window.getEnd());
+                params.put("elementIds", elementIds);
+                for (ElementValue value : elementDao.getElementValueIndex(params).values()) {
+                    stored.put(value);
+                }
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Splits datetimeIds into ranges spanning at most VALUE_READ_WINDOW_HOURS hours, each beginning and ending at one
+     * of the datetimeIds, so a read for hours years apart does not cover the hours between them
+     */
+    static List<DatetimeRange> readWindows(final Collection<Integer> datetimeIds) {
+        List<Integer> sorted = new ArrayList<>(datetimeIds);
+        Collections.sort(sorted);
+        List<DatetimeRange> windows = new ArrayList<>();
+        int i = 0;
+        while (i < sorted.size()) {
+            int begin = sorted.get(i);
+            int end = begin;
+            while (++i < sorted.size() && sorted.get(i) - begin < VALUE_READ_WINDOW_HOURS) {
+                end = sorted.get(i);
+            }
+            windows.add(new DatetimeRange(begin, end));
+        }
+        return windows;
+    }
+
     /**
      * Returns a subcollection of ElementValues whose members are calculated and their value() method returns null.
      * @param unfiltered The Collection to filter
@@ -247,14 +487,14 @@ public class ObservationDaoImpl implements ObservationDao {
     private Predicate<ElementValue> IS_CALCULATED = new Predicate<ElementValue>() {
         @Override
         public boolean apply(ElementValue value) {
-            return elementDao.getElements().get(value.getElementId()).isCalculated();
+            return elementDao.getElementCatalog().isCalculated(value.getElementId());
         }
     };
 
     @Override
     public void insertObservations(Collection<ObservationWithData> observations) throws DataAccessException {
         /* break into partitions to avoid max cursors when collection is large */
-        Iterable<List<ObservationWithData>> partitions = Iterables.partition(observations, THROTTLE);
+        Iterable<List<ObservationWithData>> partitions = Iterables.partition(observations, insertPartitionSize);
         for (List<ObservationWithData> partition : partitions) {
             /*
              * separating table inserts to prevent new cursor from being retrieved during batch processing
@@ -265,9 +505,12 @@ public class ObservationDaoImpl implements ObservationDao {
             for (ObservationWithData ob : partition) {
                 mapper.insertObLoadlog(ob.getObservation());
             }
+            // the values of the whole partition are written together so bulk inserts span observations
+            List<ElementValue> values = new ArrayList<>();
             for (ObservationWithData ob : partition) {
-                elementDao.insertElementValues(ob.getElementValues().values());
+                values.addAll(ob.getElementValues().values());
             }
+            elementDao.insertElementValues(values);
             sqlSession.flushStatements();
         }
     }
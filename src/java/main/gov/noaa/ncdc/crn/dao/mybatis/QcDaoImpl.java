@@ -2,9 +2,15 @@ package gov.noaa.ncdc.crn.dao.mybatis;
 
 import gov.noaa.ncdc.crn.dao.QcDao;
 import gov.noaa.ncdc.crn.domain.QcDeltaParam;
+import gov.noaa.ncdc.crn.domain.QcParameterTable;
 import gov.noaa.ncdc.crn.domain.QcRangeParam;
+import gov.noaa.ncdc.crn.domain.StreamElement;
 import gov.noaa.ncdc.crn.persistence.QcMapper;
+import gov.noaa.ncdc.crn.persistence.StreamMapper;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,29 +21,55 @@ import org.springframework.stereotype.Repository;
 public class QcDaoImpl implements QcDao {
     @Autowired
     private QcMapper mapper;
+    @Autowired
+    private StreamMapper streamMapper;
+    /** replaced as a whole; null until first read */
+    private volatile QcParameterTable table;
 
     @Override
     public QcRangeParam getQcRangeParam(final int elementId, final int streamId, final int stationId, final int month)
             throws DataAccessException {
-        return getQcRangeParams(streamId, stationId, month).get(elementId);
+        return getQcParameterTable().getRangeParam(elementId, streamId, stationId, month);
     }
 
     @Override
     public Map<Integer, QcRangeParam> getQcRangeParams(final int streamId, final int stationId, final int month)
             throws DataAccessException {
-        return mapper.selectRangeParams(streamId, stationId, month);
+        return getQcParameterTable().getRangeParams(streamId, stationId, month);
     }
 
     @Override
     public QcDeltaParam getQcDeltaParam(final int elementId, final int streamId, final int stationId, final int month)
             throws DataAccessException {
-        return getQcDeltaParams(streamId, stationId, month).get(elementId);
+        return getQcParameterTable().getDeltaParam(elementId, streamId, stationId, month);
     }
 
     @Override
     public Map<Integer, QcDeltaParam> getQcDeltaParams(final int streamId, final int stationId, final int month)
             throws DataAccessException {
-        return mapper.selectDeltaParams(streamId, stationId, month);
+        return getQcParameterTable().getDeltaParams(streamId, stationId, month);
+    }
+
+    @Override
+    public QcParameterTable getQcParameterTable() throws DataAccessException {
+        QcParameterTable current = table;
+        return current != null ? current : reloadQcParameters();
+    }
+
+    @Override
+    public QcParameterTable reloadQcParameters() throws DataAccessException {
+        Map<Integer, List<Integer>> streamElementIds = new HashMap<>();
+        for (Integer streamId : streamMapper.selectStreams().keySet()) {
+            List<Integer> elementIds = new ArrayList<>();
+            for (StreamElement element : streamMapper.selectStreamElementList(streamId)) {
+                elementIds.add(element.getElementId());
+            }
+            streamElementIds.put(streamId, elementIds);
+        }
+        QcParameterTable reloaded = new QcParameterTable(mapper.selectAllRangeParams(), mapper.selectAllDeltaParams(),
+                streamElementIds);
+        table = reloaded;
+        return reloaded;
     }
 
 }
@@ -0,0 +1,251 @@
+package gov.noaa.ncdc.crn.dao.mybatis;
+
+import gov.noaa.ncdc.crn.dao.RangeDeleteDao;
+import gov.noaa.ncdc.crn.dao.RangeDeleteResult;
+import gov.noaa.ncdc.crn.persistence.ElementMapper;
+import gov.noaa.ncdc.crn.persistence.ObservationMapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.base.Preconditions;
+
+@Repository
+public class RangeDeleteDaoImpl implements RangeDeleteDao, InitializingBean {
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    private ObservationMapper observationMapper;
+    private ElementMapper elementMapper;
+    private TransactionTemplate transactionTemplate;
+
+    private static final Log LOG = LogFactory.getLog(RangeDeleteDaoImpl.class);
+    private int maxRowsPerTransaction = 50000;
+    private int threads = 4;
+
+    public RangeDeleteDaoImpl() {
+    }
+
+    // for unit tests
+    RangeDeleteDaoImpl(ObservationMapper observationMapper, ElementMapper elementMapper,
+            TransactionTemplate transactionTemplate) {
+        this.observationMapper = observationMapper;
+        this.elementMapper = elementMapper;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // the shared mappers use the BATCH executor, which cannot report rows deleted, so the statements are run
+        // through mappers of a SIMPLE executor; register them here rather than relying on the mapper scan running first
+        Configuration configuration = sqlSessionFactory.getConfiguration();
+        for (Class<?> mapperType : new Class<?>[] { ObservationMapper.class, ElementMapper.class }) {
+            if (!configuration.hasMapper(mapperType)) {
+                configuration.addMapper(mapperType);
+            }
+        }
+        SqlSessionTemplate simpleSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.SIMPLE);
+        observationMapper = simpleSession.getMapper(ObservationMapper.class);
+        elementMapper = simpleSession.getMapper(ElementMapper.class);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Sets the maximum number of rows deleted from a table in one transaction; larger ranges are deleted in several
+     * transactions. Defaults to 50000.
+     * @param maxRowsPerTransaction the maximum number of rows per transaction; must be positive
+     */
+    @Value("${crn.delete.maxRowsPerTransaction:50000}")
+    public void setMaxRowsPerTransaction(int maxRowsPerTransaction) {
+        Preconditions.checkArgument(maxRowsPerTransaction > 0, "maxRowsPerTransaction must be positive");
+        this.maxRowsPerTransaction = maxRowsPerTransaction;
+    }
+
+    /**
+     * Sets the maximum number of stations deleted in parallel, each using its own connection. Defaults to 4.
+     * @param threads the number of stations deleted in parallel; must be positive
+     */
+    @Value("${crn.delete.threads:4}")
+    public void setThreads(int threads) {
+        Preconditions.checkArgument(threads > 0, "threads must be positive");
+        this.threads = threads;
+    }
+
+    @Override
+    public RangeDeleteResult deleteObservations(Collection<Integer> stationIds, final int beginDatetimeId,
+            final int endDatetimeId) throws DataAccessException {
+        Preconditions.checkArgument(beginDatetimeId <= endDatetimeId, "beginDatetimeId must not follow endDatetimeId");
+        final int maxRows = maxRowsPerTransaction;
+        List<Callable<RangeDeleteResult>> deletes = new ArrayList<>();
+        for (final int stationId : new LinkedHashSet<>(stationIds)) {
+            deletes.add(new Callable<RangeDeleteResult>() {
+                @Override
+                public RangeDeleteResult call() {
+                    // child rows first
+                    ChunkedDelete flags = new ChunkedDelete(maxRows) {
+                        @Override
+                        int deleteChunk() {
+                            return elementMapper.deleteFlagRange(stationId, beginDatetimeId, endDatetimeId, maxRows);
+                        }
+                    };
+                    ChunkedDelete facts = new ChunkedDelete(maxRows) {
+                        @Override
+                        int deleteChunk() {
+                            return elementMapper.deleteFactRange(stationId, beginDatetimeId, endDatetimeId, maxRows);
+                        }
+                    };
+                    ChunkedDelete obLoadlogs = new ChunkedDelete(maxRows) {
+                        @Override
+                        int deleteChunk() {
+                            return observationMapper.deleteObLoadlogRange(stationId, beginDatetimeId, endDatetimeId,
+                                    maxRows);
+                        }
+                    };
+                    ChunkedDelete observations = new ChunkedDelete(maxRows) {
+                        @Override
+                        int deleteChunk() {
+                            return observationMapper.deleteObservationRange(stationId, beginDatetimeId,
+                                    endDatetimeId, maxRows);
+                        }
+                    };
+                    long flagRows = flags.deleteAll();
+                    long factRows = facts.deleteAll();
+                    long obLoadlogRows = obLoadlogs.deleteAll();
+                    long observationRows = observations.deleteAll();
+                    return new RangeDeleteResult(flagRows, factRows, obLoadlogRows, observationRows,
+                            flags.transactions + facts.transactions + obLoadlogs.transactions
+                                    + observations.transactions);
+                }
+            });
+        }
+        return run(deletes);
+    }
+
+    @Override
+    public RangeDeleteResult deleteCalculatedValues(Collection<Integer> stationIds, final int beginDatetimeId,
+            final int endDatetimeId, final int... elementIds) throws DataAccessException {
+        Preconditions.checkArgument(beginDatetimeId <= endDatetimeId, "beginDatetimeId must not follow endDatetimeId");
+        Preconditions.checkArgument(elementIds.length > 0, "elementIds must not be empty");
+        final int maxRows = maxRowsPerTransaction;
+        List<Callable<RangeDeleteResult>> deletes = new ArrayList<>();
+        for (final int stationId : new LinkedHashSet<>(stationIds)) {
+            deletes.add(new Callable<RangeDeleteResult>() {
+                @Override
+                public RangeDeleteResult call() {
+                    ChunkedDelete flags = new ChunkedDelete(maxRows) {
+                        @Override
+                        int deleteChunk() {
+                            return elementMapper.deleteCalculatedFlagRange(stationId, beginDatetimeId,
+                                    endDatetimeId, maxRows, elementIds);
+                        }
+                    };
+                    ChunkedDelete facts = new ChunkedDelete(maxRows) {
+                        @Override
+                        int deleteChunk() {
+                            return elementMapper.deleteCalculatedFactRange(stationId, beginDatetimeId,
+                                    endDatetimeId, maxRows, elementIds);
+                        }
+                    };
+                    long flagRows = flags.deleteAll();
+                    long factRows = facts.deleteAll();
+                    return new RangeDeleteResult(flagRows, factRows, 0, 0, flags.transactions + facts.transactions);
+                }
+            });
+        }
+        return run(deletes);
+    }
+
+    /**
+     * Runs the station deletes on at most threads threads and sums their results
+     */
+    private RangeDeleteResult run(List<Callable<RangeDeleteResult>> deletes) {
+        if (deletes.isEmpty()) {
+            return RangeDeleteResult.NONE;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, deletes.size()));
+        try {
+            List<Future<RangeDeleteResult>> futures = new ArrayList<>(deletes.size());
+            for (Callable<RangeDeleteResult> delete : deletes) {
+                futures.add(pool.submit(delete));
+            }
+            RangeDeleteResult result = RangeDeleteResult.NONE;
+            for (Future<RangeDeleteResult> future : futures) {
+                result = result.plus(future.get());
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("deleted " + result + " for " + deletes.size() + " stations");
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransientDataAccessResourceException("interrupted while deleting ranges", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            // stations not yet started are abandoned if one fails
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Repeats a statement deleting at most maxRows rows, each in its own transaction, until it deletes fewer
+     */
+    private abstract class ChunkedDelete {
+        private final int maxRows;
+        int transactions;
+
+        ChunkedDelete(int maxRows) {
+            this.maxRows = maxRows;
+        }
+
+        abstract int deleteChunk();
+
+        long deleteAll() {
+            long total = 0;
+            int deleted;
+            do {
+                deleted = transactionTemplate.execute(new TransactionCallback<Integer>() {
+                    @Override
+                    public Integer doInTransaction(TransactionStatus status) {
+                        return deleteChunk();
+                    }
+                });
+                transactions++;
+                total += deleted;
+            } while (deleted >= maxRows);
+            return total;
+        }
+    }
+}
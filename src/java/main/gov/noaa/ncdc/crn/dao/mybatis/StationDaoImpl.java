@@ -1,33 +1,49 @@
 package gov.noaa.ncdc.crn.dao.mybatis;
 
 import gov.noaa.ncdc.crn.dao.StationDao;
+import gov.noaa.ncdc.crn.domain.RainGaugeTimeline;
 import gov.noaa.ncdc.crn.domain.Station;
-import gov.noaa.ncdc.crn.domain.StationRainGauge;
+import gov.noaa.ncdc.crn.domain.StationRegistry;
 import gov.noaa.ncdc.crn.persistence.StationMapper;
 import gov.noaa.ncdc.crn.util.TimeUtils;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Collection;
-import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Repository;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
-import com.google.common.collect.TreeMultimap;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
 
 @Repository
 public class StationDaoImpl implements StationDao {
     @Autowired
     private StationMapper mapper;
     private static Log LOG = LogFactory.getLog(StationDaoImpl.class);
+    /** age after which the registry and rain gauges are read again; crn.stations.maxAgeSeconds */
+    private long registryMaxAgeMillis = 300 * 1000L;
+    /** replaced as a whole; null until first read */
+    private volatile StationRegistry registry;
+    /** replaced as a whole; null until first read or after invalidateRainGauges */
+    private volatile RainGauges rainGauges;
+
+    /**
+     * Sets the number of seconds after which {@link #getStationRegistry()} reads the Stations again, and the rain gauge
+     * timelines are read again; 0 keeps them until {@link #refreshStationRegistry()} or
+     * {@link #invalidateRainGauges()}. Defaults to 300.
+     * @param maxAgeSeconds the maximum age of the registry in seconds
+     */
+    @Value("${crn.stations.maxAgeSeconds:300}")
+    public void setRegistryMaxAgeSeconds(long maxAgeSeconds) {
+        Preconditions.checkArgument(maxAgeSeconds >= 0, "maxAgeSeconds must be nonnegative");
+        this.registryMaxAgeMillis = maxAgeSeconds * 1000;
+    }
 
     @Override
     public Map<Integer, Station> getStations() throws DataAccessException {
@@ -44,6 +60,24 @@ public class StationDaoImpl implements StationDao {
         return mapper.selectWbanStations();
     }
 
+    @Override
+    public StationRegistry getStationRegistry() throws DataAccessException {
+        StationRegistry current = registry;
+        if (current == null || registryMaxAgeMillis > 0
+                && System.currentTimeMillis() - current.getLoadedMillis() > registryMaxAgeMillis) {
+            current = refreshStationRegistry();
+        }
+        return current;
+    }
+
+    @Override
+    public StationRegistry refreshStationRegistry() throws DataAccessException {
+        StationRegistry refreshed = new StationRegistry(mapper.selectStations(true).values(), mapper.selectStations(
+                false).keySet());
+        registry = refreshed;
+        return refreshed;
+    }
+
     @Override
     public Station getStationFromParams(final Map<String, Object> params) throws DataAccessException {
         return mapper.selectStation(params);
@@ -77,73 +111,53 @@ public class StationDaoImpl implements StationDao {
 
     @Override
     public Integer getStationRainGaugeDepth(int stationId, int datetimeId) {
-        TreeMultimap<Integer, StationRainGauge> map = getStationRainGaugeMap();
-        Collection<StationRainGauge> gauges = map.get(stationId);
-        StationRainGauge gauge = null;
-        if (gauges == null || gauges.size() == 0) {
+        RainGaugeTimeline timeline = getRainGaugeTimeline(stationId);
+        if (timeline == null) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug(stationId + ": no gauges installed at this station");
             }
             return null;
-        } else if (gauges.size() == 1) {
-            gauge = gauges.iterator().next();
-            if (LOG.isTraceEnabled()) {
-                LOG.trace(stationId + ": only one rain gauge installed");
-            }
-        } else {
-            // the requested calendar time for comparison
-            final Calendar requestDate = TimeUtils.computeCalendarDate(datetimeId);
-            Collection<StationRainGauge> preceding = Collections2.filter(gauges, new Predicate<StationRainGauge>() {
-                @Override
-                public boolean apply(StationRainGauge gauge) {
-                    return !requestDate.getTime().before(gauge.getEventDate());
-                }
-            });
-            // since the Guava filter is lazily evaluated, want to access it just once
-            List<StationRainGauge> precedingList = new ArrayList<>(preceding);
-            // get the last gauge which precedes the request date
-            // or the first in the original list if none precedes
-            if (precedingList.size() == 0) {
-                // request date is before first gauge installation; use first gauge and log warning
-                gauge = gauges.iterator().next();
-                if (LOG.isWarnEnabled()) {
-                    LOG.warn(String.format("%2$d: request date [%1$tY%1$tm%1$td] before any gauge installations",
-                            requestDate, stationId));
-                }
-            } else if (precedingList.size() == gauges.size()) {
-                // request date is after last gauge was installed; use last gauge installed
-                gauge = precedingList.get(precedingList.size() - 1);
-                if (LOG.isTraceEnabled()) {
-                    LOG.trace(String.format("%2$d: request date [%1$tY%1$tm%1$td] after last gauge installation",
-                            requestDate, stationId));
-                }
-            } else {
-                // request date is between two gauge installations; use the last one which precedes it
-                gauge = precedingList.get(precedingList.size() - 1);
-                if (LOG.isTraceEnabled()) {
-                    LOG.trace(String.format("%2$d: request date [%1$tY%1$tm%1$td] between gauge installations",
-                            requestDate, stationId));
-                }
-            }
         }
-        return gauge.getDepth();
+        if (timeline.size() > 1 && timeline.precedesInstallation(datetimeId) && LOG.isWarnEnabled()) {
+            // request date is before first gauge installation; use first gauge and log warning
+            LOG.warn(String.format("%2$d: request date [%1$tY%1$tm%1$td] before any gauge installations",
+                    TimeUtils.computeCalendarDate(datetimeId), stationId));
+        }
+        return timeline.getDepth(datetimeId);
     }
 
-    private Collection<StationRainGauge> getStationGauges() throws DataAccessException {
-        return mapper.selectRainGaugeDepths();
+    @Override
+    public SortedMap<Integer, Integer> getStationRainGaugeDepths(int stationId, int begin, int end) {
+        RainGaugeTimeline timeline = getRainGaugeTimeline(stationId);
+        return timeline != null ? timeline.getChanges(begin, end) : ImmutableSortedMap.<Integer, Integer> of();
     }
 
-    private TreeMultimap<Integer, StationRainGauge> getStationRainGaugeMap() {
-        Collection<StationRainGauge> gaugeMap = getStationGauges();
-        return transformGaugeMap(gaugeMap);
+    @Override
+    public RainGaugeTimeline getRainGaugeTimeline(int stationId) {
+        RainGauges current = rainGauges;
+        if (current == null || registryMaxAgeMillis > 0
+                && System.currentTimeMillis() - current.loadedMillis > registryMaxAgeMillis) {
+            current = new RainGauges(RainGaugeTimeline.byStation(mapper.selectRainGaugeDepths()));
+            rainGauges = current;
+        }
+        return current.timelines.get(stationId);
     }
 
-    private TreeMultimap<Integer, StationRainGauge> transformGaugeMap(Collection<StationRainGauge> gauges) {
-        TreeMultimap<Integer, StationRainGauge> mm = TreeMultimap.create();
-        for (StationRainGauge gauge : gauges) {
-            mm.put(gauge.getStationId(), gauge);
+    @Override
+    public void invalidateRainGauges() {
+        rainGauges = null;
+    }
+
+    /**
+     * The rain gauge timelines of all stations and when they were read
+     */
+    private static final class RainGauges {
+        private final Map<Integer, RainGaugeTimeline> timelines;
+        private final long loadedMillis = System.currentTimeMillis();
+
+        private RainGauges(Map<Integer, RainGaugeTimeline> timelines) {
+            this.timelines = timelines;
         }
-        return mm;
     }
 
 }
@@ -1,25 +1,45 @@
 package gov.noaa.ncdc.crn.domain;
 
+import gov.noaa.ncdc.crn.util.DatetimeCodec;
 import gov.noaa.ncdc.crn.util.TimeUtils;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Calendar;
-import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.google.common.base.Objects;
-import com.google.common.collect.ComparisonChain;
+import com.google.common.primitives.Longs;
 
 /**
  * {@code Datetime} represents an observation hour in the CRN network history. The time represents the top of the hour
  * at the end of the observation hour, and so minutes, seconds, and smaller units of time are always zero.
  * 
- * {@code Datetime} provides previous() and next() methods to create sequential {@code Datetime}s, and a self-modifying
- * add(int) method.
+ * {@code Datetime} provides previous() and next() methods to create sequential {@code Datetime}s, and an add(int)
+ * method.
  * 
  * It also provides a method to convert its native UTC time to Local Standard Time (LST).
+ * <p>
+ * A {@code Datetime} is immutable. It holds its time as the number of hours since {@link TimeUtils#CRN_EPOCH}, and
+ * computes its date string and fields from that as needed; it holds no Calendar. {@link #valueOf(int)} returns a
+ * shared instance for datetimeIds from the CRN epoch to 2060. The serialized form is unchanged from the Calendar based
+ * implementation.
  */
-@SuppressWarnings("serial")
 public class Datetime implements DatetimeAware, Comparable<Object>, Serializable {
+    /** unchanged from the implicit serialVersionUID of the Calendar based implementation */
+    private static final long serialVersionUID = -271683381625440085L;
+    /** keeps the serialized form of the Calendar based implementation */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("datetimeId", int.class), new ObjectStreamField("datetime0_23", String.class),
+            new ObjectStreamField("utcCal", Calendar.class) };
+    /** the number of datetimeIds from 0 whose canonical instances are cached */
+    private static final int CACHED_IDS = 1 << 19;
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    /** canonical instances in chunks of 4096 hours, each created on first use */
+    private static final AtomicReferenceArray<Datetime[]> CACHE = new AtomicReferenceArray<>(CACHED_IDS >> CHUNK_BITS);
 
     /**
      * The datetimeId represents a number of hours since a certain time in the CRN network history. Exercise caution
@@ -27,25 +47,57 @@ public class Datetime implements DatetimeAware, Comparable<Object>, Serializable
      */
     private final int datetimeId;
     /**
-     * datetime0_23 - the date in yyyymmddhhmm format
+     * The hours since {@link TimeUtils#CRN_EPOCH} of datetime0_23; the same as datetimeId unless they were given out
+     * of sync
      */
-    private final String datetime0_23;
-
+    private final int hour;
     /**
-     * utcCal is the calendar instance representing datetime0_23
+     * datetime0_23 - the date in yyyymmddhh[mm] format; computed on first request for instances created from a
+     * datetimeId
      */
-    private final Calendar utcCal;
+    private String datetime0_23;
 
     /**
      * Creates a new {@code Datetime} object with from the datetime id and UTC datestring. Does not validate agreement
      * against the database.
      * @param datetimeId The datetime id
-     * @param yyyymmddhhmm The UTC datetimeString in YYYYMMDDHH24MI format
+     * @param yyyymmddhhmm The UTC datetimeString in YYYYMMDDHH24[MI] format
+     * @throws IllegalArgumentException if yyyymmddhhmm is not a valid date on the hour
      */
     public Datetime(final int datetimeId, final String yyyymmddhhmm) {
         this.datetimeId = datetimeId;
+        this.hour = DatetimeCodec.parse(yyyymmddhhmm);
         this.datetime0_23 = yyyymmddhhmm;
-        utcCal = TimeUtils.createUTCCalendar(datetime0_23);
+    }
+
+    private Datetime(final int datetimeId) {
+        this.datetimeId = datetimeId;
+        this.hour = datetimeId;
+    }
+
+    /**
+     * Returns the {@code Datetime} of a datetimeId, computed without the database. Instances for datetimeIds from 0 to
+     * 2060 are shared.
+     * @param datetimeId The datetime id
+     * @return the {@code Datetime}, equal to the one read from the datetime table
+     */
+    public static Datetime valueOf(int datetimeId) {
+        if (datetimeId < 0 || datetimeId >= CACHED_IDS) {
+            return new Datetime(datetimeId);
+        }
+        int index = datetimeId >>> CHUNK_BITS;
+        Datetime[] chunk = CACHE.get(index);
+        if (chunk == null) {
+            CACHE.compareAndSet(index, null, new Datetime[1 << CHUNK_BITS]);
+            chunk = CACHE.get(index);
+        }
+        // racing threads may each create an instance; the fields read by other threads are final
+        Datetime datetime = chunk[datetimeId & CHUNK_MASK];
+        if (datetime == null) {
+            datetime = new Datetime(datetimeId);
+            chunk[datetimeId & CHUNK_MASK] = datetime;
+        }
+        return datetime;
     }
 
     /**
@@ -65,11 +117,31 @@ public class Datetime implements DatetimeAware, Comparable<Object>, Serializable
      * @return A {@code String} encoded date and time.
      */
     public String getDatetime0_23() {
-        return datetime0_23;
+        String result = datetime0_23;
+        if (result == null) {
+            // a benign race; every thread computes the same String
+            result = DatetimeCodec.format(hour);
+            datetime0_23 = result;
+        }
+        return result;
     }
 
+    /**
+     * Returns a new UTC Calendar of this time; changing it does not change this {@code Datetime}
+     * @return a new Calendar representing datetime0_23
+     */
     public Calendar getUtcCal() {
-        return utcCal;
+        Calendar calendar = TimeUtils.nowUTCCalendar();
+        calendar.setTimeInMillis(getTimeInMillis());
+        return calendar;
+    }
+
+    /**
+     * Returns the time of this {@code Datetime}
+     * @return milliseconds since the epoch
+     */
+    public long getTimeInMillis() {
+        return DatetimeCodec.toMillis(hour);
     }
 
     /**
@@ -77,29 +149,20 @@ public class Datetime implements DatetimeAware, Comparable<Object>, Serializable
      * are translated to 00
      * @param datetime0_23 the starting time in YYYYMMDDH24[mm]
      * @param offset the offset to add to the datetime
-     * @return a datetime {@code String} in YYYYMMDDHH2400
+     * @return a datetime {@code String} in YYYYMMDDHH24
      */
     public static String getLstDatetime0_23(String datetime0_23, int offset) {
-        Calendar utcCal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        utcCal.set(new Integer(datetime0_23.substring(0, 4)), new Integer(datetime0_23.substring(4, 6)) - 1,
-                new Integer(datetime0_23.substring(6, 8)), new Integer(datetime0_23.substring(8, 10)), 0);
-        utcCal.add(Calendar.HOUR, offset);
-        String lst = TimeUtils.getYYYYMMDDHH24mm(utcCal).substring(0, 10);
-        return lst;
+        return DatetimeCodec.format(DatetimeCodec.parse(datetime0_23.substring(0, 10)) + offset);
     }
 
     /**
      * Returns a datetime {@code String} representing the offset-adjusted time from this.datetime0_23; if provided,
      * minutes are translated to 00
      * @param offset the offset to add to the datetime
-     * @return a datetime {@code String} in YYYYMMDDHH2400
+     * @return a datetime {@code String} in YYYYMMDDHH24
      */
-    // synchronized to prevent accidental calendar access during offsetting
-    public synchronized String getLstDatetime0_23(int offset) {
-        utcCal.add(Calendar.HOUR, offset);
-        String lst = TimeUtils.getYYYYMMDDHH24mm(utcCal).substring(0, 10);
-        utcCal.add(Calendar.HOUR, -offset);
-        return lst;
+    public String getLstDatetime0_23(int offset) {
+        return DatetimeCodec.format(hour + offset);
     }
 
     /**
@@ -107,7 +170,7 @@ public class Datetime implements DatetimeAware, Comparable<Object>, Serializable
      * @return The year in UTC time.
      */
     public int getYear() {
-        return utcCal.get(Calendar.YEAR);
+        return field(0, 4);
     }
 
     /**
@@ -115,7 +178,7 @@ public class Datetime implements DatetimeAware, Comparable<Object>, Serializable
      * @return The zero-indexed month {@code int} in UTC time.
      */
     public int getMonth() {
-        return utcCal.get(Calendar.MONTH);
+        return field(4, 6) - 1;
     }
 
     /**
@@ -123,7 +186,7 @@ public class Datetime implements DatetimeAware, Comparable<Object>, Serializable
      * @return The day of month in UTC time.
      */
     public int getDay() {
-        return utcCal.get(Calendar.DATE);
+        return field(6, 8);
     }
 
     /**
@@ -131,7 +194,22 @@ public class Datetime implements DatetimeAware, Comparable<Object>, Serializable
      * @return The hour of the day in UTC time.
      */
     public int getHour() {
-        return utcCal.get(Calendar.HOUR_OF_DAY);
+        return field(8, 10);
+    }
+
+    /**
+     * Reads a field from the normalized date string, in which the hour is 0-23
+     */
+    private int field(int from, int to) {
+        String s = getDatetime0_23();
+        if (s.length() != 10 || s.charAt(8) == '2' && s.charAt(9) == '4') {
+            s = DatetimeCodec.format(hour);
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + s.charAt(i) - '0';
+        }
+        return value;
     }
 
     /**
@@ -149,14 +227,14 @@ public class Datetime implements DatetimeAware, Comparable<Object>, Serializable
     }
 
     /**
-     * Returns a new {@code Datetime} with a {@code Calendar} adjusted according to hours argument.
+     * Returns a {@code Datetime} the hours argument later.
      * @param hours number of hours to adjust
      */
     public Datetime add(int hours) {
-        Calendar cal = TimeUtils.extendDate(utcCal, 0, 0, 0, hours, 0);
-        String newYyyymmddhh = TimeUtils.getYYYYMMDDHH24(cal);
-        int newDatetimeId = this.datetimeId + hours;
-        return new Datetime(newDatetimeId, newYyyymmddhh);
+        if (hour == datetimeId) {
+            return valueOf(datetimeId + hours);
+        }
+        return new Datetime(datetimeId + hours, DatetimeCodec.format(hour + hours));
     }
 
     /**
@@ -169,11 +247,10 @@ public class Datetime implements DatetimeAware, Comparable<Object>, Serializable
      */
     @Override
     public int compareTo(Object o) {
-        try {
+        if (o instanceof Datetime) {
             return this.datetimeId - ((Datetime) o).getDatetimeId();
-        } catch (ClassCastException e) {
-            return utcCal.compareTo((Calendar) o);
         }
+        return Longs.compare(getTimeInMillis(), ((Calendar) o).getTimeInMillis());
     }
 
     @Override
@@ -185,8 +262,7 @@ public class Datetime implements DatetimeAware, Comparable<Object>, Serializable
         // equal if o is a Datetime object, and both objects represent the same datetimeId
         if (o != null && o instanceof Datetime) {
             Datetime d = (Datetime) o;
-            return ComparisonChain.start().compare(datetimeId, d.datetimeId).compare(utcCal, d.utcCal)
-                    .compare(datetime0_23, d.datetime0_23).result() == 0;
+            return datetimeId == d.datetimeId && hour == d.hour && getDatetime0_23().equals(d.getDatetime0_23());
         }
         return false;
     }
@@ -196,7 +272,7 @@ public class Datetime implements DatetimeAware, Comparable<Object>, Serializable
      * @return
      */
     public Datetime copy() {
-        return new Datetime(datetimeId, datetime0_23);
+        return new Datetime(datetimeId, getDatetime0_23());
     }
 
     @Override
@@ -206,7 +282,21 @@ public class Datetime implements DatetimeAware, Comparable<Object>, Serializable
 
     @Override
     public String toString() {
-        return Objects.toStringHelper(this).addValue(datetimeId).addValue(datetime0_23 + " UTC").toString();
+        return Objects.toStringHelper(this).addValue(datetimeId).addValue(getDatetime0_23() + " UTC").toString();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("datetimeId", datetimeId);
+        fields.put("datetime0_23", getDatetime0_23());
+        fields.put("utcCal", getUtcCal());
+        out.writeFields();
     }
 
+    /**
+     * The hour is not serialized, so a deserialized instance is replaced by one created from its fields
+     */
+    private Object readResolve() {
+        return new Datetime(datetimeId, datetime0_23);
+    }
 }
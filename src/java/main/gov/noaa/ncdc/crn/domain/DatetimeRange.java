@@ -0,0 +1,125 @@
+package gov.noaa.ncdc.crn.domain;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.List;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * {@code DatetimeRange} is an inclusive range of consecutive datetimeIds, held as its first and last ids rather than
+ * as a list of hours.
+ */
+@SuppressWarnings("serial")
+public class DatetimeRange implements Serializable {
+
+    private final int begin;
+    private final int end;
+
+    /**
+     * Creates a range of datetimeIds
+     * @param begin the first datetimeId
+     * @param end the last datetimeId, inclusive; may be begin - 1 for an empty range
+     * @throws IllegalArgumentException if end is before begin - 1
+     */
+    public DatetimeRange(final int begin, final int end) {
+        Preconditions.checkArgument((long) end >= (long) begin - 1, "end %s before begin %s", end, begin);
+        this.begin = begin;
+        this.end = end;
+    }
+
+    /**
+     * Returns the first datetimeId of the range
+     * @return the first datetimeId
+     */
+    public int getBegin() {
+        return begin;
+    }
+
+    /**
+     * Returns the last datetimeId of the range
+     * @return the last datetimeId, inclusive
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the number of hours in the range
+     * @return the number of datetimeIds in the range
+     */
+    public int size() {
+        return end - begin + 1;
+    }
+
+    /**
+     * Returns true if the range has no hours
+     * @return true if the range is empty
+     */
+    public boolean isEmpty() {
+        return end < begin;
+    }
+
+    /**
+     * Returns true if the datetimeId is in the range
+     * @param datetimeId the datetimeId to test
+     * @return true if begin <= datetimeId <= end
+     */
+    public boolean contains(int datetimeId) {
+        return datetimeId >= begin && datetimeId <= end;
+    }
+
+    /**
+     * Returns the datetimeIds of the range
+     * @return a new int[] of the datetimeIds in ascending order
+     */
+    public int[] toArray() {
+        int[] ids = new int[size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = begin + i;
+        }
+        return ids;
+    }
+
+    /**
+     * Returns an unmodifiable List view of the datetimeIds; Integers are only created as elements are read
+     * @return a List{@code <Integer>} of the datetimeIds in ascending order
+     */
+    public List<Integer> asList() {
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                Preconditions.checkElementIndex(index, size());
+                return begin + index;
+            }
+
+            @Override
+            public int size() {
+                return DatetimeRange.this.size();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof DatetimeRange) {
+            DatetimeRange range = (DatetimeRange) o;
+            return begin == range.begin && end == range.end;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(begin, end);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).addValue(begin).addValue(end).toString();
+    }
+}
@@ -0,0 +1,224 @@
+package gov.noaa.ncdc.crn.domain;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * An immutable catalog of all Elements and ElementGroups, indexed for constant time lookups: Elements by id (a dense
+ * array) and by name, and the ids of calculated Elements, of each ElementGroup's members, and of the Elements of each
+ * duration and end minute as bit sets. Build it once from the complete lists of Elements and ElementGroups and replace
+ * it as a whole when they change.
+ */
+public class ElementCatalog {
+    private final Element[] byId;
+    private final ImmutableMap<Integer, Element> elements;
+    private final ImmutableMap<String, Element> byName;
+    private final ImmutableList<ElementGroup> groups;
+    private final BitSet calculated = new BitSet();
+    private final Map<Integer, BitSet> groupMembers = new HashMap<>();
+    private final Map<Integer, BitSet> durations = new HashMap<>();
+    private final Map<Integer, BitSet> endMinutes = new HashMap<>();
+
+    /**
+     * Creates a catalog of Elements and ElementGroups
+     * @param elements all the Elements
+     * @param groups all the ElementGroups, in order
+     * @throws IllegalArgumentException if an elementId is negative or two Elements share an id or name
+     */
+    public ElementCatalog(Collection<Element> elements, List<ElementGroup> groups) {
+        int maxId = -1;
+        for (Element element : elements) {
+            Preconditions.checkArgument(element.getElementId() >= 0, "negative elementId %s", element.getElementId());
+            maxId = Math.max(maxId, element.getElementId());
+        }
+        byId = new Element[maxId + 1];
+        ImmutableMap.Builder<String, Element> names = ImmutableMap.builder();
+        for (Element element : elements) {
+            int id = element.getElementId();
+            Preconditions.checkArgument(byId[id] == null, "duplicate elementId %s", id);
+            byId[id] = element;
+            names.put(element.getName(), element);
+            if (element.isCalculated()) {
+                calculated.set(id);
+            }
+            bits(durations, element.getDuration()).set(id);
+            bits(endMinutes, element.getEndMinute()).set(id);
+        }
+        ImmutableMap.Builder<Integer, Element> ids = ImmutableMap.builder();
+        for (Element element : byId) {
+            if (element != null) {
+                ids.put(element.getElementId(), element);
+            }
+        }
+        this.elements = ids.build();
+        this.byName = names.build();
+        this.groups = ImmutableList.copyOf(groups);
+        for (ElementGroup group : groups) {
+            BitSet members = bits(groupMembers, group.getElementGroupId());
+            for (Integer elementId : group.getMemberElements()) {
+                members.set(elementId);
+            }
+        }
+    }
+
+    private static BitSet bits(Map<Integer, BitSet> index, int key) {
+        BitSet bits = index.get(key);
+        if (bits == null) {
+            bits = new BitSet();
+            index.put(key, bits);
+        }
+        return bits;
+    }
+
+    /**
+     * Returns the Element with an id
+     * @param elementId the id of the Element
+     * @return the Element, or null if there is none
+     */
+    public Element get(int elementId) {
+        return elementId >= 0 && elementId < byId.length ? byId[elementId] : null;
+    }
+
+    /**
+     * Returns the Element with a name
+     * @param name the name of the Element
+     * @return the Element, or null if there is none
+     */
+    public Element get(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Returns true if an Element is calculated
+     * @param elementId the id of the Element
+     * @return true if the Element is calculated
+     * @throws IllegalArgumentException if there is no Element with the id
+     */
+    public boolean isCalculated(int elementId) {
+        Preconditions.checkArgument(get(elementId) != null, "unknown elementId %s", elementId);
+        return calculated.get(elementId);
+    }
+
+    /**
+     * Returns true if an Element is a member of an ElementGroup
+     * @param elementGroupId the id of the ElementGroup
+     * @param elementId the id of the Element
+     * @return true if the Element is a member of the group; false if either is unknown
+     */
+    public boolean isGroupMember(int elementGroupId, int elementId) {
+        BitSet members = groupMembers.get(elementGroupId);
+        return members != null && elementId >= 0 && members.get(elementId);
+    }
+
+    /**
+     * Returns all the Elements mapped by elementId, in elementId order
+     * @return an immutable Map{@code <Integer,Element>} of all Elements
+     */
+    public Map<Integer, Element> getElements() {
+        return elements;
+    }
+
+    /**
+     * Returns the Elements with the ids, mapped by elementId; unknown ids are omitted and repeated ids mapped once
+     * @param elementIds the ids of the Elements
+     * @return an immutable Map{@code <Integer,Element>} of the Elements
+     */
+    public Map<Integer, Element> getElements(Collection<Integer> elementIds) {
+        // ImmutableMap.Builder rejects repeated keys
+        Map<Integer, Element> found = new LinkedHashMap<>();
+        for (Integer elementId : elementIds) {
+            Element element = get(elementId);
+            if (element != null) {
+                found.put(elementId, element);
+            }
+        }
+        return ImmutableMap.copyOf(found);
+    }
+
+    /**
+     * Returns all the Elements mapped by name
+     * @return an immutable Map{@code <String,Element>} of all Elements
+     */
+    public Map<String, Element> getElementsByName() {
+        return byName;
+    }
+
+    /**
+     * Returns the Elements with the names, mapped by name; unknown names are omitted and repeated names mapped once
+     * @param names the names of the Elements
+     * @return an immutable Map{@code <String,Element>} of the Elements
+     */
+    public Map<String, Element> getElementsByName(Collection<String> names) {
+        Map<String, Element> found = new LinkedHashMap<>();
+        for (String name : names) {
+            Element element = byName.get(name);
+            if (element != null) {
+                found.put(name, element);
+            }
+        }
+        return ImmutableMap.copyOf(found);
+    }
+
+    /**
+     * Returns all the ElementGroups, in order
+     * @return an immutable List{@code <ElementGroup>}
+     */
+    public List<ElementGroup> getElementGroups() {
+        return groups;
+    }
+
+    /**
+     * Returns the ids of the calculated Elements
+     * @return a new BitSet with the ids of the calculated Elements set
+     */
+    public BitSet getCalculatedIds() {
+        return (BitSet) calculated.clone();
+    }
+
+    /**
+     * Returns the ids of the members of an ElementGroup
+     * @param elementGroupId the id of the ElementGroup
+     * @return a new BitSet with the ids of the group's members set; empty if the group is unknown
+     */
+    public BitSet getGroupMemberIds(int elementGroupId) {
+        return copy(groupMembers.get(elementGroupId));
+    }
+
+    /**
+     * Returns the ids of the Elements with a duration
+     * @param duration the duration in minutes
+     * @return a new BitSet with the ids of the Elements with the duration set
+     */
+    public BitSet getIdsWithDuration(int duration) {
+        return copy(durations.get(duration));
+    }
+
+    /**
+     * Returns the ids of the Elements with an end minute
+     * @param endMinute the minute of the hour
+     * @return a new BitSet with the ids of the Elements with the end minute set
+     */
+    public BitSet getIdsWithEndMinute(int endMinute) {
+        return copy(endMinutes.get(endMinute));
+    }
+
+    private static BitSet copy(BitSet bits) {
+        return bits == null ? new BitSet() : (BitSet) bits.clone();
+    }
+
+    /**
+     * Returns the number of Elements
+     * @return the number of Elements
+     */
+    public int size() {
+        return elements.size();
+    }
+}
@@ -0,0 +1,155 @@
+package gov.noaa.ncdc.crn.domain;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+import com.google.common.base.Objects;
+
+/**
+ * {@code ElementSummary} holds the statistics of one element's hourly values at a station over a local standard time
+ * (LST) day or month, as rolled up by {@link gov.noaa.ncdc.crn.service.RollupEngine}. The statistics are null when
+ * the period has no values or fewer than its completeness threshold requires.
+ */
+@SuppressWarnings("serial")
+public class ElementSummary implements StationAware, ElementAware, Serializable {
+
+    private final int stationId;
+    private final int elementId;
+    private final String period;
+    private final int hours;
+    private final int count;
+    private final boolean complete;
+    private final BigDecimal sum;
+    private final BigDecimal minimum;
+    private final BigDecimal maximum;
+    private final BigDecimal average;
+
+    /**
+     * Creates a summary
+     * @param stationId the station
+     * @param elementId the element
+     * @param period the LST day as yyyymmdd or month as yyyymm
+     * @param hours the number of hours in the period
+     * @param count the number of hours with non-null values
+     * @param complete true if count meets the completeness threshold
+     * @param sum the sum of the values
+     * @param minimum the least value
+     * @param maximum the greatest value
+     * @param average the mean value, rounded as {@link gov.noaa.ncdc.crn.util.MathUtils#average}
+     */
+    public ElementSummary(final int stationId, final int elementId, final String period, final int hours,
+            final int count, final boolean complete, final BigDecimal sum, final BigDecimal minimum,
+            final BigDecimal maximum, final BigDecimal average) {
+        this.stationId = stationId;
+        this.elementId = elementId;
+        this.period = period;
+        this.hours = hours;
+        this.count = count;
+        this.complete = complete;
+        this.sum = sum;
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.average = average;
+    }
+
+    @Override
+    public int getStationId() {
+        return stationId;
+    }
+
+    @Override
+    public int getElementId() {
+        return elementId;
+    }
+
+    /**
+     * Returns the LST period summarized
+     * @return the LST day as yyyymmdd or month as yyyymm
+     */
+    public String getPeriod() {
+        return period;
+    }
+
+    /**
+     * Returns the number of hours in the period
+     * @return 24 for a day or 24 times the days of a month
+     */
+    public int getHours() {
+        return hours;
+    }
+
+    /**
+     * Returns the number of hours with non-null values
+     * @return the number of values summarized
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns true if enough hours had values for the statistics to be reported
+     * @return true if the count meets the completeness threshold
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the sum of the values, as {@link gov.noaa.ncdc.crn.util.MathUtils#sum}
+     * @return the sum, or null if not complete
+     */
+    public BigDecimal getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the least value, as {@link gov.noaa.ncdc.crn.util.MathUtils#minimum}
+     * @return the minimum, or null if not complete
+     */
+    public BigDecimal getMinimum() {
+        return minimum;
+    }
+
+    /**
+     * Returns the greatest value, as {@link gov.noaa.ncdc.crn.util.MathUtils#maximum}
+     * @return the maximum, or null if not complete
+     */
+    public BigDecimal getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * Returns the mean value, as {@link gov.noaa.ncdc.crn.util.MathUtils#average}
+     * @return the average, or null if not complete
+     */
+    public BigDecimal getAverage() {
+        return average;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof ElementSummary) {
+            ElementSummary s = (ElementSummary) o;
+            return stationId == s.stationId && elementId == s.elementId && period.equals(s.period)
+                    && hours == s.hours && count == s.count && complete == s.complete && Objects.equal(sum, s.sum)
+                    && Objects.equal(minimum, s.minimum) && Objects.equal(maximum, s.maximum)
+                    && Objects.equal(average, s.average);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(stationId, elementId, period, count, sum, average);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).addValue(stationId).addValue(elementId).addValue(period)
+                .add("count", count).add("complete", complete).add("sum", sum).add("min", minimum)
+                .add("max", maximum).add("avg", average).toString();
+    }
+}
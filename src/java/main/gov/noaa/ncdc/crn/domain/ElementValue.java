@@ -2,42 +2,77 @@ package gov.noaa.ncdc.crn.domain;
 
 import gov.noaa.ncdc.crn.util.MathUtils;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 
 import com.google.common.base.Objects;
 import com.google.common.collect.ComparisonChain;
-import com.google.common.collect.Ordering;
+import com.google.common.primitives.Longs;
 
 /**
  * This domain class contains all information about a single observed or calculated value, including information about
  * the observing station, the time of observation, the element and its observed or calculated value, any QC flags that
  * are set, and the number of decimal places stored and publishable.
+ * <p>
+ * The value is held as an unscaled {@code long} and a scale, so 12.3 is kept as (123, 1); a {@code BigDecimal} is only
+ * created when {@link #getValue()} is called. Values which do not fit in a {@code long} are kept as a
+ * {@code BigDecimal}. The serialized form is unchanged from the {@code BigDecimal} based implementation.
  * @author Andrea Fey
  */
-@SuppressWarnings("serial")
 public class ElementValue implements DatetimeAware, StationAware, ElementAware, Comparable<Object>, Serializable {
-    /** Contains the station identifier, the observation datetime, and the element id */
-    private final StationDateElement staDateElement;
-    /** The observed or calculated value; nullable if none available */
-    private final BigDecimal value;
+    private static final long serialVersionUID = -6540597876100056843L;
+    /** keeps the serialized form of the {@code BigDecimal} based implementation */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("staDateElement", StationDateElement.class),
+            new ObjectStreamField("value", BigDecimal.class),
+            new ObjectStreamField("decimalPlaces", Integer.class),
+            new ObjectStreamField("publishedDecimalPlaces", Integer.class),
+            new ObjectStreamField("flags", Flags.class) };
+    /** scale marking a null value */
+    private static final byte NULL_SCALE = -1;
+    /** scale marking a value held in {@link #bigValue} */
+    private static final byte BIG_SCALE = -2;
+    private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+    /** The station identifier */
+    private int stationId;
+    /** The datetime id of the observation */
+    private int datetimeId;
+    /** The element identifier */
+    private int elementId;
+    /** The unscaled observed or calculated value */
+    private long unscaled;
+    /** The scale of the value, or NULL_SCALE if there is no value, or BIG_SCALE if it is held in bigValue */
+    private byte scale;
+    /** The value when it is too large for an unscaled long; otherwise null */
+    private BigDecimal bigValue;
     /**
      * The number of stored decimal places for this element; nullable (meaning all transmitted decimal places are
      * stored)
      */
-    private final Integer decimalPlaces;
+    private Integer decimalPlaces;
     /** The number of decimal places to be publicly displayed; nullable (meaning all stored decimal places are displayed */
-    private final Integer publishedDecimalPlaces;
-    /** The QC flags that have been set */
-    private final Flags flags;
+    private Integer publishedDecimalPlaces;
+    /** The QC flags as an int until {@link #getFlags()} is first called */
+    private int flagInt;
+    /** The QC flags that have been set; created on first request, after which it holds the flags */
+    private volatile Flags flags;
+    /** The published value, computed on first request */
+    private transient BigDecimal publishedValue;
 
     /**
      * Constructs a new {@link gov.noaa.ncdc.crn.domain.ElementValue ElementValue} from the parameters and sets all QC
      * flags to false.
-     * 
+     *
      * NOTE: Only the numerical value of the {@code BigDecimal} "value" parameter is maintained. No information within
      * the {@code BigDecimal} object about scaling, precision, or rounding is preserved.
-     * 
+     *
      * @param stationId The station identifier
      * @param datetimeId The datetime id of the observation time
      * @param elementId The id of the element
@@ -53,10 +88,10 @@ public class ElementValue implements DatetimeAware, StationAware, ElementAware,
     /**
      * Constructs a new {@link gov.noaa.ncdc.crn.domain.ElementValue ElementValue} from the parameters, including an
      * @{code Integer} representation of the QC flags.
-     * 
+     *
      * NOTE: Only the numerical value of the {@code BigDecimal} "value" parameter is maintained. No information within
      * the {@code BigDecimal} object about scaling, precision, or rounding is preserved.
-     * 
+     *
      * @param stationId The station identifier
      * @param datetimeId The datetime id of the observation time
      * @param elementId The id of the element
@@ -67,23 +102,133 @@ public class ElementValue implements DatetimeAware, StationAware, ElementAware,
      */
     public ElementValue(int stationId, int datetimeId, int elementId, BigDecimal value, Integer flagInt,
             Integer decimalPlaces, Integer publishedDecimalPlaces) {
-        this.staDateElement = new StationDateElement(stationId, datetimeId, elementId);
-        this.value = value==null ? null : new BigDecimal(value.toPlainString());
+        init(stationId, datetimeId, elementId, flagInt, decimalPlaces, publishedDecimalPlaces);
+        setValue(value);
+    }
+
+    /**
+     * Constructs a new {@link gov.noaa.ncdc.crn.domain.ElementValue ElementValue} from an unscaled value and scale, so
+     * 12.3 is (123, 1), without creating a {@code BigDecimal}.
+     * @param stationId The station identifier
+     * @param datetimeId The datetime id of the observation time
+     * @param elementId The id of the element
+     * @param unscaledValue The unscaled observed or calculated value of the element
+     * @param scale The number of digits to the right of the decimal point; 0 to 127
+     * @param flagInt {@code Integer} representation of the QC flags
+     * @param decimalPlaces The number of decimal places retained in the database for this element
+     * @param publishedDecimalPlaces The number of publishable decimal places for this element
+     * @throws IllegalArgumentException if scale is out of range
+     */
+    public ElementValue(int stationId, int datetimeId, int elementId, long unscaledValue, int scale, Integer flagInt,
+            Integer decimalPlaces, Integer publishedDecimalPlaces) {
+        if (scale < 0 || scale > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("scale out of range: " + scale);
+        }
+        init(stationId, datetimeId, elementId, flagInt, decimalPlaces, publishedDecimalPlaces);
+        this.unscaled = unscaledValue;
+        this.scale = (byte) scale;
+    }
+
+    private void init(int stationId, int datetimeId, int elementId, Integer flagInt, Integer decimalPlaces,
+            Integer publishedDecimalPlaces) {
+        this.stationId = stationId;
+        this.datetimeId = datetimeId;
+        this.elementId = elementId;
         this.decimalPlaces = decimalPlaces;
         this.publishedDecimalPlaces = publishedDecimalPlaces;
-        this.flags = new Flags(flagInt);
+        if (flagInt != null && flagInt < 0) {
+            throw new IllegalArgumentException("Nonnegative intvalue required");
+        }
+        this.flagInt = flagInt == null ? 0 : flagInt;
+    }
+
+    /**
+     * Keeps the numerical value of value as an unscaled long and scale where it fits, otherwise as a BigDecimal
+     */
+    private void setValue(BigDecimal value) {
+        if (value == null) {
+            scale = NULL_SCALE;
+            return;
+        }
+        // as with BigDecimal.toPlainString(), a negative scale becomes a scale of 0
+        BigDecimal plain = value.scale() < 0 ? value.setScale(0) : value;
+        if (plain.scale() <= Byte.MAX_VALUE) {
+            BigInteger unscaledValue = plain.unscaledValue();
+            if (unscaledValue.compareTo(MIN_LONG) >= 0 && unscaledValue.compareTo(MAX_LONG) <= 0) {
+                unscaled = unscaledValue.longValue();
+                scale = (byte) plain.scale();
+                return;
+            }
+        }
+        bigValue = plain;
+        scale = BIG_SCALE;
     }
 
     /**
      * Returns the observed or calculated value of the element.
-     * 
+     *
      * NOTE: scaling, precision, and rounding are not specified in the return object as these should always be handled
      * by {@link gov.noaa.ncdc.crn.util.MathUtils#round MathUtils.round}.
-     * 
+     *
      * @return the observed or calculated value of the element
      */
     public BigDecimal getValue() {
-        return value;
+        if (scale == NULL_SCALE) {
+            return null;
+        }
+        return scale == BIG_SCALE ? bigValue : BigDecimal.valueOf(unscaled, scale);
+    }
+
+    /**
+     * Returns true if there is an observed or calculated value, i.e. {@link #getValue()} is not null
+     * @return true if there is an observed or calculated value
+     */
+    public boolean hasValue() {
+        return scale != NULL_SCALE;
+    }
+
+    /**
+     * Returns the unscaled observed or calculated value, e.g. 123 for 12.3; see {@link #scale()}
+     * @return the unscaled value
+     * @throws IllegalStateException if there is no value
+     * @throws ArithmeticException if the unscaled value does not fit in a {@code long}
+     */
+    public long longUnscaled() {
+        checkHasValue();
+        if (scale == BIG_SCALE) {
+            BigInteger unscaledValue = bigValue.unscaledValue();
+            if (unscaledValue.bitLength() > Long.SIZE - 1) {
+                throw new ArithmeticException("unscaled value too large for a long: " + bigValue);
+            }
+            return unscaledValue.longValue();
+        }
+        return unscaled;
+    }
+
+    /**
+     * Returns the scale of the observed or calculated value, e.g. 1 for 12.3; see {@link #longUnscaled()}
+     * @return the scale of the value
+     * @throws IllegalStateException if there is no value
+     */
+    public int scale() {
+        checkHasValue();
+        return scale == BIG_SCALE ? bigValue.scale() : scale;
+    }
+
+    /**
+     * Returns the observed or calculated value as a {@code double}
+     * @return the value as a {@code double}
+     * @throws IllegalStateException if there is no value
+     */
+    public double doubleValue() {
+        checkHasValue();
+        return scale == BIG_SCALE ? bigValue.doubleValue() : MathUtils.toDouble(unscaled, scale);
+    }
+
+    private void checkHasValue() {
+        if (scale == NULL_SCALE) {
+            throw new IllegalStateException("no value for " + getStaDateElement());
+        }
     }
 
     /**
@@ -97,7 +242,15 @@ public class ElementValue implements DatetimeAware, StationAware, ElementAware,
         if (getPublishedDecimalPlaces() == null) {
             return getValue();
         }
-        return getValue() == null ? null : MathUtils.round(getValue(), getPublishedDecimalPlaces());
+        if (scale == NULL_SCALE) {
+            return null;
+        }
+        BigDecimal published = publishedValue;
+        if (published == null) {
+            published = MathUtils.round(getValue(), getPublishedDecimalPlaces());
+            publishedValue = published;
+        }
+        return published;
     }
 
     /**
@@ -105,7 +258,34 @@ public class ElementValue implements DatetimeAware, StationAware, ElementAware,
      * @return {@code Flags} object containing QC flag information
      */
     public Flags getFlags() {
-        return flags;
+        Flags result = flags;
+        if (result == null) {
+            synchronized (this) {
+                result = flags;
+                if (result == null) {
+                    result = new Flags(flagInt);
+                    flags = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the combined {@code int} value of the QC flags without creating a {@link Flags}
+     * @return the combined {@code int} value of the QC flags
+     */
+    public int getFlagInt() {
+        Flags current = flags;
+        return current == null ? flagInt : current.getIntValue();
+    }
+
+    /**
+     * Returns the station id, datetime id and element id of this value
+     * @return a new StationDateElement for this value
+     */
+    public StationDateElement getStaDateElement() {
+        return new StationDateElement(stationId, datetimeId, elementId);
     }
 
     /**
@@ -114,7 +294,7 @@ public class ElementValue implements DatetimeAware, StationAware, ElementAware,
      */
     @Override
     public int getStationId() {
-        return staDateElement.getStationId();
+        return stationId;
     }
 
     /**
@@ -123,7 +303,7 @@ public class ElementValue implements DatetimeAware, StationAware, ElementAware,
      */
     @Override
     public int getDatetimeId() {
-        return staDateElement.getDatetimeId();
+        return datetimeId;
     }
 
     /**
@@ -132,7 +312,7 @@ public class ElementValue implements DatetimeAware, StationAware, ElementAware,
      */
     @Override
     public int getElementId() {
-        return staDateElement.getElementId();
+        return elementId;
     }
 
     /**
@@ -154,19 +334,33 @@ public class ElementValue implements DatetimeAware, StationAware, ElementAware,
     @Override
     public String toString() {
         return Objects.toStringHelper(this).addValue(getStationId()).addValue(getDatetimeId()).addValue(getElementId())
-                .addValue(value).addValue(flags).toString();
+                .addValue(getValue()).addValue(getFlags()).toString();
     }
 
     @Override
     public int compareTo(Object o) {
         if (o != null && o instanceof ElementValue) {
             ElementValue ev = (ElementValue) o;
-            return ComparisonChain.start().compare(staDateElement, ev.staDateElement, Ordering.natural().nullsLast())
-                    .compare(value, ev.value, Ordering.natural().nullsLast()).compare(this.flags, ev.flags).result();
+            return ComparisonChain.start().compare(stationId, ev.stationId).compare(datetimeId, ev.datetimeId)
+                    .compare(elementId, ev.elementId).compare(compareValue(ev), 0)
+                    .compare(getFlagInt(), ev.getFlagInt()).result();
         }
         return -1;
     }
 
+    /**
+     * Compares the values numerically with null last, avoiding BigDecimals when both scales match
+     */
+    private int compareValue(ElementValue ev) {
+        if (scale == NULL_SCALE || ev.scale == NULL_SCALE) {
+            return scale == ev.scale ? 0 : scale == NULL_SCALE ? 1 : -1;
+        }
+        if (scale == ev.scale && scale != BIG_SCALE) {
+            return Longs.compare(unscaled, ev.unscaled);
+        }
+        return getValue().compareTo(ev.getValue());
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -183,7 +377,30 @@ public class ElementValue implements DatetimeAware, StationAware, ElementAware,
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(staDateElement, value, flags);
+        int result = 31 * (31 * (31 + stationId) + datetimeId) + elementId;
+        // numerically equal values (e.g. 1.5 and 1.50) have equal doubles, keeping hashCode consistent with equals
+        long bits = scale == NULL_SCALE ? 0L : Double.doubleToLongBits(doubleValue() + 0.0);
+        result = 31 * result + (int) (bits ^ bits >>> 32);
+        return 31 * result + getFlagInt();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("staDateElement", getStaDateElement());
+        fields.put("value", getValue());
+        fields.put("decimalPlaces", decimalPlaces);
+        fields.put("publishedDecimalPlaces", publishedDecimalPlaces);
+        fields.put("flags", getFlags());
+        out.writeFields();
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        StationDateElement sde = (StationDateElement) fields.get("staDateElement", null);
+        Flags serialFlags = (Flags) fields.get("flags", null);
+        init(sde.getStationId(), sde.getDatetimeId(), sde.getElementId(), serialFlags == null ? 0 : serialFlags
+                .getIntValue(), (Integer) fields.get("decimalPlaces", null), (Integer) fields.get(
+                "publishedDecimalPlaces", null));
+        setValue((BigDecimal) fields.get("value", null));
+    }
 }
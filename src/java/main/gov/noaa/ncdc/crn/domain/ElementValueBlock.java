@@ -0,0 +1,321 @@
+package gov.noaa.ncdc.crn.domain;
+
+import gov.noaa.ncdc.crn.util.MathUtils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * {@code ElementValueBlock} is a columnar container for a large number of observed or calculated values. Each value
+ * occupies a row index; the station, datetime and element ids, the value as an unscaled {@code long} plus a scale, a
+ * null marker, the QC flags and the decimal places are kept in parallel primitive arrays. This avoids the
+ * {@link StationDateElement}, {@code BigDecimal}, {@link Flags} and map entry which each {@link ElementValue} costs, so
+ * range reads of millions of values do not allocate millions of objects.
+ * <p>
+ * Rows are kept in the order they are added. The block is not thread safe.
+ */
+public class ElementValueBlock {
+    /** marks an unspecified number of decimal places */
+    private static final byte NO_PLACES = -1;
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private int size = 0;
+    private int[] stationIds;
+    private int[] datetimeIds;
+    private int[] elementIds;
+    private long[] unscaledValues;
+    private byte[] scales;
+    private int[] flags;
+    private byte[] decimalPlaces;
+    private byte[] publishedDecimalPlaces;
+    /** set bits mark rows whose value is null */
+    private final BitSet nulls = new BitSet();
+
+    /**
+     * Creates an empty block with a default initial capacity
+     */
+    public ElementValueBlock() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty block able to hold capacity rows before growing
+     * @param capacity the initial number of rows
+     */
+    public ElementValueBlock(int capacity) {
+        Preconditions.checkArgument(capacity >= 0, "capacity must not be negative");
+        stationIds = new int[capacity];
+        datetimeIds = new int[capacity];
+        elementIds = new int[capacity];
+        unscaledValues = new long[capacity];
+        scales = new byte[capacity];
+        flags = new int[capacity];
+        decimalPlaces = new byte[capacity];
+        publishedDecimalPlaces = new byte[capacity];
+    }
+
+    /**
+     * Appends a value whose value is held as an unscaled {@code long} and scale, so 12.3 is (123, 1).
+     * @param stationId The station identifier
+     * @param datetimeId The datetime id of the observation time
+     * @param elementId The id of the element
+     * @param unscaledValue the unscaled value
+     * @param scale the number of digits to the right of the decimal point
+     * @param flagInt {@code int} representation of the QC flags
+     * @param decimalPlaces The number of decimal places retained in the database; nullable
+     * @param publishedDecimalPlaces The number of publishable decimal places; nullable
+     * @return the row index of the new value
+     */
+    public int add(int stationId, int datetimeId, int elementId, long unscaledValue, int scale, int flagInt,
+            Integer decimalPlaces, Integer publishedDecimalPlaces) {
+        Preconditions.checkArgument(scale >= 0 && scale <= Byte.MAX_VALUE, "scale out of range: %s", scale);
+        int row = addRow(stationId, datetimeId, elementId, flagInt, decimalPlaces, publishedDecimalPlaces);
+        unscaledValues[row] = unscaledValue;
+        scales[row] = (byte) scale;
+        return row;
+    }
+
+    /**
+     * Appends a value; a {@code null} value is recorded as a null marker. Only the numerical value of the
+     * {@code BigDecimal} is kept, as with {@link ElementValue}.
+     * @param stationId The station identifier
+     * @param datetimeId The datetime id of the observation time
+     * @param elementId The id of the element
+     * @param value The observed or calculated value of the element; nullable
+     * @param flagInt {@code Integer} representation of the QC flags; null means unflagged
+     * @param decimalPlaces The number of decimal places retained in the database; nullable
+     * @param publishedDecimalPlaces The number of publishable decimal places; nullable
+     * @return the row index of the new value
+     * @throws IllegalArgumentException if the value can not be represented as a {@code long} at a scale of 0 to 127
+     */
+    public int add(int stationId, int datetimeId, int elementId, BigDecimal value, Integer flagInt,
+            Integer decimalPlaces, Integer publishedDecimalPlaces) {
+        int flagValue = flagInt == null ? 0 : flagInt;
+        if (value == null) {
+            int row = addRow(stationId, datetimeId, elementId, flagValue, decimalPlaces, publishedDecimalPlaces);
+            nulls.set(row);
+            return row;
+        }
+        BigDecimal normalized = value.scale() < 0 ? value.setScale(0) : value;
+        BigInteger unscaled = normalized.unscaledValue();
+        Preconditions.checkArgument(unscaled.compareTo(MIN_LONG) >= 0 && unscaled.compareTo(MAX_LONG) <= 0,
+                "value too large for a block: %s", value);
+        return add(stationId, datetimeId, elementId, unscaled.longValue(), normalized.scale(), flagValue,
+                decimalPlaces, publishedDecimalPlaces);
+    }
+
+    /**
+     * Appends the contents of an {@link ElementValue}
+     * @param value the ElementValue to copy
+     * @return the row index of the new value
+     */
+    public int add(ElementValue value) {
+        return add(value.getStationId(), value.getDatetimeId(), value.getElementId(), value.getValue(), value
+                .getFlags().getIntValue(), value.getDecimalPlaces(), value.getPublishedDecimalPlaces());
+    }
+
+    private int addRow(int stationId, int datetimeId, int elementId, int flagInt, Integer places,
+            Integer publishedPlaces) {
+        ensureCapacity(size + 1);
+        int row = size++;
+        stationIds[row] = stationId;
+        datetimeIds[row] = datetimeId;
+        elementIds[row] = elementId;
+        unscaledValues[row] = 0L;
+        scales[row] = 0;
+        flags[row] = flagInt;
+        decimalPlaces[row] = toPlaces(places);
+        publishedDecimalPlaces[row] = toPlaces(publishedPlaces);
+        return row;
+    }
+
+    private static byte toPlaces(Integer places) {
+        if (places == null) {
+            return NO_PLACES;
+        }
+        Preconditions.checkArgument(places >= 0 && places <= Byte.MAX_VALUE, "decimal places out of range: %s",
+                places);
+        return places.byteValue();
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > stationIds.length) {
+            int capacity = Math.max(required, stationIds.length + (stationIds.length >> 1) + 16);
+            stationIds = Arrays.copyOf(stationIds, capacity);
+            datetimeIds = Arrays.copyOf(datetimeIds, capacity);
+            elementIds = Arrays.copyOf(elementIds, capacity);
+            unscaledValues = Arrays.copyOf(unscaledValues, capacity);
+            scales = Arrays.copyOf(scales, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            decimalPlaces = Arrays.copyOf(decimalPlaces, capacity);
+            publishedDecimalPlaces = Arrays.copyOf(publishedDecimalPlaces, capacity);
+        }
+    }
+
+    /**
+     * Returns the number of values in the block
+     * @return the number of values in the block
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the block holds no values
+     * @return true if the block holds no values
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the station id at this row
+     * @param row the row index
+     * @return the station id at this row
+     */
+    public int getStationId(int row) {
+        return stationIds[checkRow(row)];
+    }
+
+    /**
+     * Returns the datetime id at this row
+     * @param row the row index
+     * @return the datetime id at this row
+     */
+    public int getDatetimeId(int row) {
+        return datetimeIds[checkRow(row)];
+    }
+
+    /**
+     * Returns the element id at this row
+     * @param row the row index
+     * @return the element id at this row
+     */
+    public int getElementId(int row) {
+        return elementIds[checkRow(row)];
+    }
+
+    /**
+     * Returns true if the value at this row is null
+     * @param row the row index
+     * @return true if the value at this row is null
+     */
+    public boolean isNull(int row) {
+        return nulls.get(checkRow(row));
+    }
+
+    /**
+     * Returns the unscaled value at this row; 0 when the value is null
+     * @param row the row index
+     * @return the unscaled value at this row
+     */
+    public long getUnscaledValue(int row) {
+        return unscaledValues[checkRow(row)];
+    }
+
+    /**
+     * Returns the scale of the value at this row; 0 when the value is null
+     * @param row the row index
+     * @return the scale of the value at this row
+     */
+    public int getScale(int row) {
+        return scales[checkRow(row)];
+    }
+
+    /**
+     * Returns the value at this row as a {@code BigDecimal}, or null. A new object is created on each call.
+     * @param row the row index
+     * @return the value at this row
+     */
+    public BigDecimal getValue(int row) {
+        return isNull(row) ? null : BigDecimal.valueOf(unscaledValues[row], scales[row]);
+    }
+
+    /**
+     * Returns the value at this row as a {@code double}; {@code Double.NaN} when the value is null
+     * @param row the row index
+     * @return the value at this row
+     */
+    public double getDoubleValue(int row) {
+        if (isNull(row)) {
+            return Double.NaN;
+        }
+        return MathUtils.toDouble(unscaledValues[row], scales[row]);
+    }
+
+    /**
+     * Returns the combined {@code int} value of the QC flags at this row
+     * @param row the row index
+     * @return the combined {@code int} value of the QC flags at this row
+     */
+    public int getFlags(int row) {
+        return flags[checkRow(row)];
+    }
+
+    /**
+     * Replaces the QC flags at this row
+     * @param row the row index
+     * @param flagInt the combined {@code int} value of the QC flags
+     * @throws IllegalArgumentException if flagInt is negative
+     */
+    public void setFlags(int row, int flagInt) {
+        Preconditions.checkArgument(flagInt >= 0, "Nonnegative intvalue required");
+        flags[checkRow(row)] = flagInt;
+    }
+
+    /**
+     * Returns true if the QC flag of {@link FlagType} is set at this row
+     * @param row the row index
+     * @param type the flag to test
+     * @return true if the QC flag of {@link FlagType} is set at this row
+     */
+    public boolean isFlagged(int row, FlagType type) {
+        return (getFlags(row) & 1 << type.ordinal()) != 0;
+    }
+
+    /**
+     * Returns the number of decimal places retained in the database for the value at this row, or null
+     * @param row the row index
+     * @return the number of decimal places retained in the database
+     */
+    public Integer getDecimalPlaces(int row) {
+        byte places = decimalPlaces[checkRow(row)];
+        return places == NO_PLACES ? null : Integer.valueOf(places);
+    }
+
+    /**
+     * Returns the number of publishable decimal places for the value at this row, or null
+     * @param row the row index
+     * @return the number of publishable decimal places
+     */
+    public Integer getPublishedDecimalPlaces(int row) {
+        byte places = publishedDecimalPlaces[checkRow(row)];
+        return places == NO_PLACES ? null : Integer.valueOf(places);
+    }
+
+    /**
+     * Creates an {@link ElementValue} from the contents of this row
+     * @param row the row index
+     * @return a new ElementValue equal to the one the row was read from
+     */
+    public ElementValue toElementValue(int row) {
+        return new ElementValue(getStationId(row), getDatetimeId(row), getElementId(row), getValue(row),
+                getFlags(row), getDecimalPlaces(row), getPublishedDecimalPlaces(row));
+    }
+
+    private int checkRow(int row) {
+        return Preconditions.checkElementIndex(row, size);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("size", size).toString();
+    }
+}
@@ -0,0 +1,180 @@
+package gov.noaa.ncdc.crn.domain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+
+/**
+ * The minimal set of writes which brings stored ElementValues to requested ElementValues, computed by
+ * {@link #diff(ElementValueIndex, Collection, Predicate)}, along with a count of each kind of change. Its
+ * {@link #toString()} summarizes the counts for logging.
+ */
+public class ElementValueChanges {
+    private final List<ElementValue> factWrites;
+    private final List<ElementValue> flagWrites;
+    private final List<ElementValue> deletes;
+    private final int inserted;
+    private final int valuesChanged;
+    private final int flagsChanged;
+    private final int updated;
+    private final int unchanged;
+    private final int skipped;
+
+    private ElementValueChanges(List<ElementValue> factWrites, List<ElementValue> flagWrites,
+            List<ElementValue> deletes, int inserted, int valuesChanged, int flagsChanged, int updated,
+            int unchanged, int skipped) {
+        this.factWrites = Collections.unmodifiableList(factWrites);
+        this.flagWrites = Collections.unmodifiableList(flagWrites);
+        this.deletes = Collections.unmodifiableList(deletes);
+        this.inserted = inserted;
+        this.valuesChanged = valuesChanged;
+        this.flagsChanged = flagsChanged;
+        this.updated = updated;
+        this.unchanged = unchanged;
+        this.skipped = skipped;
+    }
+
+    /**
+     * Compares requested values with the values currently stored.
+     * <ul>
+     * <li>a requested value with no stored value is inserted, with its flags if flagged</li>
+     * <li>a requested value whose value differs from the stored value is a value change</li>
+     * <li>a requested value whose flags differ from the stored flags is a flag change (as well)</li>
+     * <li>a requested null value which is deletable and stored is deleted; one which is not deletable is skipped</li>
+     * <li>anything else is unchanged and needs no write</li>
+     * </ul>
+     * When a station/datetime/element is requested more than once the last request is used and the earlier ones are
+     * skipped, so every requested value is counted once by {@link #getTotal()}.
+     * @param current the values currently stored; must include every stored value for the requested ids
+     * @param requested the values requested
+     * @param deletable which values with a null value should be deleted, e.g. calculated values
+     * @return the changes
+     */
+    public static ElementValueChanges diff(ElementValueIndex current, Collection<ElementValue> requested,
+            Predicate<? super ElementValue> deletable) {
+        Preconditions.checkNotNull(current, "current not nullable");
+        ElementValueIndex latest = new ElementValueIndex(requested);
+        // requests replaced by a later request for the same ids
+        int skipped = requested.size() - latest.size();
+        List<ElementValue> factWrites = new ArrayList<>();
+        List<ElementValue> flagWrites = new ArrayList<>();
+        List<ElementValue> deletes = new ArrayList<>();
+        int inserted = 0;
+        int valuesChanged = 0;
+        int flagsChanged = 0;
+        int updated = 0;
+        int unchanged = 0;
+        for (ElementValue value : latest.sortedValues()) {
+            ElementValue stored = current.get(value.getStationId(), value.getDatetimeId(), value.getElementId());
+            if (!value.hasValue()) {
+                if (stored == null) {
+                    unchanged++;
+                } else if (deletable.apply(value)) {
+                    deletes.add(value);
+                } else {
+                    skipped++;
+                }
+            } else if (stored == null) {
+                inserted++;
+                factWrites.add(value);
+                if (value.getFlagInt() != 0) {
+                    flagWrites.add(value);
+                }
+            } else {
+                boolean changed = false;
+                if (!stored.hasValue() || stored.getValue().compareTo(value.getValue()) != 0) {
+                    valuesChanged++;
+                    factWrites.add(value);
+                    changed = true;
+                }
+                if (stored.getFlagInt() != value.getFlagInt()) {
+                    flagsChanged++;
+                    flagWrites.add(value);
+                    changed = true;
+                }
+                if (changed) {
+                    updated++;
+                } else {
+                    unchanged++;
+                }
+            }
+        }
+        return new ElementValueChanges(factWrites, flagWrites, deletes, inserted, valuesChanged, flagsChanged, updated,
+                unchanged, skipped);
+    }
+
+    /** @return the values whose facts must be inserted or updated, in key order */
+    public List<ElementValue> getFactWrites() {
+        return factWrites;
+    }
+
+    /** @return the values whose flags must be inserted, updated or removed, in key order */
+    public List<ElementValue> getFlagWrites() {
+        return flagWrites;
+    }
+
+    /** @return the values whose facts and flags must be deleted, in key order */
+    public List<ElementValue> getDeletes() {
+        return deletes;
+    }
+
+    /** @return the number of values which were not stored */
+    public int getInserted() {
+        return inserted;
+    }
+
+    /** @return the number of stored values whose value changed */
+    public int getValuesChanged() {
+        return valuesChanged;
+    }
+
+    /** @return the number of stored values whose flags changed */
+    public int getFlagsChanged() {
+        return flagsChanged;
+    }
+
+    /** @return the number of stored values whose value, flags or both changed */
+    public int getUpdated() {
+        return updated;
+    }
+
+    /** @return the number of stored values deleted */
+    public int getDeleted() {
+        return deletes.size();
+    }
+
+    /** @return the number of requested values which needed no write */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @return the number of requested values which were not written: null values which are stored but not deletable,
+     *         and requests replaced by a later request for the same ids
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /** @return the number of requested values: inserted, updated, deleted, unchanged and skipped */
+    public int getTotal() {
+        return inserted + updated + deletes.size() + unchanged + skipped;
+    }
+
+    /** @return true if there is nothing to write */
+    public boolean isEmpty() {
+        return factWrites.isEmpty() && flagWrites.isEmpty() && deletes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("inserted", inserted).add("valuesChanged", valuesChanged)
+                .add("flagsChanged", flagsChanged).add("deleted", deletes.size()).add("unchanged", unchanged)
+                .add("skipped", skipped).toString();
+    }
+}
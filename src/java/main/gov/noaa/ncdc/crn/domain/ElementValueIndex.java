@@ -0,0 +1,380 @@
+package gov.noaa.ncdc.crn.domain;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A Map{@code <StationDateElement, ElementValue>} which stores each value under its packed {@code long} key (see
+ * {@link StationDateElement#packKey(int, int, int)}) in an open-addressing table. Unlike a {@code HashMap} no
+ * StationDateElement or entry object is held per value, and values can be looked up by their ids with
+ * {@link #get(int, int, int)} without creating a key.
+ * <p>
+ * Null values are not permitted. StationDateElement keys are only created when iterating {@link #entrySet()} or
+ * {@link #keySet()}; prefer {@link #values()} or {@link #sortedValues()}. Iterators do not support removal. Not
+ * thread-safe.
+ */
+public class ElementValueIndex extends AbstractMap<StationDateElement, ElementValue> {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /** packed keys; a slot is empty when its value is null */
+    private long[] keys;
+    private ElementValue[] values;
+    private int mask;
+    private int size;
+    /** size at which the table is doubled; keeps the load factor at most 3/4 */
+    private int resizeAt;
+    private transient Set<Entry<StationDateElement, ElementValue>> entrySet;
+    private transient Collection<ElementValue> valueCollection;
+
+    /**
+     * Creates an empty index
+     */
+    public ElementValueIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty index which holds expectedSize values without resizing
+     * @param expectedSize the number of values expected
+     */
+    public ElementValueIndex(int expectedSize) {
+        Preconditions.checkArgument(expectedSize >= 0, "expectedSize must be nonnegative");
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity * 3L / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Creates an index of the ElementValues, each mapped by its station, datetime and element ids
+     * @param values the ElementValues to index
+     */
+    public ElementValueIndex(Collection<ElementValue> values) {
+        this(values.size());
+        for (ElementValue value : values) {
+            put(value);
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new ElementValue[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity == MAX_CAPACITY ? Integer.MAX_VALUE : capacity / 4 * 3;
+    }
+
+    /**
+     * Adds value, mapped by its station, datetime and element ids
+     * @param value the value to add
+     * @return the ElementValue previously held for the ids, or null if there was none
+     * @throws IllegalArgumentException if an id is out of range for {@link StationDateElement#packKey(int, int, int)}
+     */
+    public ElementValue put(ElementValue value) {
+        Preconditions.checkNotNull(value, "value not nullable");
+        return put(StationDateElement.packKey(value.getStationId(), value.getDatetimeId(), value.getElementId()),
+                value);
+    }
+
+    /**
+     * Maps value to key; value need not have the key's ids
+     * @throws NullPointerException if key or value is null
+     * @throws IllegalArgumentException if an id is out of range for {@link StationDateElement#packKey(int, int, int)}
+     */
+    @Override
+    public ElementValue put(StationDateElement key, ElementValue value) {
+        Preconditions.checkNotNull(value, "value not nullable");
+        return put(key.packedKey(), value);
+    }
+
+    private ElementValue put(long key, ElementValue value) {
+        int slot = slot(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                ElementValue previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = slot + 1 & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeAt) {
+            resize();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value for the packed key
+     * @param key a key created by {@link StationDateElement#packKey(int, int, int)}
+     * @return the value for the key, or null if there is none
+     */
+    public ElementValue get(long key) {
+        int slot = slot(key);
+        ElementValue value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key) {
+                return value;
+            }
+            slot = slot + 1 & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value for the station, datetime and element without creating a StationDateElement
+     * @param stationId the station id
+     * @param datetimeId the datetime id
+     * @param elementId the element id
+     * @return the value for the ids, or null if there is none
+     */
+    public ElementValue get(int stationId, int datetimeId, int elementId) {
+        if (!packable(stationId, datetimeId, elementId)) {
+            return null;
+        }
+        return get(StationDateElement.packKey(stationId, datetimeId, elementId));
+    }
+
+    @Override
+    public ElementValue get(Object key) {
+        if (key instanceof StationDateElement) {
+            StationDateElement sde = (StationDateElement) key;
+            return get(sde.getStationId(), sde.getDatetimeId(), sde.getElementId());
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if there is a value for the station, datetime and element
+     * @param stationId the station id
+     * @param datetimeId the datetime id
+     * @param elementId the element id
+     * @return true if there is a value for the ids
+     */
+    public boolean containsKey(int stationId, int datetimeId, int elementId) {
+        return get(stationId, datetimeId, elementId) != null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public ElementValue remove(Object key) {
+        if (!(key instanceof StationDateElement)) {
+            return null;
+        }
+        StationDateElement sde = (StationDateElement) key;
+        if (!packable(sde.getStationId(), sde.getDatetimeId(), sde.getElementId())) {
+            return null;
+        }
+        long packed = sde.packedKey();
+        int slot = slot(packed);
+        while (values[slot] != null) {
+            if (keys[slot] == packed) {
+                ElementValue previous = values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+            slot = slot + 1 & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Empties the slot, moving later entries of the probe sequence back so no lookup stops short at the gap
+     */
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = slot + 1 & mask;
+            if (values[slot] == null) {
+                break;
+            }
+            int home = slot(keys[slot]);
+            // move the entry if its home slot is not cyclically within (gap, slot]
+            if (gap <= slot ? home <= gap || home > slot : home <= gap && home > slot) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        values[gap] = null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the values ordered by station id, datetime id and element id, i.e. in key order
+     * @return a new List of the values in key order
+     */
+    public List<ElementValue> sortedValues() {
+        long[] sortedKeys = new long[size];
+        int index = 0;
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                sortedKeys[index++] = keys[slot];
+            }
+        }
+        Arrays.sort(sortedKeys);
+        List<ElementValue> sorted = new ArrayList<>(size);
+        for (long key : sortedKeys) {
+            sorted.add(get(key));
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns a view of the values which does not create StationDateElement keys
+     */
+    @Override
+    public Collection<ElementValue> values() {
+        if (valueCollection == null) {
+            valueCollection = new AbstractCollection<ElementValue>() {
+                @Override
+                public Iterator<ElementValue> iterator() {
+                    return new SlotIterator<ElementValue>() {
+                        @Override
+                        ElementValue get(int slot) {
+                            return values[slot];
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return valueCollection;
+    }
+
+    @Override
+    public Set<Entry<StationDateElement, ElementValue>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<StationDateElement, ElementValue>>() {
+                @Override
+                public Iterator<Entry<StationDateElement, ElementValue>> iterator() {
+                    return new SlotIterator<Entry<StationDateElement, ElementValue>>() {
+                        @Override
+                        Entry<StationDateElement, ElementValue> get(int slot) {
+                            return new SimpleImmutableEntry<>(StationDateElement.fromPackedKey(keys[slot]),
+                                    values[slot]);
+                        }
+                    };
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    if (o instanceof Map.Entry) {
+                        Entry<?, ?> entry = (Entry<?, ?>) o;
+                        ElementValue value = get(entry.getKey());
+                        return value != null && value.equals(entry.getValue());
+                    }
+                    return false;
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        ElementValue[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slot(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = slot + 1 & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private int slot(long key) {
+        // mix the bits as neighboring keys differ only in their low bits
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32) & mask;
+    }
+
+    private static boolean packable(int stationId, int datetimeId, int elementId) {
+        return stationId >= 0 && stationId <= StationDateElement.MAX_PACKED_STATION_ID && datetimeId >= 0
+                && datetimeId <= StationDateElement.MAX_PACKED_DATETIME_ID && elementId >= 0
+                && elementId <= StationDateElement.MAX_PACKED_ELEMENT_ID;
+    }
+
+    /**
+     * Iterates the occupied slots of the table
+     */
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private int next = advance(0);
+
+        abstract T get(int slot);
+
+        private int advance(int from) {
+            int slot = from;
+            while (slot < values.length && values[slot] == null) {
+                slot++;
+            }
+            return slot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T result = get(next);
+            next = advance(next + 1);
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("ElementValueIndex iterators do not support removal");
+        }
+    }
+}
@@ -11,7 +11,7 @@ public class ElementValues {
     public static Predicate<ElementValue> NULL_VALUE = new Predicate<ElementValue>() {
         @Override
         public boolean apply(final ElementValue value) {
-            return value.getValue() == null;
+            return !value.hasValue();
         }
     };
 
@@ -2,23 +2,52 @@ package gov.noaa.ncdc.crn.domain;
 
 import gov.noaa.ncdc.crn.util.MathUtils;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.BitSet;
 
 import com.google.common.base.Objects;
-import com.google.common.collect.ComparisonChain;
-
-@SuppressWarnings("serial")
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
+
+/**
+ * The QC flags set on an {@link ElementValue}. The flags are held as an {@code int} mask in which the bit at each
+ * {@link FlagType} ordinal is set when that flag is set.
+ * <p>
+ * Instances created with a constructor are mutable. {@link #valueOf(int)} and {@link #UNFLAGGED} return shared
+ * immutable instances whose setters throw {@code UnsupportedOperationException}.
+ * <p>
+ * The serialized form is unchanged from the {@code BitSet} based implementation; the mask is written as the
+ * {@code BitSet} field {@code flagbits}. {@link gov.noaa.ncdc.crn.util.JsonUtils#GSON} reads and writes the same
+ * {@code "flagbits"} JSON layout.
+ */
 public class Flags implements Comparable<Flags>, Serializable {
+    private static final long serialVersionUID = 4173135945944196275L;
+    /** keeps the serialized form of the {@code BitSet} based implementation */
+    private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField("flagbits",
+            BitSet.class) };
+    /** the number of distinct masks of the defined {@link FlagType}s */
+    private static final int SHARED_MASKS = 1 << FlagType.values().length;
+    private static final Flags[] SHARED = new Flags[SHARED_MASKS];
+    static {
+        for (int mask = 0; mask < SHARED_MASKS; mask++) {
+            SHARED[mask] = new ImmutableFlags(mask);
+        }
+    }
+    /** Shared immutable instance with no QC flags set */
+    public static final Flags UNFLAGGED = SHARED[0];
 
-    /** A collection which represents ordered QC flag values */
-    private BitSet flagbits = new BitSet();
+    /** The QC flags as a mask; bit n is set when the flag with ordinal n is set */
+    private int mask;
 
     /**
      * Default constructor which sets all QC flags to false
      */
     public Flags() {
-        flagbits = new BitSet();
+        mask = 0;
     }
 
     /**
@@ -26,7 +55,20 @@ public class Flags implements Comparable<Flags>, Serializable {
      * @param intvalue
      */
     public Flags(Integer intvalue) {
-        setFlagsFromInt(intvalue);
+        mask = intvalue == null ? 0 : checkMask(intvalue);
+    }
+
+    /**
+     * Returns a shared immutable instance for the combined {@code int} value of QC flags
+     * @param intvalue the combined {@code int} value of all the QC flags
+     * @return an immutable Flags
+     * @throws IllegalArgumentException if intvalue is negative
+     */
+    public static Flags valueOf(int intvalue) {
+        if (intvalue >= 0 && intvalue < SHARED_MASKS) {
+            return SHARED[intvalue];
+        }
+        return new ImmutableFlags(checkMask(intvalue));
     }
 
     /**
@@ -34,7 +76,7 @@ public class Flags implements Comparable<Flags>, Serializable {
      * @return true if any QC flag is true
      */
     public boolean isFlagged() {
-        return getIntValue() != 0;
+        return mask != 0;
     }
 
     /**
@@ -42,7 +84,7 @@ public class Flags implements Comparable<Flags>, Serializable {
      * @return true if the QC flag of {@link FlagType} is true
      */
     public boolean isFlagged(FlagType type) {
-        return flagbits.get(type.ordinal());
+        return (mask & bit(type)) != 0;
     }
 
     /**
@@ -51,7 +93,7 @@ public class Flags implements Comparable<Flags>, Serializable {
      * @param flagged The value to set the flag to
      */
     public void setFlagged(FlagType type, boolean flagged) {
-        flagbits.set(type.ordinal(), flagged);
+        mask = flagged ? mask | bit(type) : mask & ~bit(type);
     }
 
     /**
@@ -59,7 +101,7 @@ public class Flags implements Comparable<Flags>, Serializable {
      * @param type The {@link FlagType} to set the flag on
      */
     public void setFlagged(FlagType type) {
-        flagbits.set(type.ordinal());
+        mask |= bit(type);
     }
 
     /**
@@ -77,19 +119,26 @@ public class Flags implements Comparable<Flags>, Serializable {
      * @return the combined {@code int} value of all the QC flags
      */
     public int getIntValue() {
-        return MathUtils.bitSetToUnsignedInt(flagbits);
+        return mask;
     }
 
     /**
      * Sets the QC flags by considering intvalue to be the combined {@code Integer} value of all the QC flags. If
      * intvalue is {@code null}, sets all QC flags to false.
      * @param intvalue the combined {@code Integer} value of all the QC flags
+     * @throws IllegalArgumentException if intvalue is negative
      */
     public void setFlagsFromInt(Integer intvalue) {
-        if (intvalue == null) {
-            intvalue = Integer.valueOf(0);
-        }
-        flagbits = MathUtils.unsignedIntToBitSet(intvalue);
+        mask = intvalue == null ? 0 : checkMask(intvalue);
+    }
+
+    private static int bit(FlagType type) {
+        return 1 << type.ordinal();
+    }
+
+    private static int checkMask(int intvalue) {
+        Preconditions.checkArgument(intvalue >= 0, "Nonnegative intvalue required");
+        return intvalue;
     }
 
     @Override
@@ -99,11 +148,59 @@ public class Flags implements Comparable<Flags>, Serializable {
 
     @Override
     public int compareTo(Flags flags) {
-        return ComparisonChain.start().compare(this.getIntValue(), flags.getIntValue()).result();
+        return Ints.compare(mask, flags.mask);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Flags && ((Flags) o).mask == mask;
     }
 
     @Override
     public int hashCode() {
-        return getIntValue();
+        return mask;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("flagbits", MathUtils.unsignedIntToBitSet(mask));
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        BitSet flagbits = (BitSet) fields.get("flagbits", null);
+        mask = flagbits == null ? 0 : MathUtils.bitSetToUnsignedInt(flagbits);
+    }
+
+    /**
+     * A Flags whose QC flags can not be changed; serialized as a plain (mutable) Flags so the serialized form does not
+     * change.
+     */
+    private static final class ImmutableFlags extends Flags {
+        private static final long serialVersionUID = 1L;
+
+        private ImmutableFlags(int mask) {
+            super(mask);
+        }
+
+        @Override
+        public void setFlagged(FlagType type, boolean flagged) {
+            throw new UnsupportedOperationException("shared Flags are immutable");
+        }
+
+        @Override
+        public void setFlagged(FlagType type) {
+            throw new UnsupportedOperationException("shared Flags are immutable");
+        }
+
+        @Override
+        public void setFlagsFromInt(Integer intvalue) {
+            throw new UnsupportedOperationException("shared Flags are immutable");
+        }
+
+        private Object writeReplace() {
+            return new Flags(getIntValue());
+        }
     }
 }
@@ -0,0 +1,180 @@
+package gov.noaa.ncdc.crn.domain;
+
+import gov.noaa.ncdc.crn.util.TimeUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Ordering;
+
+/**
+ * An immutable index resolving a GOES id and datetimeId to the Station which transmitted under that GOES id at that
+ * time. The Stations sharing a GOES id are ordered by closed date (null closed dates last), and each Station but the
+ * last is valid until {@link #OVERLAP_HOURS} after its closed date; the first Station still valid at the datetimeId is
+ * chosen, or the last Station if none is. The validity intervals are computed when the index is built, so a lookup is
+ * a map lookup and a binary search over the interval ends.
+ * <p>
+ * A GOES id stored with a "CD" or "DA" prefix is also found by the GOES id without the prefix.
+ */
+public class GoesIdIndex {
+    /** hours a Station remains valid for its GOES id after its closed date */
+    public static final int OVERLAP_HOURS = 24 * 7; /* one week */
+    /** prefixes which may be stored with a GOES id */
+    private static final String[] PREFIXES = { "CD", "DA" };
+
+    private final ImmutableMap<String, Candidates> byGoesId;
+
+    /**
+     * Creates an index of the Stations by GOES id
+     * @param stations all the Stations, including those which have not yet transmitted data
+     */
+    public GoesIdIndex(Collection<? extends Station> stations) {
+        ListMultimap<String, Station> grouped = ArrayListMultimap.create();
+        for (Station station : stations) {
+            String goesId = station.getGoesId();
+            if (goesId == null) {
+                continue;
+            }
+            grouped.put(goesId, station);
+            for (String prefix : PREFIXES) {
+                if (goesId.startsWith(prefix)) {
+                    grouped.put(goesId.substring(prefix.length()), station);
+                }
+            }
+        }
+        ImmutableMap.Builder<String, Candidates> builder = ImmutableMap.builder();
+        for (String goesId : grouped.keySet()) {
+            builder.put(goesId, new Candidates(goesId, grouped.get(goesId)));
+        }
+        byGoesId = builder.build();
+    }
+
+    /**
+     * Returns the Station which used this GOES id at the datetimeId
+     * @param goesId the GOES id, with or without its "CD" or "DA" prefix
+     * @param datetimeId the hour of the transmission
+     * @return the Station, or null if no Station uses the GOES id
+     * @throws RuntimeException if more than one Station without a (parseable) closed date shares the GOES id and the
+     * datetimeId follows the validity of the others
+     */
+    public Station get(String goesId, int datetimeId) {
+        Preconditions.checkNotNull(goesId, "goesId not nullable");
+        Candidates candidates = byGoesId.get(goesId);
+        return candidates != null ? candidates.get(datetimeId) : null;
+    }
+
+    /**
+     * Resolves a batch of GOES ids and datetimeIds, e.g. those of a batch of GOES messages
+     * @param goesIds the GOES ids, with or without their "CD" or "DA" prefixes
+     * @param datetimeIds the hour of each transmission; same length as goesIds
+     * @return the Station for each GOES id and datetimeId, or null where no Station uses the GOES id
+     * @throws RuntimeException as for {@link #get(String, int)}
+     */
+    public Station[] get(String[] goesIds, int[] datetimeIds) {
+        Preconditions.checkArgument(goesIds.length == datetimeIds.length,
+                "%s goesIds but %s datetimeIds", goesIds.length, datetimeIds.length);
+        Station[] stations = new Station[goesIds.length];
+        Candidates last = null;
+        for (int i = 0; i < goesIds.length; i++) {
+            String goesId = goesIds[i];
+            Preconditions.checkNotNull(goesId, "goesId %s not nullable", i);
+            // batches are usually runs of messages from the same transmitter
+            Candidates candidates = last != null && last.goesId.equals(goesId) ? last : byGoesId.get(goesId);
+            stations[i] = candidates != null ? candidates.get(datetimeIds[i]) : null;
+            last = candidates;
+        }
+        return stations;
+    }
+
+    /**
+     * Returns the number of GOES ids indexed, counting prefixed and unprefixed forms separately
+     * @return the number of GOES ids indexed
+     */
+    public int size() {
+        return byGoesId.size();
+    }
+
+    /**
+     * Computes the first datetimeId at which a Station closed at closedDate is no longer valid
+     */
+    private static int validUntil(String closedDate) {
+        return TimeUtils.computeCeilingDateTimeId(TimeUtils.createUTCCalendar(closedDate).getTimeInMillis()
+                + OVERLAP_HOURS * TimeUtils.MILLISECS_PER_HOUR);
+    }
+
+    /**
+     * The Stations sharing one GOES id, ordered by closed date, and the end of each one's validity
+     */
+    private static final class Candidates {
+        private final String goesId;
+        private final Station[] stations;
+        /** validity end of each Station with a closed date, excluding the last Station */
+        private final int[] validUntil;
+
+        private Candidates(String goesId, List<Station> unsorted) {
+            this.goesId = goesId;
+            List<Station> sorted = new ArrayList<>(unsorted);
+            final Map<Station, Integer> ends = new IdentityHashMap<>();
+            for (Station station : sorted) {
+                if (station.getClosedDate() != null) {
+                    try {
+                        ends.put(station, validUntil(station.getClosedDate()));
+                    } catch (NumberFormatException nfe) {
+                        // treated as no closed date; only fails lookups which reach this station
+                    }
+                }
+            }
+            Collections.sort(sorted, new Comparator<Station>() {
+                @Override
+                public int compare(Station a, Station b) {
+                    return ComparisonChain.start().compare(ends.get(a), ends.get(b), Ordering.natural().nullsLast())
+                            .compare(a.getStationId(), b.getStationId()).result();
+                }
+            });
+            stations = sorted.toArray(new Station[sorted.size()]);
+            int count = 0;
+            while (count < stations.length - 1 && ends.containsKey(stations[count])) {
+                count++;
+            }
+            validUntil = new int[count];
+            for (int i = 0; i < count; i++) {
+                validUntil[i] = ends.get(stations[i]);
+            }
+        }
+
+        private Station get(int datetimeId) {
+            if (stations.length == 1) {
+                return stations[0];
+            }
+            // first Station whose validity ends after datetimeId
+            int low = 0;
+            int high = validUntil.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (validUntil[mid] > datetimeId) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            if (low < validUntil.length) {
+                return stations[low];
+            }
+            // past every closed date; the last Station applies unless an earlier one has no closed date
+            if (validUntil.length == stations.length - 1) {
+                return stations[stations.length - 1];
+            }
+            throw new RuntimeException("Multiple stations have the same goesId (" + goesId + ") but no closed date.");
+        }
+    }
+}
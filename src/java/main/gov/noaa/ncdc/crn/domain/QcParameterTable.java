@@ -0,0 +1,399 @@
+package gov.noaa.ncdc.crn.domain;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * An immutable table of all QC range and delta parameters, resolved in memory. A parameter applies to an element in a
+ * stream if the stream contains the element and the parameter's stream, station and month are each either unspecified
+ * (null or negative) or equal to those requested. If more than one applies the most specific is chosen: one which
+ * matches the station (preferring one which also matches the stream, and then the month), then one which matches the
+ * month, then one which matches the stream, then the default.
+ * <p>
+ * Parameters which do not depend on the station are resolved when the table is built into dense arrays indexed by
+ * stream, month and element; station specific parameters are few and are searched at lookup. Lookups return a row
+ * number, or {@link #NONE}, whose bounds are read as {@code long}s scaled by {@link #SCALE} decimal places, so QC
+ * checks compare primitives instead of BigDecimals and allocate nothing.
+ */
+public class QcParameterTable {
+    /** the number of decimal places of the scaled bounds and deltas, the precision of the database columns */
+    public static final int SCALE = 1;
+    /** row number returned when no parameter applies */
+    public static final int NONE = -1;
+    /** month index used for months outside 1-12, which only match parameters without a month */
+    private static final int NO_MONTH = 0;
+    private static final int MONTHS = 13;
+
+    /** stream ordinal by streamId, NONE for unknown streams */
+    private final int[] streamOrdinals;
+    /** elementIds of each stream, by stream ordinal */
+    private final BitSet[] streamElements;
+    private final Layer ranges;
+    private final Layer deltas;
+    private final QcRangeParam[] rangeParams;
+    private final long[] rangeLo;
+    private final long[] rangeHi;
+    private final QcDeltaParam[] deltaParams;
+    private final long[] deltaValues;
+
+    /**
+     * Creates a table of QC parameters
+     * @param rangeParams all the QcRangeParams
+     * @param deltaParams all the QcDeltaParams, each applying to its first elementId
+     * @param streamElementIds the elementIds of each stream mapped by streamId
+     * @throws IllegalArgumentException if a streamId is negative or a bound has more than {@link #SCALE} decimal
+     * places
+     */
+    public QcParameterTable(Collection<QcRangeParam> rangeParams, Collection<QcDeltaParam> deltaParams,
+            Map<Integer, ? extends Collection<Integer>> streamElementIds) {
+        int maxStreamId = -1;
+        for (Integer streamId : streamElementIds.keySet()) {
+            Preconditions.checkArgument(streamId >= 0, "negative streamId %s", streamId);
+            maxStreamId = Math.max(maxStreamId, streamId);
+        }
+        streamOrdinals = new int[maxStreamId + 1];
+        Arrays.fill(streamOrdinals, NONE);
+        streamElements = new BitSet[streamElementIds.size()];
+        int ordinal = 0;
+        for (Map.Entry<Integer, ? extends Collection<Integer>> entry : streamElementIds.entrySet()) {
+            BitSet elements = new BitSet();
+            for (Integer elementId : entry.getValue()) {
+                elements.set(elementId);
+            }
+            streamOrdinals[entry.getKey()] = ordinal;
+            streamElements[ordinal++] = elements;
+        }
+
+        this.rangeParams = rangeParams.toArray(new QcRangeParam[rangeParams.size()]);
+        rangeLo = new long[this.rangeParams.length];
+        rangeHi = new long[this.rangeParams.length];
+        int[][] rangeKeys = new int[this.rangeParams.length][];
+        for (int row = 0; row < this.rangeParams.length; row++) {
+            QcRangeParam param = this.rangeParams[row];
+            rangeLo[row] = param.getLo() != null ? scale(param.getLo()) : Long.MIN_VALUE;
+            rangeHi[row] = param.getHi() != null ? scale(param.getHi()) : Long.MAX_VALUE;
+            rangeKeys[row] = key(param.getElementId(), param.getStreamId(), param.getStationId(), param.getMonth());
+        }
+        ranges = new Layer(rangeKeys);
+
+        this.deltaParams = deltaParams.toArray(new QcDeltaParam[deltaParams.size()]);
+        deltaValues = new long[this.deltaParams.length];
+        int[][] deltaKeys = new int[this.deltaParams.length][];
+        for (int row = 0; row < this.deltaParams.length; row++) {
+            QcDeltaParam param = this.deltaParams[row];
+            deltaValues[row] = param.getDelta() != null ? scale(param.getDelta()) : Long.MAX_VALUE;
+            deltaKeys[row] = key(param.getElementIds()[0], param.getStreamId(), param.getStationId(), param.getMonth());
+        }
+        deltas = new Layer(deltaKeys);
+    }
+
+    private static long scale(BigDecimal value) {
+        try {
+            return value.movePointRight(SCALE).longValueExact();
+        } catch (ArithmeticException ae) {
+            throw new IllegalArgumentException("QC parameter " + value + " has more than " + SCALE
+                    + " decimal places", ae);
+        }
+    }
+
+    /**
+     * The element, stream, station and month of a parameter, unspecified values as NONE
+     */
+    private static int[] key(int elementId, Integer streamId, Integer stationId, Integer month) {
+        return new int[] { elementId, specified(streamId), specified(stationId), specified(month) };
+    }
+
+    private static int specified(Integer id) {
+        return id != null && id >= 0 ? id : NONE;
+    }
+
+    private int streamOrdinal(int streamId, int elementId) {
+        if (streamId < 0 || streamId >= streamOrdinals.length || elementId < 0) {
+            return NONE;
+        }
+        int ordinal = streamOrdinals[streamId];
+        return ordinal != NONE && streamElements[ordinal].get(elementId) ? ordinal : NONE;
+    }
+
+    /**
+     * Finds the QC range parameter which applies to an element
+     * @param elementId the element
+     * @param streamId the stream of the observation
+     * @param stationId the station of the observation
+     * @param month the month of the observation, 1-12
+     * @return the row of the parameter, or {@link #NONE} if none applies
+     */
+    public int findRange(int elementId, int streamId, int stationId, int month) {
+        return ranges.find(elementId, streamId, streamOrdinal(streamId, elementId), stationId, month);
+    }
+
+    /**
+     * Returns the lower bound of a QC range parameter scaled by {@link #SCALE}
+     * @param row a row returned by {@link #findRange(int, int, int, int)}
+     * @return the scaled lower bound, or Long.MIN_VALUE if it has none
+     */
+    public long getRangeLo(int row) {
+        return rangeLo[row];
+    }
+
+    /**
+     * Returns the upper bound of a QC range parameter scaled by {@link #SCALE}
+     * @param row a row returned by {@link #findRange(int, int, int, int)}
+     * @return the scaled upper bound, or Long.MAX_VALUE if it has none
+     */
+    public long getRangeHi(int row) {
+        return rangeHi[row];
+    }
+
+    /**
+     * Returns the QC range parameter of a row
+     * @param row a row returned by {@link #findRange(int, int, int, int)}
+     * @return the QcRangeParam
+     */
+    public QcRangeParam getRangeParam(int row) {
+        return rangeParams[row];
+    }
+
+    /**
+     * Returns the QC range parameter which applies to an element
+     * @param elementId the element
+     * @param streamId the stream of the observation
+     * @param stationId the station of the observation
+     * @param month the month of the observation, 1-12
+     * @return the QcRangeParam, or null if none applies
+     */
+    public QcRangeParam getRangeParam(int elementId, int streamId, int stationId, int month) {
+        int row = findRange(elementId, streamId, stationId, month);
+        return row != NONE ? rangeParams[row] : null;
+    }
+
+    /**
+     * Returns the QC range parameters which apply to the elements of a stream
+     * @param streamId the stream of the observation
+     * @param stationId the station of the observation
+     * @param month the month of the observation, 1-12
+     * @return an immutable Map{@code <Integer,QcRangeParam>} mapping elementId to the parameter which applies
+     */
+    public Map<Integer, QcRangeParam> getRangeParams(int streamId, int stationId, int month) {
+        ImmutableMap.Builder<Integer, QcRangeParam> params = ImmutableMap.builder();
+        for (int elementId : ranges.elementIds) {
+            int row = findRange(elementId, streamId, stationId, month);
+            if (row != NONE) {
+                params.put(elementId, rangeParams[row]);
+            }
+        }
+        return params.build();
+    }
+
+    /**
+     * Finds the QC delta parameter which applies to an element
+     * @param elementId the first element of the delta parameter
+     * @param streamId the stream of the observation
+     * @param stationId the station of the observation
+     * @param month the month of the observation, 1-12
+     * @return the row of the parameter, or {@link #NONE} if none applies
+     */
+    public int findDelta(int elementId, int streamId, int stationId, int month) {
+        return deltas.find(elementId, streamId, streamOrdinal(streamId, elementId), stationId, month);
+    }
+
+    /**
+     * Returns the delta of a QC delta parameter scaled by {@link #SCALE}
+     * @param row a row returned by {@link #findDelta(int, int, int, int)}
+     * @return the scaled delta, or Long.MAX_VALUE if it has none
+     */
+    public long getDelta(int row) {
+        return deltaValues[row];
+    }
+
+    /**
+     * Returns the QC delta parameter of a row
+     * @param row a row returned by {@link #findDelta(int, int, int, int)}
+     * @return the QcDeltaParam
+     */
+    public QcDeltaParam getDeltaParam(int row) {
+        return deltaParams[row];
+    }
+
+    /**
+     * Returns the QC delta parameter which applies to an element
+     * @param elementId the first element of the delta parameter
+     * @param streamId the stream of the observation
+     * @param stationId the station of the observation
+     * @param month the month of the observation, 1-12
+     * @return the QcDeltaParam, or null if none applies
+     */
+    public QcDeltaParam getDeltaParam(int elementId, int streamId, int stationId, int month) {
+        int row = findDelta(elementId, streamId, stationId, month);
+        return row != NONE ? deltaParams[row] : null;
+    }
+
+    /**
+     * Returns the QC delta parameters which apply to the elements of a stream
+     * @param streamId the stream of the observation
+     * @param stationId the station of the observation
+     * @param month the month of the observation, 1-12
+     * @return an immutable Map{@code <Integer,QcDeltaParam>} mapping first elementId to the parameter which applies
+     */
+    public Map<Integer, QcDeltaParam> getDeltaParams(int streamId, int stationId, int month) {
+        ImmutableMap.Builder<Integer, QcDeltaParam> params = ImmutableMap.builder();
+        for (int elementId : deltas.elementIds) {
+            int row = findDelta(elementId, streamId, stationId, month);
+            if (row != NONE) {
+                params.put(elementId, deltaParams[row]);
+            }
+        }
+        return params.build();
+    }
+
+    /**
+     * Ranks a parameter which applies; higher is more specific
+     */
+    private static int specificity(int[] key) {
+        boolean stream = key[1] != NONE;
+        boolean station = key[2] != NONE;
+        boolean month = key[3] != NONE;
+        if (station) {
+            return 4 + (stream ? 2 : 0) + (month ? 1 : 0);
+        }
+        return (month ? 2 : 0) + (stream ? 1 : 0);
+    }
+
+    private static boolean applies(int[] key, int streamId, int stationId, int month) {
+        return (key[1] == NONE || key[1] == streamId) && (key[2] == NONE || key[2] == stationId)
+                && (key[3] == NONE || key[3] == month);
+    }
+
+    /**
+     * The resolution of one kind of parameter: station independent parameters by stream, month and element, station
+     * specific ones by station and element
+     */
+    private final class Layer {
+        private final int[][] keys;
+        private final int[] elementIds;
+        /** element ordinal by elementId, NONE for elements without parameters */
+        private final int[] elementOrdinals;
+        /** row by (stream ordinal * MONTHS + month) * element count + element ordinal */
+        private final int[] general;
+        /** station << 32 | elementId of the station specific parameters, ascending */
+        private final long[] stationKeys;
+        /** rows of the station specific parameters for each of stationKeys */
+        private final int[][] stationRows;
+
+        private Layer(int[][] keys) {
+            this.keys = keys;
+            int maxElementId = -1;
+            Map<Integer, List<Integer>> byElement = new HashMap<>();
+            Map<Long, List<Integer>> byStation = new HashMap<>();
+            for (int row = 0; row < keys.length; row++) {
+                int[] key = keys[row];
+                Preconditions.checkArgument(key[0] >= 0, "negative elementId %s", key[0]);
+                maxElementId = Math.max(maxElementId, key[0]);
+                if (key[2] == NONE) {
+                    rows(byElement, key[0]).add(row);
+                } else {
+                    rows(byStation, (long) key[2] << 32 | key[0]).add(row);
+                }
+            }
+            elementOrdinals = new int[maxElementId + 1];
+            Arrays.fill(elementOrdinals, NONE);
+            BitSet elements = new BitSet();
+            for (int[] key : keys) {
+                elements.set(key[0]);
+            }
+            elementIds = new int[elements.cardinality()];
+            for (int elementId = elements.nextSetBit(0), i = 0; elementId >= 0; elementId = elements
+                    .nextSetBit(elementId + 1), i++) {
+                elementIds[i] = elementId;
+                elementOrdinals[elementId] = i;
+            }
+
+            general = new int[streamElements.length * MONTHS * elementIds.length];
+            Arrays.fill(general, NONE);
+            for (int streamId = 0; streamId < streamOrdinals.length; streamId++) {
+                int streamOrdinal = streamOrdinals[streamId];
+                if (streamOrdinal == NONE) {
+                    continue;
+                }
+                for (int month = 0; month < MONTHS; month++) {
+                    int offset = (streamOrdinal * MONTHS + month) * elementIds.length;
+                    for (int e = 0; e < elementIds.length; e++) {
+                        List<Integer> candidates = byElement.get(elementIds[e]);
+                        if (candidates != null) {
+                            general[offset + e] = best(candidates, streamId, NONE, month == NO_MONTH ? NONE
+                                    : month);
+                        }
+                    }
+                }
+            }
+
+            stationKeys = new long[byStation.size()];
+            int i = 0;
+            for (Long stationKey : byStation.keySet()) {
+                stationKeys[i++] = stationKey;
+            }
+            Arrays.sort(stationKeys);
+            stationRows = new int[stationKeys.length][];
+            for (i = 0; i < stationKeys.length; i++) {
+                List<Integer> rows = byStation.get(stationKeys[i]);
+                stationRows[i] = new int[rows.size()];
+                for (int j = 0; j < rows.size(); j++) {
+                    stationRows[i][j] = rows.get(j);
+                }
+            }
+        }
+
+        private <K> List<Integer> rows(Map<K, List<Integer>> map, K key) {
+            List<Integer> rows = map.get(key);
+            if (rows == null) {
+                rows = new ArrayList<>();
+                map.put(key, rows);
+            }
+            return rows;
+        }
+
+        private int best(Iterable<Integer> rows, int streamId, int stationId, int month) {
+            int best = NONE;
+            for (int row : rows) {
+                best = better(best, row, streamId, stationId, month);
+            }
+            return best;
+        }
+
+        private int better(int best, int row, int streamId, int stationId, int month) {
+            if (!applies(keys[row], streamId, stationId, month)) {
+                return best;
+            }
+            return best == NONE || specificity(keys[row]) > specificity(keys[best]) ? row : best;
+        }
+
+        private int find(int elementId, int streamId, int streamOrdinal, int stationId, int month) {
+            if (streamOrdinal == NONE || elementId >= elementOrdinals.length || elementOrdinals[elementId] == NONE) {
+                return NONE;
+            }
+            int monthIndex = month >= 1 && month <= 12 ? month : NO_MONTH;
+            if (stationId >= 0) {
+                int index = Arrays.binarySearch(stationKeys, (long) stationId << 32 | elementId);
+                if (index >= 0) {
+                    int best = NONE;
+                    for (int row : stationRows[index]) {
+                        best = better(best, row, streamId, stationId, monthIndex == NO_MONTH ? NONE : month);
+                    }
+                    if (best != NONE) {
+                        return best;
+                    }
+                }
+            }
+            return general[(streamOrdinal * MONTHS + monthIndex) * elementIds.length + elementOrdinals[elementId]];
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package gov.noaa.ncdc.crn.domain;
+
+import gov.noaa.ncdc.crn.util.TimeUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimaps;
+
+/**
+ * The rain gauge installations of one station as an immutable timeline: the first datetimeId at which each gauge
+ * applies and its depth, in primitive arrays sorted by event date. A gauge applies from the first hour beginning at
+ * or after its event date until the next gauge applies; before the first installation the first gauge is assumed.
+ */
+public class RainGaugeTimeline {
+    private static final Function<StationRainGauge, Integer> STATION_ID = new Function<StationRainGauge, Integer>() {
+        @Override
+        public Integer apply(StationRainGauge gauge) {
+            return gauge.getStationId();
+        }
+    };
+
+    private final int stationId;
+    /** first datetimeId at which each gauge applies, ascending */
+    private final int[] starts;
+    private final int[] depths;
+
+    /**
+     * Creates the timeline of a station's rain gauges
+     * @param stationId the station
+     * @param gauges the station's gauges in any order; at least one
+     * @throws IllegalArgumentException if there are no gauges or a gauge belongs to another station
+     */
+    public RainGaugeTimeline(int stationId, Collection<StationRainGauge> gauges) {
+        Preconditions.checkArgument(!gauges.isEmpty(), "no gauges for station %s", stationId);
+        List<StationRainGauge> sorted = new ArrayList<>(gauges);
+        Collections.sort(sorted);
+        this.stationId = stationId;
+        starts = new int[sorted.size()];
+        depths = new int[sorted.size()];
+        for (int i = 0; i < starts.length; i++) {
+            StationRainGauge gauge = sorted.get(i);
+            Preconditions.checkArgument(gauge.getStationId() == stationId, "gauge for station %s in timeline for %s",
+                    gauge.getStationId(), stationId);
+            starts[i] = TimeUtils.computeCeilingDateTimeId(gauge.getEventDate().getTime());
+            depths[i] = gauge.getDepth();
+        }
+    }
+
+    /**
+     * Creates the timelines of all stations with rain gauges
+     * @param gauges the gauges of any number of stations
+     * @return an immutable Map{@code <Integer,RainGaugeTimeline>} mapped by stationId
+     */
+    public static Map<Integer, RainGaugeTimeline> byStation(Collection<StationRainGauge> gauges) {
+        ListMultimap<Integer, StationRainGauge> grouped = Multimaps.index(gauges, STATION_ID);
+        ImmutableMap.Builder<Integer, RainGaugeTimeline> timelines = ImmutableMap.builder();
+        for (Integer stationId : grouped.keySet()) {
+            timelines.put(stationId, new RainGaugeTimeline(stationId, grouped.get(stationId)));
+        }
+        return timelines.build();
+    }
+
+    /**
+     * Returns the index of the first gauge which starts after the datetimeId, or starts.length if none does
+     */
+    private int indexAfter(int datetimeId) {
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= datetimeId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the gauge in use at the datetimeId: the last which starts at or before it, else the first
+     */
+    private int indexAt(int datetimeId) {
+        int after = indexAfter(datetimeId);
+        return after > 0 ? after - 1 : 0;
+    }
+
+    /**
+     * Returns the first datetimeId after this one at which a gauge starts, or Integer.MAX_VALUE if none does
+     */
+    private int nextStart(int datetimeId) {
+        int after = indexAfter(datetimeId);
+        return after < starts.length ? starts[after] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the depth of the gauge in use at the datetimeId
+     * @param datetimeId the hour
+     * @return the depth in mm
+     */
+    public int getDepth(int datetimeId) {
+        return depths[indexAt(datetimeId)];
+    }
+
+    /**
+     * Returns true if the datetimeId precedes the first gauge installation, in which case the first gauge is assumed
+     * @param datetimeId the hour
+     * @return true if no gauge was installed by datetimeId
+     */
+    public boolean precedesInstallation(int datetimeId) {
+        return datetimeId < starts[0];
+    }
+
+    /**
+     * Returns the depth of the gauge in use for each hour of a range
+     * @param begin the first datetimeId
+     * @param end the last datetimeId, inclusive
+     * @return the depth in mm for each hour, indexed by datetimeId - begin
+     */
+    public int[] getDepths(int begin, int end) {
+        Preconditions.checkArgument(begin <= end, "begin %s after end %s", begin, end);
+        int[] result = new int[end - begin + 1];
+        int datetimeId = begin;
+        while (true) {
+            // the depth holds until the hour before the next gauge starts
+            int next = nextStart(datetimeId);
+            int runEnd = next <= end ? next - 1 : end;
+            Arrays.fill(result, datetimeId - begin, runEnd - begin + 1, getDepth(datetimeId));
+            if (runEnd == end) {
+                return result;
+            }
+            datetimeId = next;
+        }
+    }
+
+    /**
+     * Returns the depth at the beginning of a range and at each hour in the range where it changes
+     * @param begin the first datetimeId
+     * @param end the last datetimeId, inclusive
+     * @return an immutable SortedMap{@code <Integer,Integer>} from datetimeId to depth in mm; the first key is begin
+     */
+    public SortedMap<Integer, Integer> getChanges(int begin, int end) {
+        Preconditions.checkArgument(begin <= end, "begin %s after end %s", begin, end);
+        SortedMap<Integer, Integer> changes = new TreeMap<>();
+        int depth = getDepth(begin);
+        changes.put(begin, depth);
+        for (int next = nextStart(begin); next <= end; next = nextStart(next)) {
+            if (getDepth(next) != depth) {
+                depth = getDepth(next);
+                changes.put(next, depth);
+            }
+            if (next == Integer.MAX_VALUE) {
+                break;
+            }
+        }
+        return ImmutableSortedMap.copyOfSorted(changes);
+    }
+
+    /**
+     * Returns the station of this timeline
+     * @return the stationId
+     */
+    public int getStationId() {
+        return stationId;
+    }
+
+    /**
+     * Returns the number of gauge installations
+     * @return the number of gauges
+     */
+    public int size() {
+        return starts.length;
+    }
+}
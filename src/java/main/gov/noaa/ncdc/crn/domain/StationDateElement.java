@@ -4,10 +4,29 @@ import java.io.Serializable;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ComparisonChain;
+import com.google.common.primitives.Ints;
 
-@SuppressWarnings("serial")
+/**
+ * {@code StationDateElement} is the combination of station id, datetime id and element id which identifies an
+ * {@link ElementValue}. Hashing and comparison work on the ids directly and do not allocate. The three ids can also be
+ * packed into a single {@code long} key (see {@link #packKey(int, int, int)}) whose natural order matches
+ * {@link #compareTo(Object)}.
+ */
 public class StationDateElement implements StationAware, DatetimeAware, ElementAware, Comparable<Object>, Serializable {
+    /** unchanged from the implicit serialVersionUID of earlier versions */
+    private static final long serialVersionUID = -1844878618413409842L;
+    /** number of bits of a packed key holding the element id */
+    private static final int ELEMENT_BITS = 20;
+    /** number of bits of a packed key holding the datetime id */
+    private static final int DATETIME_BITS = 24;
+    /** number of bits of a packed key holding the station id; the sign bit is left clear */
+    private static final int STATION_BITS = 19;
+    /** largest stationId which can be packed into a key */
+    public static final int MAX_PACKED_STATION_ID = (1 << STATION_BITS) - 1;
+    /** largest datetimeId which can be packed into a key */
+    public static final int MAX_PACKED_DATETIME_ID = (1 << DATETIME_BITS) - 1;
+    /** largest elementId which can be packed into a key */
+    public static final int MAX_PACKED_ELEMENT_ID = (1 << ELEMENT_BITS) - 1;
 
     /** The station identifier. */
     private int stationId;
@@ -29,6 +48,70 @@ public class StationDateElement implements StationAware, DatetimeAware, ElementA
         this.elementId = elementId;
     }
 
+    /**
+     * Packs the ids into a single {@code long}, station id in the high bits, then datetime id, then element id, so
+     * packed keys sort in the same order as StationDateElements.
+     * @param stationId the station id; 0 to {@link #MAX_PACKED_STATION_ID}
+     * @param datetimeId the datetime id; 0 to {@link #MAX_PACKED_DATETIME_ID}
+     * @param elementId the element id; 0 to {@link #MAX_PACKED_ELEMENT_ID}
+     * @return the packed key
+     * @throws IllegalArgumentException if an id is out of range
+     */
+    public static long packKey(int stationId, int datetimeId, int elementId) {
+        Preconditions.checkArgument(stationId >= 0 && stationId <= MAX_PACKED_STATION_ID, "stationId out of range: %s",
+                stationId);
+        Preconditions.checkArgument(datetimeId >= 0 && datetimeId <= MAX_PACKED_DATETIME_ID,
+                "datetimeId out of range: %s", datetimeId);
+        Preconditions.checkArgument(elementId >= 0 && elementId <= MAX_PACKED_ELEMENT_ID,
+                "elementId out of range: %s", elementId);
+        return (long) stationId << (DATETIME_BITS + ELEMENT_BITS) | (long) datetimeId << ELEMENT_BITS | elementId;
+    }
+
+    /**
+     * Returns the station id of a key created by {@link #packKey(int, int, int)}
+     * @param key the packed key
+     * @return the station id
+     */
+    public static int stationIdOf(long key) {
+        return (int) (key >>> (DATETIME_BITS + ELEMENT_BITS));
+    }
+
+    /**
+     * Returns the datetime id of a key created by {@link #packKey(int, int, int)}
+     * @param key the packed key
+     * @return the datetime id
+     */
+    public static int datetimeIdOf(long key) {
+        return (int) (key >>> ELEMENT_BITS) & MAX_PACKED_DATETIME_ID;
+    }
+
+    /**
+     * Returns the element id of a key created by {@link #packKey(int, int, int)}
+     * @param key the packed key
+     * @return the element id
+     */
+    public static int elementIdOf(long key) {
+        return (int) key & MAX_PACKED_ELEMENT_ID;
+    }
+
+    /**
+     * Creates a StationDateElement from a key created by {@link #packKey(int, int, int)}
+     * @param key the packed key
+     * @return the StationDateElement for the key
+     */
+    public static StationDateElement fromPackedKey(long key) {
+        return new StationDateElement(stationIdOf(key), datetimeIdOf(key), elementIdOf(key));
+    }
+
+    /**
+     * Returns the ids of this StationDateElement packed into a single {@code long}
+     * @return the packed key
+     * @throws IllegalArgumentException if an id is out of range for {@link #packKey(int, int, int)}
+     */
+    public long packedKey() {
+        return packKey(stationId, datetimeId, elementId);
+    }
+
     public StationDate getStationDate() {
         return new StationDate(stationId, datetimeId);
     }
@@ -47,20 +130,31 @@ public class StationDateElement implements StationAware, DatetimeAware, ElementA
 
     @Override
     public boolean equals(Object o) {
-        return this.compareTo(o) == 0;
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof StationDateElement) {
+            StationDateElement sde = (StationDateElement) o;
+            return stationId == sde.stationId && datetimeId == sde.datetimeId && elementId == sde.elementId;
+        }
+        return false;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(stationId, datetimeId, elementId);
+        // same value as Objects.hashCode(stationId, datetimeId, elementId) without boxing
+        return 31 * (31 * (31 + stationId) + datetimeId) + elementId;
     }
 
     @Override
     public int compareTo(Object o) {
         if (o instanceof StationDateElement) {
             StationDateElement sde = (StationDateElement) o;
-            return ComparisonChain.start().compare(getStationDate(), sde.getStationDate())
-                    .compare(elementId, sde.elementId).result();
+            int result = Ints.compare(stationId, sde.stationId);
+            if (result == 0) {
+                result = Ints.compare(datetimeId, sde.datetimeId);
+            }
+            return result == 0 ? Ints.compare(elementId, sde.elementId) : result;
         }
         return -1;
     }
@@ -0,0 +1,381 @@
+package gov.noaa.ncdc.crn.domain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+
+/**
+ * An immutable snapshot of all Stations, indexed for lookups without going back to the database: by stationId, WBAN
+ * number, GOES id, ATDD number, state, network and operational status. The stationIds matching each of the
+ * {@link Stations} predicates (VISIBLE, COMMISSIONED, CLOSED, CRN, RCRN, ...) are computed once when the registry is
+ * built. Build it from the complete list of Stations and replace it as a whole when they change.
+ * <p>
+ * Like {@code StationDao.getStations()}, the {@code getStations} methods only return Stations with a POR; lookups of
+ * a single Station by id or identifier also return Stations which have not yet transmitted data.
+ */
+public class StationRegistry {
+    /** prefixes which may or may not be stored with a GOES id */
+    private static final String[] GOES_PREFIXES = { "CD", "DA" };
+
+    private final ImmutableMap<Integer, Station> stations;
+    private final ImmutableMap<Integer, Station> withPor;
+    private final ImmutableMap<String, Station> byWbanno;
+    private final ImmutableMap<String, Station> byAtddno;
+    private final ImmutableListMultimap<String, Station> byGoesId;
+    private final ImmutableListMultimap<String, Station> byState;
+    private final ImmutableListMultimap<Integer, Station> byNetwork;
+    private final ImmutableListMultimap<String, Station> byOpStatus;
+    private final ImmutableMap<Predicate<Station>, ImmutableSet<Integer>> subsets;
+    private final GoesIdIndex goesIdIndex;
+    private final long loadedMillis;
+
+    /**
+     * Creates a registry of Stations
+     * @param stations all the Stations, including those without a POR
+     * @param stationIdsWithPor the stationIds of the Stations which have a POR
+     * @throws IllegalArgumentException if two Stations share a stationId
+     */
+    public StationRegistry(Collection<? extends Station> stations, Collection<Integer> stationIdsWithPor) {
+        Map<Integer, Station> sorted = new TreeMap<>();
+        for (Station station : stations) {
+            Preconditions.checkArgument(sorted.put(station.getStationId(), station) == null, "duplicate stationId %s",
+                    station.getStationId());
+        }
+        this.stations = ImmutableMap.copyOf(sorted);
+        Set<Integer> porIds = ImmutableSet.copyOf(stationIdsWithPor);
+
+        ImmutableMap.Builder<Integer, Station> por = ImmutableMap.builder();
+        // where an identifier is shared the station with the highest stationId wins
+        Map<String, Station> wbans = new LinkedHashMap<>();
+        Map<String, Station> atddnos = new LinkedHashMap<>();
+        ImmutableListMultimap.Builder<String, Station> goesIds = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<String, Station> states = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<Integer, Station> networks = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<String, Station> opStatuses = ImmutableListMultimap.builder();
+        for (Station station : this.stations.values()) {
+            if (porIds.contains(station.getStationId())) {
+                por.put(station.getStationId(), station);
+            }
+            if (station.getWbanno() != null) {
+                wbans.put(station.getWbanno(), station);
+            }
+            if (station.getAtddno() != null) {
+                atddnos.put(station.getAtddno(), station);
+            }
+            if (station.getGoesId() != null) {
+                goesIds.put(station.getGoesId(), station);
+            }
+            if (station.getName() != null && station.getName().getState() != null) {
+                states.put(station.getName().getState(), station);
+            }
+            networks.put(station.getNetworkId(), station);
+            if (station.getOpStatus() != null) {
+                opStatuses.put(station.getOpStatus(), station);
+            }
+        }
+        withPor = por.build();
+        byWbanno = ImmutableMap.copyOf(wbans);
+        byAtddno = ImmutableMap.copyOf(atddnos);
+        byGoesId = goesIds.build();
+        byState = states.build();
+        byNetwork = networks.build();
+        byOpStatus = opStatuses.build();
+
+        ImmutableMap.Builder<Predicate<Station>, ImmutableSet<Integer>> sets = ImmutableMap.builder();
+        ImmutableSet<Predicate<Station>> predicates = ImmutableSet.<Predicate<Station>> builder().add(Stations.CRN)
+                .add(Stations.RCRN).add(Stations.PSEUDO_RCRN).add(Stations.RCRN_INCLUDE_REPS)
+                .add(Stations.COMMISSIONED).add(Stations.CLOSED).add(Stations.TEST_SITE).add(Stations.ABANDONED)
+                .add(Stations.VISIBLE).build();
+        for (Predicate<Station> predicate : predicates) {
+            sets.put(predicate, matchingIds(predicate));
+        }
+        subsets = sets.build();
+        goesIdIndex = new GoesIdIndex(this.stations.values());
+        loadedMillis = System.currentTimeMillis();
+    }
+
+    private ImmutableSet<Integer> matchingIds(Predicate<Station> predicate) {
+        ImmutableSet.Builder<Integer> ids = ImmutableSet.builder();
+        for (Station station : stations.values()) {
+            if (apply(predicate, station)) {
+                ids.add(station.getStationId());
+            }
+        }
+        return ids.build();
+    }
+
+    private static boolean apply(Predicate<Station> predicate, Station station) {
+        // the Boolean predicates unbox testSiteOnly and pseudoRcrn; treat missing metadata as not matching
+        if (station.getTestSiteOnly() == null && (predicate == Stations.TEST_SITE || predicate == Stations.VISIBLE)) {
+            return false;
+        }
+        if (station.isPseudoRcrn() == null) {
+            if (predicate == Stations.PSEUDO_RCRN) {
+                return false;
+            }
+            if (predicate == Stations.RCRN_INCLUDE_REPS) {
+                return Stations.RCRN.apply(station);
+            }
+        }
+        return predicate.apply(station);
+    }
+
+    /**
+     * Returns the Station with this stationId, whether or not it has a POR
+     * @param stationId the stationId
+     * @return the Station, or null if there is none
+     */
+    public Station get(int stationId) {
+        return stations.get(stationId);
+    }
+
+    /**
+     * Returns true if the Station with this stationId has a POR
+     * @param stationId the stationId
+     * @return true if the Station exists and has a POR
+     */
+    public boolean hasPor(int stationId) {
+        return withPor.containsKey(stationId);
+    }
+
+    /**
+     * Returns the Stations with a POR mapped by stationId
+     * @return an immutable Map{@code <Integer,Station>} in stationId order
+     */
+    public Map<Integer, Station> getStations() {
+        return withPor;
+    }
+
+    /**
+     * Returns all Stations mapped by stationId
+     * @param includeSilent true to include Stations which have not yet transmitted data
+     * @return an immutable Map{@code <Integer,Station>} in stationId order
+     */
+    public Map<Integer, Station> getStations(boolean includeSilent) {
+        return includeSilent ? stations : withPor;
+    }
+
+    /**
+     * Returns the Stations with a POR among these stationIds mapped by stationId
+     * @param stationIds the stationIds to include; unknown ids are ignored
+     * @return an immutable Map{@code <Integer,Station>} in the iteration order of stationIds
+     */
+    public Map<Integer, Station> getStations(Collection<Integer> stationIds) {
+        Map<Integer, Station> result = new LinkedHashMap<>();
+        for (Integer stationId : stationIds) {
+            Station station = stationId != null ? withPor.get(stationId) : null;
+            if (station != null) {
+                result.put(stationId, station);
+            }
+        }
+        return ImmutableMap.copyOf(result);
+    }
+
+    /**
+     * Returns the Stations with a POR among these stationIds which match the filter, mapped by stationId
+     * @param stationIds the stationIds to include; unknown ids are ignored
+     * @param filter a Predicate such as {@link Stations#VISIBLE}
+     * @return an immutable Map{@code <Integer,Station>} in the iteration order of stationIds
+     */
+    public Map<Integer, Station> getStations(Collection<Integer> stationIds, Predicate<Station> filter) {
+        Set<Integer> matching = getIds(filter);
+        Map<Integer, Station> result = new LinkedHashMap<>();
+        for (Integer stationId : stationIds) {
+            Station station = stationId != null && matching.contains(stationId) ? withPor.get(stationId) : null;
+            if (station != null) {
+                result.put(stationId, station);
+            }
+        }
+        return ImmutableMap.copyOf(result);
+    }
+
+    /**
+     * Returns the Stations with a POR which match the filter, mapped by stationId
+     * @param filter a Predicate such as {@link Stations#VISIBLE}
+     * @return an immutable Map{@code <Integer,Station>} in stationId order
+     */
+    public Map<Integer, Station> getStations(Predicate<Station> filter) {
+        Map<Integer, Station> result = new LinkedHashMap<>();
+        for (Integer stationId : getIds(filter)) {
+            Station station = withPor.get(stationId);
+            if (station != null) {
+                result.put(stationId, station);
+            }
+        }
+        return ImmutableMap.copyOf(result);
+    }
+
+    /**
+     * Returns the stationIds of all Stations, with or without a POR, which match the filter. The sets for the
+     * {@link Stations} predicates CRN, RCRN, PSEUDO_RCRN, RCRN_INCLUDE_REPS, COMMISSIONED, CLOSED, TEST_SITE, ABANDONED
+     * and VISIBLE are precomputed; any other filter is applied to every Station.
+     * @param filter the Predicate to match
+     * @return an immutable Set of stationIds in stationId order
+     */
+    public Set<Integer> getIds(Predicate<Station> filter) {
+        Preconditions.checkNotNull(filter, "filter not nullable");
+        ImmutableSet<Integer> ids = subsets.get(filter);
+        return ids != null ? ids : matchingIds(filter);
+    }
+
+    /**
+     * Returns the Station with this WBAN number, whether or not it has a POR
+     * @param wbanno the WBAN number
+     * @return the Station, or null if there is none
+     */
+    public Station getByWbanno(String wbanno) {
+        return wbanno != null ? byWbanno.get(wbanno) : null;
+    }
+
+    /**
+     * Returns all Stations mapped by WBAN number
+     * @return an immutable Map{@code <String,Station>}
+     */
+    public Map<String, Station> getWbanStationMap() {
+        return byWbanno;
+    }
+
+    /**
+     * Returns the Station with this ATDD number, whether or not it has a POR
+     * @param atddno the ATDD number
+     * @return the Station, or null if there is none
+     */
+    public Station getByAtddno(String atddno) {
+        return atddno != null ? byAtddno.get(atddno) : null;
+    }
+
+    /**
+     * Returns the Stations which use exactly this GOES id, whether or not they have a POR
+     * @param goesId the GOES id as stored, e.g. "CD0246CA"
+     * @return an immutable List of Stations in stationId order, empty if there are none
+     */
+    public List<Station> getByGoesId(String goesId) {
+        return goesId != null ? byGoesId.get(goesId) : ImmutableList.<Station> of();
+    }
+
+    /**
+     * Returns all Stations mapped by GOES id, including those which have not yet transmitted data
+     * @return an immutable ListMultimap{@code <String,Station>}
+     */
+    public ListMultimap<String, Station> getGoesStationMap() {
+        return byGoesId;
+    }
+
+    /**
+     * Returns the index resolving a GOES id and datetimeId to the Station which transmitted under it at that time
+     * @return the GoesIdIndex of all Stations, including those which have not yet transmitted data
+     */
+    public GoesIdIndex getGoesIdIndex() {
+        return goesIdIndex;
+    }
+
+    /**
+     * Returns the Stations with a WBAN number or GOES id matching the identifier, whether or not they have a POR. A
+     * GOES id matches with or without a "CD" or "DA" prefix. Coop numbers are not indexed.
+     * @param id a WBAN number or GOES id
+     * @return a List of the matching Stations, empty if there are none
+     */
+    public List<Station> getByIdentifier(String id) {
+        if (id == null) {
+            return Collections.emptyList();
+        }
+        Map<Integer, Station> matches = new LinkedHashMap<>();
+        Station wban = byWbanno.get(id);
+        if (wban != null) {
+            matches.put(wban.getStationId(), wban);
+        }
+        for (String goesId : goesIdVariants(id)) {
+            for (Station station : byGoesId.get(goesId)) {
+                matches.put(station.getStationId(), station);
+            }
+        }
+        return new ArrayList<>(matches.values());
+    }
+
+    private static List<String> goesIdVariants(String id) {
+        List<String> variants = new ArrayList<>(GOES_PREFIXES.length + 1);
+        variants.add(id);
+        for (String prefix : GOES_PREFIXES) {
+            if (id.startsWith(prefix)) {
+                variants.add(id.substring(prefix.length()));
+            } else {
+                variants.add(prefix + id);
+            }
+        }
+        return variants;
+    }
+
+    /**
+     * Returns the Stations with a POR in these states mapped by stationId
+     * @param states 2-letter USPS uppercase abbreviations
+     * @return an immutable Map{@code <Integer,Station>}
+     */
+    public Map<Integer, Station> getStationsInStates(String... states) {
+        Map<Integer, Station> result = new TreeMap<>();
+        for (String state : states) {
+            putWithPor(result, byState.get(state));
+        }
+        return ImmutableMap.copyOf(result);
+    }
+
+    /**
+     * Returns the Stations with a POR in these networks mapped by stationId
+     * @param networkIds the networkIds
+     * @return an immutable Map{@code <Integer,Station>}
+     */
+    public Map<Integer, Station> getStationsForNetworks(int... networkIds) {
+        Map<Integer, Station> result = new TreeMap<>();
+        for (int networkId : networkIds) {
+            putWithPor(result, byNetwork.get(networkId));
+        }
+        return ImmutableMap.copyOf(result);
+    }
+
+    /**
+     * Returns the Stations with a POR with this operational status mapped by stationId
+     * @param opStatus the operational status, e.g. "C"
+     * @return an immutable Map{@code <Integer,Station>}
+     */
+    public Map<Integer, Station> getStationsWithOpStatus(String opStatus) {
+        Map<Integer, Station> result = new TreeMap<>();
+        putWithPor(result, byOpStatus.get(opStatus));
+        return ImmutableMap.copyOf(result);
+    }
+
+    private void putWithPor(Map<Integer, Station> result, Collection<Station> candidates) {
+        for (Station station : candidates) {
+            if (withPor.containsKey(station.getStationId())) {
+                result.put(station.getStationId(), station);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of Stations, with or without a POR
+     * @return the number of Stations
+     */
+    public int size() {
+        return stations.size();
+    }
+
+    /**
+     * Returns the time the registry was built
+     * @return the time the registry was built in milliseconds since the epoch
+     */
+    public long getLoadedMillis() {
+        return loadedMillis;
+    }
+}
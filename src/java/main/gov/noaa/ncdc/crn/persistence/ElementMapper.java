@@ -11,6 +11,7 @@ import java.util.Map;
 
 import org.apache.ibatis.annotations.MapKey;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 import org.springframework.dao.DataAccessException;
 
 public interface ElementMapper {
@@ -31,6 +32,16 @@ public interface ElementMapper {
     public Map<StationDateElement, ElementValue> selectElementValues(final Map<String, Object> params)
             throws DataAccessException;
 
+    /**
+     * Passes each ElementValue selected by {@link #selectElementValues(Map)} to the handler instead of collecting them
+     * into a Map{@code <StationDateElement, ElementValue>}. MyBatis does not cache results read through a handler.
+     * @param params a parameter name-value map with the same keys as {@link #selectElementValues(Map)}
+     * @param handler receives each ElementValue
+     * @throws DataAccessException (unchecked)
+     */
+    public void selectElementValues(final Map<String, Object> params, final ResultHandler handler)
+            throws DataAccessException;
+
     /**
      * Retrieves from the database a Map{@code <Integer, ElementValue>} of values for a single station/date mapped by
      * elementId.
@@ -43,6 +54,43 @@ public interface ElementMapper {
     public Map<Integer, ElementValue> selectElementValues(@Param("datetimeId") final int datetimeId,
             @Param("stationId") final int stationId) throws DataAccessException;
 
+    /**
+     * Streams from the database the ElementValues selected by the parameter map submitted, ordered by stationId,
+     * datetimeId and elementId, passing each row to the handler as it is read rather than collecting the rows into a
+     * Map. The statement should declare a fetchSize so the driver does not buffer the whole result set.
+     * @param params a parameter name-value map with keys in the following group:
+     * <ul>
+     * <li>(int) stationId or (Collection{@code <Integer>}) stationIds</li>
+     * <li>(int) begin and (int) end (both datetimeIds)</li>
+     * <li>(int) elementId or (Collection{@code <Integer>}) elementIds</li>
+     * </ul>
+     * @param handler receives each ElementValue in order
+     * @throws DataAccessException (unchecked)
+     */
+    public void selectOrderedElementValues(final Map<String, Object> params, final ResultHandler handler)
+            throws DataAccessException;
+
+    /**
+     * Streams from the database the raw fact/flag rows selected by the parameter map submitted, passing each row to the
+     * handler as a {@link gov.noaa.ncdc.crn.dao.mybatis.ElementValueRow} instead of building ElementValues. Each row
+     * holds the columns stationId, datetimeId, elementId, value, flags, decimalPlaces and publishedDecimalPlaces.
+     * @param params a parameter name-value map with the same keys as {@link #selectElementValues(Map)}
+     * @param handler receives each row
+     * @throws DataAccessException (unchecked)
+     */
+    public void selectElementValueRows(final Map<String, Object> params, final ResultHandler handler)
+            throws DataAccessException;
+
+    /**
+     * Streams from the database the raw fact/flag rows for a LST day or month, passing each row to the handler as a
+     * {@link gov.noaa.ncdc.crn.dao.mybatis.ElementValueRow}, as {@link #selectElementValueRows(Map, ResultHandler)}.
+     * @param params a parameter name-value map with the same keys as {@link #selectElementValuesLST(Map)}
+     * @param handler receives each row
+     * @throws DataAccessException (unchecked)
+     */
+    public void selectElementValueRowsLST(final Map<String, Object> params, final ResultHandler handler)
+            throws DataAccessException;
+
     /**
      * Retrieves from the database a Map{@code <StationDateElement, ElementValue>} based on the parameter map submitted;
      * @param params a parameter name-value map with a keys in the following group:
@@ -185,6 +233,17 @@ public interface ElementMapper {
      */
     public void insertFact(final ElementValue value) throws DataAccessException;
 
+    /**
+     * Inserts the facts of the values, and the flags of those values which are flagged, for existing observations in a
+     * single multi-row statement (one INSERT ALL with a fact row and, when flagged, a flag row per value) instead of
+     * an insertFact and updateFlag statement per value. Updates the observations' modification timestamps. There
+     * <em>must</em> be an observation in the database for each station/datetime already, and none of the values may
+     * exist yet.
+     * @param values The values to insert
+     * @throws DataAccessException (unchecked)
+     */
+    public void insertValues(@Param("values") final List<ElementValue> values) throws DataAccessException;
+
     /**
      * Updates only the flags of this ElementValue. Inserts flags where they don't exist already, updates the flag's
      * value if the new value differs from the old, and deletes a flag if the new value is zero. Use with caution, for
@@ -244,4 +303,67 @@ public interface ElementMapper {
             @Param("beginDatetimeId") final int beginDatetimeId, @Param("endDatetimeId") final int endDatetimeId)
             throws DataAccessException;
 
+    /**
+     * Deletes at most maxRows flags for a station within a range of datetimes in a single statement (
+     * {@code ROWNUM <= maxRows}). Returns the number of rows deleted, so must be run on a non-batch executor.
+     * @param stationId the station whose flags to delete
+     * @param beginDatetimeId the beginning of the range of datetimes
+     * @param endDatetimeId the end of the range of datetimes
+     * @param maxRows the maximum number of rows to delete
+     * @return the number of flags deleted
+     * @throws DataAccessException (unchecked)
+     */
+    public int deleteFlagRange(@Param("stationId") final int stationId,
+            @Param("beginDatetimeId") final int beginDatetimeId, @Param("endDatetimeId") final int endDatetimeId,
+            @Param("maxRows") final int maxRows) throws DataAccessException;
+
+    /**
+     * Deletes at most maxRows facts for a station within a range of datetimes in a single statement (
+     * {@code ROWNUM <= maxRows}). Flags of the facts must be deleted first. Returns the number of rows deleted, so must
+     * be run on a non-batch executor.
+     * @param stationId the station whose facts to delete
+     * @param beginDatetimeId the beginning of the range of datetimes
+     * @param endDatetimeId the end of the range of datetimes
+     * @param maxRows the maximum number of rows to delete
+     * @return the number of facts deleted
+     * @throws DataAccessException (unchecked)
+     */
+    public int deleteFactRange(@Param("stationId") final int stationId,
+            @Param("beginDatetimeId") final int beginDatetimeId, @Param("endDatetimeId") final int endDatetimeId,
+            @Param("maxRows") final int maxRows) throws DataAccessException;
+
+    /**
+     * Deletes at most maxRows flags of calculated elements for a station within a range of datetimes in a single
+     * statement. Ids of elements which are not calculated are ignored. Returns the number of rows deleted, so must be
+     * run on a non-batch executor.
+     * @param stationId the station whose flags to delete
+     * @param beginDatetimeId the beginning of the range of datetimes
+     * @param endDatetimeId the end of the range of datetimes
+     * @param maxRows the maximum number of rows to delete
+     * @param elementIds the calculated elements whose flags to delete
+     * @return the number of flags deleted
+     * @throws DataAccessException (unchecked)
+     */
+    public int deleteCalculatedFlagRange(@Param("stationId") final int stationId,
+            @Param("beginDatetimeId") final int beginDatetimeId, @Param("endDatetimeId") final int endDatetimeId,
+            @Param("maxRows") final int maxRows, @Param("elementIds") final int... elementIds)
+            throws DataAccessException;
+
+    /**
+     * Deletes at most maxRows facts of calculated elements for a station within a range of datetimes in a single
+     * statement. Ids of elements which are not calculated are ignored. Returns the number of rows deleted, so must be
+     * run on a non-batch executor.
+     * @param stationId the station whose facts to delete
+     * @param beginDatetimeId the beginning of the range of datetimes
+     * @param endDatetimeId the end of the range of datetimes
+     * @param maxRows the maximum number of rows to delete
+     * @param elementIds the calculated elements whose facts to delete
+     * @return the number of facts deleted
+     * @throws DataAccessException (unchecked)
+     */
+    public int deleteCalculatedFactRange(@Param("stationId") final int stationId,
+            @Param("beginDatetimeId") final int beginDatetimeId, @Param("endDatetimeId") final int endDatetimeId,
+            @Param("maxRows") final int maxRows, @Param("elementIds") final int... elementIds)
+            throws DataAccessException;
+
 }
@@ -3,7 +3,9 @@ package gov.noaa.ncdc.crn.persistence;
 import gov.noaa.ncdc.crn.domain.Observation;
 import gov.noaa.ncdc.crn.domain.StationDate;
 
+import java.sql.Timestamp;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.annotations.MapKey;
@@ -187,6 +189,52 @@ public interface ObservationMapper {
             @Param("beginDatetimeId") final int beginDatetimeId, @Param("endDatetimeId") int endDatetimeId)
             throws DataAccessException;
 
+    /**
+     * Deletes at most maxRows ob_loadlogs for a station within a range of datetimes in a single statement (
+     * {@code ROWNUM <= maxRows}). Returns the number of rows deleted, so must be run on a non-batch executor.
+     * @param stationId the station whose ob_loadlogs to delete
+     * @param beginDatetimeId the beginning of the range of datetimes
+     * @param endDatetimeId the end of the range of datetimes
+     * @param maxRows the maximum number of rows to delete
+     * @return the number of ob_loadlogs deleted
+     * @throws DataAccessException (unchecked)
+     */
+    public abstract int deleteObLoadlogRange(@Param("stationId") final int stationId,
+            @Param("beginDatetimeId") final int beginDatetimeId, @Param("endDatetimeId") final int endDatetimeId,
+            @Param("maxRows") final int maxRows) throws DataAccessException;
+
+    /**
+     * Deletes at most maxRows observations for a station within a range of datetimes in a single statement (
+     * {@code ROWNUM <= maxRows}). The observations' facts, flags and ob_loadlogs must be deleted first. Returns the
+     * number of rows deleted, so must be run on a non-batch executor.
+     * @param stationId the station whose observations to delete
+     * @param beginDatetimeId the beginning of the range of datetimes
+     * @param endDatetimeId the end of the range of datetimes
+     * @param maxRows the maximum number of rows to delete
+     * @return the number of observations deleted
+     * @throws DataAccessException (unchecked)
+     */
+    public abstract int deleteObservationRange(@Param("stationId") final int stationId,
+            @Param("beginDatetimeId") final int beginDatetimeId, @Param("endDatetimeId") final int endDatetimeId,
+            @Param("maxRows") final int maxRows) throws DataAccessException;
+
+    /**
+     * Returns at most limit Observations, across all stations, whose modification time (the later of last_mod and
+     * time_loaded) follows a position in the order modification time, stationId, datetimeId: those modified after
+     * since, and those modified at since with a (stationId, datetimeId) after (afterStationId, afterDatetimeId).
+     * Ordered by modification time, stationId, datetimeId, so the last Observation returned is the position from
+     * which to select the next page.
+     * @param since the modification time of the position
+     * @param afterStationId the stationId of the position
+     * @param afterDatetimeId the datetimeId of the position
+     * @param limit the maximum number of Observations to return ({@code ROWNUM <= limit})
+     * @return the Observations following the position in modification order
+     * @throws DataAccessException (unchecked)
+     */
+    public abstract List<Observation> selectObservationsModifiedSince(@Param("since") final Timestamp since,
+            @Param("afterStationId") final int afterStationId, @Param("afterDatetimeId") final int afterDatetimeId,
+            @Param("limit") final int limit) throws DataAccessException;
+
     /**
      * Inserts an Observation, without values, flags, or ob_loadlog into the database. Updates relevant database load
      * times with current UTC timestamp. Expects that there are no constraint violations present. Throws a
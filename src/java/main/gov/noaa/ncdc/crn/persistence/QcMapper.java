@@ -3,6 +3,7 @@ package gov.noaa.ncdc.crn.persistence;
 import gov.noaa.ncdc.crn.domain.QcDeltaParam;
 import gov.noaa.ncdc.crn.domain.QcRangeParam;
 
+import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.annotations.MapKey;
@@ -18,4 +19,16 @@ public interface QcMapper {
     public abstract Map<Integer, QcRangeParam> selectRangeParams(@Param("streamId") final int streamId,
             @Param("stationId") final int stationId, @Param("month") final int month);
 
+    /**
+     * Retrieves every QC range parameter, unresolved; streamId, stationId and month are -1 where not specified
+     * @return a List{@code <QcRangeParam>} of all QC range parameters
+     */
+    public abstract List<QcRangeParam> selectAllRangeParams();
+
+    /**
+     * Retrieves every QC delta parameter, unresolved; streamId, stationId and month are -1 where not specified
+     * @return a List{@code <QcDeltaParam>} of all QC delta parameters
+     */
+    public abstract List<QcDeltaParam> selectAllDeltaParams();
+
 }
@@ -0,0 +1,317 @@
+package gov.noaa.ncdc.crn.service;
+
+import gov.noaa.ncdc.crn.dao.ElementDao;
+import gov.noaa.ncdc.crn.dao.ObservationDao;
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.Observation;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * An in-memory snapshot of the current (most recent) Observation of every station and of the current values of the
+ * elements listed in {@code crn.current.elementIds}, so "latest ob" reads are map lookups instead of the network-wide
+ * current observation query.
+ * <p>
+ * The snapshot is loaded on first use and then refreshed in the background every {@code crn.current.refreshSeconds}
+ * (default 300; 0 disables the schedule) and after the commit of observation inserts made through ObservationService.
+ * Refreshes after inserts load the whole network, so they are held back until {@code crn.current.minRefreshSeconds}
+ * (default 30) after the previous load, and the inserts committed meanwhile share one refresh.
+ * Each refresh publishes a new immutable snapshot, so readers never block and never see a partial refresh; a failed
+ * refresh is logged and the previous snapshot stays in use, so check {@link #getAgeMillis()} when freshness matters.
+ * The Observations and ElementValues themselves are shared by all readers and must not be modified.
+ */
+@Service
+public class CurrentConditionsSnapshot implements DisposableBean {
+    @Autowired
+    private ObservationDao observationDao;
+    @Autowired
+    private ElementDao elementDao;
+
+    private static final Log LOG = LogFactory.getLog(CurrentConditionsSnapshot.class);
+    private long refreshSeconds = 300;
+    private long minRefreshMillis = 30000;
+    private Set<Integer> elementIds = ImmutableSet.of();
+
+    private volatile Snapshot snapshot;
+    /** serializes loads so an older snapshot never replaces a newer one, and the start of the scheduler */
+    private final Object loadLock = new Object();
+    private volatile ScheduledExecutorService scheduler;
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+
+    public CurrentConditionsSnapshot() {
+    }
+
+    // for unit tests
+    CurrentConditionsSnapshot(ObservationDao observationDao, ElementDao elementDao) {
+        this.observationDao = observationDao;
+        this.elementDao = elementDao;
+    }
+
+    /**
+     * Sets the number of seconds between background refreshes; 0 refreshes only on insert or {@link #refresh()}.
+     * Defaults to 300.
+     * @param refreshSeconds the seconds between refreshes; must not be negative
+     */
+    @Value("${crn.current.refreshSeconds:300}")
+    public void setRefreshSeconds(long refreshSeconds) {
+        Preconditions.checkArgument(refreshSeconds >= 0, "refreshSeconds must not be negative");
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    /**
+     * Sets the least number of seconds between the previous load and a refresh after inserts; inserts committed sooner
+     * are refreshed together once the interval has passed. Defaults to 30.
+     * @param minRefreshSeconds the least seconds between loads when refreshing after inserts; must not be negative
+     */
+    @Value("${crn.current.minRefreshSeconds:30}")
+    public void setMinRefreshSeconds(long minRefreshSeconds) {
+        Preconditions.checkArgument(minRefreshSeconds >= 0, "minRefreshSeconds must not be negative");
+        this.minRefreshMillis = TimeUnit.SECONDS.toMillis(minRefreshSeconds);
+    }
+
+    /**
+     * Sets the elements whose current values are held in the snapshot, as a comma separated list of element ids.
+     * Defaults to none.
+     * @param elementIds comma separated element ids, e.g. "439,440"
+     * @throws NumberFormatException if an id is not an integer
+     */
+    @Value("${crn.current.elementIds:}")
+    public void setElementIds(String elementIds) {
+        ImmutableSet.Builder<Integer> ids = ImmutableSet.builder();
+        for (String id : Splitter.on(',').trimResults().omitEmptyStrings().split(elementIds)) {
+            ids.add(Integer.valueOf(id));
+        }
+        this.elementIds = ids.build();
+    }
+
+    /**
+     * Returns the most recent Observation of each station, mapped by stationId
+     * @return an immutable Map{@code <Integer,Observation>} of the most recent Observations
+     * @throws DataAccessException (unchecked) if the snapshot has not been loaded and loading it fails
+     */
+    public Map<Integer, Observation> getCurrentObservations() throws DataAccessException {
+        return snapshot().observations;
+    }
+
+    /**
+     * Returns the most recent Observations of certain stations, mapped by stationId; stations without an Observation
+     * are omitted
+     * @param stationIds the stations to retrieve
+     * @return a Map{@code <Integer,Observation>} of the most recent Observations of the stations
+     * @throws DataAccessException (unchecked) if the snapshot has not been loaded and loading it fails
+     */
+    public Map<Integer, Observation> getCurrentObservations(Collection<Integer> stationIds) throws DataAccessException {
+        Map<Integer, Observation> current = snapshot().observations;
+        Map<Integer, Observation> obs = new HashMap<>();
+        for (Integer stationId : stationIds) {
+            Observation ob = current.get(stationId);
+            if (ob != null) {
+                obs.put(stationId, ob);
+            }
+        }
+        return obs;
+    }
+
+    /**
+     * Returns the most recent Observation of a station
+     * @param stationId the station to retrieve
+     * @return the most recent Observation of the station, or null if it has none
+     * @throws DataAccessException (unchecked) if the snapshot has not been loaded and loading it fails
+     */
+    public Observation getCurrentObservation(int stationId) throws DataAccessException {
+        return snapshot().observations.get(stationId);
+    }
+
+    /**
+     * Returns the current value of an element for each station, mapped by stationId. Elements not listed in
+     * {@code crn.current.elementIds} are not held in the snapshot and are read from the database.
+     * @param elementId the element requested
+     * @return a Map{@code <Integer,ElementValue>} mapping stationId to ElementValue
+     * @throws DataAccessException (unchecked)
+     */
+    public Map<Integer, ElementValue> getCurrentElementValues(int elementId) throws DataAccessException {
+        Map<Integer, ElementValue> values = snapshot().values.get(elementId);
+        return values != null ? values : elementDao.getCurrentElementValues(elementId);
+    }
+
+    /**
+     * Returns the number of milliseconds since the snapshot in use was loaded
+     * @return the age of the snapshot in milliseconds, or -1 if it has not been loaded yet
+     */
+    public long getAgeMillis() {
+        Snapshot current = snapshot;
+        return current == null ? -1 : System.currentTimeMillis() - current.loadedAt;
+    }
+
+    /**
+     * Loads and publishes a new snapshot now
+     * @throws DataAccessException (unchecked) if loading fails; the previous snapshot stays in use
+     */
+    public void refresh() throws DataAccessException {
+        synchronized (loadLock) {
+            snapshot = load();
+            startScheduler();
+        }
+    }
+
+    /**
+     * Refreshes the snapshot in the background once the current transaction commits, or right away when there is no
+     * transaction, though no sooner than {@code crn.current.minRefreshSeconds} after the previous load. Requests made
+     * while a refresh is pending are combined. Does nothing if the snapshot has not been loaded yet, as it will be
+     * loaded when first read.
+     */
+    public void refreshAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    requestRefresh();
+                }
+            });
+        } else {
+            requestRefresh();
+        }
+    }
+
+    private void requestRefresh() {
+        // the scheduler starts with the first load; not locking keeps committing threads from waiting on a refresh
+        ScheduledExecutorService current = scheduler;
+        if (current == null || !refreshPending.compareAndSet(false, true)) {
+            return;
+        }
+        Snapshot loaded = snapshot;
+        long delay = loaded == null ? 0 : Math.max(0, loaded.loadedAt + minRefreshMillis - System.currentTimeMillis());
+        try {
+            current.schedule(new Refresh(), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shut down
+            refreshPending.set(false);
+        }
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (loadLock) {
+                current = snapshot;
+                if (current == null) {
+                    current = load();
+                    snapshot = current;
+                    startScheduler();
+                }
+            }
+        }
+        return current;
+    }
+
+    private Snapshot load() {
+        long start = System.currentTimeMillis();
+        Map<Integer, Observation> observations = observationDao.getCurrentObservations();
+        Map<Integer, Map<Integer, ElementValue>> valuesByElement = new HashMap<>();
+        if (!elementIds.isEmpty()) {
+            for (ElementValue value : elementDao.getCurrentElementValues(elementIds).values()) {
+                Map<Integer, ElementValue> values = valuesByElement.get(value.getElementId());
+                if (values == null) {
+                    values = new HashMap<>();
+                    valuesByElement.put(value.getElementId(), values);
+                }
+                values.put(value.getStationId(), value);
+            }
+        }
+        ImmutableMap.Builder<Integer, Map<Integer, ElementValue>> values = ImmutableMap.builder();
+        for (Integer elementId : elementIds) {
+            Map<Integer, ElementValue> elementValues = valuesByElement.get(elementId);
+            values.put(elementId, elementValues == null ? ImmutableMap.<Integer, ElementValue> of() : ImmutableMap
+                    .copyOf(elementValues));
+        }
+        Snapshot loaded = new Snapshot(ImmutableMap.copyOf(observations), values.build(), start);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("loaded current conditions for " + observations.size() + " stations in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+        return loaded;
+    }
+
+    // call holding loadLock
+    private void startScheduler() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "CurrentConditionsSnapshot-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (refreshSeconds > 0) {
+            scheduler.scheduleWithFixedDelay(new Refresh(), refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        synchronized (loadLock) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+        }
+    }
+
+    private class Refresh implements Runnable {
+        @Override
+        public void run() {
+            refreshPending.set(false);
+            try {
+                synchronized (loadLock) {
+                    snapshot = load();
+                }
+            } catch (RuntimeException e) {
+                // keep serving the previous snapshot; its age shows it is stale
+                LOG.error("current conditions refresh failed; snapshot is " + getAgeMillis() + " ms old", e);
+            }
+        }
+    }
+
+    /**
+     * An immutable copy of the current conditions
+     */
+    private static class Snapshot {
+        private final Map<Integer, Observation> observations;
+        /** elementId to stationId to ElementValue */
+        private final Map<Integer, Map<Integer, ElementValue>> values;
+        private final long loadedAt;
+
+        Snapshot(Map<Integer, Observation> observations, Map<Integer, Map<Integer, ElementValue>> values,
+                long loadedAt) {
+            this.observations = observations;
+            this.values = values;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -11,9 +11,6 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import com.google.common.base.Predicates;
-import com.google.common.collect.Maps;
-
 @Service
 public class ElementService {
     @Autowired
@@ -35,7 +32,7 @@ public class ElementService {
      * @throws DataAccessException (unchecked)
      */
     public Map<Integer, Element> getElements(Collection<Integer> elementIds) throws DataAccessException {
-        return Maps.filterKeys(elementDao.getElements(), Predicates.in(elementIds));
+        return elementDao.getElementCatalog().getElements(elementIds);
     }
 
     /**
@@ -54,7 +51,7 @@ public class ElementService {
      * @throws DataAccessException (unchecked)
      */
     public Map<String, Element> getElementsByName(Collection<String> names) throws DataAccessException {
-        return Maps.filterKeys(elementDao.getElementsByName(), Predicates.in(names));
+        return elementDao.getElementCatalog().getElementsByName(names);
     }
 
     /**
@@ -6,6 +6,7 @@ import gov.noaa.ncdc.crn.dao.ObservationDao;
 import gov.noaa.ncdc.crn.domain.CrnException;
 import gov.noaa.ncdc.crn.domain.CrnExceptionFact;
 import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueChanges;
 import gov.noaa.ncdc.crn.domain.ExceptionReapply;
 import gov.noaa.ncdc.crn.domain.ExceptionResolution;
 import gov.noaa.ncdc.crn.domain.ExceptionResolutionFact;
@@ -174,15 +175,16 @@ public class ExceptionService {
 
     /**
      * Updates facts and flags with new data and updates timestamps in fact, flag, and observation tables. Calculated
-     * values can be deleted, but observed values can only be updated or inserted. TODO see if can use merge instead of
-     * update/delete
+     * values can be deleted, but observed values can only be updated or inserted. Only values which differ from the
+     * database are written, so reapplying unchanged values does not touch their timestamps.
      * @param elementValues The values to be updated. If a calculated fact should be deleted, ElementValue.value should
      * be null.
+     * @return a summary of the inserts, changes, and deletes written
      */
     @Transactional
-    public void updateFacts(Collection<ElementValue> elementValues) {
+    public ElementValueChanges updateFacts(Collection<ElementValue> elementValues) {
         Preconditions.checkNotNull(elementValues, "elementValues not nullable");
-        observationDao.updateElementValues(elementValues);
+        return observationDao.upsertElementValues(elementValues);
     }
 
 }
@@ -0,0 +1,557 @@
+package gov.noaa.ncdc.crn.service;
+
+import gov.noaa.ncdc.crn.domain.DatetimeRange;
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueBlock;
+import gov.noaa.ncdc.crn.domain.Observation;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+import gov.noaa.ncdc.crn.domain.StationDateElement;
+import gov.noaa.ncdc.crn.util.DatetimeCodec;
+import gov.noaa.ncdc.crn.util.TimeUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Reads the binary archive of a station's hourly data which {@link ObservationArchiveWriter} writes, answering the
+ * range queries of {@link ObservationService} from files instead of the database. The archive is partitioned by
+ * station and UTC month, as {@code <directory>/<stationId>/<yyyymm>.crna}; each partition is memory-mapped once and
+ * decoded straight from the mapping, so a scan of a station's period of record reads no more than the files. The
+ * mappings of the most recently read partitions are kept, up to a maximum number, and the others left to be unmapped.
+ * <p>
+ * A partition holds the hours ending 01Z on the first of the month through 00Z on the first of the next, the hours of
+ * {@link TimeUtils#computeLstDateTimeRange(String, int)} at offset 0. Its layout, all big-endian:
+ * <ul>
+ * <li>header: magic "CRNA", version, stationId, the first datetimeId and number of hours of the month, and the
+ * ascending element ids of its values</li>
+ * <li>the Observations as columns: the hours as offsets from the first datetimeId, stream ids, data source ids, line
+ * numbers, indexes into a file name table, the four times in epoch milliseconds, then the file name table</li>
+ * <li>a column per element: its number of values; the hour offsets, scales, decimal places and published decimal
+ * places as fixed-width columns; then, per value, the flag int as a varint and the unscaled value as a zigzag varint of
+ * its difference from the element's previous non-null value</li>
+ * <li>footer: the offset of the Observations and the element id, offset and number of values of each column, then
+ * the offset of the footer and the magic again</li>
+ * </ul>
+ * Values of months which are not archived are not returned; see {@link #getMissingMonths(int, int, int)}. Thread-safe.
+ */
+public class ObservationArchive {
+    /** the file extension of a partition */
+    public static final String EXTENSION = ".crna";
+    static final int MAGIC = 0x43524E41;
+    static final int VERSION = 1;
+    /** marks a null scale or decimal places */
+    static final byte NULL_BYTE = -1;
+    /** marks a null time or file name index */
+    static final long NULL_TIME = Long.MIN_VALUE;
+    static final int NULL_INDEX = -1;
+    /** the bytes of one Observation in the fixed-width observation columns */
+    static final int OBSERVATION_BYTES = 2 + 4 + 4 + 4 + 4 + 4 * 8;
+    /** the bytes of one value in the fixed-width element columns */
+    static final int VALUE_BYTES = 2 + 1 + 1 + 1;
+    /** the default number of partitions whose mappings are kept */
+    public static final int DEFAULT_MAX_PARTITIONS = 256;
+
+    private final File directory;
+    private final Cache<File, Partition> partitions;
+
+    /**
+     * Creates a reader of an archive which keeps the mappings of up to {@value #DEFAULT_MAX_PARTITIONS} partitions
+     * @param directory the directory of the archive
+     */
+    public ObservationArchive(final File directory) {
+        this(directory, DEFAULT_MAX_PARTITIONS);
+    }
+
+    /**
+     * Creates a reader of an archive
+     * @param directory the directory of the archive
+     * @param maxPartitions the number of partitions whose mappings are kept; the least recently read are dropped
+     */
+    public ObservationArchive(final File directory, final int maxPartitions) {
+        this.directory = Preconditions.checkNotNull(directory, "directory not nullable");
+        Preconditions.checkArgument(maxPartitions >= 0, "maxPartitions must not be negative");
+        partitions = CacheBuilder.newBuilder().maximumSize(maxPartitions).build();
+    }
+
+    /**
+     * Returns the file of a station's month
+     * @param directory the directory of the archive
+     * @param stationId the station
+     * @param yyyymm the UTC month
+     * @return the partition file, which may not exist
+     */
+    public static File getPartitionFile(File directory, int stationId, String yyyymm) {
+        Preconditions.checkArgument(yyyymm.length() == 6, "not yyyymm: %s", yyyymm);
+        return new File(new File(directory, Integer.toString(stationId)), yyyymm + EXTENSION);
+    }
+
+    /**
+     * Returns the UTC month of a datetimeId, as a partition is named
+     * @param datetimeId the datetimeId of an hour
+     * @return the month as yyyymm to which the hour belongs, as {@link TimeUtils#getObservationMonth(String)}
+     */
+    public static String getMonth(int datetimeId) {
+        return TimeUtils.getObservationMonth(DatetimeCodec.format(datetimeId));
+    }
+
+    /**
+     * Returns true if a station's month is archived
+     * @param stationId the station
+     * @param yyyymm the UTC month
+     * @return true if the partition file exists
+     */
+    public boolean isArchived(int stationId, String yyyymm) {
+        return getPartitionFile(directory, stationId, yyyymm).isFile();
+    }
+
+    /**
+     * Returns the months of a range which are not archived for a station, so a caller can read those from
+     * {@link ObservationService} instead
+     * @param beginDatetimeId the beginning datetimeId
+     * @param endDatetimeId the end datetimeId
+     * @param stationId the station
+     * @return the UTC months as yyyymm with no partition, in order
+     */
+    public List<String> getMissingMonths(int beginDatetimeId, int endDatetimeId, int stationId) {
+        List<String> missing = new ArrayList<>();
+        for (String month : months(beginDatetimeId, endDatetimeId)) {
+            if (!isArchived(stationId, month)) {
+                missing.add(month);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Returns the archived ObservationWithData of a station for a range, as
+     * {@link ObservationService#getObservationsWithData(int, int, int)}
+     * @param beginDatetimeId the beginning datetimeId
+     * @param endDatetimeId the end datetimeId
+     * @param stationId the station
+     * @return the ObservationWithData in datetime order; an hour with no values has null ElementValues
+     * @throws IOException if a partition can not be read or is not an archive
+     */
+    public List<ObservationWithData> getObservationsWithData(int beginDatetimeId, int endDatetimeId, int stationId)
+            throws IOException {
+        Preconditions.checkArgument(endDatetimeId >= beginDatetimeId, "end datetime before begin datetime");
+        List<ObservationWithData> obs = new ArrayList<>();
+        for (String month : months(beginDatetimeId, endDatetimeId)) {
+            Partition partition = partition(stationId, month);
+            if (partition != null) {
+                partition.readObservations(beginDatetimeId, endDatetimeId, obs);
+            }
+        }
+        return obs;
+    }
+
+    /**
+     * Returns the archived ElementValues of a station for a range, as
+     * {@link ObservationService#getElementValues(int, int, int, Collection)}
+     * @param beginDatetimeId the beginning datetimeId
+     * @param endDatetimeId the end datetimeId
+     * @param stationId the station
+     * @param elementIds the elements to return values for; if null, all elements
+     * @return a Map{@code <StationDateElement,ElementValue>} of the values
+     * @throws IOException if a partition can not be read or is not an archive
+     */
+    public Map<StationDateElement, ElementValue> getElementValues(int beginDatetimeId, int endDatetimeId,
+            int stationId, Collection<Integer> elementIds) throws IOException {
+        ElementValueBlock block = getElementValueBlock(beginDatetimeId, endDatetimeId, stationId, elementIds);
+        Map<StationDateElement, ElementValue> values = new HashMap<>(block.size() * 4 / 3 + 1);
+        for (int row = 0; row < block.size(); row++) {
+            ElementValue value = block.toElementValue(row);
+            values.put(value.getStaDateElement(), value);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the archived ElementValues of a station for a range as a columnar ElementValueBlock, as
+     * {@link ObservationService#getElementValueBlock(int, int, int, Collection)}, without creating an object per value
+     * @param beginDatetimeId the beginning datetimeId
+     * @param endDatetimeId the end datetimeId
+     * @param stationId the station
+     * @param elementIds the elements to return values for; if null, all elements
+     * @return the values in datetime, then element, order
+     * @throws IOException if a partition can not be read or is not an archive
+     */
+    public ElementValueBlock getElementValueBlock(int beginDatetimeId, int endDatetimeId, int stationId,
+            Collection<Integer> elementIds) throws IOException {
+        Preconditions.checkArgument(endDatetimeId >= beginDatetimeId, "end datetime before begin datetime");
+        ElementValueBlock block = new ElementValueBlock();
+        for (String month : months(beginDatetimeId, endDatetimeId)) {
+            Partition partition = partition(stationId, month);
+            if (partition != null) {
+                partition.readValues(beginDatetimeId, endDatetimeId, elementIds, block);
+            }
+        }
+        return block;
+    }
+
+    private static List<String> months(int beginDatetimeId, int endDatetimeId) {
+        List<String> months = new ArrayList<>();
+        int datetimeId = beginDatetimeId;
+        while (datetimeId <= endDatetimeId) {
+            String month = getMonth(datetimeId);
+            months.add(month);
+            datetimeId = TimeUtils.computeLstDateTimeRange(month, 0).getEnd() + 1;
+        }
+        return months;
+    }
+
+    /** Returns the mapped partition, mapping it again if the file has been rewritten, or null if there is none */
+    private Partition partition(int stationId, String month) throws IOException {
+        File file = getPartitionFile(directory, stationId, month);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            partitions.invalidate(file);
+            return null;
+        }
+        Partition partition = partitions.getIfPresent(file);
+        if (partition == null || !partition.isCurrent(attributes)) {
+            partition = new Partition(file, attributes, stationId, month);
+            partitions.put(file, partition);
+        }
+        return partition;
+    }
+
+    /**
+     * A memory-mapped partition. Only absolute gets are made on the mapping, so it is shared between threads. Every
+     * offset is checked against the mapping before it is read, so a truncated or corrupt file raises an IOException.
+     */
+    private static final class Partition {
+        private final File file;
+        // a rewritten partition is a new file, so its key differs even if its time and size do not
+        private final Object fileKey;
+        private final FileTime lastModified;
+        private final long length;
+        private final ByteBuffer buffer;
+        private final int stationId;
+        private final int begin;
+        private final int hours;
+        private final int[] elementIds;
+        private final int[] columnOffsets;
+        private final int[] columnCounts;
+        /** the end of each column's varints, the offset of the next column or of the footer */
+        private final int[] columnEnds;
+        private final int observationOffset;
+        private final int observationCount;
+        private final String[] fileNames;
+
+        private Partition(File file, BasicFileAttributes attributes, int stationId, String month)
+                throws IOException {
+            this.file = file;
+            fileKey = attributes.fileKey();
+            lastModified = attributes.lastModifiedTime();
+            length = attributes.size();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+                // the mapping remains valid after the channel is closed
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            int size = buffer.capacity();
+            if (size < 32 || buffer.getInt(0) != MAGIC || buffer.getInt(size - 4) != MAGIC) {
+                throw new IOException("not an observation archive: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("unsupported archive version " + buffer.getInt(4) + ": " + file);
+            }
+            this.stationId = buffer.getInt(8);
+            begin = buffer.getInt(12);
+            hours = buffer.getInt(16);
+            DatetimeRange range = TimeUtils.computeLstDateTimeRange(month, 0);
+            if (this.stationId != stationId || begin != range.getBegin() || hours != range.size()) {
+                throw new IOException("archive of station " + this.stationId + " from " + begin + " found at " + file);
+            }
+            int elementCount = buffer.getInt(20);
+            check(elementCount >= 0 && 24 + 4L * elementCount <= size, "element count");
+            elementIds = new int[elementCount];
+            for (int i = 0; i < elementIds.length; i++) {
+                elementIds[i] = buffer.getInt(24 + 4 * i);
+            }
+            int footer = buffer.getInt(size - 8);
+            // the footer is the offsets of the Observations and of each column, then its own offset and the magic
+            check(footer >= 24 + 4L * elementCount && footer + 16 + 12L * elementCount == size, "footer offset");
+            observationOffset = buffer.getInt(footer);
+            if (buffer.getInt(footer + 4) != elementIds.length) {
+                throw new IOException("archive footer does not match its header: " + file);
+            }
+            check(observationOffset == 24 + 4 * elementCount, "observation offset");
+            columnOffsets = new int[elementIds.length];
+            columnCounts = new int[elementIds.length];
+            for (int i = 0; i < elementIds.length; i++) {
+                int entry = footer + 8 + 12 * i;
+                if (buffer.getInt(entry) != elementIds[i]) {
+                    throw new IOException("archive footer does not match its header: " + file);
+                }
+                columnOffsets[i] = buffer.getInt(entry + 4);
+                columnCounts[i] = buffer.getInt(entry + 8);
+            }
+            observationCount = buffer.getInt(observationOffset);
+            check(observationCount >= 0 && observationCount <= hours, "observation count");
+            int names = observationOffset + 4 + observationCount * OBSERVATION_BYTES;
+            check(names + 4L <= footer, "observation columns");
+            int fileNameCount = buffer.getInt(names);
+            check(fileNameCount >= 0 && fileNameCount <= observationCount, "file name count");
+            fileNames = new String[fileNameCount];
+            int position = names + 4;
+            for (int i = 0; i < fileNames.length; i++) {
+                check(position + 4L <= footer, "file name table");
+                int length = buffer.getInt(position);
+                check(length >= 0 && position + 4L + length <= footer, "file name table");
+                byte[] bytes = new byte[length];
+                for (int b = 0; b < bytes.length; b++) {
+                    bytes[b] = buffer.get(position + 4 + b);
+                }
+                fileNames[i] = new String(bytes, StandardCharsets.UTF_8);
+                position += 4 + bytes.length;
+            }
+            // the columns follow the file name table in element order, each ending where the next begins
+            columnEnds = new int[elementIds.length];
+            for (int i = 0; i < elementIds.length; i++) {
+                int offset = columnOffsets[i];
+                int end = i + 1 < elementIds.length ? columnOffsets[i + 1] : footer;
+                check(offset >= position && offset <= end && end <= footer, "column offset");
+                int count = columnCounts[i];
+                check(count >= 0 && offset + 4L + (long) count * VALUE_BYTES <= end && buffer.getInt(offset) == count,
+                        "column of element " + elementIds[i]);
+                columnEnds[i] = end;
+                position = end;
+            }
+        }
+
+        private void check(boolean valid, String what) throws IOException {
+            if (!valid) {
+                throw new IOException("corrupt observation archive, bad " + what + ": " + file);
+            }
+        }
+
+        private boolean isCurrent(BasicFileAttributes attributes) {
+            return Objects.equals(fileKey, attributes.fileKey()) && lastModified.equals(attributes.lastModifiedTime())
+                    && length == attributes.size();
+        }
+
+        private void readObservations(int beginDatetimeId, int endDatetimeId, List<ObservationWithData> obs)
+                throws IOException {
+            int from = Math.max(beginDatetimeId - begin, 0);
+            int to = Math.min(endDatetimeId - begin, hours - 1);
+            if (from > to || observationCount == 0) {
+                return;
+            }
+            // the values of the hours read, by datetime then element
+            ElementValueBlock block = new ElementValueBlock();
+            readValues(begin + from, begin + to, null, block);
+            int row = 0;
+            int columns = observationOffset + 4;
+            int first = firstIndex(columns, observationCount, from);
+            for (int i = first; i < observationCount; i++) {
+                int hour = offset(columns, i);
+                if (hour > to) {
+                    break;
+                }
+                int datetimeId = begin + hour;
+                Observation ob = observation(columns, i, datetimeId);
+                while (row < block.size() && block.getDatetimeId(row) < datetimeId) {
+                    row++;
+                }
+                Map<Integer, ElementValue> values = null;
+                for (; row < block.size() && block.getDatetimeId(row) == datetimeId; row++) {
+                    if (values == null) {
+                        values = new HashMap<>();
+                    }
+                    values.put(block.getElementId(row), block.toElementValue(row));
+                }
+                obs.add(new ObservationWithData(ob, values));
+            }
+        }
+
+        private Observation observation(int columns, int i, int datetimeId) throws IOException {
+            int count = observationCount;
+            int streams = columns + 2 * count;
+            int sources = streams + 4 * count;
+            int lines = sources + 4 * count;
+            int names = lines + 4 * count;
+            int times = names + 4 * count;
+            int name = buffer.getInt(names + 4 * i);
+            check(name == NULL_INDEX || name >= 0 && name < fileNames.length, "file name index");
+            Observation ob = new Observation(stationId, datetimeId, buffer.getInt(streams + 4 * i), buffer
+                    .getInt(sources + 4 * i), name == NULL_INDEX ? null : fileNames[name], buffer.getInt(lines + 4
+                    * i));
+            ob.setInitialLoad(time(times + 8 * i));
+            ob.setLastModified(time(times + 8 * (count + i)));
+            ob.setTimeExportedToIsd(time(times + 8 * (2 * count + i)));
+            ob.setTimeLoaded(time(times + 8 * (3 * count + i)));
+            return ob;
+        }
+
+        private Timestamp time(int position) {
+            long millis = buffer.getLong(position);
+            return millis == NULL_TIME ? null : new Timestamp(millis);
+        }
+
+        private void readValues(int beginDatetimeId, int endDatetimeId, Collection<Integer> selected,
+                ElementValueBlock block) throws IOException {
+            int from = Math.max(beginDatetimeId - begin, 0);
+            int to = Math.min(endDatetimeId - begin, hours - 1);
+            if (from > to) {
+                return;
+            }
+            List<Column> columns = new ArrayList<>();
+            for (int i = 0; i < elementIds.length; i++) {
+                if (columnCounts[i] > 0 && (selected == null || selected.contains(elementIds[i]))) {
+                    Column column = new Column(elementIds[i], columnOffsets[i], columnCounts[i], columnEnds[i]);
+                    column.skipTo(from);
+                    if (column.hasNext() && column.hour() <= to) {
+                        columns.add(column);
+                    }
+                }
+            }
+            // merge the columns, which are in element order, into datetime then element order
+            while (!columns.isEmpty()) {
+                int hour = Integer.MAX_VALUE;
+                for (Column column : columns) {
+                    hour = Math.min(hour, column.hour());
+                }
+                for (int c = 0; c < columns.size();) {
+                    Column column = columns.get(c);
+                    if (column.hour() == hour) {
+                        column.readInto(block);
+                        if (!column.hasNext() || column.hour() > to) {
+                            columns.remove(c);
+                            continue;
+                        }
+                    }
+                    c++;
+                }
+            }
+        }
+
+        private int offset(int offsets, int i) {
+            return buffer.getShort(offsets + 2 * i) & 0xFFFF;
+        }
+
+        /** Returns the index of the first of count ascending hour offsets at or after an hour */
+        private int firstIndex(int offsets, int count, int hour) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = low + (high - low) / 2;
+                if (offset(offsets, mid) < hour) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /** A cursor over one element's column, decoding its varints in order */
+        private final class Column {
+            private final int elementId;
+            private final int count;
+            private final int offsets;
+            private final int scales;
+            private final int places;
+            private final int publishedPlaces;
+            private final int end;
+            private int index;
+            private int position;
+            private long previous;
+
+            private Column(int elementId, int offset, int count, int end) {
+                this.elementId = elementId;
+                this.count = count;
+                this.end = end;
+                offsets = offset + 4;
+                scales = offsets + 2 * count;
+                places = scales + count;
+                publishedPlaces = places + count;
+                position = publishedPlaces + count;
+            }
+
+            private boolean hasNext() {
+                return index < count;
+            }
+
+            private int hour() {
+                return offset(offsets, index);
+            }
+
+            private void skipTo(int hour) throws IOException {
+                // the varints before must be decoded to know the previous value
+                while (hasNext() && hour() < hour) {
+                    readVarLong();
+                    if (buffer.get(scales + index) != NULL_BYTE) {
+                        previous += zigzag(readVarLong());
+                    }
+                    index++;
+                }
+            }
+
+            private void readInto(ElementValueBlock block) throws IOException {
+                int datetimeId = begin + hour();
+                int flags = (int) readVarLong();
+                byte scale = buffer.get(scales + index);
+                Integer decimalPlaces = place(places + index);
+                Integer publishedDecimalPlaces = place(publishedPlaces + index);
+                if (scale == NULL_BYTE) {
+                    block.add(stationId, datetimeId, elementId, (BigDecimal) null, flags, decimalPlaces,
+                            publishedDecimalPlaces);
+                } else {
+                    previous += zigzag(readVarLong());
+                    block.add(stationId, datetimeId, elementId, previous, scale, flags, decimalPlaces,
+                            publishedDecimalPlaces);
+                }
+                index++;
+            }
+
+            private Integer place(int position) {
+                byte place = buffer.get(position);
+                return place == NULL_BYTE ? null : Integer.valueOf(place);
+            }
+
+            private long readVarLong() throws IOException {
+                long value = 0;
+                for (int shift = 0;; shift += 7) {
+                    check(position < end && shift < 64, "values of element " + elementId);
+                    byte b = buffer.get(position++);
+                    value |= (long) (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        return value;
+                    }
+                }
+            }
+        }
+
+        private static long zigzag(long encoded) {
+            return encoded >>> 1 ^ -(encoded & 1);
+        }
+
+        @Override
+        public String toString() {
+            return "Partition " + stationId + " " + begin + " " + Arrays.toString(elementIds);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package gov.noaa.ncdc.crn.service;
+
+import static gov.noaa.ncdc.crn.service.ObservationArchive.MAGIC;
+import static gov.noaa.ncdc.crn.service.ObservationArchive.NULL_BYTE;
+import static gov.noaa.ncdc.crn.service.ObservationArchive.NULL_INDEX;
+import static gov.noaa.ncdc.crn.service.ObservationArchive.NULL_TIME;
+import static gov.noaa.ncdc.crn.service.ObservationArchive.VERSION;
+import gov.noaa.ncdc.crn.domain.DatetimeRange;
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueBlock;
+import gov.noaa.ncdc.crn.domain.Observation;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+import gov.noaa.ncdc.crn.util.TimeUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Writes a station's month of hourly data to the archive which {@link ObservationArchive} reads; see it for the
+ * layout. A partition is written to a temporary file and moved into place, so a reader never maps a partial file.
+ * Months which are later corrected in the database are archived again by rewriting the partition. Thread-safe as long
+ * as no two threads write the same partition.
+ */
+public class ObservationArchiveWriter {
+    private static final Comparator<ObservationWithData> DATETIME_ORDER = new Comparator<ObservationWithData>() {
+        @Override
+        public int compare(ObservationWithData o1, ObservationWithData o2) {
+            return Integer.compare(o1.getDatetimeId(), o2.getDatetimeId());
+        }
+    };
+
+    private final File directory;
+
+    /**
+     * Creates a writer of an archive
+     * @param directory the directory of the archive, which is created if need be
+     */
+    public ObservationArchiveWriter(final File directory) {
+        this.directory = Preconditions.checkNotNull(directory, "directory not nullable");
+    }
+
+    /**
+     * Archives a station's month as it is in the database
+     * @param service the ObservationService to read the month from
+     * @param stationId the station
+     * @param yyyymm the UTC month
+     * @return the number of hours archived
+     * @throws IOException if the partition can not be written
+     */
+    public int archive(ObservationService service, int stationId, String yyyymm) throws IOException {
+        DatetimeRange range = TimeUtils.computeLstDateTimeRange(yyyymm, 0);
+        List<ObservationWithData> obs = service.getObservationsWithData(range.getBegin(), range.getEnd(), stationId);
+        write(stationId, yyyymm, obs);
+        return obs.size();
+    }
+
+    /**
+     * Writes a station's month, replacing any partition already written
+     * @param stationId the station
+     * @param yyyymm the UTC month
+     * @param obs the ObservationWithData of the month, in any order
+     * @return the partition file written
+     * @throws IOException if the partition can not be written
+     * @throws IllegalArgumentException if an ObservationWithData is not of the station and month or repeats an hour,
+     *             or if a value can not be represented as a {@code long} at a scale of 0 to 127
+     */
+    public File write(int stationId, String yyyymm, Collection<ObservationWithData> obs) throws IOException {
+        DatetimeRange range = TimeUtils.computeLstDateTimeRange(yyyymm, 0);
+        int begin = range.getBegin();
+        List<ObservationWithData> sorted = new ArrayList<>(obs);
+        Collections.sort(sorted, DATETIME_ORDER);
+        // the values of each element, in datetime order
+        SortedMap<Integer, ElementValueBlock> columns = new TreeMap<>();
+        int previous = Integer.MIN_VALUE;
+        for (ObservationWithData owd : sorted) {
+            int datetimeId = owd.getDatetimeId();
+            Preconditions.checkArgument(owd.getStationId() == stationId && range.contains(datetimeId),
+                    "hour %s of station %s is not in %s of station %s", datetimeId, owd.getStationId(), yyyymm,
+                    stationId);
+            Preconditions.checkArgument(datetimeId != previous, "hour %s repeated", datetimeId);
+            previous = datetimeId;
+            Map<Integer, ElementValue> values = owd.getElementValues();
+            if (values == null) {
+                continue;
+            }
+            for (ElementValue value : values.values()) {
+                if (value == null) {
+                    continue;
+                }
+                ElementValueBlock column = columns.get(value.getElementId());
+                if (column == null) {
+                    column = new ElementValueBlock();
+                    columns.put(value.getElementId(), column);
+                }
+                checkPlaces(value.getDecimalPlaces());
+                checkPlaces(value.getPublishedDecimalPlaces());
+                column.add(value);
+            }
+        }
+
+        File file = ObservationArchive.getPartitionFile(directory, stationId, yyyymm);
+        Path parent = file.getParentFile().toPath();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, yyyymm, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(stationId);
+                out.writeInt(begin);
+                out.writeInt(range.size());
+                out.writeInt(columns.size());
+                for (Integer elementId : columns.keySet()) {
+                    out.writeInt(elementId);
+                }
+                int observationOffset = out.size();
+                writeObservations(out, sorted, begin);
+                Map<Integer, Integer> columnOffsets = new HashMap<>();
+                for (Map.Entry<Integer, ElementValueBlock> column : columns.entrySet()) {
+                    columnOffsets.put(column.getKey(), out.size());
+                    writeColumn(out, column.getValue(), begin);
+                }
+                int footerOffset = out.size();
+                out.writeInt(observationOffset);
+                out.writeInt(columns.size());
+                for (Map.Entry<Integer, ElementValueBlock> column : columns.entrySet()) {
+                    out.writeInt(column.getKey());
+                    out.writeInt(columnOffsets.get(column.getKey()));
+                    out.writeInt(column.getValue().size());
+                }
+                out.writeInt(footerOffset);
+                out.writeInt(MAGIC);
+            }
+            Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return file;
+    }
+
+    private static void checkPlaces(Integer places) {
+        Preconditions.checkArgument(places == null || places >= 0 && places <= Byte.MAX_VALUE,
+                "decimal places out of range: %s", places);
+    }
+
+    private static void writeObservations(DataOutputStream out, List<ObservationWithData> obs, int begin)
+            throws IOException {
+        out.writeInt(obs.size());
+        for (ObservationWithData owd : obs) {
+            out.writeShort(owd.getDatetimeId() - begin);
+        }
+        for (ObservationWithData owd : obs) {
+            out.writeInt(owd.getObservation().getStreamId());
+        }
+        for (ObservationWithData owd : obs) {
+            out.writeInt(owd.getObservation().getDataSourceId());
+        }
+        for (ObservationWithData owd : obs) {
+            Integer lineNumber = owd.getObservation().getLineNumber();
+            out.writeInt(lineNumber == null ? 0 : lineNumber);
+        }
+        // file names repeat across a month's hours, so are written once
+        List<String> fileNames = new ArrayList<>();
+        Map<String, Integer> fileNameIndexes = new HashMap<>();
+        for (ObservationWithData owd : obs) {
+            String fileName = owd.getObservation().getFileName();
+            if (fileName == null) {
+                out.writeInt(NULL_INDEX);
+                continue;
+            }
+            Integer index = fileNameIndexes.get(fileName);
+            if (index == null) {
+                index = fileNames.size();
+                fileNames.add(fileName);
+                fileNameIndexes.put(fileName, index);
+            }
+            out.writeInt(index);
+        }
+        for (ObservationWithData owd : obs) {
+            writeTime(out, owd.getObservation().getInitialLoad());
+        }
+        for (ObservationWithData owd : obs) {
+            writeTime(out, owd.getObservation().getLastModified());
+        }
+        for (ObservationWithData owd : obs) {
+            writeTime(out, owd.getObservation().getTimeExportedToIsd());
+        }
+        for (ObservationWithData owd : obs) {
+            writeTime(out, owd.getObservation().getTimeLoaded());
+        }
+        out.writeInt(fileNames.size());
+        for (String fileName : fileNames) {
+            byte[] bytes = fileName.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void writeTime(DataOutputStream out, Timestamp time) throws IOException {
+        out.writeLong(time == null ? NULL_TIME : time.getTime());
+    }
+
+    private static void writeColumn(DataOutputStream out, ElementValueBlock column, int begin) throws IOException {
+        int count = column.size();
+        out.writeInt(count);
+        for (int row = 0; row < count; row++) {
+            out.writeShort(column.getDatetimeId(row) - begin);
+        }
+        for (int row = 0; row < count; row++) {
+            out.writeByte(column.isNull(row) ? NULL_BYTE : column.getScale(row));
+        }
+        for (int row = 0; row < count; row++) {
+            writePlaces(out, column.getDecimalPlaces(row));
+        }
+        for (int row = 0; row < count; row++) {
+            writePlaces(out, column.getPublishedDecimalPlaces(row));
+        }
+        // consecutive hours of an element differ little, so their differences take a byte or two as varints
+        long previous = 0;
+        for (int row = 0; row < count; row++) {
+            writeVarLong(out, column.getFlags(row) & 0xFFFFFFFFL);
+            if (!column.isNull(row)) {
+                long unscaled = column.getUnscaledValue(row);
+                // wraps on overflow, as the reader's sum does
+                long delta = unscaled - previous;
+                writeVarLong(out, delta << 1 ^ delta >> 63);
+                previous = unscaled;
+            }
+        }
+    }
+
+    private static void writePlaces(DataOutputStream out, Integer places) throws IOException {
+        out.writeByte(places == null ? NULL_BYTE : places);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
@@ -0,0 +1,404 @@
+package gov.noaa.ncdc.crn.service;
+
+import gov.noaa.ncdc.crn.dao.ResultCallback;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.dao.DuplicateKeyException;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * {@code ObservationIngestPipeline} writes ObservationWithData to the database behind the caller, so decoding can
+ * overlap database writes. Submitted observations are sharded by station id across a fixed number of writer threads,
+ * each with its own bounded queue; a full queue blocks {@link #submit(ObservationWithData)} (backpressure), and a
+ * slow batch only holds up the stations of its own shard.
+ * <p>
+ * Each writer groups its observations into batches of up to batchSize, closing a batch early once maxBatchDelayMillis
+ * have passed since its first observation arrived, and writes each batch in its own transaction through
+ * {@link ObservationService#insertObservations(java.util.Collection)}. When a batch fails on a duplicate key, its
+ * observations are retried one at a time so the duplicates are isolated. The outcome of every batch is passed to the
+ * callback on the writer's thread.
+ * <p>
+ * Call {@link #shutdown()} and {@link #awaitTermination(long, TimeUnit)} to write the remaining observations and stop
+ * the writers.
+ */
+public class ObservationIngestPipeline {
+    private static final Log LOG = LogFactory.getLog(ObservationIngestPipeline.class);
+
+    private final ObservationService observationService;
+    private final ResultCallback<BatchResult> callback;
+    private final int batchSize;
+    private final long maxBatchDelayNanos;
+    private final List<BlockingQueue<ObservationWithData>> queues;
+    private final List<Thread> writers;
+    /** number of callers between their check of closed and the end of their put */
+    private final AtomicInteger submitting = new AtomicInteger();
+    private final AtomicLong observationsWritten = new AtomicLong();
+    private final AtomicLong valuesWritten = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a pipeline and starts its writer threads
+     * @param observationService the service the observations are written through; should be the transactional Spring
+     * bean
+     * @param writerCount the number of writer threads, and so of station shards
+     * @param queueCapacity the number of observations each writer's queue holds before submit blocks
+     * @param batchSize the maximum number of observations written per transaction
+     * @param maxBatchDelayMillis the longest a batch waits to fill once it has its first observation
+     * @param callback receives the outcome of each batch on the writer's thread
+     */
+    public ObservationIngestPipeline(ObservationService observationService, int writerCount, int queueCapacity,
+            int batchSize, long maxBatchDelayMillis, ResultCallback<BatchResult> callback) {
+        Preconditions.checkNotNull(observationService, "observationService not nullable");
+        Preconditions.checkNotNull(callback, "callback not nullable");
+        Preconditions.checkArgument(writerCount > 0, "writerCount must be positive");
+        Preconditions.checkArgument(queueCapacity > 0, "queueCapacity must be positive");
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+        Preconditions.checkArgument(maxBatchDelayMillis >= 0, "maxBatchDelayMillis must be nonnegative");
+        this.observationService = observationService;
+        this.callback = callback;
+        this.batchSize = batchSize;
+        this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+        queues = new ArrayList<>(writerCount);
+        writers = new ArrayList<>(writerCount);
+        for (int shard = 0; shard < writerCount; shard++) {
+            BlockingQueue<ObservationWithData> queue = new ArrayBlockingQueue<>(queueCapacity);
+            queues.add(queue);
+            Thread writer = new Thread(new Writer(shard, queue), "ObservationIngestPipeline-writer-" + shard);
+            writer.setDaemon(true);
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+    }
+
+    /**
+     * Queues the observation for writing, waiting while its shard's queue is full
+     * @param observation the observation to write
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the pipeline has been shut down
+     */
+    public void submit(ObservationWithData observation) throws InterruptedException {
+        Preconditions.checkNotNull(observation, "observation not nullable");
+        submitting.incrementAndGet();
+        try {
+            checkOpen();
+            queueFor(observation).put(observation);
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Queues the observation for writing, waiting up to timeout while its shard's queue is full
+     * @param observation the observation to write
+     * @param timeout how long to wait
+     * @param unit the unit of timeout
+     * @return true if the observation was queued, false if the queue was still full after timeout
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the pipeline has been shut down
+     */
+    public boolean offer(ObservationWithData observation, long timeout, TimeUnit unit) throws InterruptedException {
+        Preconditions.checkNotNull(observation, "observation not nullable");
+        submitting.incrementAndGet();
+        try {
+            checkOpen();
+            return queueFor(observation).offer(observation, timeout, unit);
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("ObservationIngestPipeline has been shut down");
+        }
+    }
+
+    private BlockingQueue<ObservationWithData> queueFor(ObservationWithData observation) {
+        return queues.get((observation.getStationId() & Integer.MAX_VALUE) % queues.size());
+    }
+
+    /**
+     * Stops accepting observations; those already queued are still written
+     */
+    public void shutdown() {
+        closed = true;
+    }
+
+    /**
+     * Returns true once {@link #shutdown()} has been called
+     * @return true if the pipeline no longer accepts observations
+     */
+    public boolean isShutdown() {
+        return closed;
+    }
+
+    /**
+     * Waits for the writers to write the queued observations and stop after {@link #shutdown()}
+     * @param timeout how long to wait
+     * @param unit the unit of timeout
+     * @return true if all writers stopped, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread writer : writers) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                TimeUnit.NANOSECONDS.timedJoin(writer, remaining);
+            }
+            if (writer.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of observations waiting in the writers' queues
+     * @return the number of queued observations
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (BlockingQueue<ObservationWithData> queue : queues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the number of observations written successfully
+     * @return the number of observations written
+     */
+    public long getObservationsWritten() {
+        return observationsWritten.get();
+    }
+
+    /**
+     * Returns the number of ElementValues of the observations written successfully
+     * @return the number of values written
+     */
+    public long getValuesWritten() {
+        return valuesWritten.get();
+    }
+
+    /**
+     * Returns the number of batches written, whether or not they succeeded
+     * @return the number of batches written
+     */
+    public long getBatchesWritten() {
+        return batchesWritten.get();
+    }
+
+    /**
+     * Returns the number of observations written per second since the pipeline was created
+     * @return observations written per second
+     */
+    public double getRowsPerSecond() {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed <= 0 ? 0 : observationsWritten.get() * 1e9 / elapsed;
+    }
+
+    /**
+     * Writes the batch, isolating duplicates when it fails on a duplicate key, and reports the outcome
+     */
+    private void write(int shard, List<ObservationWithData> batch) {
+        long start = System.nanoTime();
+        List<ObservationWithData> written = new ArrayList<>(batch.size());
+        List<ObservationWithData> duplicates = new ArrayList<>();
+        List<ObservationWithData> failed = new ArrayList<>();
+        RuntimeException failure = null;
+        try {
+            observationService.insertObservations(batch);
+            written.addAll(batch);
+        } catch (DuplicateKeyException e) {
+            // the batch was rolled back; retry singly so only the duplicates are lost
+            for (ObservationWithData observation : batch) {
+                try {
+                    observationService.insertObservation(observation);
+                    written.add(observation);
+                } catch (DuplicateKeyException duplicate) {
+                    duplicates.add(observation);
+                } catch (RuntimeException other) {
+                    failed.add(observation);
+                    failure = other;
+                }
+            }
+        } catch (RuntimeException e) {
+            failed.addAll(batch);
+            failure = e;
+        }
+        long values = 0;
+        for (ObservationWithData observation : written) {
+            if (observation.getElementValues() != null) {
+                values += observation.getElementValues().size();
+            }
+        }
+        observationsWritten.addAndGet(written.size());
+        valuesWritten.addAndGet(values);
+        batchesWritten.incrementAndGet();
+        BatchResult result = new BatchResult(shard, written, duplicates, failed, failure, System.nanoTime() - start);
+        if (failure != null) {
+            LOG.warn("failed writing " + failed.size() + " observations in shard " + shard, failure);
+        }
+        try {
+            callback.handle(result);
+        } catch (RuntimeException e) {
+            LOG.error("ObservationIngestPipeline callback failed", e);
+        }
+    }
+
+    /**
+     * Drains one shard's queue into batches until the pipeline is shut down and nothing more can arrive
+     */
+    private final class Writer implements Runnable {
+        private final int shard;
+        private final BlockingQueue<ObservationWithData> queue;
+
+        private Writer(int shard, BlockingQueue<ObservationWithData> queue) {
+            this.shard = shard;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            long idleWaitNanos = Math.max(maxBatchDelayNanos, TimeUnit.MILLISECONDS.toNanos(10));
+            try {
+                while (true) {
+                    ObservationWithData first = queue.poll(idleWaitNanos, TimeUnit.NANOSECONDS);
+                    if (first == null) {
+                        if (closed && submitting.get() == 0 && queue.isEmpty()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    List<ObservationWithData> batch = new ArrayList<>(batchSize);
+                    batch.add(first);
+                    long deadline = System.nanoTime() + maxBatchDelayNanos;
+                    while (batch.size() < batchSize) {
+                        if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                            continue;
+                        }
+                        long remaining = deadline - System.nanoTime();
+                        // once shut down, don't hold a partial batch waiting for more
+                        if (remaining <= 0 || closed) {
+                            break;
+                        }
+                        ObservationWithData next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    write(shard, batch);
+                }
+            } catch (InterruptedException e) {
+                LOG.warn("ObservationIngestPipeline writer " + shard + " interrupted with " + queue.size()
+                        + " observations queued");
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The outcome of writing one batch. Observations are either written, duplicates (already in the database), or
+     * failed for another reason given by {@link #getFailure()}.
+     */
+    public static class BatchResult {
+        private final int shard;
+        private final List<ObservationWithData> written;
+        private final List<ObservationWithData> duplicates;
+        private final List<ObservationWithData> failed;
+        private final RuntimeException failure;
+        private final long elapsedNanos;
+
+        BatchResult(int shard, List<ObservationWithData> written, List<ObservationWithData> duplicates,
+                List<ObservationWithData> failed, RuntimeException failure, long elapsedNanos) {
+            this.shard = shard;
+            this.written = Collections.unmodifiableList(written);
+            this.duplicates = Collections.unmodifiableList(duplicates);
+            this.failed = Collections.unmodifiableList(failed);
+            this.failure = failure;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns the index of the writer which wrote the batch
+         * @return the writer's shard
+         */
+        public int getShard() {
+            return shard;
+        }
+
+        /**
+         * Returns the observations written successfully
+         * @return the observations written
+         */
+        public List<ObservationWithData> getWritten() {
+            return written;
+        }
+
+        /**
+         * Returns the observations not written because they were already in the database
+         * @return the duplicate observations
+         */
+        public List<ObservationWithData> getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * Returns the observations not written for a reason other than a duplicate key
+         * @return the failed observations
+         */
+        public List<ObservationWithData> getFailed() {
+            return failed;
+        }
+
+        /**
+         * Returns the last exception other than a duplicate key, or null if there was none
+         * @return the failure, or null
+         */
+        public RuntimeException getFailure() {
+            return failure;
+        }
+
+        /**
+         * Returns true if every observation of the batch was written
+         * @return true if nothing was a duplicate or failed
+         */
+        public boolean isSuccess() {
+            return duplicates.isEmpty() && failed.isEmpty();
+        }
+
+        /**
+         * Returns the time taken to write the batch, including any retries
+         * @return the elapsed time in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("shard", shard).add("written", written.size())
+                    .add("duplicates", duplicates.size()).add("failed", failed.size()).add("failure", failure)
+                    .toString();
+        }
+    }
+}
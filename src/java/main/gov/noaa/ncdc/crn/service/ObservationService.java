@@ -1,8 +1,14 @@
 package gov.noaa.ncdc.crn.service;
 
+import gov.noaa.ncdc.crn.dao.ChangeToken;
 import gov.noaa.ncdc.crn.dao.ElementDao;
+import gov.noaa.ncdc.crn.dao.ObservationChanges;
 import gov.noaa.ncdc.crn.dao.ObservationDao;
+import gov.noaa.ncdc.crn.dao.RangeDeleteDao;
+import gov.noaa.ncdc.crn.dao.RangeDeleteResult;
+import gov.noaa.ncdc.crn.dao.ResultCallback;
 import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueBlock;
 import gov.noaa.ncdc.crn.domain.Observation;
 import gov.noaa.ncdc.crn.domain.ObservationWithData;
 import gov.noaa.ncdc.crn.domain.StationDateElement;
@@ -19,7 +25,11 @@ import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
@@ -32,6 +42,12 @@ public class ObservationService {
     private ObservationDao observationDao;
     @Autowired
     private ElementDao elementDao;
+    @Autowired
+    private RangeDeleteDao rangeDeleteDao;
+    @Autowired
+    private CurrentConditionsSnapshot currentConditions;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     private static Log LOG = LogFactory.getLog(ObservationService.class);
     // maximum number of observation hours to allow
@@ -53,6 +69,7 @@ public class ObservationService {
     @Transactional
     public void insertObservation(ObservationWithData observation) throws DataAccessException {
         observationDao.insertObservation(observation);
+        currentConditions.refreshAfterCommit();
     }
 
     /**
@@ -72,6 +89,7 @@ public class ObservationService {
     @Transactional
     public void insertObservations(Collection<ObservationWithData> observations) throws DataAccessException {
         observationDao.insertObservations(observations);
+        currentConditions.refreshAfterCommit();
     }
 
     /**
@@ -109,6 +127,22 @@ public class ObservationService {
 
     }
 
+    /**
+     * Deletes a range of Observations for several stations from the database, including all facts, flags, and
+     * obloadlogs, for example before reprocessing a period of record. Stations are deleted in parallel and each table
+     * in chunks committed in their own transactions (see crn.delete.maxRowsPerTransaction), so this does not join the
+     * caller's transaction. If it fails part way, calling it again completes the delete.
+     * @param stationIds The stations whose observations are to be deleted
+     * @param beginDatetimeId The beginning of the range of datetimeIds to be deleted
+     * @param endDatetimeId The end of the range of datetimeIds to be deleted
+     * @return the number of rows removed from each table
+     * @throws DataAccessException (unchecked)
+     */
+    public RangeDeleteResult deleteObservationRanges(Collection<Integer> stationIds, int beginDatetimeId,
+            int endDatetimeId) throws DataAccessException {
+        return rangeDeleteDao.deleteObservations(stationIds, beginDatetimeId, endDatetimeId);
+    }
+
     /**
      * Deletes a Collection{@code <Observation>} from the database, including all facts, flags, and obloadlogs.
      * @param observations The Observations to be deleted
@@ -179,13 +213,86 @@ public class ObservationService {
         return obsList;
     }
 
+    /**
+     * Streams the ObservationWithData for a station for a time period to the callback in datetime order; includes all
+     * the observed and calculated values currently in the database. Unlike
+     * {@link #getObservationsWithData(int, int, int)} the range is not limited, so a station's full period of record
+     * can be read in one pass; memory use is bounded by the implementation's window of Observations plus one hour of
+     * values rather than by the length of the range.
+     * @param beginDatetimeId The beginning time of observation
+     * @param endDatetimeId The end time of observation
+     * @param stationId The station
+     * @param callback receives each ObservationWithData in datetime order
+     * @throws DataAccessException (unchecked)
+     */
+    @Transactional
+    public void streamObservationsWithData(int beginDatetimeId, int endDatetimeId, int stationId,
+            ResultCallback<ObservationWithData> callback) throws DataAccessException {
+        Preconditions.checkArgument(endDatetimeId >= beginDatetimeId, "end datetime before begin datetime");
+        observationDao.streamObservationsWithData(beginDatetimeId, endDatetimeId, stationId, callback);
+    }
+
+    /**
+     * Returns a page of the Observations, across all stations, loaded or modified after a token, ordered by
+     * modification time. Start from {@link ChangeToken#since(java.util.Date)} with a watermark and continue from
+     * {@link ObservationChanges#getNextToken()}; store the token ({@link ChangeToken#toString()}) to resume later, so
+     * only changes are read instead of rescanning ranges.
+     * <p>
+     * Modification times are assigned when rows are written but become visible when their transaction commits, so a
+     * consumer which must not miss slow transactions should resume from a token a little behind the last one read.
+     * @param from the position after which to read changes
+     * @param pageSize the maximum number of Observations to return
+     * @param includeValues true to include each Observation's ElementValues
+     * @return the page of changes and the token for the next page
+     * @throws DataAccessException (unchecked)
+     */
+    @Transactional
+    public ObservationChanges getObservationChanges(ChangeToken from, int pageSize, boolean includeValues)
+            throws DataAccessException {
+        return observationDao.getObservationChanges(from, pageSize, includeValues);
+    }
+
+    /**
+     * Streams all the Observations, across all stations, loaded or modified after a token to the callback in
+     * modification order, reading a page at a time; see {@link #getObservationChanges(ChangeToken, int, boolean)}.
+     * Each page is read in its own transaction, so a long stream holds neither a transaction nor more than one page.
+     * @param from the position after which to read changes
+     * @param pageSize the number of Observations read at a time
+     * @param includeValues true to include each Observation's ElementValues
+     * @param callback receives each changed ObservationWithData in modification order
+     * @return the token from which to resume after the last change streamed
+     * @throws DataAccessException (unchecked)
+     */
+    public ChangeToken streamObservationChanges(ChangeToken from, final int pageSize, final boolean includeValues,
+            ResultCallback<ObservationWithData> callback) throws DataAccessException {
+        Preconditions.checkNotNull(callback, "callback is required");
+        // not @Transactional: a call to getObservationChanges from here would bypass the transactional proxy
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        ObservationChanges page;
+        ChangeToken token = from;
+        do {
+            final ChangeToken pageFrom = token;
+            page = transaction.execute(new TransactionCallback<ObservationChanges>() {
+                @Override
+                public ObservationChanges doInTransaction(TransactionStatus status) {
+                    return observationDao.getObservationChanges(pageFrom, pageSize, includeValues);
+                }
+            });
+            for (ObservationWithData ob : page.getObservations()) {
+                callback.handle(ob);
+            }
+            token = page.getNextToken();
+        } while (page.hasMore());
+        return token;
+    }
+
     /**
      * Provides a Map{@code <Integer, Map<Integer, ElementValue>>} for a single station (assumed). The outer map uses
      * datetimeId as the key, and the inner map uses elementId as the key.
      * @return Map{@code <Integer, Map<Integer,ElementValue>>} mapping datetimeId to elementId-mapped ElementValues so
      * you can retrieve all the element values for an hour
      */
-    private Map<Integer, Map<Integer, ElementValue>> convertValues(Map<StationDateElement, ElementValue> values) {
+    static Map<Integer, Map<Integer, ElementValue>> convertValues(Map<StationDateElement, ElementValue> values) {
         Map<Integer, Map<Integer, ElementValue>> converted = new HashMap<>();
         for (ElementValue value : values.values()) {
             Map<Integer, ElementValue> map = converted.get(value.getDatetimeId());
@@ -241,32 +348,52 @@ public class ObservationService {
 
     /**
      * Returns a Map{@code <Integer,Observation>} of most recent Observations for all stations; maps stationId to
-     * Observation.
+     * Observation. Served from the {@link CurrentConditionsSnapshot}; the map and Observations must not be modified.
      * @return A Map{@code <Integer,Observation>} of the most recent Observations for all stations
      * @throws DataAccessException (unchecked)
      */
     public Map<Integer, Observation> getCurrentObservations() throws DataAccessException {
-        return observationDao.getCurrentObservations();
+        return currentConditions.getCurrentObservations();
     }
 
     /**
      * Returns a Map{@code <Integer,Observation>} for current for certain stations; maps stationId to Observation.
+     * Served from the {@link CurrentConditionsSnapshot}.
      * @param stationIds the stations to retrieve
      * @return A Map{@code <Integer,Observation>} for the current observation for certain stations
      * @throws DataAccessException (unchecked)
      */
     public Map<Integer, Observation> getCurrentObservations(Collection<Integer> stationIds) throws DataAccessException {
-        return observationDao.getCurrentObservations(stationIds);
+        return currentConditions.getCurrentObservations(stationIds);
     }
 
     /**
-     * Returns the most recent Observation for a station
+     * Returns the most recent Observation for a station. Served from the {@link CurrentConditionsSnapshot}.
      * @param stationId the station to retrieve
      * @return the most recent Observation for a station
      * @throws DataAccessException (unchecked)
      */
     public Observation getCurrentObservation(int stationId) throws DataAccessException {
-        return observationDao.getCurrentObservation(stationId);
+        return currentConditions.getCurrentObservation(stationId);
+    }
+
+    /**
+     * Returns a Map{@code <Integer,ElementValue>} of the current value of an element for each station; maps stationId
+     * to ElementValue. Served from the {@link CurrentConditionsSnapshot} for the elements in crn.current.elementIds.
+     * @param elementId the element requested
+     * @return A Map{@code <Integer,ElementValue>} of the current values of the element
+     * @throws DataAccessException (unchecked)
+     */
+    public Map<Integer, ElementValue> getCurrentElementValues(int elementId) throws DataAccessException {
+        return currentConditions.getCurrentElementValues(elementId);
+    }
+
+    /**
+     * Returns how long ago the current observations served by this service were read from the database
+     * @return the age of the current conditions snapshot in milliseconds, or -1 if it has not been loaded yet
+     */
+    public long getCurrentConditionsAgeMillis() {
+        return currentConditions.getAgeMillis();
     }
 
     /**
@@ -371,7 +498,7 @@ public class ObservationService {
     public Predicate<ElementValue> IS_CALCULATED = new Predicate<ElementValue>() {
         @Override
         public boolean apply(ElementValue value) {
-            return elementDao.getElements().get(value.getElementId()).isCalculated();
+            return elementDao.getElementCatalog().isCalculated(value.getElementId());
         }
     };
 
@@ -392,6 +519,23 @@ public class ObservationService {
         return observationDao.deleteCalculatedValues(stationId, beginDatetimeId, endDatetimeId, elementIds);
     }
 
+    /**
+     * Delete specified calculated values for a range of datetimes for several stations. Stations are deleted in
+     * parallel and each table in chunks committed in their own transactions (see crn.delete.maxRowsPerTransaction),
+     * so this does not join the caller's transaction. If it fails part way, calling it again completes the delete.
+     * @param stationIds the stations whose facts and flags will be deleted
+     * @param beginDatetimeId the beginning datetime of the range of facts and flags to be deleted
+     * @param endDatetimeId the end datetime of the range of facts and flags to be deleted
+     * @param elementIds the ids of the calculated elements to be deleted; if the ids are not associated with calculated
+     * values, they will be ignored
+     * @return the number of rows removed from each table
+     * @throws DataAccessException (unchecked)
+     */
+    public RangeDeleteResult deleteCalculatedValueRanges(Collection<Integer> stationIds, int beginDatetimeId,
+            int endDatetimeId, int... elementIds) throws DataAccessException {
+        return rangeDeleteDao.deleteCalculatedValues(stationIds, beginDatetimeId, endDatetimeId, elementIds);
+    }
+
     /**
      * Retrieves from the database a Map{@code <Integer,ElementValue>} of values for a single station/date mapped by
      * elementId.
@@ -449,4 +593,27 @@ public class ObservationService {
         params.put("elementIds", elementIds);
         return elementDao.getElementValues(params);
     }
+
+    /**
+     * Retrieves ElementValues for a station/date range if the ids are in elementIds as a columnar ElementValueBlock.
+     * Selects the same values as {@link #getElementValues(int, int, int, Collection)} without creating an ElementValue,
+     * StationDateElement or Flags per value, which suits bulk reads of long ranges.
+     * @param beginDatetimeId the beginning datetimeId to retrieve the values for
+     * @param endDatetimeId the end datetimeId to retrieve the values for
+     * @param stationId the station to retrieve the values for
+     * @param elementIds the elements to retrieve values for; if null, all elements are retrieved
+     * @return an ElementValueBlock of the values
+     * @throws DataAccessException (unchecked)
+     */
+    public ElementValueBlock getElementValueBlock(int beginDatetimeId, int endDatetimeId, int stationId,
+            Collection<Integer> elementIds) throws DataAccessException {
+        Map<String, Object> params = new HashMap<>(4);
+        params.put("stationId", stationId);
+        params.put("begin", beginDatetimeId);
+        params.put("end", endDatetimeId);
+        if (elementIds != null) {
+            params.put("elementIds", elementIds);
+        }
+        return elementDao.getElementValueBlock(params);
+    }
 }
@@ -0,0 +1,398 @@
+package gov.noaa.ncdc.crn.service;
+
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueBlock;
+import gov.noaa.ncdc.crn.domain.FlagType;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+import gov.noaa.ncdc.crn.domain.QcDeltaParam;
+import gov.noaa.ncdc.crn.domain.QcParameterTable;
+import gov.noaa.ncdc.crn.util.TimeUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.google.common.base.Preconditions;
+import com.google.common.math.LongMath;
+
+/**
+ * {@code QcEngine} runs the range and delta QC checks over many values at once against a {@link QcParameterTable}.
+ * The range check sets {@link FlagType#RANGE} on a value outside the range parameter for its element, stream, station
+ * and month. The delta check compares the redundant sensors of a {@link QcDeltaParam} in the same hour, and sets
+ * {@link FlagType#DELTA} on a value which differs by more than the delta from every other sensor's value; when only
+ * two sensors report and they disagree, both are flagged.
+ * <p>
+ * Each check decides its flag afresh, setting or clearing it, on every value it applies to. Null values, values too
+ * large for a {@code long}, and values to which no parameter applies keep their flags. Only the values whose flags
+ * change are returned, ready for {@link ExceptionService#updateFlags(Collection)}. The month of an hour is that of
+ * the observation day, as in {@link TimeUtils#getObservationMonth(Calendar)}.
+ * <p>
+ * An engine is immutable and may be shared by threads; {@link #checkStations(List, ForkJoinPool)} checks stations in
+ * parallel.
+ */
+public class QcEngine {
+    private static final int RANGE = 1 << FlagType.RANGE.ordinal();
+    private static final int DELTA = 1 << FlagType.DELTA.ordinal();
+    /** the number of sensors compared by a delta parameter */
+    private static final int SENSORS = 3;
+
+    private final QcParameterTable table;
+
+    /**
+     * Creates an engine checking against a table of parameters
+     * @param table the QC parameters, e.g. from {@link gov.noaa.ncdc.crn.dao.QcDao#getQcParameterTable()}
+     */
+    public QcEngine(QcParameterTable table) {
+        this.table = Preconditions.checkNotNull(table, "table not nullable");
+    }
+
+    /**
+     * Checks observations, each against the parameters of its own stream and station, and updates the flags of their
+     * ElementValues
+     * @param observations the observations to check, in any order
+     * @return the ElementValues whose flags changed, ordered by observation and then elementId
+     */
+    public List<ElementValue> check(Collection<ObservationWithData> observations) {
+        List<ElementValue> changed = new ArrayList<>();
+        MonthCursor months = new MonthCursor();
+        Sample sample = new Sample();
+        for (ObservationWithData observation : observations) {
+            check(observation, months.monthOf(observation.getDatetimeId()), sample, changed);
+        }
+        return changed;
+    }
+
+    private void check(ObservationWithData observation, int month, Sample sample, List<ElementValue> changed) {
+        int streamId = observation.getObservation().getStreamId();
+        int stationId = observation.getStationId();
+        Map<Integer, ElementValue> values = observation.getElementValues();
+        if (values == null) {
+            return;
+        }
+        // the decided flags by elementId, ordered so that changes are returned by element
+        Map<Integer, Integer> decided = new TreeMap<>();
+        for (ElementValue value : values.values()) {
+            int row = table.findRange(value.getElementId(), streamId, stationId, month);
+            if (row != QcParameterTable.NONE && sample.read(value)) {
+                boolean outside = compare(sample.unscaled, sample.scale, table.getRangeLo(row)) < 0
+                        || compare(sample.unscaled, sample.scale, table.getRangeHi(row)) > 0;
+                decided.put(value.getElementId(), withFlag(value.getFlagInt(), RANGE, outside));
+            }
+        }
+        ElementValue[] group = new ElementValue[SENSORS];
+        long[] unscaled = new long[SENSORS];
+        int[] scales = new int[SENSORS];
+        for (ElementValue leader : values.values()) {
+            int row = table.findDelta(leader.getElementId(), streamId, stationId, month);
+            if (row == QcParameterTable.NONE) {
+                continue;
+            }
+            int count = 0;
+            for (int elementId : table.getDeltaParam(row).getElementIds()) {
+                ElementValue value = values.get(elementId);
+                if (value != null && sample.read(value)) {
+                    group[count] = value;
+                    unscaled[count] = sample.unscaled;
+                    scales[count++] = sample.scale;
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                int elementId = group[i].getElementId();
+                Integer flags = decided.get(elementId);
+                boolean flagged = differs(unscaled, scales, count, i, table.getDelta(row));
+                decided.put(elementId, withFlag(flags != null ? flags : group[i].getFlagInt(), DELTA, flagged));
+            }
+        }
+        for (Map.Entry<Integer, Integer> entry : decided.entrySet()) {
+            ElementValue value = values.get(entry.getKey());
+            int flags = entry.getValue();
+            if (flags != value.getFlagInt()) {
+                value.getFlags().setFlagged(FlagType.RANGE, (flags & RANGE) != 0);
+                value.getFlags().setFlagged(FlagType.DELTA, (flags & DELTA) != 0);
+                changed.add(value);
+            }
+        }
+    }
+
+    /**
+     * Checks each station's observations as a separate task on a fork-join pool and updates the flags of their
+     * ElementValues
+     * @param stations the observations of each station; each collection is checked by one task
+     * @param pool the pool to run the tasks on
+     * @return the ElementValues whose flags changed, in the order of stations and then as for
+     * {@link #check(Collection)}
+     */
+    public List<ElementValue> checkStations(List<? extends Collection<ObservationWithData>> stations,
+            ForkJoinPool pool) {
+        Preconditions.checkNotNull(pool, "pool not nullable");
+        if (stations.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return pool.invoke(new StationsTask(stations, 0, stations.size()));
+    }
+
+    /**
+     * Checks a columnar block of values observed in one stream and updates its flags in place. Rows are grouped by
+     * station and hour for the delta check; a block already ordered by station and datetime is not reordered.
+     * @param block the values to check
+     * @param streamId the stream in which all of the values were observed
+     * @return the rows whose flags changed
+     */
+    public BitSet check(ElementValueBlock block, int streamId) {
+        int[] order = groupedOrder(block);
+        BitSet changed = new BitSet();
+        MonthCursor months = new MonthCursor();
+        long[] unscaled = new long[SENSORS];
+        int[] scales = new int[SENSORS];
+        int[] members = new int[SENSORS];
+        int[] read = new int[0];
+        int begin = 0;
+        while (begin < order.length) {
+            int stationId = block.getStationId(order[begin]);
+            int datetimeId = block.getDatetimeId(order[begin]);
+            int end = begin + 1;
+            while (end < order.length && block.getStationId(order[end]) == stationId
+                    && block.getDatetimeId(order[end]) == datetimeId) {
+                end++;
+            }
+            int month = months.monthOf(datetimeId);
+            if (read.length < end - begin) {
+                read = new int[end - begin];
+            }
+            for (int i = begin; i < end; i++) {
+                read[i - begin] = block.getFlags(order[i]);
+            }
+            for (int i = begin; i < end; i++) {
+                int row = order[i];
+                int param = table.findRange(block.getElementId(row), streamId, stationId, month);
+                if (param != QcParameterTable.NONE && !block.isNull(row)) {
+                    long value = block.getUnscaledValue(row);
+                    int scale = block.getScale(row);
+                    boolean outside = compare(value, scale, table.getRangeLo(param)) < 0
+                            || compare(value, scale, table.getRangeHi(param)) > 0;
+                    block.setFlags(row, withFlag(block.getFlags(row), RANGE, outside));
+                }
+            }
+            for (int i = begin; i < end; i++) {
+                int param = table.findDelta(block.getElementId(order[i]), streamId, stationId, month);
+                if (param == QcParameterTable.NONE) {
+                    continue;
+                }
+                int count = 0;
+                for (int elementId : table.getDeltaParam(param).getElementIds()) {
+                    for (int j = begin; j < end; j++) {
+                        int row = order[j];
+                        if (block.getElementId(row) == elementId && !block.isNull(row)) {
+                            members[count] = row;
+                            unscaled[count] = block.getUnscaledValue(row);
+                            scales[count++] = block.getScale(row);
+                            break;
+                        }
+                    }
+                }
+                for (int m = 0; m < count; m++) {
+                    boolean flagged = differs(unscaled, scales, count, m, table.getDelta(param));
+                    block.setFlags(members[m], withFlag(block.getFlags(members[m]), DELTA, flagged));
+                }
+            }
+            for (int i = begin; i < end; i++) {
+                if (block.getFlags(order[i]) != read[i - begin]) {
+                    changed.set(order[i]);
+                }
+            }
+            begin = end;
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the rows of the block ordered by station and datetime, in block order when it already is
+     */
+    private static int[] groupedOrder(final ElementValueBlock block) {
+        int size = block.size();
+        int[] order = new int[size];
+        boolean sorted = true;
+        for (int row = 0; row < size; row++) {
+            order[row] = row;
+            if (row > 0 && compareHour(block, row - 1, row) > 0) {
+                sorted = false;
+            }
+        }
+        if (sorted) {
+            return order;
+        }
+        Integer[] boxed = new Integer[size];
+        for (int row = 0; row < size; row++) {
+            boxed[row] = row;
+        }
+        // stable, so the rows of an hour keep their block order
+        Arrays.sort(boxed, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return compareHour(block, a, b);
+            }
+        });
+        for (int i = 0; i < size; i++) {
+            order[i] = boxed[i];
+        }
+        return order;
+    }
+
+    private static int compareHour(ElementValueBlock block, int a, int b) {
+        int byStation = Integer.compare(block.getStationId(a), block.getStationId(b));
+        return byStation != 0 ? byStation : Integer.compare(block.getDatetimeId(a), block.getDatetimeId(b));
+    }
+
+    private static int withFlag(int flags, int mask, boolean flagged) {
+        return flagged ? flags | mask : flags & ~mask;
+    }
+
+    /**
+     * Returns true if value i differs by more than delta from each of the other count - 1 values
+     */
+    private static boolean differs(long[] unscaled, int[] scales, int count, int i, long delta) {
+        if (count < 2) {
+            return false;
+        }
+        for (int j = 0; j < count; j++) {
+            if (j != i && !exceeds(unscaled[i], scales[i], unscaled[j], scales[j], delta)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if two values differ by more than a delta scaled by {@link QcParameterTable#SCALE}
+     */
+    private static boolean exceeds(long a, int aScale, long b, int bScale, long delta) {
+        if (delta == Long.MAX_VALUE) {
+            return false;
+        }
+        int scale = Math.max(QcParameterTable.SCALE, Math.max(aScale, bScale));
+        try {
+            long difference = LongMath.checkedSubtract(rescale(a, aScale, scale), rescale(b, bScale, scale));
+            return difference == Long.MIN_VALUE || Math.abs(difference) > rescale(delta, QcParameterTable.SCALE, scale);
+        } catch (ArithmeticException ae) {
+            BigDecimal difference = BigDecimal.valueOf(a, aScale).subtract(BigDecimal.valueOf(b, bScale)).abs();
+            return difference.compareTo(BigDecimal.valueOf(delta, QcParameterTable.SCALE)) > 0;
+        }
+    }
+
+    /**
+     * Compares a value with a bound scaled by {@link QcParameterTable#SCALE}; Long.MIN_VALUE and Long.MAX_VALUE are
+     * unbounded
+     */
+    private static int compare(long unscaled, int scale, long bound) {
+        if (bound == Long.MIN_VALUE) {
+            return 1;
+        }
+        if (bound == Long.MAX_VALUE) {
+            return -1;
+        }
+        try {
+            if (scale <= QcParameterTable.SCALE) {
+                return Long.compare(rescale(unscaled, scale, QcParameterTable.SCALE), bound);
+            }
+            return Long.compare(unscaled, rescale(bound, QcParameterTable.SCALE, scale));
+        } catch (ArithmeticException ae) {
+            return BigDecimal.valueOf(unscaled, scale).compareTo(BigDecimal.valueOf(bound, QcParameterTable.SCALE));
+        }
+    }
+
+    /**
+     * Returns an unscaled value at a larger scale
+     * @throws ArithmeticException on overflow
+     */
+    private static long rescale(long unscaled, int scale, int toScale) {
+        return toScale == scale ? unscaled : LongMath.checkedMultiply(unscaled, LongMath.checkedPow(10, toScale
+                - scale));
+    }
+
+    /**
+     * Reads the unscaled value and scale of an ElementValue without creating a BigDecimal
+     */
+    private static final class Sample {
+        private long unscaled;
+        private int scale;
+
+        /**
+         * Returns false if the value is null or too large for a long
+         */
+        private boolean read(ElementValue value) {
+            if (!value.hasValue()) {
+                return false;
+            }
+            try {
+                unscaled = value.longUnscaled();
+            } catch (ArithmeticException ae) {
+                return false;
+            }
+            scale = value.scale();
+            return true;
+        }
+    }
+
+    /**
+     * Computes the observation month of datetimeIds, reusing the last month's bounds for hours within it
+     */
+    private static final class MonthCursor {
+        /** first and last datetimeIds, inclusive, of the month last computed */
+        private int first = 1;
+        private int last = 0;
+        private int month;
+
+        private int monthOf(int datetimeId) {
+            if (datetimeId < first || datetimeId > last) {
+                // the hour ending at datetimeId is observed in the month of the hour before
+                Calendar calendar = TimeUtils.computeCalendarDate(datetimeId - 1);
+                month = calendar.get(Calendar.MONTH) + 1;
+                calendar.set(Calendar.DAY_OF_MONTH, 1);
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                first = TimeUtils.computeDateTimeId(calendar) + 1;
+                calendar.add(Calendar.MONTH, 1);
+                last = TimeUtils.computeDateTimeId(calendar);
+            }
+            return month;
+        }
+    }
+
+    /**
+     * Splits a list of stations in halves until each task checks one station
+     */
+    @SuppressWarnings("serial")
+    private final class StationsTask extends RecursiveTask<List<ElementValue>> {
+        private final List<? extends Collection<ObservationWithData>> stations;
+        private final int from;
+        private final int to;
+
+        private StationsTask(List<? extends Collection<ObservationWithData>> stations, int from, int to) {
+            this.stations = stations;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<ElementValue> compute() {
+            if (to - from == 1) {
+                return check(stations.get(from));
+            }
+            int middle = (from + to) >>> 1;
+            StationsTask left = new StationsTask(stations, from, middle);
+            left.fork();
+            List<ElementValue> right = new StationsTask(stations, middle, to).compute();
+            List<ElementValue> changed = new ArrayList<>(left.join());
+            changed.addAll(right);
+            return changed;
+        }
+    }
+}
@@ -0,0 +1,502 @@
+package gov.noaa.ncdc.crn.service;
+
+import gov.noaa.ncdc.crn.dao.ResultCallback;
+import gov.noaa.ncdc.crn.domain.ElementSummary;
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueBlock;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+import gov.noaa.ncdc.crn.domain.Station;
+import gov.noaa.ncdc.crn.util.DatetimeCodec;
+import gov.noaa.ncdc.crn.util.MathUtils;
+import gov.noaa.ncdc.crn.util.TimeUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.google.common.base.Preconditions;
+import com.google.common.math.LongMath;
+
+/**
+ * {@code RollupEngine} summarizes hourly ElementValues into local standard time (LST) days and months in one pass. Each
+ * element's count, sum, minimum and maximum are accumulated as unscaled longs, so no BigDecimal is created per value
+ * and no Collection of values is built. An hour belongs to the LST day of the hour before it, as in
+ * {@link TimeUtils#getObservationDay(String)}, with LST from {@link Station#getOffset()}; a month is its days.
+ * <p>
+ * The statistics are those of {@link MathUtils#sum}, {@link MathUtils#minimum}, {@link MathUtils#maximum} and
+ * {@link MathUtils#average}, including its rounding of means: half up for positive and half down for negative, to
+ * one place as {@link MathUtils#AVERAGE_10TH} or two as {@link MathUtils#AVERAGE_100TH}. Sums which overflow a long
+ * are carried on as BigDecimals. A period is complete when at least the completeness fraction of its hours have
+ * non-null values; an incomplete period reports its count but no statistics.
+ * <p>
+ * An engine is immutable and may be shared by threads. A {@link StationRollup} is not thread-safe;
+ * {@link #rollupStations(Map, ForkJoinPool)} rolls up stations in parallel, one task per station.
+ */
+public class RollupEngine {
+    /** hours from 1970-01-01 00Z to the CRN epoch */
+    private static final long EPOCH_HOURS = TimeUtils.CRN_EPOCH / TimeUtils.MILLISECS_PER_HOUR;
+    private static final long MILLISECS_PER_DAY = 24 * TimeUtils.MILLISECS_PER_HOUR;
+
+    /** the elements summarized, sorted */
+    private final int[] elementIds;
+    /** the decimal places of each element's average */
+    private final int[] averageScales;
+    private final double completeness;
+
+    /**
+     * Creates an engine summarizing some elements
+     * @param averageScales the number of decimal places of the average of each element to summarize, by elementId;
+     * values of other elements are ignored
+     * @param completeness the fraction of a period's hours, from 0 to 1, which must have values for its statistics to
+     * be reported
+     */
+    public RollupEngine(Map<Integer, Integer> averageScales, double completeness) {
+        Preconditions.checkArgument(completeness >= 0 && completeness <= 1, "completeness out of range: %s",
+                completeness);
+        this.completeness = completeness;
+        elementIds = new int[averageScales.size()];
+        int i = 0;
+        for (int elementId : averageScales.keySet()) {
+            elementIds[i++] = elementId;
+        }
+        Arrays.sort(elementIds);
+        this.averageScales = new int[elementIds.length];
+        for (i = 0; i < elementIds.length; i++) {
+            this.averageScales[i] = averageScales.get(elementIds[i]);
+        }
+    }
+
+    /**
+     * Starts an empty rollup for a station, to be fed values, e.g. as the callback of
+     * {@link ObservationService#streamObservationsWithData(int, int, int, ResultCallback)}
+     * @param station the station, whose offset gives its LST
+     * @return a new StationRollup
+     */
+    public StationRollup newRollup(Station station) {
+        return new StationRollup(station);
+    }
+
+    /**
+     * Rolls up a station's observations
+     * @param station the station, whose offset gives its LST
+     * @param observations the station's observations, in any order
+     * @return the StationRollup of the observations
+     */
+    public StationRollup rollup(Station station, Iterable<ObservationWithData> observations) {
+        StationRollup rollup = new StationRollup(station);
+        for (ObservationWithData observation : observations) {
+            rollup.handle(observation);
+        }
+        return rollup;
+    }
+
+    /**
+     * Rolls up each station's observations as a separate task on a fork-join pool
+     * @param observations the observations of each station
+     * @param pool the pool to run the tasks on
+     * @return the StationRollup of each station, by stationId
+     */
+    public Map<Integer, StationRollup> rollupStations(
+            Map<Station, ? extends Iterable<ObservationWithData>> observations, ForkJoinPool pool) {
+        Preconditions.checkNotNull(pool, "pool not nullable");
+        List<Station> stations = new ArrayList<>(observations.keySet());
+        Map<Integer, StationRollup> rollups = new HashMap<>();
+        if (!stations.isEmpty()) {
+            for (StationRollup rollup : pool.invoke(new StationsTask(stations, observations, 0, stations.size()))) {
+                rollups.put(rollup.getStationId(), rollup);
+            }
+        }
+        return rollups;
+    }
+
+    /**
+     * {@code StationRollup} accumulates one station's hourly values by LST day and element. Values may be added in any
+     * order, though values in datetime order are the cheapest.
+     */
+    public final class StationRollup implements ResultCallback<ObservationWithData> {
+        private final int stationId;
+        private final int offset;
+        /** accumulators by days since 1970-01-01 LST, indexed like elementIds */
+        private final TreeMap<Long, Accumulator[]> days = new TreeMap<>();
+        private long currentDay = Long.MIN_VALUE;
+        private Accumulator[] current;
+
+        private StationRollup(Station station) {
+            this.stationId = station.getStationId();
+            this.offset = station.getOffset();
+        }
+
+        /**
+         * Returns the station rolled up
+         * @return the stationId
+         */
+        public int getStationId() {
+            return stationId;
+        }
+
+        /**
+         * Adds the values of an observation of this station
+         * @param observation the observation
+         */
+        @Override
+        public void handle(ObservationWithData observation) {
+            Map<Integer, ElementValue> values = observation.getElementValues();
+            if (values != null) {
+                for (ElementValue value : values.values()) {
+                    add(value);
+                }
+            }
+        }
+
+        /**
+         * Adds a value of this station; values of other stations, null values and values of elements not summarized are
+         * ignored, as in {@link #add(ElementValueBlock)}
+         * @param value the value
+         */
+        public void add(ElementValue value) {
+            if (value.getStationId() != stationId) {
+                return;
+            }
+            int element = Arrays.binarySearch(elementIds, value.getElementId());
+            if (element < 0 || !value.hasValue()) {
+                return;
+            }
+            Accumulator accumulator = accumulator(value.getDatetimeId(), element);
+            try {
+                accumulator.add(value.longUnscaled(), value.scale());
+            } catch (ArithmeticException ae) {
+                accumulator.add(value.getValue());
+            }
+        }
+
+        /**
+         * Adds the rows of a block observed at this station; rows of other stations are skipped
+         * @param block the values
+         */
+        public void add(ElementValueBlock block) {
+            for (int row = 0; row < block.size(); row++) {
+                if (block.getStationId(row) != stationId || block.isNull(row)) {
+                    continue;
+                }
+                int element = Arrays.binarySearch(elementIds, block.getElementId(row));
+                if (element >= 0) {
+                    accumulator(block.getDatetimeId(row), element).add(block.getUnscaledValue(row),
+                            block.getScale(row));
+                }
+            }
+        }
+
+        /**
+         * Returns the summaries of each LST day with values
+         * @return the summaries ordered by day and then elementId
+         */
+        public List<ElementSummary> getDays() {
+            List<ElementSummary> summaries = new ArrayList<>();
+            for (Map.Entry<Long, Accumulator[]> day : days.entrySet()) {
+                String period = formatDay(day.getKey());
+                addSummaries(summaries, period, 24, day.getValue());
+            }
+            return summaries;
+        }
+
+        /**
+         * Returns the summaries of each LST month with values
+         * @return the summaries ordered by month and then elementId
+         */
+        public List<ElementSummary> getMonths() {
+            List<ElementSummary> summaries = new ArrayList<>();
+            String month = null;
+            Accumulator[] merged = null;
+            for (Map.Entry<Long, Accumulator[]> day : days.entrySet()) {
+                String dayMonth = formatDay(day.getKey()).substring(0, 6);
+                if (!dayMonth.equals(month)) {
+                    if (month != null) {
+                        addSummaries(summaries, month, hoursOf(month), merged);
+                    }
+                    month = dayMonth;
+                    merged = new Accumulator[elementIds.length];
+                }
+                Accumulator[] accumulators = day.getValue();
+                for (int i = 0; i < accumulators.length; i++) {
+                    if (accumulators[i] != null) {
+                        if (merged[i] == null) {
+                            merged[i] = new Accumulator();
+                        }
+                        merged[i].merge(accumulators[i]);
+                    }
+                }
+            }
+            if (month != null) {
+                addSummaries(summaries, month, hoursOf(month), merged);
+            }
+            return summaries;
+        }
+
+        private Accumulator accumulator(int datetimeId, int element) {
+            // the hour ending at datetimeId is observed on the day of the hour before
+            long day = LongMath.divide(datetimeId + EPOCH_HOURS + offset - 1, 24, RoundingMode.FLOOR);
+            if (day != currentDay) {
+                current = days.get(day);
+                if (current == null) {
+                    current = new Accumulator[elementIds.length];
+                    days.put(day, current);
+                }
+                currentDay = day;
+            }
+            Accumulator accumulator = current[element];
+            if (accumulator == null) {
+                accumulator = new Accumulator();
+                current[element] = accumulator;
+            }
+            return accumulator;
+        }
+
+        private void addSummaries(List<ElementSummary> summaries, String period, int hours,
+                Accumulator[] accumulators) {
+            int required = (int) Math.ceil(completeness * hours);
+            for (int i = 0; i < accumulators.length; i++) {
+                Accumulator a = accumulators[i];
+                if (a == null) {
+                    continue;
+                }
+                boolean complete = a.count >= required;
+                if (complete) {
+                    summaries.add(new ElementSummary(stationId, elementIds[i], period, hours, a.count, true, a.sum(),
+                            a.minimum(), a.maximum(), a.average(averageScales[i])));
+                } else {
+                    summaries.add(new ElementSummary(stationId, elementIds[i], period, hours, a.count, false, null,
+                            null, null, null));
+                }
+            }
+        }
+    }
+
+    private static String formatDay(long day) {
+        return DatetimeCodec.format(DatetimeCodec.fromMillis(day * MILLISECS_PER_DAY)).substring(0, 8);
+    }
+
+    private static int hoursOf(String yyyymm) {
+        return TimeUtils.computeLstDateTimeRange(yyyymm, 0).size();
+    }
+
+    /**
+     * The count, sum, minimum and maximum of one element's values in a period, as unscaled longs until a value or sum
+     * does not fit, and as BigDecimals after
+     */
+    private static final class Accumulator {
+        private int count;
+        private long sum;
+        private int scale;
+        private long min;
+        private int minScale;
+        private long max;
+        private int maxScale;
+        /** non-null once the accumulator holds BigDecimals */
+        private BigDecimal bigSum;
+        private BigDecimal bigMin;
+        private BigDecimal bigMax;
+
+        private void add(long unscaled, int valueScale) {
+            if (bigSum != null) {
+                add(BigDecimal.valueOf(unscaled, valueScale));
+                return;
+            }
+            if (count == 0) {
+                sum = min = max = unscaled;
+                scale = minScale = maxScale = valueScale;
+                count = 1;
+                return;
+            }
+            try {
+                int common = Math.max(scale, valueScale);
+                long newSum = LongMath.checkedAdd(rescale(sum, scale, common), rescale(unscaled, valueScale, common));
+                // as Ordering.min and max, the first of equal values is kept
+                boolean less = compare(unscaled, valueScale, min, minScale) < 0;
+                boolean greater = compare(unscaled, valueScale, max, maxScale) > 0;
+                sum = newSum;
+                scale = common;
+                if (less) {
+                    min = unscaled;
+                    minScale = valueScale;
+                }
+                if (greater) {
+                    max = unscaled;
+                    maxScale = valueScale;
+                }
+                count++;
+            } catch (ArithmeticException ae) {
+                toBig();
+                add(BigDecimal.valueOf(unscaled, valueScale));
+            }
+        }
+
+        private void add(BigDecimal value) {
+            if (bigSum == null) {
+                if (count == 0) {
+                    bigSum = BigDecimal.ZERO;
+                } else {
+                    toBig();
+                }
+            }
+            bigSum = bigSum.add(value);
+            if (bigMin == null || value.compareTo(bigMin) < 0) {
+                bigMin = value;
+            }
+            if (bigMax == null || value.compareTo(bigMax) > 0) {
+                bigMax = value;
+            }
+            count++;
+        }
+
+        private void merge(Accumulator other) {
+            if (other.count == 0) {
+                return;
+            }
+            if (count == 0 && other.bigSum == null) {
+                count = other.count;
+                sum = other.sum;
+                scale = other.scale;
+                min = other.min;
+                minScale = other.minScale;
+                max = other.max;
+                maxScale = other.maxScale;
+                return;
+            }
+            if (bigSum == null && other.bigSum == null) {
+                try {
+                    int common = Math.max(scale, other.scale);
+                    long newSum = LongMath.checkedAdd(rescale(sum, scale, common), rescale(other.sum, other.scale,
+                            common));
+                    boolean less = compare(other.min, other.minScale, min, minScale) < 0;
+                    boolean greater = compare(other.max, other.maxScale, max, maxScale) > 0;
+                    sum = newSum;
+                    scale = common;
+                    if (less) {
+                        min = other.min;
+                        minScale = other.minScale;
+                    }
+                    if (greater) {
+                        max = other.max;
+                        maxScale = other.maxScale;
+                    }
+                    count += other.count;
+                    return;
+                } catch (ArithmeticException ae) {
+                    // fall through to BigDecimals
+                }
+            }
+            if (bigSum == null) {
+                if (count == 0) {
+                    bigSum = BigDecimal.ZERO;
+                } else {
+                    toBig();
+                }
+            }
+            BigDecimal otherMin = other.bigSum != null ? other.bigMin : BigDecimal.valueOf(other.min, other.minScale);
+            BigDecimal otherMax = other.bigSum != null ? other.bigMax : BigDecimal.valueOf(other.max, other.maxScale);
+            bigSum = bigSum.add(other.bigSum != null ? other.bigSum : BigDecimal.valueOf(other.sum, other.scale));
+            if (bigMin == null || otherMin.compareTo(bigMin) < 0) {
+                bigMin = otherMin;
+            }
+            if (bigMax == null || otherMax.compareTo(bigMax) > 0) {
+                bigMax = otherMax;
+            }
+            count += other.count;
+        }
+
+        private void toBig() {
+            bigSum = BigDecimal.valueOf(sum, scale);
+            bigMin = BigDecimal.valueOf(min, minScale);
+            bigMax = BigDecimal.valueOf(max, maxScale);
+        }
+
+        private BigDecimal sum() {
+            BigDecimal total = bigSum != null ? bigSum : BigDecimal.valueOf(sum, scale);
+            // as a sum from BigDecimal.ZERO
+            return total.scale() < 0 ? total.setScale(0) : total;
+        }
+
+        private BigDecimal minimum() {
+            return bigSum != null ? bigMin : BigDecimal.valueOf(min, minScale);
+        }
+
+        private BigDecimal maximum() {
+            return bigSum != null ? bigMax : BigDecimal.valueOf(max, maxScale);
+        }
+
+        /**
+         * Returns the mean rounded as {@link MathUtils#average(java.util.Collection, int)}
+         */
+        private BigDecimal average(int places) {
+            if (bigSum != null) {
+                return MathUtils.divide(bigSum, BigDecimal.valueOf(count), places);
+            }
+            try {
+                return BigDecimal.valueOf(MathUtils.averageUnscaled(sum, scale, count, places), places);
+            } catch (ArithmeticException ae) {
+                return MathUtils.divide(BigDecimal.valueOf(sum, scale), BigDecimal.valueOf(count), places);
+            }
+        }
+
+        /**
+         * Compares two scaled values
+         * @throws ArithmeticException if rescaling overflows
+         */
+        private static int compare(long a, int aScale, long b, int bScale) {
+            int common = Math.max(aScale, bScale);
+            return Long.compare(rescale(a, aScale, common), rescale(b, bScale, common));
+        }
+
+        /**
+         * Returns an unscaled value at a larger scale
+         * @throws ArithmeticException on overflow
+         */
+        private static long rescale(long unscaled, int scale, int toScale) {
+            return toScale == scale ? unscaled : LongMath.checkedMultiply(unscaled, LongMath.checkedPow(10, toScale
+                    - scale));
+        }
+    }
+
+    /**
+     * Splits a list of stations in halves until each task rolls up one station
+     */
+    @SuppressWarnings("serial")
+    private final class StationsTask extends RecursiveTask<List<StationRollup>> {
+        private final List<Station> stations;
+        private final Map<Station, ? extends Iterable<ObservationWithData>> observations;
+        private final int from;
+        private final int to;
+
+        private StationsTask(List<Station> stations,
+                Map<Station, ? extends Iterable<ObservationWithData>> observations, int from, int to) {
+            this.stations = stations;
+            this.observations = observations;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<StationRollup> compute() {
+            if (to - from == 1) {
+                Station station = stations.get(from);
+                List<StationRollup> rollups = new ArrayList<>(1);
+                rollups.add(rollup(station, observations.get(station)));
+                return rollups;
+            }
+            int middle = (from + to) >>> 1;
+            StationsTask left = new StationsTask(stations, observations, from, middle);
+            left.fork();
+            List<StationRollup> right = new StationsTask(stations, observations, middle, to).compute();
+            List<StationRollup> rollups = new ArrayList<>(left.join());
+            rollups.addAll(right);
+            return rollups;
+        }
+    }
+}
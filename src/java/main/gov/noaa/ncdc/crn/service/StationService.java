@@ -4,31 +4,25 @@ import gov.noaa.ncdc.crn.dao.PorDao;
 import gov.noaa.ncdc.crn.dao.StationDao;
 import gov.noaa.ncdc.crn.domain.POR;
 import gov.noaa.ncdc.crn.domain.Station;
-import gov.noaa.ncdc.crn.domain.sort.StationComparator;
-import gov.noaa.ncdc.crn.domain.sort.StationComparator.SORTS;
-import gov.noaa.ncdc.crn.util.TimeUtils;
+import gov.noaa.ncdc.crn.domain.StationRegistry;
+import gov.noaa.ncdc.crn.domain.Stations;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Maps;
 
 @Service
 public class StationService {
@@ -36,8 +30,15 @@ public class StationService {
     private StationDao stationDao;
     @Autowired
     private PorDao porDao;
-    private static final int GOES_OVERLAP_RANGE = 24 * 7; /* one week */
-    private static Log LOG = LogFactory.getLog(StationService.class);
+
+    public StationService() {
+    }
+
+    // for unit tests
+    StationService(StationDao stationDao, PorDao porDao) {
+        this.stationDao = stationDao;
+        this.porDao = porDao;
+    }
 
     /**
      * Retrieves a Map{@code <Integer,Station>} of all visible (non-test and non-abandoned) stations which are now
@@ -75,9 +76,7 @@ public class StationService {
             Preconditions.checkNotNull(state);
             Preconditions.checkArgument(state.length() == 2);
         }
-        Map<String, Object> params = new HashMap<>();
-        params.put("states", states);
-        return stationDao.getStationsFromParams(params);
+        return getStationRegistry().getStationsInStates(states);
     }
 
     /**
@@ -87,9 +86,7 @@ public class StationService {
      * @throws DataAccessException (unchecked)
      */
     public Map<Integer, Station> getStationsForNetworks(int... networkIds) throws DataAccessException {
-        Map<String, Object> params = new HashMap<>();
-        params.put("networkIds", networkIds);
-        return stationDao.getStationsFromParams(params);
+        return getStationRegistry().getStationsForNetworks(networkIds);
     }
 
     /**
@@ -98,7 +95,7 @@ public class StationService {
      * @throws DataAccessException (unchecked)
      */
     public Map<Integer, Station> getStations() throws DataAccessException {
-        return stationDao.getStations();
+        return getStationRegistry().getStations();
     }
 
     /**
@@ -108,8 +105,7 @@ public class StationService {
      * @throws DataAccessException (unchecked)
      */
     public Map<Integer, Station> getStations(Collection<Integer> stationIds) throws DataAccessException {
-        Map<Integer, Station> all = getStations();
-        return Maps.filterKeys(all, Predicates.in(stationIds));
+        return getStationRegistry().getStations(stationIds);
     }
 
     /**
@@ -118,7 +114,7 @@ public class StationService {
      * @throws DataAccessException (unchecked)
      */
     public Map<String, Station> getWbanStationMap() throws DataAccessException {
-        return stationDao.getWbanStationMap();
+        return getStationRegistry().getWbanStationMap();
     }
 
     /**
@@ -130,8 +126,7 @@ public class StationService {
      * @throws DataAccessException (unchecked)
      */
     public Map<Integer, Station> getVisibleStations(Collection<Integer> stationIds) throws DataAccessException {
-        Map<Integer, Station> all = getVisibleStations();
-        return Maps.filterKeys(all, Predicates.in(stationIds));
+        return getStationRegistry().getStations(stationIds, Stations.VISIBLE);
     }
 
     /**
@@ -141,11 +136,8 @@ public class StationService {
      * @throws DataAccessException (unchecked)
      */
     public Map<Integer, Station> getVisibleStations() throws DataAccessException {
-        Map<String, Object> params = new HashMap<>();
-        params.put("visible", Boolean.TRUE);
-        // don't include stations unless they have a POR
-        params.put("includeSilent", Boolean.FALSE);
-        return stationDao.getStationsFromParams(params);
+        // registry only returns stations with a POR
+        return getStationRegistry().getStations(Stations.VISIBLE);
     }
 
     /**
@@ -156,15 +148,11 @@ public class StationService {
      * @throws DataAccessException (unchecked)
      */
     public Map<Integer, Station> getVisibleStationsForNetworks(int... networkIds) throws DataAccessException {
-        Map<String, Object> params = new HashMap<>();
-        params.put("visible", Boolean.TRUE);
-        params.put("includeSilent", Boolean.FALSE);
-        if (networkIds.length > 1) {
-            params.put("networkIds", networkIds);
-        } else if (networkIds.length == 1) {
-            params.put("networkId", networkIds[0]);
+        StationRegistry registry = getStationRegistry();
+        if (networkIds.length == 0) {
+            return registry.getStations(Stations.VISIBLE);
         }
-        return stationDao.getStationsFromParams(params);
+        return registry.getStations(registry.getStationsForNetworks(networkIds).keySet(), Stations.VISIBLE);
     }
 
     /**
@@ -175,11 +163,12 @@ public class StationService {
      * @throws DataAccessException (unchecked)
      */
     public Station getStation(int stationId) throws DataAccessException {
-        return stationDao.getStation(stationId);
+        return getStationRegistry().get(stationId);
     }
 
     /**
-     * Retrieves a station from a id or WBAN number. Permits the retrieval of a station with no POR.
+     * Retrieves a station from a id, WBAN number, GOES id or coop number. Permits the retrieval of a station with no
+     * POR.
      * @param id The identifier of the station
      * @return a Station fitting the identifier
      * @throws DataAccessException (unchecked)
@@ -188,9 +177,18 @@ public class StationService {
         if (id.matches("\\d{4}")) {
             return getStation(Integer.valueOf(id));
         } else {
-            Map<String, Object> params = new HashMap<>();
-            params.put("id", id);
-            return stationDao.getStationFromParams(params);
+            List<Station> stations = getStationRegistry().getByIdentifier(id);
+            if (stations.size() > 1) {
+                throw new IncorrectResultSizeDataAccessException("Multiple stations have the identifier " + id, 1,
+                        stations.size());
+            }
+            if (stations.isEmpty()) {
+                // the registry does not index coop numbers
+                Map<String, Object> params = new HashMap<>();
+                params.put("id", id);
+                return stationDao.getStationFromParams(params);
+            }
+            return stations.get(0);
         }
     }
 
@@ -205,9 +203,7 @@ public class StationService {
         Preconditions.checkNotNull(atddno);
         Preconditions.checkArgument(Integer.valueOf(atddno) > 0);
 
-        Map<String, Object> params = new HashMap<>();
-        params.put("atddno", atddno);
-        return stationDao.getStationFromParams(params);
+        return getStationRegistry().getByAtddno(atddno);
     }
 
     /**
@@ -246,45 +242,19 @@ public class StationService {
      */
     public Station stationFromGoesId(String goesId, int datetimeId) throws DataAccessException {
         Preconditions.checkNotNull(goesId);
+        return getStationRegistry().getGoesIdIndex().get(goesId, datetimeId);
+    }
 
-        ListMultimap<String, Station> goesMap = getGoesStationMap();
-        List<Station> stations = goesMap.get(goesId);
-        // remove this after syncfromisis stops stripping prefixes
-        stations.addAll(goesMap.get("CD" + goesId));
-        stations.addAll(goesMap.get("DA" + goesId));
-        if (stations.size() == 0) {
-            return null;
-        } else if (stations.size() == 1) {
-            return stations.get(0);
-        } else {
-            /*
-             * sort stations with this goes id based on their closed date with null closed dates last
-             */
-            Collections.sort(stations, new StationComparator<Station>(SORTS.CLOSED_DATE));
-            Iterator<Station> stationIt = stations.iterator();
-            // already know more than 1 exists in list
-            Station station = stationIt.next();
-            // the requested calendar time plus slop for comparison
-            Calendar requestDate = TimeUtils.computeCalendarDate(datetimeId);
-            do {
-                try {
-                    Calendar closedDatePlus = TimeUtils.addHours(TimeUtils.createUTCCalendar(station.getClosedDate()),
-                            GOES_OVERLAP_RANGE);
-                    /*
-                     * check whether date requested is in the current station's range
-                     */
-                    if (requestDate.before(closedDatePlus)) {
-                        return station;
-                    }
-                } catch (NullPointerException npe) {
-                    throw new RuntimeException("Multiple stations have the same" + " goesId (" + goesId
-                            + ") but no closed date.");
-                }
-                station = stationIt.next();
-            } while (stationIt.hasNext());
-            // if datetimeId after last station's POR, return it
-            return station;
-        }
+    /**
+     * Retrieves the stations for a batch of goesIds and datetimeIds, e.g. those of a batch of GOES messages, choosing
+     * each station as {@link #stationFromGoesId(String, int)} does
+     * @param goesIds The goesIds of the stations
+     * @param datetimeIds The day under consideration for each goesId; same length as goesIds
+     * @return the Station for each goesId and datetimeId, or null where no station has the goesId
+     * @throws DataAccessException (unchecked)
+     */
+    public Station[] stationsFromGoesIds(String[] goesIds, int[] datetimeIds) throws DataAccessException {
+        return getStationRegistry().getGoesIdIndex().get(goesIds, datetimeIds);
     }
 
     /**
@@ -293,36 +263,11 @@ public class StationService {
      * @return ListMultimap{@code <String,Station>} mapping goesId to Station
      */
     public ListMultimap<String, Station> getGoesStationMap() {
-        Map<Integer, Station> stationMap = stationDao.getStations(true);
-        return transformStationMap(stationMap);
-    }
-
-    /**
-     * Transforms a Map{@code <Integer,Station>} mapping stationId to station to a ListMultimap{@code <String,Station>}
-     * mapping goesId to List{@code <Station>}
-     * @param stationMap The map for the transformation
-     * @return The transformed map
-     */
-    private ListMultimap<String, Station> transformStationMap(Map<Integer, Station> stationMap) {
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("station count before transform: " + stationMap.size());
-            LOG.trace("1788: " + stationMap.get(1788));
-            LOG.trace("1778: " + stationMap.get(1778));
-            LOG.trace("1782: " + stationMap.get(1782));
-            LOG.trace("7779: " + stationMap.get(7779));
-        }
-        ListMultimap<String, Station> mm = ArrayListMultimap.create(stationMap.size(), 1);
-        for (Station station : stationMap.values()) {
-            mm.put(station.getGoesId(), station);
-        }
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("station count after transform: " + mm.size());
-        }
-        return mm;
+        return getStationRegistry().getGoesStationMap();
     }
 
     /**
-     * Retrieves a List{@code <Station>} with PORs from an identifier list: ID, wbanno, goesid
+     * Retrieves a List{@code <Station>} with PORs from an identifier list: ID, wbanno, goesid, coop number
      * @param ids The identifiers of the Stations
      * @throws DataAccessException (unchecked)
      */
@@ -341,13 +286,27 @@ public class StationService {
                 otherIds.add(id);
             }
         }
+        StationRegistry registry = getStationRegistry();
         Map<Integer, Station> stations = new HashMap<>();
         if (stationIds.size() > 0) {
-            stations.putAll(getStations(stationIds));
+            stations.putAll(registry.getStations(stationIds));
         }
-        if (otherIds.size() > 0) {
+        List<String> unresolved = new ArrayList<>();
+        for (String id : otherIds) {
+            List<Station> matches = registry.getByIdentifier(id);
+            if (matches.isEmpty()) {
+                unresolved.add(id);
+            }
+            for (Station station : matches) {
+                if (registry.hasPor(station.getStationId())) {
+                    stations.put(station.getStationId(), station);
+                }
+            }
+        }
+        if (unresolved.size() > 0) {
+            // the registry does not index coop numbers
             Map<String, Object> params = new HashMap<>();
-            params.put("ids", otherIds);
+            params.put("ids", unresolved);
             stations.putAll(stationDao.getStationsFromParams(params));
         }
         List<Station> stationList = new ArrayList<>();
@@ -399,6 +358,27 @@ public class StationService {
         return true;
     }
 
+    /**
+     * Returns the StationRegistry backing the station lookups of this service. The registry is a snapshot read at most
+     * {@code crn.stations.maxAgeSeconds} ago.
+     * @return the StationRegistry
+     * @throws DataAccessException (unchecked) if the registry has to be read and reading fails
+     */
+    public StationRegistry getStationRegistry() throws DataAccessException {
+        return stationDao.getStationRegistry();
+    }
+
+    /**
+     * Reads the Stations again, and discards the rain gauge timelines, so the station lookups of this service reflect
+     * recent metadata changes
+     * @return the new StationRegistry
+     * @throws DataAccessException (unchecked)
+     */
+    public StationRegistry refreshStations() throws DataAccessException {
+        stationDao.invalidateRainGauges();
+        return stationDao.refreshStationRegistry();
+    }
+
     /**
      * Retrieves the last time an observation was modified for a station between two datetimes.
      * @param stationId The id of the station
@@ -440,4 +420,17 @@ public class StationService {
         return stationDao.getStationRainGaugeDepth(stationId, datetimeId);
     }
 
+    /**
+     * Retrieves the rain gauge depth for a station at the beginning of a range of datetimes and at each datetime in
+     * the range where it changes
+     * @param stationId of the station
+     * @param begin the first datetimeId
+     * @param end the last datetimeId, inclusive
+     * @return SortedMap{@code <Integer,Integer>} from datetimeId to depth in mm, empty if the station has no gauges
+     * @throws DataAccessException (unchecked)
+     */
+    public SortedMap<Integer, Integer> getStationRainGaugeDepths(int stationId, int begin, int end) {
+        return stationDao.getStationRainGaugeDepths(stationId, begin, end);
+    }
+
 }
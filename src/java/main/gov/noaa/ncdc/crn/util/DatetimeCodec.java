@@ -0,0 +1,176 @@
+package gov.noaa.ncdc.crn.util;
+
+import gov.noaa.ncdc.crn.domain.Datetime;
+import gov.noaa.ncdc.crn.domain.DatetimeRange;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Converts between datetimeIds, UTC YYYYMMDDHH24 strings and milliseconds since the epoch by arithmetic, without the
+ * database and without Calendars. A datetimeId is the number of hours since {@link TimeUtils#CRN_EPOCH}, which is
+ * what the datetime table holds; {@link gov.noaa.ncdc.crn.dao.DatetimeDao#findDatetimeMismatches(int, int)} checks
+ * the two agree.
+ * <p>
+ * Dates are proleptic Gregorian in UTC, so there are no leap seconds or daylight saving time changes to account for.
+ */
+public final class DatetimeCodec {
+    private static final long MILLISECS_PER_DAY = 24 * TimeUtils.MILLISECS_PER_HOUR;
+    /** days from 0000-03-01 to 1970-01-01 */
+    private static final int DAYS_TO_1970 = 719468;
+    private static final int DAYS_PER_ERA = 146097;
+
+    private DatetimeCodec() {
+    }
+
+    /**
+     * Returns the time of a datetimeId
+     * @param datetimeId the datetimeId
+     * @return milliseconds since the epoch at the top of the datetimeId's hour
+     */
+    public static long toMillis(int datetimeId) {
+        return TimeUtils.CRN_EPOCH + datetimeId * TimeUtils.MILLISECS_PER_HOUR;
+    }
+
+    /**
+     * Returns the datetimeId of the hour a time occurs in; agrees with {@link TimeUtils#computeDateTimeId} from the CRN
+     * epoch on
+     * @param millis milliseconds since the epoch
+     * @return the datetimeId of the hour in which millis occurs, rounding down
+     */
+    public static int fromMillis(long millis) {
+        return (int) floorDiv(millis - TimeUtils.CRN_EPOCH, TimeUtils.MILLISECS_PER_HOUR);
+    }
+
+    /**
+     * Returns the datetimeId of a UTC date string
+     * @param yyyymmddhh the UTC date in YYYYMMDDHH24 format, optionally followed by minutes which must be 00; HH24 may
+     * be 24 for the end of a day
+     * @return the datetimeId
+     * @throws IllegalArgumentException if the string is not a valid date in that format
+     */
+    public static int parse(String yyyymmddhh) {
+        Preconditions.checkNotNull(yyyymmddhh, "date not nullable");
+        int length = yyyymmddhh.length();
+        Preconditions.checkArgument(length == 10 || length == 12, "not YYYYMMDDHH24: %s", yyyymmddhh);
+        int year = digits(yyyymmddhh, 0, 4);
+        int month = digits(yyyymmddhh, 4, 6);
+        int day = digits(yyyymmddhh, 6, 8);
+        int hour = digits(yyyymmddhh, 8, 10);
+        Preconditions.checkArgument(month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month)
+                && hour <= 24 && (length == 10 || digits(yyyymmddhh, 10, 12) == 0), "invalid date: %s", yyyymmddhh);
+        long hours = daysFromCivil(year, month, day) * 24 + hour;
+        return fromMillis(hours * TimeUtils.MILLISECS_PER_HOUR);
+    }
+
+    /**
+     * Returns the UTC date string of a datetimeId, as held in the datetime table
+     * @param datetimeId the datetimeId
+     * @return the UTC date in YYYYMMDDHH24 format, where HH24 is between 0 and 23
+     */
+    public static String format(int datetimeId) {
+        long millis = toMillis(datetimeId);
+        long days = floorDiv(millis, MILLISECS_PER_DAY);
+        int hour = (int) ((millis - days * MILLISECS_PER_DAY) / TimeUtils.MILLISECS_PER_HOUR);
+        // civil from days, with years beginning in March so the leap day is last
+        long shifted = days + DAYS_TO_1970;
+        long era = floorDiv(shifted, DAYS_PER_ERA);
+        int dayOfEra = (int) (shifted - era * DAYS_PER_ERA);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        Preconditions.checkArgument(year >= 0 && year <= 9999, "year out of range for datetimeId %s", datetimeId);
+        char[] chars = new char[10];
+        write(chars, 0, (int) year, 4);
+        write(chars, 4, month, 2);
+        write(chars, 6, day, 2);
+        write(chars, 8, hour, 2);
+        return new String(chars);
+    }
+
+    /**
+     * Returns the Datetime of a datetimeId without the database; the same as {@link Datetime#valueOf(int)}
+     * @param datetimeId the datetimeId
+     * @return a Datetime equal to the one read from the datetime table
+     */
+    public static Datetime toDatetime(int datetimeId) {
+        return Datetime.valueOf(datetimeId);
+    }
+
+    /**
+     * Returns the range of datetimeIds between two UTC date strings
+     * @param beginYYYYMMDDHH24 the first date
+     * @param endYYYYMMDDHH24 the last date, inclusive
+     * @return the DatetimeRange; empty if end precedes begin
+     * @throws IllegalArgumentException as for {@link #parse(String)}
+     */
+    public static DatetimeRange range(String beginYYYYMMDDHH24, String endYYYYMMDDHH24) {
+        int begin = parse(beginYYYYMMDDHH24);
+        return new DatetimeRange(begin, Math.max(begin - 1, parse(endYYYYMMDDHH24)));
+    }
+
+    /**
+     * Returns the datetimeIds between two UTC date strings
+     * @param beginYYYYMMDDHH24 the first date
+     * @param endYYYYMMDDHH24 the last date, inclusive
+     * @return an int[] of the datetimeIds in ascending order
+     * @throws IllegalArgumentException as for {@link #parse(String)}
+     */
+    public static int[] toArray(String beginYYYYMMDDHH24, String endYYYYMMDDHH24) {
+        return range(beginYYYYMMDDHH24, endYYYYMMDDHH24).toArray();
+    }
+
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            Preconditions.checkArgument(c >= '0' && c <= '9', "not YYYYMMDDHH24: %s", s);
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    private static void write(char[] chars, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+        case 2:
+            return isLeapYear(year) ? 29 : 28;
+        case 4:
+        case 6:
+        case 9:
+        case 11:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+
+    /**
+     * Returns the days since 1970-01-01 of a date
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int marchYear = month <= 2 ? year - 1 : year;
+        long era = floorDiv(marchYear, 400);
+        int yearOfEra = (int) (marchYear - era * 400);
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_ERA + dayOfEra - DAYS_TO_1970;
+    }
+
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        return dividend % divisor < 0 ? quotient - 1 : quotient;
+    }
+}
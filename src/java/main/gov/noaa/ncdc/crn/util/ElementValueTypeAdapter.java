@@ -0,0 +1,99 @@
+package gov.noaa.ncdc.crn.util;
+
+import gov.noaa.ncdc.crn.domain.ElementValue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Reads and writes {@link ElementValue} in the JSON layout of the {@code BigDecimal} based implementation, e.g.
+ * {@code {"staDateElement":{"stationId":1021,"datetimeId":72258,"elementId":4},"value":43.462,"flags":{"flagbits":[]}}}
+ * , so existing JSON files and consumers are unaffected by the scaled {@code long} representation.
+ */
+public class ElementValueTypeAdapter extends TypeAdapter<ElementValue> {
+    private final FlagsTypeAdapter flagsAdapter = new FlagsTypeAdapter();
+
+    @Override
+    public void write(JsonWriter out, ElementValue value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("staDateElement");
+        out.beginObject();
+        out.name("stationId").value(value.getStationId());
+        out.name("datetimeId").value(value.getDatetimeId());
+        out.name("elementId").value(value.getElementId());
+        out.endObject();
+        out.name("value");
+        if (value.hasValue()) {
+            out.value(value.getValue());
+        } else {
+            out.nullValue();
+        }
+        out.name("decimalPlaces").value(value.getDecimalPlaces());
+        out.name("publishedDecimalPlaces").value(value.getPublishedDecimalPlaces());
+        out.name("flags");
+        flagsAdapter.write(out, value.getFlags());
+        out.endObject();
+    }
+
+    @Override
+    public ElementValue read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Integer stationId = null;
+        Integer datetimeId = null;
+        Integer elementId = null;
+        BigDecimal value = null;
+        Integer decimalPlaces = null;
+        Integer publishedDecimalPlaces = null;
+        int flags = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+            } else if ("staDateElement".equals(name)) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    String idName = in.nextName();
+                    if ("stationId".equals(idName)) {
+                        stationId = in.nextInt();
+                    } else if ("datetimeId".equals(idName)) {
+                        datetimeId = in.nextInt();
+                    } else if ("elementId".equals(idName)) {
+                        elementId = in.nextInt();
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+            } else if ("value".equals(name)) {
+                value = new BigDecimal(in.nextString());
+            } else if ("decimalPlaces".equals(name)) {
+                decimalPlaces = in.nextInt();
+            } else if ("publishedDecimalPlaces".equals(name)) {
+                publishedDecimalPlaces = in.nextInt();
+            } else if ("flags".equals(name)) {
+                flags = flagsAdapter.read(in).getIntValue();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        if (stationId == null || datetimeId == null || elementId == null) {
+            throw new JsonSyntaxException("ElementValue requires staDateElement stationId, datetimeId and elementId");
+        }
+        return new ElementValue(stationId, datetimeId, elementId, value, flags, decimalPlaces, publishedDecimalPlaces);
+    }
+}
@@ -0,0 +1,85 @@
+package gov.noaa.ncdc.crn.util;
+
+import gov.noaa.ncdc.crn.domain.Flags;
+
+import java.io.IOException;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Reads and writes {@link Flags} in the JSON layout of the {@code BitSet} based implementation, in which the flags are
+ * an array with a 1 or 0 for each bit position, e.g. {@code {"flagbits":[1,0,1]}} for RANGE and DOOR. Also reads the
+ * {@code {"mask":5}} form a default {@code Gson} writes for the current implementation.
+ */
+public class FlagsTypeAdapter extends TypeAdapter<Flags> {
+
+    @Override
+    public void write(JsonWriter out, Flags flags) throws IOException {
+        if (flags == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("flagbits");
+        out.beginArray();
+        for (int mask = flags.getIntValue(); mask != 0; mask >>>= 1) {
+            out.value(mask & 1);
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    @Override
+    public Flags read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int mask = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("flagbits".equals(name)) {
+                mask = readBits(in);
+            } else if ("mask".equals(name)) {
+                mask = in.nextInt();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Flags(mask);
+    }
+
+    private static int readBits(JsonReader in) throws IOException {
+        int mask = 0;
+        int bit = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            boolean set;
+            JsonToken token = in.peek();
+            if (token == JsonToken.BOOLEAN) {
+                set = in.nextBoolean();
+            } else if (token == JsonToken.NUMBER) {
+                set = in.nextInt() != 0;
+            } else if (token == JsonToken.STRING) {
+                set = Integer.parseInt(in.nextString()) != 0;
+            } else {
+                throw new JsonSyntaxException("Invalid flagbits value type: " + token);
+            }
+            if (set) {
+                if (bit > 30) {
+                    throw new JsonSyntaxException("flagbits too long: bit " + bit);
+                }
+                mask |= 1 << bit;
+            }
+            bit++;
+        }
+        in.endArray();
+        return mask;
+    }
+}
@@ -1,17 +1,26 @@
 package gov.noaa.ncdc.crn.util;
 
 import gov.noaa.ncdc.crn.domain.Element;
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.Flags;
 import gov.noaa.ncdc.crn.domain.Station;
 
 import java.lang.reflect.Type;
 import java.util.Map;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 
 public class JsonUtils {
 
-    public final static Gson GSON = new Gson();
+    /**
+     * Gson which also reads and writes Flags and ElementValues in their established JSON layout; use instead of
+     * {@code new Gson()} for domain objects
+     */
+    public final static Gson GSON = new GsonBuilder()
+            .registerTypeHierarchyAdapter(Flags.class, new FlagsTypeAdapter())
+            .registerTypeAdapter(ElementValue.class, new ElementValueTypeAdapter()).create();
     public final static Type STATION_MAP_TYPE = new TypeToken<Map<Integer, Station>>() {
     }.getType();
     public final static Type ELEMENT_MAP_TYPE = new TypeToken<Map<String, Element>>() {
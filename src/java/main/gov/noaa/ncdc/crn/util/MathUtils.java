@@ -1,21 +1,28 @@
 package gov.noaa.ncdc.crn.util;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicates;
-import com.google.common.collect.Collections2;
-import com.google.common.collect.Ordering;
+import com.google.common.math.LongMath;
 
 public class MathUtils {
 
     private static final Log LOGGER = LogFactory.getLog(MathUtils.class);
+    /** largest magnitude a long can have and still be exactly representable as a double */
+    private static final long MAX_EXACT_LONG = 1L << 53;
+    /** largest power of ten which fits in a long */
+    private static final int MAX_LONG_POWER_OF_TEN = 18;
+    /** powers of ten which are exactly representable as doubles */
+    private static final double[] EXACT_POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
 
     /**
      * <p>
@@ -101,16 +108,15 @@ public class MathUtils {
      */
     public final static BigDecimal average(Collection<BigDecimal> numbers, int scale) {
         Preconditions.checkNotNull(numbers, "Collection to be averaged is null");
-        Collection<BigDecimal> filteredNumbers = Collections2.filter(numbers, Predicates.notNull());
-        if (filteredNumbers.size() > 0) {
-            BigDecimal sum = BigDecimal.ZERO;
-            for (BigDecimal number : filteredNumbers) {
+        BigDecimal sum = BigDecimal.ZERO;
+        int count = 0;
+        for (BigDecimal number : numbers) {
+            if (number != null) {
                 sum = sum.add(number);
+                count++;
             }
-            return divide(sum, new BigDecimal(filteredNumbers.size()), scale);
-        } else {
-            return null;
         }
+        return count > 0 ? divide(sum, new BigDecimal(count), scale) : null;
     }
 
     /**
@@ -198,8 +204,14 @@ public class MathUtils {
      */
     public final static BigDecimal minimum(Collection<BigDecimal> decimals) {
         Preconditions.checkNotNull(decimals, "Collection is null");
-        Collection<BigDecimal> filtered = Collections2.filter(decimals, Predicates.notNull());
-        return filtered.size() == 0 ? null : Ordering.natural().min(filtered);
+        BigDecimal minimum = null;
+        for (BigDecimal decimal : decimals) {
+            // the first of equal values is kept
+            if (decimal != null && (minimum == null || decimal.compareTo(minimum) < 0)) {
+                minimum = decimal;
+            }
+        }
+        return minimum;
     }
 
     /**
@@ -211,8 +223,262 @@ public class MathUtils {
      */
     public final static BigDecimal maximum(Collection<BigDecimal> decimals) {
         Preconditions.checkNotNull(decimals, "Collection is null");
-        Collection<BigDecimal> filtered = Collections2.filter(decimals, Predicates.notNull());
-        return filtered.size() == 0 ? null : Ordering.natural().max(filtered);
+        BigDecimal maximum = null;
+        for (BigDecimal decimal : decimals) {
+            // the first of equal values is kept
+            if (decimal != null && (maximum == null || decimal.compareTo(maximum) > 0)) {
+                maximum = decimal;
+            }
+        }
+        return maximum;
+    }
+
+    /**
+     * Rounds a scaled integer as {@link #round(BigDecimal, int)} does, without creating a BigDecimal: half up when the
+     * value is positive and half down when it is negative. For example, roundUnscaled(-1235, 3, 2) is -123, as
+     * round("-1.235", 2) is "-1.23".
+     * @param unscaledValue the unscaled value
+     * @param scale the number of digits to the right of the decimal point
+     * @param places the number of places past the decimal to round to
+     * @return the unscaled value of the rounded number, whose scale is places
+     * @throws ArithmeticException if the result does not fit in a {@code long}
+     */
+    public final static long roundUnscaled(long unscaledValue, int scale, int places) {
+        if (places >= scale) {
+            return LongMath.checkedMultiply(unscaledValue, LongMath.checkedPow(10, places - scale));
+        }
+        if (scale - places > MAX_LONG_POWER_OF_TEN) {
+            return round(BigDecimal.valueOf(unscaledValue, scale), places).unscaledValue().longValue();
+        }
+        return divideRounded(unscaledValue, LongMath.pow(10, scale - places));
+    }
+
+    /**
+     * Divides scaled integers as {@link #divide(BigDecimal, BigDecimal, int)} does, without creating BigDecimals: half
+     * up when the quotient is positive and half down when it is negative.
+     * @param numerator the unscaled numerator
+     * @param numeratorScale the scale of the numerator
+     * @param denominator the unscaled denominator
+     * @param denominatorScale the scale of the denominator
+     * @param scale the number of decimal places to keep
+     * @return the unscaled value of the quotient, whose scale is scale
+     * @throws IllegalArgumentException if the denominator is zero
+     * @throws ArithmeticException if the quotient or an intermediate value does not fit in a {@code long}
+     */
+    public final static long divideUnscaled(long numerator, int numeratorScale, long denominator, int denominatorScale,
+            int scale) {
+        Preconditions.checkArgument(denominator != 0, "Attempting to divide by zero");
+        int exponent = scale - numeratorScale + denominatorScale;
+        if (exponent >= 0) {
+            numerator = LongMath.checkedMultiply(numerator, LongMath.checkedPow(10, exponent));
+        } else {
+            denominator = LongMath.checkedMultiply(denominator, LongMath.checkedPow(10, -exponent));
+        }
+        return divideRounded(numerator, denominator);
+    }
+
+    /**
+     * Returns the mean of count values summing to a scaled integer, as {@link #average(Collection, int)} does
+     * @param sum the unscaled sum of the values
+     * @param sumScale the scale of the sum
+     * @param count the number of values; positive
+     * @param scale the number of decimal places to keep
+     * @return the unscaled value of the mean, whose scale is scale
+     * @throws IllegalArgumentException if count is not positive
+     * @throws ArithmeticException if an intermediate value does not fit in a {@code long}
+     */
+    public final static long averageUnscaled(long sum, int sumScale, long count, int scale) {
+        Preconditions.checkArgument(count > 0, "count must be positive: %s", count);
+        return divideUnscaled(sum, sumScale, count, 0, scale);
+    }
+
+    /**
+     * Returns the sum of scaled integers sharing a scale, the same as {@link #sum(Collection)} of their BigDecimals
+     * @param unscaledValues the unscaled values
+     * @param scale the scale of every value
+     * @param nulls set bits mark the values which are null; nullable if none are
+     * @return the sum of the non-null values
+     * @throws NullPointerException if unscaledValues is null
+     */
+    public final static BigDecimal sum(long[] unscaledValues, int scale, BitSet nulls) {
+        Preconditions.checkNotNull(unscaledValues, "array to sum is null");
+        long sum = 0;
+        int count = 0;
+        for (int i = 0; i < unscaledValues.length; i++) {
+            if (nulls == null || !nulls.get(i)) {
+                try {
+                    sum = LongMath.checkedAdd(sum, unscaledValues[i]);
+                } catch (ArithmeticException ae) {
+                    return sum(toBigDecimals(unscaledValues, scale, nulls));
+                }
+                count++;
+            }
+        }
+        // as adding to BigDecimal.ZERO, whose scale is 0
+        if (count == 0) {
+            return BigDecimal.ZERO;
+        }
+        return scale < 0 ? BigDecimal.valueOf(sum, scale).setScale(0) : BigDecimal.valueOf(sum, scale);
+    }
+
+    /**
+     * Returns the mean of scaled integers sharing a scale, the same as {@link #average(Collection, int)} of their
+     * BigDecimals
+     * @param unscaledValues the unscaled values
+     * @param scale the scale of every value
+     * @param nulls set bits mark the values which are null; nullable if none are
+     * @param places the number of decimal places to keep
+     * @return the average of the non-null values, or null if there are none
+     * @throws NullPointerException if unscaledValues is null
+     */
+    public final static BigDecimal average(long[] unscaledValues, int scale, BitSet nulls, int places) {
+        Preconditions.checkNotNull(unscaledValues, "array to be averaged is null");
+        long sum = 0;
+        int count = 0;
+        try {
+            for (int i = 0; i < unscaledValues.length; i++) {
+                if (nulls == null || !nulls.get(i)) {
+                    sum = LongMath.checkedAdd(sum, unscaledValues[i]);
+                    count++;
+                }
+            }
+            return count > 0 ? BigDecimal.valueOf(averageUnscaled(sum, scale, count, places), places) : null;
+        } catch (ArithmeticException ae) {
+            return average(toBigDecimals(unscaledValues, scale, nulls), places);
+        }
+    }
+
+    /**
+     * Returns the least of scaled integers sharing a scale, the same as {@link #minimum(Collection)} of their
+     * BigDecimals
+     * @param unscaledValues the unscaled values
+     * @param scale the scale of every value
+     * @param nulls set bits mark the values which are null; nullable if none are
+     * @return the least non-null value, or null if there are none
+     * @throws NullPointerException if unscaledValues is null
+     */
+    public final static BigDecimal minimum(long[] unscaledValues, int scale, BitSet nulls) {
+        int index = indexOfExtreme(unscaledValues, nulls, -1);
+        return index < 0 ? null : BigDecimal.valueOf(unscaledValues[index], scale);
+    }
+
+    /**
+     * Returns the greatest of scaled integers sharing a scale, the same as {@link #maximum(Collection)} of their
+     * BigDecimals
+     * @param unscaledValues the unscaled values
+     * @param scale the scale of every value
+     * @param nulls set bits mark the values which are null; nullable if none are
+     * @return the greatest non-null value, or null if there are none
+     * @throws NullPointerException if unscaledValues is null
+     */
+    public final static BigDecimal maximum(long[] unscaledValues, int scale, BitSet nulls) {
+        int index = indexOfExtreme(unscaledValues, nulls, 1);
+        return index < 0 ? null : BigDecimal.valueOf(unscaledValues[index], scale);
+    }
+
+    /**
+     * Returns the index of the least value in an array, skipping nulls and NaN; the first of equal values is chosen,
+     * as by {@link #minimum(Collection)}
+     * @param values the values
+     * @param nulls set bits mark the values which are null; nullable if none are
+     * @return the index of the least value, or -1 if every value is null or NaN
+     * @throws NullPointerException if values is null
+     */
+    public final static int indexOfMinimum(double[] values, BitSet nulls) {
+        return indexOfExtreme(values, nulls, -1);
+    }
+
+    /**
+     * Returns the index of the greatest value in an array, skipping nulls and NaN; the first of equal values is
+     * chosen, as by {@link #maximum(Collection)}
+     * @param values the values
+     * @param nulls set bits mark the values which are null; nullable if none are
+     * @return the index of the greatest value, or -1 if every value is null or NaN
+     * @throws NullPointerException if values is null
+     */
+    public final static int indexOfMaximum(double[] values, BitSet nulls) {
+        return indexOfExtreme(values, nulls, 1);
+    }
+
+    /**
+     * Returns the index of the first least (sign -1) or greatest (sign 1) non-null value
+     */
+    private static int indexOfExtreme(long[] values, BitSet nulls, int sign) {
+        Preconditions.checkNotNull(values, "array is null");
+        int index = -1;
+        for (int i = 0; i < values.length; i++) {
+            if ((nulls == null || !nulls.get(i)) && (index < 0 || Long.compare(values[i], values[index]) == sign)) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the first least (sign -1) or greatest (sign 1) value which is neither null nor NaN
+     */
+    private static int indexOfExtreme(double[] values, BitSet nulls, int sign) {
+        Preconditions.checkNotNull(values, "array is null");
+        int index = -1;
+        for (int i = 0; i < values.length; i++) {
+            double value = values[i];
+            if (Double.isNaN(value) || nulls != null && nulls.get(i)) {
+                continue;
+            }
+            // compared numerically, so -0.0 and 0.0 are equal as their BigDecimals are
+            if (index < 0 || (sign < 0 ? value < values[index] : value > values[index])) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the quotient of two longs rounded half up when positive and half down when negative
+     */
+    private static long divideRounded(long numerator, long denominator) {
+        if (denominator == Long.MIN_VALUE || numerator == Long.MIN_VALUE && denominator == -1) {
+            throw new ArithmeticException("overflow dividing " + numerator + " by " + denominator);
+        }
+        long quotient = numerator / denominator;
+        long remainder = Math.abs(numerator % denominator);
+        if (remainder == 0) {
+            return quotient;
+        }
+        boolean negative = numerator < 0 ^ denominator < 0;
+        // compares the remainder with half the denominator without overflowing
+        int half = Long.compare(remainder, Math.abs(denominator) - remainder);
+        if (half > 0 || half == 0 && !negative) {
+            quotient += negative ? -1 : 1;
+        }
+        return quotient;
+    }
+
+    private static List<BigDecimal> toBigDecimals(long[] unscaledValues, int scale, BitSet nulls) {
+        List<BigDecimal> decimals = new ArrayList<>(unscaledValues.length);
+        for (int i = 0; i < unscaledValues.length; i++) {
+            decimals.add(nulls != null && nulls.get(i) ? null : BigDecimal.valueOf(unscaledValues[i], scale));
+        }
+        return decimals;
+    }
+
+    /**
+     * Returns the {@code double} closest to unscaledValue &times; 10<sup>-scale</sup>; the same result as
+     * {@code BigDecimal.valueOf(unscaledValue, scale).doubleValue()} but without creating a BigDecimal when both the
+     * unscaled value and the power of ten are exactly representable as doubles, which covers all CRN values.
+     * @param unscaledValue the unscaled value
+     * @param scale the number of digits to the right of the decimal point
+     * @return the double value of the scaled number
+     */
+    public final static double toDouble(long unscaledValue, int scale) {
+        if (scale == 0) {
+            return unscaledValue;
+        }
+        if (scale > 0 && scale < EXACT_POWERS_OF_TEN.length && Math.abs(unscaledValue) <= MAX_EXACT_LONG) {
+            // both operands are exact, so the quotient is correctly rounded
+            return unscaledValue / EXACT_POWERS_OF_TEN[scale];
+        }
+        return BigDecimal.valueOf(unscaledValue, scale).doubleValue();
     }
 
     /**
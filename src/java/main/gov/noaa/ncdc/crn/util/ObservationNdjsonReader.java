@@ -0,0 +1,100 @@
+package gov.noaa.ncdc.crn.util;
+
+import gov.noaa.ncdc.crn.dao.ResultCallback;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Reads the newline-delimited JSON written by {@link ObservationNdjsonWriter}, one ObservationWithData at a time, so a
+ * file of any length is read in constant memory. Not thread-safe.
+ */
+public class ObservationNdjsonReader implements Closeable {
+    private final JsonReader json;
+    private final ObservationWithDataTypeAdapter adapter = new ObservationWithDataTypeAdapter();
+    private long count;
+
+    /**
+     * Creates a reader
+     * @param in the Reader to read from; buffer it, as it is read a character at a time
+     */
+    public ObservationNdjsonReader(Reader in) {
+        this.json = new JsonReader(Preconditions.checkNotNull(in, "in not nullable"));
+        // one top-level value per line
+        json.setLenient(true);
+    }
+
+    /**
+     * Creates a reader of UTF-8
+     * @param in the stream to read from, which is buffered
+     */
+    public ObservationNdjsonReader(InputStream in) {
+        this(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Reads the next hour
+     * @return the next ObservationWithData, or null at the end of the input
+     * @throws IOException if the underlying Reader fails
+     * @throws JsonSyntaxException if the next line is not an ObservationWithData
+     */
+    public ObservationWithData read() throws IOException {
+        try {
+            JsonToken token = json.peek();
+            if (token == JsonToken.END_DOCUMENT) {
+                return null;
+            }
+            if (token != JsonToken.BEGIN_OBJECT) {
+                throw new JsonSyntaxException("expected an ObservationWithData but was " + token);
+            }
+            ObservationWithData owd = adapter.read(json);
+            count++;
+            return owd;
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException | JsonSyntaxException e) {
+            // JsonReader reports malformed JSON as an IOException, and unexpected tokens as IllegalStateException
+            throw new JsonSyntaxException("malformed ObservationWithData after " + count + " lines", e);
+        }
+    }
+
+    /**
+     * Reads every remaining hour and passes it to a callback
+     * @param callback the callback to handle each ObservationWithData in the order read
+     * @return the number of hours read
+     * @throws IOException if the underlying Reader fails
+     * @throws JsonSyntaxException if a line is not an ObservationWithData
+     */
+    public long readAll(ResultCallback<? super ObservationWithData> callback) throws IOException {
+        Preconditions.checkNotNull(callback, "callback not nullable");
+        long read = 0;
+        for (ObservationWithData owd = read(); owd != null; owd = read()) {
+            callback.handle(owd);
+            read++;
+        }
+        return read;
+    }
+
+    /**
+     * Returns the number of hours read
+     * @return the number of lines read
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        json.close();
+    }
+}
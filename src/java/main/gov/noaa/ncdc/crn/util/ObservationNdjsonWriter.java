@@ -0,0 +1,95 @@
+package gov.noaa.ncdc.crn.util;
+
+import gov.noaa.ncdc.crn.dao.ResultCallback;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes ObservationWithData as newline-delimited JSON, one hour per line in the layout of
+ * {@link ObservationWithDataTypeAdapter}. Each hour is written as it is given, so a file of any length is written in
+ * constant memory. As a {@link ResultCallback} it can be handed directly to
+ * {@link gov.noaa.ncdc.crn.service.ObservationService#streamObservationsWithData} to export a station's period of
+ * record. Read the file back with {@link ObservationNdjsonReader}. Not thread-safe.
+ */
+public class ObservationNdjsonWriter implements ResultCallback<ObservationWithData>, Flushable, Closeable {
+    private final Writer out;
+    private final JsonWriter json;
+    private final ObservationWithDataTypeAdapter adapter = new ObservationWithDataTypeAdapter();
+    private long count;
+
+    /**
+     * Creates a writer
+     * @param out the Writer to write to; buffer it, as each value is written separately
+     */
+    public ObservationNdjsonWriter(Writer out) {
+        this.out = Preconditions.checkNotNull(out, "out not nullable");
+        this.json = new JsonWriter(out);
+        // one top-level value per line
+        json.setLenient(true);
+    }
+
+    /**
+     * Creates a writer of UTF-8
+     * @param out the stream to write to, which is buffered
+     */
+    public ObservationNdjsonWriter(OutputStream out) {
+        this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Writes an hour as a line
+     * @param owd the ObservationWithData to write
+     * @throws IOException if the underlying Writer fails
+     * @throws NullPointerException if owd is null
+     */
+    public void write(ObservationWithData owd) throws IOException {
+        Preconditions.checkNotNull(owd, "owd not nullable");
+        adapter.write(json, owd);
+        out.write('\n');
+        count++;
+    }
+
+    /**
+     * Writes an hour as a line, as {@link #write(ObservationWithData)}
+     * @throws JsonIOException if the underlying Writer fails
+     */
+    @Override
+    public void handle(ObservationWithData owd) {
+        try {
+            write(owd);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Returns the number of hours written
+     * @return the number of lines written
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        json.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // not json.close(), which fails if nothing was written
+        out.close();
+    }
+}
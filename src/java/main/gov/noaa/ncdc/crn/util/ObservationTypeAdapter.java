@@ -0,0 +1,117 @@
+package gov.noaa.ncdc.crn.util;
+
+import gov.noaa.ncdc.crn.domain.Observation;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Reads and writes {@link Observation} without reflection, e.g.
+ * {@code {"stationId":1021,"datetimeId":72258,"streamId":8,"dataSourceId":1,"fileName":"Crn_201101100602.lrgs",
+ * "lineNumber":3,"initialLoad":1294675322000}}. The field names are those a default {@code Gson} writes, but times are
+ * written as milliseconds since the epoch and null fields are left out. Times a default {@code Gson} wrote as
+ * formatted dates are also read.
+ */
+public class ObservationTypeAdapter extends TypeAdapter<Observation> {
+
+    @Override
+    public void write(JsonWriter out, Observation ob) throws IOException {
+        if (ob == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("stationId").value(ob.getStationId());
+        out.name("datetimeId").value(ob.getDatetimeId());
+        out.name("streamId").value(ob.getStreamId());
+        out.name("dataSourceId").value(ob.getDataSourceId());
+        if (ob.getFileName() != null) {
+            out.name("fileName").value(ob.getFileName());
+        }
+        if (ob.getLineNumber() != null) {
+            out.name("lineNumber").value(ob.getLineNumber());
+        }
+        writeTime(out, "initialLoad", ob.getInitialLoad());
+        writeTime(out, "lastModified", ob.getLastModified());
+        writeTime(out, "timeExportedToIsd", ob.getTimeExportedToIsd());
+        writeTime(out, "timeLoaded", ob.getTimeLoaded());
+        out.endObject();
+    }
+
+    private static void writeTime(JsonWriter out, String name, Timestamp time) throws IOException {
+        if (time != null) {
+            out.name(name).value(time.getTime());
+        }
+    }
+
+    @Override
+    public Observation read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Integer stationId = null;
+        Integer datetimeId = null;
+        int streamId = 0;
+        int dataSourceId = 0;
+        String fileName = null;
+        int lineNumber = 0;
+        Timestamp initialLoad = null;
+        Timestamp lastModified = null;
+        Timestamp timeExportedToIsd = null;
+        Timestamp timeLoaded = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+            } else if ("stationId".equals(name)) {
+                stationId = in.nextInt();
+            } else if ("datetimeId".equals(name)) {
+                datetimeId = in.nextInt();
+            } else if ("streamId".equals(name)) {
+                streamId = in.nextInt();
+            } else if ("dataSourceId".equals(name)) {
+                dataSourceId = in.nextInt();
+            } else if ("fileName".equals(name)) {
+                fileName = in.nextString();
+            } else if ("lineNumber".equals(name)) {
+                lineNumber = in.nextInt();
+            } else if ("initialLoad".equals(name)) {
+                initialLoad = readTime(in);
+            } else if ("lastModified".equals(name)) {
+                lastModified = readTime(in);
+            } else if ("timeExportedToIsd".equals(name)) {
+                timeExportedToIsd = readTime(in);
+            } else if ("timeLoaded".equals(name)) {
+                timeLoaded = readTime(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        if (stationId == null || datetimeId == null) {
+            throw new JsonSyntaxException("Observation requires stationId and datetimeId");
+        }
+        Observation ob = new Observation(stationId, datetimeId, streamId, dataSourceId, fileName, lineNumber);
+        ob.setInitialLoad(initialLoad);
+        ob.setLastModified(lastModified);
+        ob.setTimeExportedToIsd(timeExportedToIsd);
+        ob.setTimeLoaded(timeLoaded);
+        return ob;
+    }
+
+    private static Timestamp readTime(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.STRING) {
+            // a formatted date, as a default Gson writes
+            return JsonUtils.GSON.getAdapter(Timestamp.class).read(in);
+        }
+        return new Timestamp(in.nextLong());
+    }
+}
@@ -0,0 +1,272 @@
+package gov.noaa.ncdc.crn.util;
+
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.Observation;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Reads and writes {@link ObservationWithData} in a compact layout which gives each hour's ElementValues as a map of
+ * element id to value and flag int, e.g.
+ * {@code {"observation":{"stationId":1021,"datetimeId":72258,...},"values":{"4":[43.462,0],"5":[null,2]}}}. The
+ * station and datetime of the values are those of the {@link Observation}, written by {@link ObservationTypeAdapter}.
+ * A value's decimal places and published decimal places follow its flag int when either is not null, e.g.
+ * {@code [43.462,0,3,1]}. Values are written and read without creating a {@code BigDecimal} when they fit in a
+ * {@code long}.
+ * <p>
+ * This layout is about a seventh the size of the one {@link JsonUtils#GSON} writes, in which every ElementValue
+ * repeats its ids and flag bits.
+ */
+public class ObservationWithDataTypeAdapter extends TypeAdapter<ObservationWithData> {
+    /** the most decimal digits read into a long */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final ObservationTypeAdapter observationAdapter = new ObservationTypeAdapter();
+
+    @Override
+    public void write(JsonWriter out, ObservationWithData owd) throws IOException {
+        if (owd == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("observation");
+        observationAdapter.write(out, owd.getObservation());
+        Map<Integer, ElementValue> values = owd.getElementValues();
+        if (values != null) {
+            out.name("values");
+            out.beginObject();
+            for (Map.Entry<Integer, ElementValue> entry : values.entrySet()) {
+                out.name(entry.getKey().toString());
+                writeValue(out, entry.getValue());
+            }
+            out.endObject();
+        }
+        out.endObject();
+    }
+
+    private static void writeValue(JsonWriter out, ElementValue value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        if (value.hasValue()) {
+            writeDecimal(out, value);
+        } else {
+            out.nullValue();
+        }
+        out.value(value.getFlagInt());
+        if (value.getDecimalPlaces() != null || value.getPublishedDecimalPlaces() != null) {
+            writeInteger(out, value.getDecimalPlaces());
+            writeInteger(out, value.getPublishedDecimalPlaces());
+        }
+        out.endArray();
+    }
+
+    /** Writes a value from its unscaled long and scale as a plain decimal, e.g. -12.34, which readValue parses back */
+    private static void writeDecimal(JsonWriter out, ElementValue value) throws IOException {
+        long unscaled;
+        try {
+            unscaled = value.longUnscaled();
+        } catch (ArithmeticException ae) {
+            out.value(value.getValue());
+            return;
+        }
+        // an ElementValue's scale is never negative
+        int scale = value.scale();
+        if (scale == 0) {
+            out.value(unscaled);
+        } else {
+            out.value(new Decimal(plain(unscaled, scale)));
+        }
+    }
+
+    private static String plain(long unscaled, int scale) {
+        String digits = Long.toString(unscaled);
+        int start = unscaled < 0 ? 1 : 0;
+        StringBuilder plain = new StringBuilder(digits.length() + scale + 2);
+        plain.append(digits, 0, start);
+        int point = digits.length() - scale;
+        if (point <= start) {
+            plain.append("0.");
+            for (int i = point; i < start; i++) {
+                plain.append('0');
+            }
+            plain.append(digits, start, digits.length());
+        } else {
+            plain.append(digits, start, point).append('.').append(digits, point, digits.length());
+        }
+        return plain.toString();
+    }
+
+    private static void writeInteger(JsonWriter out, Integer value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(value);
+        }
+    }
+
+    @Override
+    public ObservationWithData read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Observation ob = null;
+        Map<Integer, ElementValue> values = null;
+        boolean valuesRead = false;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("observation".equals(name)) {
+                ob = observationAdapter.read(in);
+            } else if ("values".equals(name)) {
+                if (ob == null) {
+                    throw new JsonSyntaxException("ObservationWithData values must follow its observation");
+                }
+                values = readValues(in, ob);
+                valuesRead = true;
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        if (ob == null) {
+            throw new JsonSyntaxException("ObservationWithData requires an observation");
+        }
+        return valuesRead ? new ObservationWithData(ob, values) : new ObservationWithData(ob);
+    }
+
+    private static Map<Integer, ElementValue> readValues(JsonReader in, Observation ob) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Map<Integer, ElementValue> values = new HashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            int elementId;
+            try {
+                elementId = Integer.parseInt(in.nextName());
+            } catch (NumberFormatException e) {
+                throw new JsonSyntaxException("element id is not an int", e);
+            }
+            values.put(elementId, readValue(in, ob.getStationId(), ob.getDatetimeId(), elementId));
+        }
+        in.endObject();
+        return values;
+    }
+
+    private static ElementValue readValue(JsonReader in, int stationId, int datetimeId, int elementId)
+            throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        in.beginArray();
+        String value = null;
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+        } else {
+            value = in.nextString();
+        }
+        int flags = in.nextInt();
+        Integer decimalPlaces = null;
+        Integer publishedDecimalPlaces = null;
+        if (in.hasNext()) {
+            decimalPlaces = readInteger(in);
+            publishedDecimalPlaces = readInteger(in);
+        }
+        in.endArray();
+        if (value == null) {
+            return new ElementValue(stationId, datetimeId, elementId, null, flags, decimalPlaces,
+                    publishedDecimalPlaces);
+        }
+        // parse plain decimals such as -12.34 to (-1234, 2) directly; anything else through BigDecimal
+        int length = value.length();
+        int start = length > 0 && value.charAt(0) == '-' ? 1 : 0;
+        long unscaled = 0;
+        int digits = 0;
+        int point = -1;
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9' && digits < MAX_LONG_DIGITS) {
+                unscaled = unscaled * 10 + (c - '0');
+                digits++;
+            } else if (c == '.' && point < 0 && i > start && i < length - 1) {
+                point = i;
+            } else {
+                digits = -1;
+                break;
+            }
+        }
+        if (digits <= 0) {
+            try {
+                return new ElementValue(stationId, datetimeId, elementId, new BigDecimal(value), flags,
+                        decimalPlaces, publishedDecimalPlaces);
+            } catch (NumberFormatException e) {
+                throw new JsonSyntaxException("not a number: " + value, e);
+            }
+        }
+        int scale = point < 0 ? 0 : length - point - 1;
+        return new ElementValue(stationId, datetimeId, elementId, start == 0 ? unscaled : -unscaled, scale, flags,
+                decimalPlaces, publishedDecimalPlaces);
+    }
+
+    private static Integer readInteger(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextInt();
+    }
+
+    /**
+     * A decimal already formatted, which JsonWriter writes as a number by its toString
+     */
+    private static final class Decimal extends Number {
+        private static final long serialVersionUID = 1L;
+        private final String text;
+
+        private Decimal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int intValue() {
+            return (int) doubleValue();
+        }
+
+        @Override
+        public long longValue() {
+            return (long) doubleValue();
+        }
+
+        @Override
+        public float floatValue() {
+            return (float) doubleValue();
+        }
+
+        @Override
+        public double doubleValue() {
+            return Double.parseDouble(text);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
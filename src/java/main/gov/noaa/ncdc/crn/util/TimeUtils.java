@@ -1,10 +1,15 @@
 package gov.noaa.ncdc.crn.util;
 
 import gov.noaa.ncdc.crn.domain.Datetime;
+import gov.noaa.ncdc.crn.domain.DatetimeRange;
+import gov.noaa.ncdc.crn.domain.Station;
 
 import java.sql.Date;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.TimeZone;
 
 import org.apache.commons.logging.Log;
@@ -538,6 +543,20 @@ public class TimeUtils {
         return (int) hoursDuration;
     }
 
+    /**
+     * Computes the first datetimeId whose hour begins at or after a time. Unlike {@link #computeDateTimeId(Calendar)},
+     * which returns the hour in which the time occurs, this rounds up to the next hour unless the time is on the hour.
+     * @param millis milliseconds since the epoch
+     * @return the id of the first hour beginning at or after millis
+     */
+    public static int computeCeilingDateTimeId(long millis) {
+        long millisDuration = millis - CRN_EPOCH;
+        // division truncates toward zero, which already rounds up for times before the CRN epoch
+        long hoursDuration = millisDuration > 0 ? (millisDuration + MILLISECS_PER_HOUR - 1) / MILLISECS_PER_HOUR
+                : millisDuration / MILLISECS_PER_HOUR;
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, hoursDuration));
+    }
+
     /**
      * Computes a Calendar from a CRN datetimeId. Does not access the database to obtain result. Because datetimeIds
      * represent hourly intervals the minutes, seconds, and milliseconds of the Calendar will be zero. The resulting
@@ -557,11 +576,18 @@ public class TimeUtils {
     /**
      * Converts a local time datestring in one timezone to a datestring in UTC. For example, US/Eastern (daylight saving
      * time) is offset -4 hours from UTC, so convertToUTC("2009050614","US/Eastern") returns "2009050618"
+     * <p>
+     * Whole hours are converted by {@link ZoneOffsets}; dates with minutes use a Calendar.
      * @param yyyymmddhh in some time zone
      * @param timeZoneID
      * @return yyyymmddhh in UTC
      */
     public static String convertToUTC(String yyyymmddhh, String timeZoneID) {
+        ZoneOffsets zone = ZoneOffsets.forZone(timeZoneID);
+        Integer local = hourDatetimeId(yyyymmddhh);
+        if (local != null && zone.isHourly(local)) {
+            return DatetimeCodec.format(zone.fromLocalTime(local));
+        }
         Calendar cal = createCalendar(yyyymmddhh, timeZoneID);
         // TODO THis is documented as LST but not used that way by other programs; create parallel method or something
         // set daylight saving offset to 0 per method documentation
@@ -580,11 +606,18 @@ public class TimeUtils {
     /**
      * Converts a UTC time datestring to a datestring in local timezone. For example, US/Eastern (daylight time) is
      * offset -4 hours from UTC, so convertFromUTC("2009050619","US/Eastern") returns "2009050614"
+     * <p>
+     * Whole hours are converted by {@link ZoneOffsets}; dates with minutes use a Calendar.
      * @param yyyymmddhh in UTC
      * @param timeZoneID
      * @return yyyymmddhh in requested time zone
      */
     public static String convertFromUTC(String yyyymmddhh, String timeZoneID) {
+        ZoneOffsets zone = ZoneOffsets.forZone(timeZoneID);
+        Integer utc = hourDatetimeId(yyyymmddhh);
+        if (utc != null && zone.isHourly(utc)) {
+            return DatetimeCodec.format(zone.toLocalTime(utc));
+        }
         Calendar cal = createCalendar(yyyymmddhh, "UTC");
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("convertFromUTC(" + yyyymmddhh + ",\"" + timeZoneID + "\") cal before conversion: "
@@ -600,11 +633,18 @@ public class TimeUtils {
     /**
      * Converts a *standard* time datestring in one timezone to a datestring in UTC. For example, US/Eastern (standard
      * time) is offset -5 hours from UTC, so convertLSTToUTC("2009050614","US/Eastern") returns "2009050619"
+     * <p>
+     * Whole hours are converted by {@link ZoneOffsets}; dates with minutes use a Calendar.
      * @param yyyymmddhh in some time zone
      * @param timeZoneID
      * @return yyyymmddhh in UTC
      */
     public static String convertLSTToUTC(String yyyymmddhh, String timeZoneID) {
+        ZoneOffsets zone = ZoneOffsets.forZone(timeZoneID);
+        Integer local = hourDatetimeId(yyyymmddhh);
+        if (local != null && zone.isHourly(local)) {
+            return DatetimeCodec.format(zone.fromLocalStandardTime(local));
+        }
         Calendar cal = createCalendar(yyyymmddhh, timeZoneID);
         // set daylight saving offset to 0 per method documentation
         cal.set(Calendar.DST_OFFSET, 0);
@@ -622,11 +662,18 @@ public class TimeUtils {
     /**
      * Converts a UTC time datestring to a datestring in a *standard* timezone. For example, US/Eastern (standard time)
      * is offset -5 hours from UTC, so convertFromUTC("2009050619","US/Eastern") returns "2009050614"
+     * <p>
+     * Whole hours are converted by {@link ZoneOffsets}; dates with minutes use a Calendar.
      * @param yyyymmddhh in UTC
      * @param timeZoneID
      * @return yyyymmddhh in requested time zone
      */
     public static String convertLSTFromUTC(String yyyymmddhh, String timeZoneID) {
+        ZoneOffsets zone = ZoneOffsets.forZone(timeZoneID);
+        Integer utc = hourDatetimeId(yyyymmddhh);
+        if (utc != null && zone.isHourly(utc)) {
+            return DatetimeCodec.format(zone.toLocalStandardTime(utc));
+        }
         Calendar cal = createCalendar(yyyymmddhh, "UTC");
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("convertFromUTC(" + yyyymmddhh + ",\"" + timeZoneID + "\") cal before conversion: "
@@ -641,12 +688,83 @@ public class TimeUtils {
         return getYYYYMMDDHH24(cal);
     }
 
+    /**
+     * Returns the UTC datetimeIds of a LST day or month. As for {@link #getObservationDay(String)}, the hours of a day
+     * end at 01 through 24, so the LST day 20090101 is the hours ending 2009010101 through 2009010200 LST.
+     * @param yyyymmdd a LST day as yyyymmdd or month as yyyymm
+     * @param offset the hours from UTC of local standard time, as {@link Station#getOffset()}
+     * @return the DatetimeRange of UTC hours
+     * @throws IllegalArgumentException if the date is not yyyymm or yyyymmdd
+     */
+    public static DatetimeRange computeLstDateTimeRange(String yyyymmdd, int offset) {
+        DatetimeRange local = computeLocalRange(yyyymmdd);
+        return new DatetimeRange(local.getBegin() - offset, local.getEnd() - offset);
+    }
+
+    /**
+     * Returns the UTC datetimeIds of a LST day or month for each of a collection of stations, parsing the date once and
+     * sharing one DatetimeRange between the stations with the same offset
+     * @param yyyymmdd a LST day as yyyymmdd or month as yyyymm
+     * @param stations the stations
+     * @return a Map of stationId to the DatetimeRange of UTC hours, as {@link #computeLstDateTimeRange(String, int)}
+     * @throws IllegalArgumentException if the date is not yyyymm or yyyymmdd
+     */
+    public static Map<Integer, DatetimeRange> computeLstDateTimeRanges(String yyyymmdd,
+            Collection<? extends Station> stations) {
+        DatetimeRange local = computeLocalRange(yyyymmdd);
+        Map<Integer, DatetimeRange> byOffset = new HashMap<>();
+        Map<Integer, DatetimeRange> ranges = new HashMap<>(stations.size() * 4 / 3 + 1);
+        for (Station station : stations) {
+            int offset = station.getOffset();
+            DatetimeRange range = byOffset.get(offset);
+            if (range == null) {
+                range = new DatetimeRange(local.getBegin() - offset, local.getEnd() - offset);
+                byOffset.put(offset, range);
+            }
+            ranges.put(station.getStationId(), range);
+        }
+        return ranges;
+    }
+
+    /**
+     * Returns the local datetimeIds of the hours ending in a day or month
+     */
+    private static DatetimeRange computeLocalRange(String yyyymmdd) {
+        int length = yyyymmdd.length();
+        if (length == 8) {
+            return new DatetimeRange(DatetimeCodec.parse(yyyymmdd + "01"), DatetimeCodec.parse(yyyymmdd + "24"));
+        }
+        if (length != 6) {
+            throw new IllegalArgumentException("not yyyymm or yyyymmdd: " + yyyymmdd);
+        }
+        int begin = DatetimeCodec.parse(yyyymmdd + "0101");
+        int year = Integer.parseInt(yyyymmdd.substring(0, 4));
+        int month = Integer.parseInt(yyyymmdd.substring(4, 6));
+        String next = month == 12 ? String.format("%04d01", year + 1) : String.format("%04d%02d", year, month + 1);
+        return new DatetimeRange(begin, DatetimeCodec.parse(next + "0100"));
+    }
+
+    /**
+     * Returns the datetimeId of a YYYYMMDDHH24[00] string, or null if it has minutes or is not a valid date
+     */
+    private static Integer hourDatetimeId(String yyyymmddhh) {
+        int length = yyyymmddhh.length();
+        if (length == 10 || length == 12 && yyyymmddhh.endsWith("00")) {
+            try {
+                return DatetimeCodec.parse(yyyymmddhh);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
     /**
      * Returns the number of milliseconds since the epoch for a datetime
      * @return milliseconds since the epoch for this Datetime.
      */
     public static long getMsSinceEpoch(Datetime datetime) {
-        return datetime.getUtcCal().getTimeInMillis();
+        return datetime.getTimeInMillis();
     }
 
 }
@@ -0,0 +1,291 @@
+package gov.noaa.ncdc.crn.util;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Converts datetimeIds between UTC and the local civil or local standard time of a time zone by integer arithmetic.
+ * The zone's offsets are read from java.util.TimeZone once per year, as the hours at which they change, so a
+ * conversion is a binary search of a few transitions and an addition rather than a Calendar.
+ * <p>
+ * A local datetimeId counts hours on the local clock as if it were UTC, so {@link DatetimeCodec#format(int)} of a local
+ * datetimeId is the local YYYYMMDDHH24. Local civil time observes daylight saving time; local standard time (LST) does
+ * not. Conversions are only defined where the zone's offsets are whole hours; see {@link #isHourly(int)}.
+ * <p>
+ * Instances are cached per time zone id and are thread-safe.
+ */
+public final class ZoneOffsets {
+    private static final int FIRST_YEAR = 1900;
+    private static final int LAST_YEAR = 2100;
+    /** datetimeIds of January 1 00Z of FIRST_YEAR through LAST_YEAR + 1 */
+    private static final int[] YEAR_STARTS = new int[LAST_YEAR - FIRST_YEAR + 2];
+    /** hours either side of a local time between which the offsets before and after any transition are found */
+    private static final int SEARCH_HOURS = 30;
+    private static final ConcurrentMap<String, ZoneOffsets> ZONES = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < YEAR_STARTS.length; i++) {
+            YEAR_STARTS[i] = DatetimeCodec.parse(String.format("%04d010100", FIRST_YEAR + i));
+        }
+    }
+
+    private final String id;
+    /** guarded by itself; a Calendar is not thread-safe and is only used to build years */
+    private final Calendar calendar;
+    private final AtomicReferenceArray<Year> years = new AtomicReferenceArray<>(YEAR_STARTS.length - 1);
+
+    private ZoneOffsets(final String id) {
+        this.id = id;
+        this.calendar = new GregorianCalendar(TimeZone.getTimeZone(id));
+    }
+
+    /**
+     * Returns the offsets of a time zone
+     * @param timeZoneID a java.util.TimeZone id; as for TimeZone, an unknown id is GMT
+     * @return the shared ZoneOffsets of the zone
+     */
+    public static ZoneOffsets forZone(String timeZoneID) {
+        Preconditions.checkNotNull(timeZoneID, "timeZoneID not nullable");
+        ZoneOffsets zone = ZONES.get(timeZoneID);
+        if (zone == null) {
+            ZoneOffsets created = new ZoneOffsets(timeZoneID);
+            zone = ZONES.putIfAbsent(timeZoneID, created);
+            if (zone == null) {
+                zone = created;
+            }
+        }
+        return zone;
+    }
+
+    /**
+     * Returns the time zone id
+     * @return the id this ZoneOffsets was created for
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns true if the zone's offsets are whole hours in the year of a datetimeId, so that it can be converted
+     * @param datetimeId a UTC datetimeId
+     * @return true if the conversions of this class are defined for that year
+     */
+    public boolean isHourly(int datetimeId) {
+        return year(datetimeId).hourly;
+    }
+
+    /**
+     * Returns the offset of local civil time from UTC, including any daylight saving time
+     * @param datetimeId a UTC datetimeId
+     * @return the offset in hours
+     * @throws IllegalArgumentException if the offset is not a whole number of hours
+     */
+    public int getOffset(int datetimeId) {
+        Year year = hourlyYear(datetimeId);
+        return year.civil[year.index(datetimeId)];
+    }
+
+    /**
+     * Returns the offset of local standard time from UTC
+     * @param datetimeId a UTC datetimeId
+     * @return the offset in hours
+     * @throws IllegalArgumentException if the offset is not a whole number of hours
+     */
+    public int getStandardOffset(int datetimeId) {
+        Year year = hourlyYear(datetimeId);
+        return year.standard[year.index(datetimeId)];
+    }
+
+    /**
+     * Returns true if daylight saving time is in effect
+     * @param datetimeId a UTC datetimeId
+     * @return true if the civil and standard offsets differ
+     */
+    public boolean inDaylightTime(int datetimeId) {
+        Year year = hourlyYear(datetimeId);
+        int i = year.index(datetimeId);
+        return year.civil[i] != year.standard[i];
+    }
+
+    /**
+     * Returns the hours in a year at which the zone's offsets change, such as the start and end of daylight saving
+     * time
+     * @param year the UTC year
+     * @return a new int[] of the UTC datetimeIds from which the new offsets apply, in ascending order
+     * @throws IllegalArgumentException if the year is outside 1900-2100
+     */
+    public int[] getTransitions(int year) {
+        Preconditions.checkArgument(year >= FIRST_YEAR && year <= LAST_YEAR, "year out of range: %s", year);
+        Year offsets = year(YEAR_STARTS[year - FIRST_YEAR]);
+        return Arrays.copyOfRange(offsets.starts, 1, offsets.starts.length);
+    }
+
+    /**
+     * Converts UTC to local civil time
+     * @param datetimeId a UTC datetimeId
+     * @return the local datetimeId
+     */
+    public int toLocalTime(int datetimeId) {
+        return datetimeId + getOffset(datetimeId);
+    }
+
+    /**
+     * Converts UTC to local standard time
+     * @param datetimeId a UTC datetimeId
+     * @return the LST datetimeId
+     */
+    public int toLocalStandardTime(int datetimeId) {
+        return datetimeId + getStandardOffset(datetimeId);
+    }
+
+    /**
+     * Converts local civil time to UTC as a lenient GregorianCalendar does: an hour skipped when daylight saving time
+     * begins is read with the offset before the change, and an hour repeated when it ends with the offset after it
+     * @param localDatetimeId a local datetimeId
+     * @return the UTC datetimeId
+     */
+    public int fromLocalTime(int localDatetimeId) {
+        int before = getOffset(localDatetimeId - SEARCH_HOURS);
+        int after = getOffset(localDatetimeId + SEARCH_HOURS);
+        if (before == after || getOffset(localDatetimeId - after) == after) {
+            return localDatetimeId - after;
+        }
+        return localDatetimeId - before;
+    }
+
+    /**
+     * Converts local standard time to UTC
+     * @param localDatetimeId a LST datetimeId
+     * @return the UTC datetimeId
+     */
+    public int fromLocalStandardTime(int localDatetimeId) {
+        return localDatetimeId - getStandardOffset(localDatetimeId - getStandardOffset(localDatetimeId));
+    }
+
+    private Year hourlyYear(int datetimeId) {
+        Year year = year(datetimeId);
+        Preconditions.checkArgument(year.hourly, "%s offset is not whole hours at datetimeId %s", id, datetimeId);
+        return year;
+    }
+
+    private Year year(int datetimeId) {
+        int i = yearIndex(datetimeId);
+        if (i < 0) {
+            // outside the cached years; read just this hour
+            return build(datetimeId, datetimeId + 1);
+        }
+        Year year = years.get(i);
+        if (year == null) {
+            years.compareAndSet(i, null, build(YEAR_STARTS[i], YEAR_STARTS[i + 1]));
+            year = years.get(i);
+        }
+        return year;
+    }
+
+    private static int yearIndex(int datetimeId) {
+        if (datetimeId < YEAR_STARTS[0] || datetimeId >= YEAR_STARTS[YEAR_STARTS.length - 1]) {
+            return -1;
+        }
+        int i = Math.min((datetimeId - YEAR_STARTS[0]) / 8766, YEAR_STARTS.length - 2);
+        while (datetimeId < YEAR_STARTS[i]) {
+            i--;
+        }
+        while (datetimeId >= YEAR_STARTS[i + 1]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Reads the offsets from the first datetimeId up to, not including, the last. Steps a day at a time and bisects to
+     * the hour when the offsets change, so two changes less than a day apart are not seen.
+     */
+    private Year build(int from, int to) {
+        synchronized (calendar) {
+            int[] starts = new int[4];
+            int[] civil = new int[4];
+            int[] standard = new int[4];
+            boolean hourly = true;
+            int count = 0;
+            int start = from;
+            long current = offsets(from);
+            while (true) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    civil = Arrays.copyOf(civil, count * 2);
+                    standard = Arrays.copyOf(standard, count * 2);
+                }
+                starts[count] = start;
+                civil[count] = (int) (current >> 32);
+                standard[count] = (int) current;
+                hourly &= civil[count] % TimeUtils.MILLISECS_PER_HOUR == 0
+                        && standard[count] % TimeUtils.MILLISECS_PER_HOUR == 0;
+                count++;
+                int low = start;
+                int high = start;
+                long next = current;
+                while (next == current && high < to - 1) {
+                    low = high;
+                    high = Math.min(high + 24, to - 1);
+                    next = offsets(high);
+                }
+                if (next == current) {
+                    break;
+                }
+                // offsets(low) is current and offsets(high) is not
+                while (high - low > 1) {
+                    int mid = low + (high - low) / 2;
+                    if (offsets(mid) == current) {
+                        low = mid;
+                    } else {
+                        high = mid;
+                    }
+                }
+                start = high;
+                current = offsets(high);
+            }
+            int hour = (int) TimeUtils.MILLISECS_PER_HOUR;
+            for (int i = 0; i < count; i++) {
+                civil[i] /= hour;
+                standard[i] /= hour;
+            }
+            return new Year(Arrays.copyOf(starts, count), Arrays.copyOf(civil, count), Arrays.copyOf(standard, count),
+                    hourly);
+        }
+    }
+
+    /** Returns the civil offset in the high int and the standard offset in the low int, both in milliseconds */
+    private long offsets(int datetimeId) {
+        calendar.setTimeInMillis(DatetimeCodec.toMillis(datetimeId));
+        int standard = calendar.get(Calendar.ZONE_OFFSET);
+        int civil = standard + calendar.get(Calendar.DST_OFFSET);
+        return (long) civil << 32 | standard & 0xFFFFFFFFL;
+    }
+
+    /** The offsets of one year, as the hours from which each applies */
+    private static final class Year {
+        private final int[] starts;
+        private final int[] civil;
+        private final int[] standard;
+        private final boolean hourly;
+
+        private Year(final int[] starts, final int[] civil, final int[] standard, final boolean hourly) {
+            this.starts = starts;
+            this.civil = civil;
+            this.standard = standard;
+            this.hourly = hourly;
+        }
+
+        private int index(int datetimeId) {
+            int i = Arrays.binarySearch(starts, datetimeId);
+            return i >= 0 ? i : -i - 2;
+        }
+    }
+}
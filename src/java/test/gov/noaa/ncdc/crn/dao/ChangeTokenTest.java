@@ -0,0 +1,77 @@
+package gov.noaa.ncdc.crn.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import gov.noaa.ncdc.crn.domain.Observation;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class ChangeTokenTest {
+
+    private static Observation ob(Timestamp lastModified, Timestamp timeLoaded) {
+        Observation ob = new Observation(1026, 74123, 12, 1, "fakefile.txt", 125);
+        ob.setLastModified(lastModified);
+        ob.setTimeLoaded(timeLoaded);
+        return ob;
+    }
+
+    @Test
+    public final void testModificationTime() {
+        Timestamp earlier = new Timestamp(1380000000000L);
+        Timestamp later = new Timestamp(1380000060000L);
+        assertEquals(later, ChangeToken.modificationTime(ob(earlier, later)));
+        assertEquals(later, ChangeToken.modificationTime(ob(later, earlier)));
+        assertEquals(earlier, ChangeToken.modificationTime(ob(null, earlier)));
+        assertEquals(earlier, ChangeToken.modificationTime(ob(earlier, null)));
+        assertNull(ChangeToken.modificationTime(ob(null, null)));
+    }
+
+    @Test
+    public final void testAfter() {
+        Timestamp modified = new Timestamp(1380000000000L);
+        modified.setNanos(123456789);
+        ChangeToken token = ChangeToken.after(ob(modified, null));
+        assertEquals(modified, token.getModified());
+        assertEquals(1026, token.getStationId());
+        assertEquals(74123, token.getDatetimeId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testAfterUnmodified() {
+        ChangeToken.after(ob(null, null));
+    }
+
+    @Test
+    public final void testSince() {
+        ChangeToken token = ChangeToken.since(new Date(1380000000000L));
+        assertEquals(new Timestamp(1380000000000L), token.getModified());
+        // follows every Observation modified at the watermark
+        assertEquals(Integer.MAX_VALUE, token.getStationId());
+        assertEquals(Integer.MAX_VALUE, token.getDatetimeId());
+    }
+
+    @Test
+    public final void testParse() {
+        Timestamp modified = new Timestamp(1380000000123L);
+        modified.setNanos(123456789);
+        ChangeToken token = ChangeToken.after(ob(modified, null));
+        assertEquals("1380000000123:123456789:1026:74123", token.toString());
+        ChangeToken parsed = ChangeToken.parse(token.toString());
+        assertEquals(token, parsed);
+        assertEquals(token.hashCode(), parsed.hashCode());
+        assertEquals(modified, parsed.getModified());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testParseInvalid() {
+        ChangeToken.parse("1380000000123:0:1026");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testParseNotNumeric() {
+        ChangeToken.parse("1380000000123:0:1026:abc");
+    }
+}
@@ -284,6 +284,12 @@ public class DatetimeDaoTest {
         assertEquals("Datetime(63473) id incorrect",
             63473,datetimes.get(63473).getDatetimeId());
     }
+    @Test
+    public final void testFindDatetimeMismatches() {
+        List<Integer> mismatches = datetimeDao.findDatetimeMismatches(63471, 63471 + 24 * 366);
+        assertEquals("computed datetimes differ from the table at " + mismatches, 0, mismatches.size());
+    }
+
     @Test
     @Transactional
     @Rollback(true)
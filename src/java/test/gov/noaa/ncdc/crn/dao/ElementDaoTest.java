@@ -4,9 +4,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import gov.noaa.ncdc.crn.dao.mybatis.ElementDaoImpl;
 import gov.noaa.ncdc.crn.domain.Element;
+import gov.noaa.ncdc.crn.domain.ElementCatalog;
 import gov.noaa.ncdc.crn.domain.ElementGroup;
 import gov.noaa.ncdc.crn.domain.ElementValue;
 import gov.noaa.ncdc.crn.domain.Observation;
@@ -639,6 +642,19 @@ public class ElementDaoTest {
         assertEquals("WET125s not equal", expected, result);
     }
 
+    @Test
+    public final void testGetElementCatalog() {
+        ElementCatalog catalog = elementDao.getElementCatalog();
+        assertSame("catalog should be kept", catalog, elementDao.getElementCatalog());
+        assertEquals("catalog differs from elements", elementDao.getElements(), catalog.getElements());
+        assertEquals("T_MIN wrong", 439, elementDao.getElement("T_MIN").getElementId());
+        assertTrue("T_MIN is calculated", catalog.isCalculated(439));
+        assertFalse("WET125 is observed", catalog.isCalculated(130));
+        ElementCatalog refreshed = elementDao.refreshElementCatalog();
+        assertSame("refresh should replace catalog", refreshed, elementDao.getElementCatalog());
+        assertEquals("refreshed catalog differs", catalog.getElements(), refreshed.getElements());
+    }
+
     @Test
     public final void testGetElementValue() {
         StationDateElement one = new StationDateElement(1026,63000,439);
@@ -770,6 +786,43 @@ public class ElementDaoTest {
     }
 
 
+    @Test
+    @DirtiesContext
+    @Transactional
+    @Rollback(true)
+    public final void testInsertElementValuesBulk()  {
+        int datetimeId=64127;
+        int stationId=1326;
+        ElementValue ev1 = new ElementValue(stationId,datetimeId,142,new BigDecimal("12.3"),3,null,null);
+        ElementValue ev2 = new ElementValue(stationId,datetimeId,151,new BigDecimal("12.4"),0,null,null);
+        ElementValue ev3 = new ElementValue(stationId,datetimeId,149,new BigDecimal("12048"),7,null,null);
+        List<ElementValue> values = Lists.newArrayList(ev1,ev2,ev3);
+        for (ElementValue ev : values) {
+            assertNull("should not get value",elementDao.getElementValue(
+                    new StationDateElement(stationId,datetimeId,ev.getElementId())));
+        }
+
+        // multi-row inserts in partitions smaller than the collection
+        ElementDaoImpl impl = (ElementDaoImpl) elementDao;
+        impl.setBulkInsert(true);
+        impl.setInsertPartitionSize(2);
+        try {
+            elementDao.insertElementValues(values);
+        } finally {
+            impl.setBulkInsert(false);
+            impl.setInsertPartitionSize(100);
+        }
+
+        // show values and flags inserted correctly
+        for (ElementValue ev : values) {
+            ElementValue result = elementDao.getElementValue(
+                    new StationDateElement(stationId,datetimeId,ev.getElementId()));
+            assertNotNull("should get value",result);
+            assertEquals("values should be equal",ev.getValue(),result.getValue());
+            assertEquals("flags should be equal",ev.getFlagInt(),result.getFlagInt());
+        }
+    }
+
     @Test
     public final void testGetElementGroupMap()  {
         Map<Integer,ElementGroup> map = elementDao.getElementGroupMap();
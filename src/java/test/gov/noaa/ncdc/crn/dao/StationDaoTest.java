@@ -4,11 +4,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import gov.noaa.ncdc.crn.domain.Observation;
 import gov.noaa.ncdc.crn.domain.ObservationWithData;
 import gov.noaa.ncdc.crn.domain.Station;
+import gov.noaa.ncdc.crn.domain.StationRegistry;
 import gov.noaa.ncdc.crn.service.ObservationService;
 import gov.noaa.ncdc.crn.spring.ApplicationContextProvider.Contexts;
 
@@ -129,6 +131,19 @@ public class StationDaoTest {
         assertNotNull("expect dummy chicago station if true arg", stationsWithoutPor.get(9997));
     }
 
+    @Test
+    public final void testGetStationRegistry() {
+        StationRegistry registry = stationDao.getStationRegistry();
+        assertSame("registry should be kept", registry, stationDao.getStationRegistry());
+        assertEquals("registry differs from stations", stationDao.getStations(), registry.getStations());
+        assertEquals("registry differs from all stations", stationDao.getStations(true), registry.getStations(true));
+        assertNotNull("expect dummy chicago station by id", registry.get(9997));
+        assertFalse("dummy chicago station has no por", registry.hasPor(9997));
+        assertEquals("wrong station for wban", 1026, registry.getByWbanno("53877").getStationId());
+        StationRegistry refreshed = stationDao.refreshStationRegistry();
+        assertSame("refresh should replace registry", refreshed, stationDao.getStationRegistry());
+    }
+
     @Test
     public final void testGetStations() {
         Map<Integer, Station> stations = stationDao.getStations();
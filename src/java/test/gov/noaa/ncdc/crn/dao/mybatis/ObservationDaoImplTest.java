@@ -0,0 +1,215 @@
+package gov.noaa.ncdc.crn.dao.mybatis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import gov.noaa.ncdc.crn.dao.ChangeToken;
+import gov.noaa.ncdc.crn.dao.ElementDao;
+import gov.noaa.ncdc.crn.dao.ObservationChanges;
+import gov.noaa.ncdc.crn.dao.ResultCallback;
+import gov.noaa.ncdc.crn.domain.DatetimeRange;
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueChanges;
+import gov.noaa.ncdc.crn.domain.ElementValueIndex;
+import gov.noaa.ncdc.crn.domain.Observation;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+import gov.noaa.ncdc.crn.persistence.ElementMapper;
+import gov.noaa.ncdc.crn.persistence.ObservationMapper;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class ObservationDaoImplTest {
+    private static final int STATION = 1026;
+
+    private ObservationMapper mapper;
+    private ElementMapper elementMapper;
+    private ElementDao elementDao;
+    private ObservationDaoImpl dao;
+    private List<ObservationWithData> handled;
+    private ResultCallback<ObservationWithData> callback;
+
+    @Before
+    public void setUp() {
+        mapper = mock(ObservationMapper.class);
+        elementMapper = mock(ElementMapper.class);
+        elementDao = mock(ElementDao.class);
+        dao = new ObservationDaoImpl(mapper, elementMapper, elementDao, mock(SqlSession.class));
+        handled = new ArrayList<>();
+        callback = new ResultCallback<ObservationWithData>() {
+            @Override
+            public void handle(ObservationWithData owd) {
+                handled.add(owd);
+            }
+        };
+    }
+
+    private static Map<Integer, Observation> observations(int... datetimeIds) {
+        Map<Integer, Observation> obs = new HashMap<>();
+        for (int datetimeId : datetimeIds) {
+            obs.put(datetimeId, new Observation(STATION, datetimeId, 98, 1, "file", 1));
+        }
+        return obs;
+    }
+
+    private static ElementValue value(int datetimeId, int elementId) {
+        return new ElementValue(STATION, datetimeId, elementId, new BigDecimal(datetimeId), 0, null, null);
+    }
+
+    private static void feed(ResultHandler handler, ElementValue... values) {
+        DefaultResultContext context = new DefaultResultContext();
+        for (ElementValue value : values) {
+            context.nextResultObject(value);
+            handler.handleResult(context);
+        }
+    }
+
+    @Test
+    public final void testAssembler() {
+        ObservationDaoImpl.ObservationAssembler assembler =
+                new ObservationDaoImpl.ObservationAssembler(observations(103, 100, 101, 105), callback);
+        // no values for 100 or 105; values for 102 and 104, which have no Observation
+        feed(assembler, value(101, 439), value(101, 440), value(102, 439), value(103, 439), value(104, 439));
+        // each hour is handed on once a row of a later hour arrives; 105 only when the window is finished
+        assertEquals(3, handled.size());
+        assembler.finish();
+
+        assertEquals(4, handled.size());
+        int[] datetimeIds = { 100, 101, 103, 105 };
+        for (int i = 0; i < datetimeIds.length; i++) {
+            assertEquals(datetimeIds[i], handled.get(i).getDatetimeId());
+        }
+        assertTrue(handled.get(0).getElementValues().isEmpty());
+        assertEquals(2, handled.get(1).getElementValues().size());
+        assertEquals(value(101, 440), handled.get(1).getElementValue(440));
+        assertEquals(1, handled.get(2).getElementValues().size());
+        assertEquals(value(103, 439), handled.get(2).getElementValue(439));
+        assertTrue(handled.get(3).getElementValues().isEmpty());
+    }
+
+    @Test
+    public final void testAssemblerNoValues() {
+        ObservationDaoImpl.ObservationAssembler assembler =
+                new ObservationDaoImpl.ObservationAssembler(observations(100, 101), callback);
+        assembler.finish();
+        assertEquals(2, handled.size());
+        assertTrue(handled.get(1).getElementValues().isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public final void testStreamWindows() {
+        final int window = ObservationDaoImpl.STREAM_WINDOW_HOURS;
+        final int begin = 1000;
+        final int end = begin + 2 * window + 9;
+        when(mapper.selectObservations(anyInt(), anyInt(), eq(STATION))).thenAnswer(
+                new Answer<Map<Integer, Observation>>() {
+                    @Override
+                    public Map<Integer, Observation> answer(InvocationOnMock invocation) {
+                        int from = (Integer) invocation.getArguments()[0];
+                        // the second window has no Observations
+                        return from == begin + window ? new HashMap<Integer, Observation>() : observations(from,
+                                from + 1);
+                    }
+                });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Map<String, Object> params = (Map<String, Object>) invocation.getArguments()[0];
+                int from = (Integer) params.get("begin");
+                feed((ResultHandler) invocation.getArguments()[1], value(from + 1, 439));
+                return null;
+            }
+        }).when(elementMapper).selectOrderedElementValues(anyMapOf(String.class, Object.class),
+                any(ResultHandler.class));
+
+        dao.streamObservationsWithData(begin, end, STATION, callback);
+
+        verify(mapper).selectObservations(begin, begin + window - 1, STATION);
+        verify(mapper).selectObservations(begin + window, begin + 2 * window - 1, STATION);
+        verify(mapper).selectObservations(begin + 2 * window, end, STATION);
+        int[] datetimeIds = { begin, begin + 1, begin + 2 * window, begin + 2 * window + 1 };
+        assertEquals(datetimeIds.length, handled.size());
+        for (int i = 0; i < datetimeIds.length; i++) {
+            assertEquals(datetimeIds[i], handled.get(i).getDatetimeId());
+        }
+        assertTrue(handled.get(0).getElementValues().isEmpty());
+        assertEquals(value(begin + 1, 439), handled.get(1).getElementValue(439));
+        assertEquals(value(begin + 2 * window + 1, 439), handled.get(3).getElementValue(439));
+    }
+
+    @Test
+    public final void testReadWindows() {
+        int week = ObservationDaoImpl.VALUE_READ_WINDOW_HOURS;
+        assertTrue(ObservationDaoImpl.readWindows(new ArrayList<Integer>()).isEmpty());
+        assertEquals(Arrays.asList(new DatetimeRange(100, 100)), ObservationDaoImpl.readWindows(Arrays.asList(100)));
+        assertEquals(Arrays.asList(new DatetimeRange(100, 99 + week), new DatetimeRange(100 + week, 100 + week),
+                new DatetimeRange(100000, 100002)), ObservationDaoImpl.readWindows(Arrays.asList(100002, 100,
+                99 + week, 100000, 100 + week, 100, 150)));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public final void testUpsertReadsOnlyNearTheValues() {
+        when(elementDao.getElementValueIndex(anyMapOf(String.class, Object.class))).thenReturn(
+                new ElementValueIndex());
+        // two corrections years apart
+        List<ElementValue> values = Arrays.asList(value(1000, 439), value(1001, 440), value(30000, 439));
+        ElementValueChanges changes = dao.upsertElementValues(values);
+        assertEquals(3, changes.getInserted());
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(elementDao, times(2)).getElementValueIndex(params.capture());
+        assertEquals(1000, params.getAllValues().get(0).get("begin"));
+        assertEquals(1001, params.getAllValues().get(0).get("end"));
+        assertEquals(30000, params.getAllValues().get(1).get("begin"));
+        assertEquals(30000, params.getAllValues().get(1).get("end"));
+        assertEquals(new HashSet<>(Arrays.asList(439, 440)), params.getAllValues().get(1).get("elementIds"));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public final void testChangesReadOnlyNearTheChanges() {
+        Map<Integer, Observation> obs = observations(1000, 1001, 30000);
+        for (Observation ob : obs.values()) {
+            ob.setTimeLoaded(new Timestamp(ob.getDatetimeId() * 1000L));
+        }
+        when(mapper.selectObservationsModifiedSince(any(Timestamp.class), anyInt(), anyInt(), anyInt())).thenReturn(
+                new ArrayList<>(obs.values()));
+        when(elementDao.getElementValueIndex(anyMapOf(String.class, Object.class))).thenReturn(
+                new ElementValueIndex());
+        ObservationChanges changes = dao.getObservationChanges(ChangeToken.since(new Date(0)), 10, true);
+        assertEquals(3, changes.getObservations().size());
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(elementDao, times(2)).getElementValueIndex(params.capture());
+        assertEquals(1000, params.getAllValues().get(0).get("begin"));
+        assertEquals(1001, params.getAllValues().get(0).get("end"));
+        assertEquals(30000, params.getAllValues().get(1).get("begin"));
+        assertEquals(30000, params.getAllValues().get(1).get("end"));
+    }
+}
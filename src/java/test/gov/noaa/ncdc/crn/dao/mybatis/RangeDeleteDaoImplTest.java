@@ -0,0 +1,114 @@
+package gov.noaa.ncdc.crn.dao.mybatis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import gov.noaa.ncdc.crn.dao.RangeDeleteResult;
+import gov.noaa.ncdc.crn.persistence.ElementMapper;
+import gov.noaa.ncdc.crn.persistence.ObservationMapper;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class RangeDeleteDaoImplTest {
+
+    private ObservationMapper observationMapper;
+    private ElementMapper elementMapper;
+    private PlatformTransactionManager transactionManager;
+    private RangeDeleteDaoImpl dao;
+
+    @Before
+    public void setUp() {
+        observationMapper = mock(ObservationMapper.class);
+        elementMapper = mock(ElementMapper.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(
+                mock(TransactionStatus.class));
+        dao = new RangeDeleteDaoImpl(observationMapper, elementMapper, new TransactionTemplate(transactionManager));
+        dao.setMaxRowsPerTransaction(3);
+        dao.setThreads(2);
+    }
+
+    @Test
+    public final void testDeleteObservationsInChunks() {
+        when(elementMapper.deleteFlagRange(1026, 1000, 2000, 3)).thenReturn(3, 3, 1);
+        when(elementMapper.deleteFactRange(1026, 1000, 2000, 3)).thenReturn(3, 3, 0);
+        when(observationMapper.deleteObLoadlogRange(1026, 1000, 2000, 3)).thenReturn(2);
+        when(observationMapper.deleteObservationRange(1026, 1000, 2000, 3)).thenReturn(2);
+
+        RangeDeleteResult result = dao.deleteObservations(Collections.singleton(1026), 1000, 2000);
+        assertEquals(new RangeDeleteResult(7, 6, 2, 2, 8), result);
+        assertEquals(17, result.getTotal());
+        verify(elementMapper, times(3)).deleteFlagRange(1026, 1000, 2000, 3);
+        verify(elementMapper, times(3)).deleteFactRange(1026, 1000, 2000, 3);
+        // each chunk is committed separately
+        verify(transactionManager, times(8)).commit(any(TransactionStatus.class));
+    }
+
+    @Test
+    public final void testDeleteObservationsSumsStations() {
+        when(elementMapper.deleteFlagRange(anyInt(), eq(1000), eq(2000), eq(3))).thenReturn(1);
+        when(elementMapper.deleteFactRange(anyInt(), eq(1000), eq(2000), eq(3))).thenReturn(2);
+        when(observationMapper.deleteObLoadlogRange(anyInt(), eq(1000), eq(2000), eq(3))).thenReturn(1);
+        when(observationMapper.deleteObservationRange(anyInt(), eq(1000), eq(2000), eq(3))).thenReturn(1);
+
+        // a repeated station is only deleted once
+        RangeDeleteResult result = dao.deleteObservations(Arrays.asList(1026, 1027, 1028, 1026), 1000, 2000);
+        assertEquals(new RangeDeleteResult(3, 6, 3, 3, 12), result);
+        verify(observationMapper).deleteObservationRange(1026, 1000, 2000, 3);
+        verify(observationMapper).deleteObservationRange(1027, 1000, 2000, 3);
+        verify(observationMapper).deleteObservationRange(1028, 1000, 2000, 3);
+    }
+
+    @Test
+    public final void testDeleteObservationsNoStations() {
+        assertEquals(RangeDeleteResult.NONE, dao.deleteObservations(Collections.<Integer> emptyList(), 1000, 2000));
+    }
+
+    @Test
+    public final void testDeleteObservationsFailure() {
+        when(elementMapper.deleteFlagRange(1026, 1000, 2000, 3)).thenReturn(0);
+        when(elementMapper.deleteFactRange(1026, 1000, 2000, 3)).thenThrow(
+                new DataIntegrityViolationException("test"));
+        try {
+            dao.deleteObservations(Collections.singleton(1026), 1000, 2000);
+            fail("expected DataIntegrityViolationException");
+        } catch (DataIntegrityViolationException e) {
+            // expected
+        }
+        verify(transactionManager).rollback(any(TransactionStatus.class));
+        // parents are not deleted when children fail
+        verify(observationMapper, never()).deleteObservationRange(anyInt(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public final void testDeleteCalculatedValues() {
+        int[] elementIds = { 439, 440 };
+        when(elementMapper.deleteCalculatedFlagRange(1026, 1000, 2000, 3, elementIds)).thenReturn(1);
+        when(elementMapper.deleteCalculatedFactRange(1026, 1000, 2000, 3, elementIds)).thenReturn(3, 2);
+
+        RangeDeleteResult result = dao.deleteCalculatedValues(Collections.singleton(1026), 1000, 2000, elementIds);
+        assertEquals(new RangeDeleteResult(1, 5, 0, 0, 3), result);
+        verify(observationMapper, never()).deleteObservationRange(anyInt(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testMaxRowsPerTransactionPositive() {
+        dao.setMaxRowsPerTransaction(0);
+    }
+}
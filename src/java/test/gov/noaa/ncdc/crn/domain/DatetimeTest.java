@@ -2,9 +2,17 @@ package gov.noaa.ncdc.crn.domain;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import gov.noaa.ncdc.crn.util.TimeUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Calendar;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -185,4 +193,42 @@ public class DatetimeTest {
         assertTrue("expect no difference",yearEnd.equals(newDatetime));
         assertTrue("expect no difference",newDatetime.equals(yearEnd));
     }
+
+    @Test
+    public final void testValueOf() {
+        Datetime shared = Datetime.valueOf(datetimeId);
+        assertEquals(datetime, shared);
+        assertSame(shared, Datetime.valueOf(datetimeId));
+        assertSame(shared.next(), Datetime.valueOf(datetimeId + 1));
+        assertEquals("2009010100", Datetime.valueOf(yearEndId).getDatetime0_23());
+        // outside the cached range
+        Datetime early = Datetime.valueOf(-1);
+        assertEquals("2000100408", early.getDatetime0_23());
+        assertNotSame(early, Datetime.valueOf(-1));
+    }
+
+    @Test
+    public final void testGetUtcCalCopy() {
+        Calendar cal = datetime.getUtcCal();
+        cal.add(Calendar.HOUR, 5);
+        assertEquals("changing the calendar does not change the datetime", datetimeString, datetime
+                .getDatetime0_23());
+        assertEquals(TimeUtils.computeCalendarDate(datetimeId).getTimeInMillis(), datetime.getTimeInMillis());
+        assertEquals(0, datetime.compareTo(TimeUtils.computeCalendarDate(datetimeId)));
+    }
+
+    @Test
+    public final void testSerialization() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(yearEnd);
+            out.writeObject(Datetime.valueOf(datetimeId));
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Datetime read = (Datetime) in.readObject();
+            assertEquals(yearEnd, read);
+            assertEquals(2009, read.getYear());
+            assertEquals(datetime, in.readObject());
+        }
+    }
 }
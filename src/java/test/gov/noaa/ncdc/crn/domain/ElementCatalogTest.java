@@ -0,0 +1,97 @@
+package gov.noaa.ncdc.crn.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class ElementCatalogTest {
+
+    private Element tMin;
+    private Element tMax;
+    private Element wet125;
+    private ElementCatalog catalog;
+
+    @Before
+    public void setUp() {
+        tMin = new Element(439, "T_MIN", "calculated minimum temp for hour", Boolean.TRUE, 60, 60, 3, 1, "deg_C", 72);
+        tMax = new Element(440, "T_MAX", "calculated maximum temp for hour", Boolean.TRUE, 60, 60, 3, 1, "deg_C", 73);
+        wet125 = new Element(130, "WET125", "wetness sensor channel 1 minimum for 5 minutes ending at :25",
+                Boolean.FALSE, 5, 25, 0, 0, "ohms", 201);
+        ElementGroup temps = new ElementGroup(7, 1, "temperature", 439, ImmutableList.of(439, 440));
+        catalog = new ElementCatalog(Arrays.asList(tMin, wet125, tMax), Arrays.asList(temps));
+    }
+
+    @Test
+    public final void testGet() {
+        assertSame(tMin, catalog.get(439));
+        assertSame(wet125, catalog.get("WET125"));
+        assertNull(catalog.get(441));
+        assertNull(catalog.get(-1));
+        assertNull(catalog.get("T_AVG"));
+        assertEquals(3, catalog.size());
+    }
+
+    @Test
+    public final void testIsCalculated() {
+        assertTrue(catalog.isCalculated(439));
+        assertFalse(catalog.isCalculated(130));
+        BitSet calculated = catalog.getCalculatedIds();
+        assertEquals(2, calculated.cardinality());
+        // copies
+        calculated.clear();
+        assertTrue(catalog.isCalculated(440));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testIsCalculatedUnknown() {
+        catalog.isCalculated(441);
+    }
+
+    @Test
+    public final void testGroups() {
+        assertTrue(catalog.isGroupMember(7, 440));
+        assertFalse(catalog.isGroupMember(7, 130));
+        assertFalse(catalog.isGroupMember(8, 440));
+        assertEquals(2, catalog.getGroupMemberIds(7).cardinality());
+        assertTrue(catalog.getGroupMemberIds(8).isEmpty());
+        assertEquals(1, catalog.getElementGroups().size());
+    }
+
+    @Test
+    public final void testDurationAndEndMinute() {
+        BitSet hourly = catalog.getIdsWithDuration(60);
+        assertEquals(2, hourly.cardinality());
+        assertTrue(hourly.get(439) && hourly.get(440));
+        assertTrue(catalog.getIdsWithEndMinute(25).get(130));
+        assertTrue(catalog.getIdsWithEndMinute(15).isEmpty());
+    }
+
+    @Test
+    public final void testMaps() {
+        // in elementId order
+        assertEquals(Arrays.asList(130, 439, 440), ImmutableList.copyOf(catalog.getElements().keySet()));
+        assertEquals(ImmutableMap.of(440, tMax), catalog.getElements(Arrays.asList(440, 441)));
+        assertEquals(ImmutableMap.of("T_MIN", tMin), catalog.getElementsByName(Arrays.asList("T_MIN", "T_AVG")));
+        assertEquals(3, catalog.getElementsByName().size());
+        // repeated ids and names
+        assertEquals(ImmutableMap.of(440, tMax), catalog.getElements(Arrays.asList(440, 441, 440)));
+        assertEquals(ImmutableMap.of("T_MIN", tMin), catalog.getElementsByName(Arrays.asList("T_MIN", "T_MIN")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testDuplicateId() {
+        new ElementCatalog(Arrays.asList(tMin, tMin), Collections.<ElementGroup> emptyList());
+    }
+}
@@ -0,0 +1,91 @@
+package gov.noaa.ncdc.crn.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ElementValueBlockTest {
+
+    int stationId=1026;
+    int datetimeId=74123;
+    int elementId=439;
+    int flags=5;
+    String value = "-0.26";
+    ElementValue ev;
+    ElementValue evNulls;
+    ElementValueBlock block;
+
+    @Before
+    public void setUp() {
+        ev=new ElementValue(stationId,datetimeId,elementId,new BigDecimal(value),flags,2,1);
+        evNulls=new ElementValue(stationId,datetimeId+1,elementId,null,null,null,null);
+        block=new ElementValueBlock(1);
+        block.add(ev);
+        block.add(evNulls);
+    }
+
+    @Test
+    public final void testSize() {
+        assertEquals(2,block.size());
+        assertFalse(block.isEmpty());
+        assertTrue(new ElementValueBlock().isEmpty());
+    }
+
+    @Test
+    public final void testAccessors() {
+        assertEquals(stationId,block.getStationId(0));
+        assertEquals(datetimeId,block.getDatetimeId(0));
+        assertEquals(datetimeId+1,block.getDatetimeId(1));
+        assertEquals(elementId,block.getElementId(1));
+        assertEquals(-26,block.getUnscaledValue(0));
+        assertEquals(2,block.getScale(0));
+        assertEquals(value,block.getValue(0).toPlainString());
+        assertEquals(-0.26,block.getDoubleValue(0),0);
+        assertEquals(flags,block.getFlags(0));
+        assertTrue(block.isFlagged(0,FlagType.RANGE));
+        assertFalse(block.isFlagged(0,FlagType.DELTA));
+        assertTrue(block.isFlagged(0,FlagType.DOOR));
+        assertEquals(Integer.valueOf(2),block.getDecimalPlaces(0));
+        assertEquals(Integer.valueOf(1),block.getPublishedDecimalPlaces(0));
+    }
+
+    @Test
+    public final void testNulls() {
+        assertFalse(block.isNull(0));
+        assertTrue(block.isNull(1));
+        assertNull(block.getValue(1));
+        assertTrue(Double.isNaN(block.getDoubleValue(1)));
+        assertEquals(0,block.getFlags(1));
+        assertNull(block.getDecimalPlaces(1));
+        assertNull(block.getPublishedDecimalPlaces(1));
+    }
+
+    @Test
+    public final void testToElementValue() {
+        assertEquals(ev,block.toElementValue(0));
+        assertEquals(evNulls,block.toElementValue(1));
+    }
+
+    @Test
+    public final void testNegativeScale() {
+        int row = block.add(stationId,datetimeId,elementId,new BigDecimal("1E+2"),0,null,null);
+        assertEquals(100,block.getUnscaledValue(row));
+        assertEquals(0,block.getScale(row));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public final void testValueTooLarge() {
+        block.add(stationId,datetimeId,elementId,new BigDecimal("123456789012345678901234567890"),0,null,null);
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public final void testRowOutOfRange() {
+        block.getStationId(2);
+    }
+}
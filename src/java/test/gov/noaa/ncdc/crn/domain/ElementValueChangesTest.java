@@ -0,0 +1,111 @@
+package gov.noaa.ncdc.crn.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+public class ElementValueChangesTest {
+
+    // element 500 is calculated
+    private static final Predicate<ElementValue> CALCULATED = new Predicate<ElementValue>() {
+        @Override
+        public boolean apply(ElementValue value) {
+            return value.getElementId() == 500;
+        }
+    };
+
+    private static ElementValue ev(int datetimeId, int elementId, String value, int flags) {
+        return new ElementValue(1026, datetimeId, elementId, value == null ? null : new BigDecimal(value), flags, 1,
+                1);
+    }
+
+    @Test
+    public final void testDiff() {
+        ElementValueIndex current = new ElementValueIndex(Arrays.asList(ev(1000, 439, "4.0", 0),
+                ev(1000, 440, "4.1", 4), ev(1000, 441, "4.2", 0), ev(1000, 500, "8.8", 0), ev(1000, 442, "1.0", 0)));
+        ElementValue inserted = ev(1001, 439, "5.0", 2);
+        ElementValue valueChanged = ev(1000, 439, "4.5", 0);
+        ElementValue flagChanged = ev(1000, 440, "4.1", 0);
+        ElementValue unchanged = ev(1000, 441, "4.20", 0);
+        ElementValue deleted = ev(1000, 500, null, 0);
+        ElementValue skipped = ev(1000, 442, null, 0);
+
+        ElementValueChanges changes =
+                ElementValueChanges.diff(current, Arrays.asList(inserted, valueChanged, flagChanged, unchanged,
+                        deleted, skipped), CALCULATED);
+        assertEquals(1, changes.getInserted());
+        assertEquals(1, changes.getValuesChanged());
+        assertEquals(1, changes.getFlagsChanged());
+        assertEquals(1, changes.getDeleted());
+        assertEquals(1, changes.getUnchanged());
+        // a stored value which is not calculated is not deleted
+        assertEquals(1, changes.getSkipped());
+        assertEquals(2, changes.getUpdated());
+        assertEquals(6, changes.getTotal());
+        assertFalse(changes.isEmpty());
+        // in key order
+        assertEquals(Arrays.asList(valueChanged, inserted), changes.getFactWrites());
+        assertEquals(Arrays.asList(flagChanged, inserted), changes.getFlagWrites());
+        assertEquals(Arrays.asList(deleted), changes.getDeletes());
+    }
+
+    @Test
+    public final void testDiffValueAndFlagChanged() {
+        ElementValueIndex current = new ElementValueIndex(Arrays.asList(ev(1000, 439, "4.0", 4)));
+        ElementValue changed = ev(1000, 439, "4.5", 6);
+        ElementValueChanges changes =
+                ElementValueChanges.diff(current, Collections.singleton(changed), Predicates.alwaysTrue());
+        assertEquals(1, changes.getValuesChanged());
+        assertEquals(1, changes.getFlagsChanged());
+        assertEquals(0, changes.getUnchanged());
+        assertEquals(1, changes.getUpdated());
+        assertEquals(1, changes.getTotal());
+        assertEquals(Arrays.asList(changed), changes.getFactWrites());
+        assertEquals(Arrays.asList(changed), changes.getFlagWrites());
+    }
+
+    @Test
+    public final void testDiffUnflaggedInsertWritesNoFlag() {
+        ElementValueChanges changes =
+                ElementValueChanges.diff(new ElementValueIndex(), Collections.singleton(ev(1000, 439, "4.0", 0)),
+                        Predicates.alwaysTrue());
+        assertEquals(1, changes.getInserted());
+        assertEquals(1, changes.getFactWrites().size());
+        assertTrue(changes.getFlagWrites().isEmpty());
+    }
+
+    @Test
+    public final void testDiffNothingToWrite() {
+        ElementValueIndex current = new ElementValueIndex(Arrays.asList(ev(1000, 439, "4.0", 4)));
+        // deleting a value which is not stored and repeating a stored value
+        ElementValueChanges changes =
+                ElementValueChanges.diff(current, Arrays.asList(ev(1000, 439, "4.0", 4), ev(1000, 500, null, 0)),
+                        CALCULATED);
+        assertTrue(changes.isEmpty());
+        assertEquals(2, changes.getUnchanged());
+        assertEquals("ElementValueChanges{inserted=0, valuesChanged=0, flagsChanged=0, deleted=0, unchanged=2, "
+                + "skipped=0}",
+                changes.toString());
+    }
+
+    @Test
+    public final void testDiffLastRequestWins() {
+        ElementValueIndex current = new ElementValueIndex(Arrays.asList(ev(1000, 439, "4.0", 0)));
+        ElementValueChanges changes =
+                ElementValueChanges.diff(current, Arrays.asList(ev(1000, 439, "9.9", 0), ev(1000, 439, "4.0", 0)),
+                        Predicates.alwaysTrue());
+        assertTrue(changes.isEmpty());
+        assertEquals(1, changes.getUnchanged());
+        assertEquals(1, changes.getSkipped());
+        assertEquals(2, changes.getTotal());
+    }
+}
@@ -0,0 +1,131 @@
+package gov.noaa.ncdc.crn.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ElementValueIndexTest {
+
+    int stationId=1026;
+    int datetimeId=74123;
+    int elementId=439;
+    ElementValue ev;
+    ElementValueIndex index;
+
+    @Before
+    public void setUp() {
+        ev=new ElementValue(stationId,datetimeId,elementId,new BigDecimal("-0.26"),5,2,1);
+        index=new ElementValueIndex();
+        index.put(ev);
+    }
+
+    @Test
+    public final void testGet() {
+        assertEquals(1,index.size());
+        assertFalse(index.isEmpty());
+        assertSame(ev,index.get(stationId,datetimeId,elementId));
+        assertSame(ev,index.get(new StationDateElement(stationId,datetimeId,elementId)));
+        assertSame(ev,index.get(StationDateElement.packKey(stationId,datetimeId,elementId)));
+        assertTrue(index.containsKey(stationId,datetimeId,elementId));
+        assertTrue(index.containsKey(new StationDateElement(stationId,datetimeId,elementId)));
+        assertNull(index.get(stationId,datetimeId,elementId+1));
+        assertFalse(index.containsKey(new StationDateElement(stationId,datetimeId+1,elementId)));
+        // out of range and foreign keys are simply absent
+        assertNull(index.get(-1,datetimeId,elementId));
+        assertNull(index.get("hi"));
+    }
+
+    @Test
+    public final void testPutReplaces() {
+        ElementValue replacement=new ElementValue(stationId,datetimeId,elementId,new BigDecimal("1.5"),null,null);
+        assertSame(ev,index.put(replacement));
+        assertEquals(1,index.size());
+        assertSame(replacement,index.get(stationId,datetimeId,elementId));
+        assertSame(replacement,index.put(new StationDateElement(stationId,datetimeId,elementId),ev));
+        assertSame(ev,index.get(stationId,datetimeId,elementId));
+    }
+
+    @Test(expected=NullPointerException.class)
+    public final void testNullValue() {
+        index.put(new StationDateElement(stationId,datetimeId,elementId),null);
+    }
+
+    @Test
+    public final void testMatchesHashMap() {
+        // random puts and removes across several resizes give the same contents as a HashMap
+        Random random=new Random(20131001);
+        Map<StationDateElement,ElementValue> expected=new HashMap<>();
+        ElementValueIndex actual=new ElementValueIndex();
+        for (int i=0; i<20000; i++) {
+            StationDateElement sde=new StationDateElement(1000+random.nextInt(5),70000+random.nextInt(200),
+                    random.nextInt(50));
+            if (random.nextInt(4)==0) {
+                assertEquals(expected.remove(sde),actual.remove(sde));
+            } else {
+                ElementValue value=new ElementValue(sde.getStationId(),sde.getDatetimeId(),sde.getElementId(),
+                        BigDecimal.valueOf(i),null,null);
+                assertEquals(expected.put(sde,value),actual.put(value));
+            }
+        }
+        assertEquals(expected.size(),actual.size());
+        assertEquals(expected,actual);
+        assertEquals(actual,expected);
+        assertEquals(expected.hashCode(),actual.hashCode());
+        for (StationDateElement sde : expected.keySet()) {
+            assertSame(expected.get(sde),actual.get(sde.getStationId(),sde.getDatetimeId(),sde.getElementId()));
+        }
+        assertEquals(expected.size(),actual.values().size());
+        assertTrue(actual.values().containsAll(expected.values()));
+    }
+
+    @Test
+    public final void testSortedValues() {
+        List<ElementValue> values=new ArrayList<>();
+        ElementValueIndex sorted=new ElementValueIndex(10);
+        for (int i=9; i>=0; i--) {
+            ElementValue value=new ElementValue(stationId-i%2,datetimeId+i,elementId,null,null,null);
+            values.add(value);
+            sorted.put(value);
+        }
+        Collections.sort(values);
+        assertEquals(values,sorted.sortedValues());
+    }
+
+    @Test
+    public final void testCopy() {
+        List<ElementValue> values=new ArrayList<>();
+        values.add(ev);
+        values.add(new ElementValue(stationId,datetimeId+1,elementId,null,null,null));
+        ElementValueIndex copy=new ElementValueIndex(values);
+        assertEquals(2,copy.size());
+        assertSame(ev,copy.get(stationId,datetimeId,elementId));
+    }
+
+    @Test
+    public final void testClear() {
+        index.clear();
+        assertTrue(index.isEmpty());
+        assertNull(index.get(stationId,datetimeId,elementId));
+        assertFalse(index.entrySet().iterator().hasNext());
+        index.put(ev);
+        assertEquals(1,index.size());
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public final void testIteratorRemove() {
+        index.values().iterator().remove();
+    }
+}
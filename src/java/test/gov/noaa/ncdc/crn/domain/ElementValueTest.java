@@ -6,6 +6,14 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import gov.noaa.ncdc.crn.util.JsonUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.math.BigDecimal;
 
 import org.junit.Before;
@@ -193,4 +201,102 @@ public class ElementValueTest {
         assertFalse(evNulls.equals(ev));
     }
 
+    @Test
+    public final void testScaledValue() {
+        assertTrue(ev.hasValue());
+        assertFalse(evNulls.hasValue());
+        assertEquals(26,ev.longUnscaled());
+        assertEquals(2,ev.scale());
+        assertEquals(0.26,ev.doubleValue(),0);
+        ElementValue scaled=new ElementValue(stationId,datetimeId,elementId,-123L,1,flags,decimalPlaces,pubDecimalPlaces);
+        assertEquals("-12.3",scaled.getValue().toPlainString());
+        assertEquals(-12.3,scaled.doubleValue(),0);
+        assertEquals(flags,scaled.getFlagInt());
+        // negative scales are normalized as with toPlainString()
+        ElementValue hundred=new ElementValue(stationId,datetimeId,elementId,new BigDecimal("1E+2"),null,null);
+        assertEquals(100,hundred.longUnscaled());
+        assertEquals(0,hundred.scale());
+        assertEquals("100",hundred.getValue().toPlainString());
+    }
+
+    @Test
+    public final void testBigValue() {
+        String big="123456789012345678901234567890.5";
+        ElementValue bigEv=new ElementValue(stationId,datetimeId,elementId,new BigDecimal(big),null,null);
+        assertEquals(big,bigEv.getValue().toPlainString());
+        assertEquals(1,bigEv.scale());
+        assertEquals(1.2345678901234568E29,bigEv.doubleValue(),0);
+        assertTrue(bigEv.compareTo(ev)>0);
+    }
+
+    @Test(expected=ArithmeticException.class)
+    public final void testBigValueLongUnscaled() {
+        new ElementValue(stationId,datetimeId,elementId,new BigDecimal("123456789012345678901234567890"),null,null)
+                .longUnscaled();
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public final void testNullLongUnscaled() {
+        evNulls.longUnscaled();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public final void testNegativeScale() {
+        new ElementValue(stationId,datetimeId,elementId,123L,-1,null,null,null);
+    }
+
+    @Test
+    public final void testPublishedValueCached() {
+        assertTrue(ev.getPublishedValue()==ev.getPublishedValue());
+    }
+
+    @Test
+    public final void testEqualScales() {
+        ElementValue ev1=new ElementValue(stationId,datetimeId,elementId,new BigDecimal("1.5"),null,null);
+        ElementValue ev2=new ElementValue(stationId,datetimeId,elementId,new BigDecimal("1.50"),null,null);
+        assertEquals(ev1,ev2);
+        assertEquals(ev1.hashCode(),ev2.hashCode());
+        ElementValue ev3=new ElementValue(stationId,datetimeId,elementId,new BigDecimal("1.49"),null,null);
+        assertTrue(ev3.compareTo(ev1)<0);
+        assertTrue(ev1.compareTo(ev3)>0);
+        ElementValue nullValue=new ElementValue(stationId,datetimeId,elementId,null,null,null);
+        // null values sort last
+        assertTrue(ev1.compareTo(nullValue)<0);
+        assertTrue(nullValue.compareTo(ev1)>0);
+    }
+
+    @Test
+    public final void testSerializedFormCompatible() throws IOException, ClassNotFoundException {
+        // written by the BigDecimal based implementation
+        ElementValue expected=new ElementValue(stationId,datetimeId,elementId,new BigDecimal("-0.26"),flags,decimalPlaces,pubDecimalPlaces);
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream("src/resources/test/data/evs/ev-1026-74123-439.ser"))) {
+            assertEquals(expected,in.readObject());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(expected);
+            out.writeObject(evNulls);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(expected,in.readObject());
+            assertEquals(evNulls,in.readObject());
+        }
+    }
+
+    @Test
+    public final void testJson() {
+        // layout written by the BigDecimal based implementation
+        String json="{\"staDateElement\":{\"stationId\":1026,\"datetimeId\":74123,\"elementId\":439},\"value\":-0.26,"
+                +"\"decimalPlaces\":2,\"publishedDecimalPlaces\":1,\"flags\":{\"flagbits\":[1,0,1]}}";
+        ElementValue expected=new ElementValue(stationId,datetimeId,elementId,new BigDecimal("-0.26"),flags,decimalPlaces,pubDecimalPlaces);
+        assertEquals(json,JsonUtils.GSON.toJson(expected));
+        assertEquals(expected,JsonUtils.GSON.fromJson(json,ElementValue.class));
+        // values may also be quoted
+        assertEquals(expected,JsonUtils.GSON.fromJson(json.replace("-0.26","\"-0.26\""),ElementValue.class));
+        ElementValue nullValue=new ElementValue(stationId,datetimeId,elementId,null,null,null);
+        assertEquals("{\"staDateElement\":{\"stationId\":1026,\"datetimeId\":74123,\"elementId\":439},\"flags\":{\"flagbits\":[]}}",
+                JsonUtils.GSON.toJson(nullValue));
+        assertEquals(nullValue,JsonUtils.GSON.fromJson(JsonUtils.GSON.toJson(nullValue),ElementValue.class));
+    }
+
 }
@@ -3,7 +3,16 @@ package gov.noaa.ncdc.crn.domain;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import gov.noaa.ncdc.crn.util.JsonUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 import org.junit.Test;
 
@@ -125,4 +134,55 @@ public class FlagsTest {
 		assertEquals(expected,flagValue);
 	}
 
+	@Test
+	public void testValueOf() {
+		assertSame(Flags.UNFLAGGED,Flags.valueOf(0));
+		assertSame(Flags.valueOf(9),Flags.valueOf(9));
+		assertEquals(9,Flags.valueOf(9).getIntValue());
+		assertTrue(Flags.valueOf(9).isFlagged(FlagType.EXCEPTION));
+		assertEquals(new Flags(9),Flags.valueOf(9));
+		assertEquals(new Flags(9).hashCode(),Flags.valueOf(9).hashCode());
+		assertEquals(128,Flags.valueOf(128).getIntValue());
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testSharedFlagsImmutable() {
+		Flags.UNFLAGGED.setFlagged(FlagType.RANGE);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNegativeInt() {
+		new Flags(-1);
+	}
+
+	@Test
+	public void testSerializedFormCompatible() throws IOException, ClassNotFoundException {
+		// written by the BitSet based implementation
+		try (ObjectInputStream in = new ObjectInputStream(new FileInputStream("src/resources/test/data/flags/flags-13.ser"))) {
+			assertEquals(13,((Flags)in.readObject()).getIntValue());
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(Flags.valueOf(13));
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			Flags flags = (Flags)in.readObject();
+			assertEquals(13,flags.getIntValue());
+			// shared instances are replaced by plain Flags when serialized
+			flags.setFlagged(FlagType.DELTA);
+			assertEquals(15,flags.getIntValue());
+		}
+	}
+
+	@Test
+	public void testJson() {
+		assertEquals("{\"flagbits\":[1,0,1,1]}",JsonUtils.GSON.toJson(new Flags(13)));
+		assertEquals("{\"flagbits\":[]}",JsonUtils.GSON.toJson(Flags.UNFLAGGED));
+		assertEquals(13,JsonUtils.GSON.fromJson("{\"flagbits\":[1,0,1,1]}",Flags.class).getIntValue());
+		assertEquals(0,JsonUtils.GSON.fromJson("{\"flagbits\":[]}",Flags.class).getIntValue());
+		assertEquals(5,JsonUtils.GSON.fromJson("{\"mask\":5}",Flags.class).getIntValue());
+		ElementValue ev = JsonUtils.GSON.fromJson(JsonUtils.GSON.toJson(new ElementValue(1026,74123,439,null,5,null,null)),ElementValue.class);
+		assertEquals(5,ev.getFlags().getIntValue());
+	}
+
 }
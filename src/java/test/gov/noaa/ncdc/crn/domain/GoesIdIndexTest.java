@@ -0,0 +1,97 @@
+package gov.noaa.ncdc.crn.domain;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import gov.noaa.ncdc.crn.util.TimeUtils;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GoesIdIndexTest {
+
+    private Station millbrook;
+    private Station dulce;
+    private Station meadview;
+    private Station wolfPoint;
+    private GoesIdIndex index;
+    /** hour Dulce closed */
+    private int closed;
+
+    @Before
+    public void setUp() {
+        millbrook = station(1118, "0460E8", null);
+        dulce = station(1650, "0B039C", "20110304");
+        meadview = station(1783, "0B039C", null);
+        wolfPoint = station(1030, "CD00A0CC", null);
+        index = new GoesIdIndex(Arrays.asList(meadview, millbrook, wolfPoint, dulce));
+        closed = TimeUtils.computeDateTimeId(TimeUtils.createUTCCalendar("20110304"));
+    }
+
+    private static Station station(int stationId, String goesId, String closedDate) {
+        return new Station(stationId, "AZ", "Somewhere", "1 N", 1, null, goesId, null, null, -7, null, null, null,
+                null, null, closedDate == null ? "O" : "C", -1, false, null, closedDate, false);
+    }
+
+    @Test
+    public final void testSingleStation() {
+        assertSame(millbrook, index.get("0460E8", 100000));
+        assertSame(millbrook, index.get("0460E8", 0));
+        assertNull(index.get("notrealid", 100000));
+    }
+
+    @Test
+    public final void testSharedGoesId() {
+        // before the POR and before the closed date
+        assertSame(dulce, index.get("0B039C", 1000));
+        assertSame(dulce, index.get("0B039C", closed - 2 * 24));
+        // within the grace period
+        assertSame(dulce, index.get("0B039C", closed + 24 * 6));
+        assertSame(dulce, index.get("0B039C", closed + GoesIdIndex.OVERLAP_HOURS - 1));
+        // after the grace period
+        assertSame(meadview, index.get("0B039C", closed + GoesIdIndex.OVERLAP_HOURS));
+        assertSame(meadview, index.get("0B039C", 150000));
+    }
+
+    @Test
+    public final void testPrefixes() {
+        assertSame(wolfPoint, index.get("00A0CC", 100300));
+        assertSame(wolfPoint, index.get("CD00A0CC", 100300));
+        assertNull(index.get("DA00A0CC", 100300));
+        assertNull(index.get("CD0460E8", 100300));
+    }
+
+    @Test
+    public final void testOrderedByClosedDate() {
+        Station first = station(9996, "654321", "20080406");
+        Station second = station(9994, "DA654321", "20100801");
+        Station last = station(9995, "654321", null);
+        GoesIdIndex reused = new GoesIdIndex(Arrays.asList(last, second, first));
+        int firstClosed = TimeUtils.computeDateTimeId(TimeUtils.createUTCCalendar("20080406"));
+        int secondClosed = TimeUtils.computeDateTimeId(TimeUtils.createUTCCalendar("20100801"));
+        assertSame(first, reused.get("654321", firstClosed));
+        assertSame(second, reused.get("654321", firstClosed + GoesIdIndex.OVERLAP_HOURS));
+        assertSame(second, reused.get("654321", secondClosed));
+        assertSame(last, reused.get("654321", secondClosed + GoesIdIndex.OVERLAP_HOURS));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public final void testNoClosedDates() {
+        GoesIdIndex open = new GoesIdIndex(Arrays.asList(station(1, "AAAAAA", null), station(2, "AAAAAA", null)));
+        open.get("AAAAAA", 100000);
+    }
+
+    @Test
+    public final void testBatch() {
+        String[] goesIds = { "0B039C", "0B039C", "0460E8", "notrealid", "0B039C" };
+        int[] datetimeIds = { 1000, 150000, 100000, 100000, closed };
+        assertArrayEquals(new Station[] { dulce, meadview, millbrook, null, dulce }, index.get(goesIds, datetimeIds));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testBatchLengths() {
+        index.get(new String[] { "0B039C" }, new int[] { 1000, 2000 });
+    }
+}
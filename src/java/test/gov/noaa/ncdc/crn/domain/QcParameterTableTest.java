@@ -0,0 +1,118 @@
+package gov.noaa.ncdc.crn.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class QcParameterTableTest {
+
+    private QcParameterTable table;
+    private QcRangeParam defaultRange;
+    private QcRangeParam streamRange;
+    private QcRangeParam stationMonthRange;
+    private QcRangeParam stationRange;
+    private QcRangeParam otherElementRange;
+    private QcDeltaParam defaultDelta;
+    private QcDeltaParam stationDelta;
+    private QcDeltaParam stationStreamDelta;
+    private QcDeltaParam stationStreamMonthDelta;
+
+    @Before
+    public void setUp() {
+        defaultRange = new QcRangeParam(188, -1, -1, -1, new BigDecimal("-60"), new BigDecimal("60"));
+        streamRange = new QcRangeParam(188, 6, -1, -1, new BigDecimal("6.3"), new BigDecimal("18.9"));
+        stationMonthRange = new QcRangeParam(188, -1, 1026, 6, new BigDecimal("7.0"), new BigDecimal("26.0"));
+        stationRange = new QcRangeParam(188, null, 1026, null, new BigDecimal("4.8"), new BigDecimal("21.1"));
+        otherElementRange = new QcRangeParam(463, -1, -1, -1, new BigDecimal("-30"), new BigDecimal("65"));
+        defaultDelta = new QcDeltaParam(-1, -1, -1, 921, 922, 923, new BigDecimal("2.6"));
+        stationDelta = new QcDeltaParam(-1, 1027, -1, 921, 922, 923, new BigDecimal("2.4"));
+        stationStreamDelta = new QcDeltaParam(98, 1026, -1, 921, 922, 923, new BigDecimal("1.7"));
+        stationStreamMonthDelta = new QcDeltaParam(98, 1026, 7, 921, 922, 923, new BigDecimal("1.3"));
+        List<Integer> all = Arrays.asList(188, 463, 921, 922, 923);
+        Map<Integer, List<Integer>> streams = ImmutableMap.of(4, Arrays.asList(188), 6, all, 8, Arrays.asList(188,
+                463), 96, all, 98, all);
+        table = new QcParameterTable(Arrays.asList(stationRange, otherElementRange, defaultRange, stationMonthRange,
+                streamRange), Arrays.asList(stationStreamMonthDelta, defaultDelta, stationStreamDelta, stationDelta),
+                streams);
+    }
+
+    @Test
+    public final void testGetRangeParam() {
+        assertNull(table.getRangeParam(-99, -1, -1, -1));
+        assertNull(table.getRangeParam(-99, 8, 1026, 4));
+        assertNull("stream 4 does not have elementId=463", table.getRangeParam(463, 4, 1026, 4));
+        assertNull("unknown stream", table.getRangeParam(188, 5, 1027, 4));
+        assertEquals(otherElementRange, table.getRangeParam(463, 8, 1026, 4));
+        assertEquals(defaultRange, table.getRangeParam(188, 8, 1027, 4));
+        assertEquals(defaultRange, table.getRangeParam(188, 4, 1027, 6));
+        assertEquals(streamRange, table.getRangeParam(188, 6, 1011, 6));
+        assertEquals(streamRange, table.getRangeParam(188, 6, 1027, 9));
+        assertEquals(stationMonthRange, table.getRangeParam(188, 4, 1026, 6));
+        assertEquals(stationRange, table.getRangeParam(188, 8, 1026, 4));
+        // a month outside 1-12 only matches parameters without a month
+        assertEquals(stationRange, table.getRangeParam(188, 8, 1026, -1));
+    }
+
+    @Test
+    public final void testScaledBounds() {
+        int row = table.findRange(188, 6, 1011, 6);
+        assertEquals(63, table.getRangeLo(row));
+        assertEquals(189, table.getRangeHi(row));
+        assertEquals(streamRange, table.getRangeParam(row));
+        assertEquals(-600, table.getRangeLo(table.findRange(188, 8, 1027, 4)));
+        assertEquals(QcParameterTable.NONE, table.findRange(463, 4, 1026, 4));
+
+        int delta = table.findDelta(921, 98, 1026, 7);
+        assertEquals(13, table.getDelta(delta));
+        assertEquals(QcParameterTable.NONE, table.findDelta(921, 8, 1027, 7));
+    }
+
+    @Test
+    public final void testNullBounds() {
+        QcRangeParam open = new QcRangeParam(188, -1, -1, -1, null, new BigDecimal("60"));
+        QcParameterTable openTable = new QcParameterTable(Arrays.asList(open), Arrays.<QcDeltaParam> asList(),
+                ImmutableMap.of(4, Arrays.asList(188)));
+        int row = openTable.findRange(188, 4, 1026, 1);
+        assertEquals(Long.MIN_VALUE, openTable.getRangeLo(row));
+        assertEquals(600, openTable.getRangeHi(row));
+    }
+
+    @Test
+    public final void testGetRangeParams() {
+        Map<Integer, QcRangeParam> result = table.getRangeParams(8, 1026, 4);
+        assertEquals(ImmutableMap.of(188, stationRange, 463, otherElementRange), result);
+        result = table.getRangeParams(4, 1026, 4);
+        assertNull("stream 4 does not have elementId=463", result.get(463));
+        assertEquals(stationRange, result.get(188));
+        assertEquals(0, table.getRangeParams(-1, -1, -1).size());
+    }
+
+    @Test
+    public final void testGetDeltaParam() {
+        assertNull(table.getDeltaParam(-99, -1, -1, -1));
+        assertEquals(stationDelta, table.getDeltaParam(921, 98, 1027, 7));
+        assertEquals(defaultDelta, table.getDeltaParam(921, 96, 1026, 7));
+        assertEquals(stationStreamDelta, table.getDeltaParam(921, 98, 1026, 6));
+        assertEquals(stationStreamMonthDelta, table.getDeltaParam(921, 98, 1026, 7));
+        assertEquals(stationDelta, table.getDeltaParam(921, 96, 1027, 7));
+        assertNull(table.getDeltaParam(-99, 96, 1027, 7));
+        assertNull("stream 8 does not include element 921", table.getDeltaParam(921, 8, 1027, 7));
+        assertNull("delta parameters apply to their first element", table.getDeltaParam(922, 98, 1027, 7));
+    }
+
+    @Test
+    public final void testGetDeltaParams() {
+        assertEquals(ImmutableMap.of(921, stationStreamMonthDelta), table.getDeltaParams(98, 1026, 7));
+        assertEquals(ImmutableMap.of(921, defaultDelta), table.getDeltaParams(96, 1026, 7));
+        assertEquals(0, table.getDeltaParams(8, 1027, 7).size());
+    }
+}
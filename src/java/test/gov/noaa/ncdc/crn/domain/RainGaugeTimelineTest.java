@@ -0,0 +1,112 @@
+package gov.noaa.ncdc.crn.domain;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gov.noaa.ncdc.crn.util.TimeUtils;
+
+import java.sql.Date;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class RainGaugeTimelineTest {
+
+    private RainGaugeTimeline timeline;
+    /** hours the second and third gauges were installed */
+    private int second;
+    private int third;
+
+    @Before
+    public void setUp() {
+        second = 68000;
+        third = 69000;
+        // installed in the middle of the hour before
+        StationRainGauge thirdGauge = gauge(1610, third, -30, 1000, 0);
+        StationRainGauge firstGauge = gauge(1610, 60000, 0, 600, 0);
+        StationRainGauge secondGauge = gauge(1610, second, 0, 800, 0);
+        timeline = new RainGaugeTimeline(1610, Arrays.asList(thirdGauge, firstGauge, secondGauge));
+    }
+
+    private static StationRainGauge gauge(int stationId, int datetimeId, int minutes, int depth, int ordinal) {
+        StationRainGauge gauge = new StationRainGauge();
+        gauge.setStationId(stationId);
+        gauge.setEventDate(new Date(TimeUtils.computeCalendarDate(datetimeId).getTimeInMillis() + minutes
+                * TimeUtils.MILLISECS_PER_MINUTE));
+        gauge.setDepth(depth);
+        gauge.setOrdinal(ordinal);
+        return gauge;
+    }
+
+    @Test
+    public final void testGetDepth() {
+        assertEquals(3, timeline.size());
+        // before any installation the first gauge is assumed
+        assertEquals(600, timeline.getDepth(1));
+        assertTrue(timeline.precedesInstallation(1));
+        assertFalse(timeline.precedesInstallation(60000));
+        assertEquals(600, timeline.getDepth(60000));
+        assertEquals(600, timeline.getDepth(second - 1));
+        assertEquals(800, timeline.getDepth(second));
+        // the third gauge was installed during the hour before, so applies from the start of third
+        assertEquals(800, timeline.getDepth(third - 1));
+        assertEquals(1000, timeline.getDepth(third));
+        assertEquals(1000, timeline.getDepth(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public final void testSingleGauge() {
+        RainGaugeTimeline single = new RainGaugeTimeline(1779, Arrays.asList(gauge(1779, 50000, 0, 600, 0)));
+        assertEquals(600, single.getDepth(1));
+        assertEquals(600, single.getDepth(100000));
+    }
+
+    @Test
+    public final void testSameEventDate() {
+        // the later ordinal wins a tie
+        RainGaugeTimeline tie = new RainGaugeTimeline(1000, Arrays.asList(gauge(1000, 50000, 0, 800, 1), gauge(1000,
+                50000, 0, 600, 0)));
+        assertEquals(600, tie.getDepth(49999));
+        assertEquals(800, tie.getDepth(50000));
+        assertEquals(ImmutableMap.of(49990, 600, 50000, 800), tie.getChanges(49990, 50010));
+    }
+
+    @Test
+    public final void testGetDepths() {
+        int[] depths = timeline.getDepths(second - 2, second + 1);
+        assertArrayEquals(new int[] { 600, 600, 800, 800 }, depths);
+        depths = timeline.getDepths(1, third);
+        assertEquals(third, depths.length);
+        for (int datetimeId = 1; datetimeId <= third; datetimeId += 97) {
+            assertEquals(timeline.getDepth(datetimeId), depths[datetimeId - 1]);
+        }
+        assertEquals(1000, depths[third - 1]);
+        assertArrayEquals(new int[] { 1000 }, timeline.getDepths(third, third));
+    }
+
+    @Test
+    public final void testGetChanges() {
+        assertEquals(ImmutableMap.of(1, 600, second, 800, third, 1000), timeline.getChanges(1, 100000));
+        assertEquals(ImmutableMap.of(second, 800), timeline.getChanges(second, third - 1));
+        assertEquals(ImmutableMap.of(third + 5, 1000), timeline.getChanges(third + 5, Integer.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testBackwardRange() {
+        timeline.getDepths(third, second);
+    }
+
+    @Test
+    public final void testByStation() {
+        Map<Integer, RainGaugeTimeline> timelines = RainGaugeTimeline.byStation(Arrays.asList(gauge(1610, 60000, 0,
+                600, 0), gauge(1779, 50000, 0, 600, 0), gauge(1610, second, 0, 800, 0)));
+        assertEquals(2, timelines.size());
+        assertEquals(2, timelines.get(1610).size());
+        assertEquals(1779, timelines.get(1779).getStationId());
+    }
+}
@@ -8,6 +8,8 @@ import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.base.Objects;
+
 public class StationDateElementTest {
     private StationDateElement sde;
     private int stationId=9999;
@@ -73,6 +75,47 @@ public class StationDateElementTest {
     @Test
     public final void testHashCode() {
         sde.hashCode();
+        assertEquals(Objects.hashCode(stationId,datetimeId,elementId),sde.hashCode());
+        assertEquals(new StationDateElement(stationId,datetimeId,elementId).hashCode(),sde.hashCode());
+    }
+
+    @Test
+    public final void testPackedKey() {
+        long key = sde.packedKey();
+        assertEquals(key,StationDateElement.packKey(stationId,datetimeId,elementId));
+        assertEquals(stationId,StationDateElement.stationIdOf(key));
+        assertEquals(datetimeId,StationDateElement.datetimeIdOf(key));
+        assertEquals(elementId,StationDateElement.elementIdOf(key));
+        assertEquals(sde,StationDateElement.fromPackedKey(key));
+        StationDateElement max = new StationDateElement(StationDateElement.MAX_PACKED_STATION_ID,
+                StationDateElement.MAX_PACKED_DATETIME_ID,StationDateElement.MAX_PACKED_ELEMENT_ID);
+        assertEquals(max,StationDateElement.fromPackedKey(max.packedKey()));
+        assertTrue("expected positive key",max.packedKey()>0);
+        assertEquals(0,new StationDateElement(0,0,0).packedKey());
+    }
+
+    @Test
+    public final void testPackedKeyOrder() {
+        // packed keys sort in the same order as StationDateElements
+        StationDateElement[] sdes = {new StationDateElement(stationId-1,datetimeId+1,elementId+1),
+                new StationDateElement(stationId,datetimeId-1,elementId+1),
+                new StationDateElement(stationId,datetimeId,elementId-1),sde,
+                new StationDateElement(stationId,datetimeId,elementId+1),
+                new StationDateElement(stationId+1,0,0)};
+        for (int i=1; i<sdes.length; i++) {
+            assertTrue("expected ascending",sdes[i-1].compareTo(sdes[i])<0);
+            assertTrue("expected ascending keys",sdes[i-1].packedKey()<sdes[i].packedKey());
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public final void testPackedKeyStationOutOfRange() {
+        StationDateElement.packKey(StationDateElement.MAX_PACKED_STATION_ID+1,datetimeId,elementId);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public final void testPackedKeyNegative() {
+        StationDateElement.packKey(stationId,datetimeId,-1);
     }
 
     // just making sure things don't crash when call
@@ -0,0 +1,150 @@
+package gov.noaa.ncdc.crn.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
+
+public class StationRegistryTest {
+
+    private Station asheville;
+    private Station clanton;
+    private Station troy;
+    private Station stGeorge;
+    private Station silent;
+    private StationRegistry registry;
+
+    @Before
+    public void setUp() {
+        asheville = new Station(1026, "NC", "Asheville", "8 SSW", 1, "Asheville 8 SSW", "CD0246CA", "53877", "101", -5,
+                "-82.6142", "35.4945", 650, "Y", "20001114", "O", 0, false, "E", null, false);
+        clanton = new Station(1326, "AL", "Clanton", "2 NE", 3, "Clanton 2 NE", "0A278A", "63891", "1110", -6,
+                "-86.6115", "32.8516", 180, "N", "UN", "O", 0, false, "E", null, false);
+        troy = new Station(1552, "AL", "Troy", "2 W", 3, "Troy 2 W", "0A426C", "23801", "1112", -6, "-86.0004",
+                "31.7901", 140, "N", "UN", "A", 0, false, "E", "2010-01-01", false);
+        // shares its GOES id with troy
+        stGeorge = new Station(1721, "UT", "St. George", "7 W", 1, "St. George 7 W", "0A426C", "03170", "1200", -7,
+                "-113.6", "37.1", 900, "Y", "20040101", "C", 0, false, "E", "2011-01-01", true);
+        silent = new Station(9997, "IL", "Chicago", "1 N", 1, "Chicago 1 N", "DA05FE46", "987654", null, -6, null,
+                null, null, "N", "UN", "O", 0, true, "E", null, false);
+        registry = new StationRegistry(Arrays.asList(troy, silent, asheville, stGeorge, clanton), Arrays.asList(1026,
+                1326, 1552, 1721));
+    }
+
+    @Test
+    public final void testGet() {
+        assertSame(asheville, registry.get(1026));
+        assertSame(silent, registry.get(9997));
+        assertNull(registry.get(1000));
+        assertTrue(registry.hasPor(1026));
+        assertFalse(registry.hasPor(9997));
+        assertEquals(5, registry.size());
+    }
+
+    @Test
+    public final void testGetStations() {
+        assertEquals(ImmutableSet.of(1026, 1326, 1552, 1721), registry.getStations().keySet());
+        assertEquals(registry.getStations(), registry.getStations(false));
+        assertEquals(5, registry.getStations(true).size());
+        Map<Integer, Station> stations = registry.getStations(Arrays.asList(1552, 9997, 1000, 1026, 1552));
+        assertEquals("only stations with por, once each", Arrays.asList(1552, 1026), Arrays.asList(stations.keySet()
+                .toArray()));
+        assertSame(troy, stations.get(1552));
+    }
+
+    @Test
+    public final void testPredicateSets() {
+        // the abandoned station and the test site are not visible
+        assertEquals(ImmutableSet.of(1026, 1326, 1721), registry.getIds(Stations.VISIBLE));
+        assertEquals(ImmutableSet.of(1026, 1721), registry.getIds(Stations.COMMISSIONED));
+        assertEquals(ImmutableSet.of(1552, 1721), registry.getIds(Stations.CLOSED));
+        assertEquals(ImmutableSet.of(1326, 1552), registry.getIds(Stations.RCRN));
+        assertEquals(ImmutableSet.of(1326, 1552, 1721), registry.getIds(Stations.RCRN_INCLUDE_REPS));
+        assertEquals(ImmutableSet.of(9997), registry.getIds(Stations.TEST_SITE));
+        assertEquals(ImmutableSet.of(1026, 1326, 1721), registry.getStations(Stations.VISIBLE).keySet());
+        assertEquals(ImmutableSet.of(1326), registry.getStations(Arrays.asList(1326, 1552, 9997), Stations.VISIBLE)
+                .keySet());
+    }
+
+    @Test
+    public final void testOtherPredicate() {
+        Predicate<Station> utah = new Predicate<Station>() {
+            @Override
+            public boolean apply(Station station) {
+                return "UT".equals(station.getName().getState());
+            }
+        };
+        assertEquals(ImmutableSet.of(1721), registry.getIds(utah));
+        assertEquals(ImmutableSet.of(1721), registry.getStations(utah).keySet());
+    }
+
+    @Test
+    public final void testMissingMetadata() {
+        Station unknown = new Station(1000, "IN", "Noblesville", "2 E");
+        StationRegistry partial = new StationRegistry(Arrays.asList(unknown), Arrays.asList(1000));
+        assertTrue("null testSiteOnly should not match", partial.getIds(Stations.TEST_SITE).isEmpty());
+        assertTrue("null testSiteOnly should not be visible", partial.getIds(Stations.VISIBLE).isEmpty());
+        assertTrue("null pseudoRcrn should not match", partial.getIds(Stations.PSEUDO_RCRN).isEmpty());
+        assertTrue(partial.getIds(Stations.RCRN_INCLUDE_REPS).isEmpty());
+        // a regional station is included whatever its pseudoRcrn
+        Station regional = new Station(1001, "IN", "Muncie", "3 W", 2, "Muncie 3 W", "DA05FE47", "987655", null, -5,
+                null, null, null, "N", "UN", "O", 0, false, "E", null, null);
+        partial = new StationRegistry(Arrays.asList(unknown, regional), Arrays.asList(1000, 1001));
+        assertEquals(ImmutableSet.of(1001), partial.getIds(Stations.RCRN_INCLUDE_REPS));
+        assertTrue(partial.getIds(Stations.PSEUDO_RCRN).isEmpty());
+        assertEquals(ImmutableSet.of(1001), partial.getIds(Stations.VISIBLE));
+        assertSame(unknown, partial.getStationsInStates("IN").get(1000));
+    }
+
+    @Test
+    public final void testIdentifiers() {
+        assertSame(asheville, registry.getByWbanno("53877"));
+        assertSame(silent, registry.getWbanStationMap().get("987654"));
+        assertNull(registry.getByWbanno("00000"));
+        assertSame(clanton, registry.getByAtddno("1110"));
+        assertNull(registry.getByAtddno("9999"));
+        assertEquals(Arrays.asList(troy, stGeorge), registry.getByGoesId("0A426C"));
+        assertTrue(registry.getByGoesId("0246CA").isEmpty());
+
+        assertEquals(Arrays.asList(asheville), registry.getByIdentifier("0246CA"));
+        assertEquals(Arrays.asList(asheville), registry.getByIdentifier("CD0246CA"));
+        assertEquals(Arrays.asList(silent), registry.getByIdentifier("05FE46"));
+        assertEquals(Arrays.asList(clanton), registry.getByIdentifier("CD0A278A"));
+        assertEquals(Arrays.asList(clanton), registry.getByIdentifier("63891"));
+        List<Station> shared = registry.getByIdentifier("0A426C");
+        assertEquals(Arrays.asList(troy, stGeorge), shared);
+        assertTrue(registry.getByIdentifier("foo").isEmpty());
+        assertTrue(registry.getByIdentifier(null).isEmpty());
+    }
+
+    @Test
+    public final void testIndexes() {
+        assertEquals(ImmutableSet.of(1326, 1552), registry.getStationsInStates("AL").keySet());
+        assertEquals(ImmutableSet.of(1026, 1326, 1552), registry.getStationsInStates("AL", "NC", "IL").keySet());
+        assertEquals(ImmutableSet.of(1026, 1721), registry.getStationsForNetworks(1).keySet());
+        assertEquals(ImmutableSet.of(1026, 1326, 1552, 1721), registry.getStationsForNetworks(1, 3).keySet());
+        assertEquals(ImmutableSet.of(1721), registry.getStationsWithOpStatus("C").keySet());
+        assertTrue(registry.getStationsWithOpStatus("X").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testDuplicateStationId() {
+        new StationRegistry(Arrays.asList(asheville, asheville), Arrays.asList(1026));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public final void testImmutable() {
+        registry.getByGoesId("0A426C").add(asheville);
+    }
+}
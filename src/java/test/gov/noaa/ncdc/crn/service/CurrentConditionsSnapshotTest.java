@@ -0,0 +1,147 @@
+package gov.noaa.ncdc.crn.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import gov.noaa.ncdc.crn.dao.ElementDao;
+import gov.noaa.ncdc.crn.dao.ObservationDao;
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.Observation;
+import gov.noaa.ncdc.crn.domain.StationDateElement;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataRetrievalFailureException;
+
+import com.google.common.collect.ImmutableMap;
+
+public class CurrentConditionsSnapshotTest {
+
+    private ObservationDao observationDao;
+    private ElementDao elementDao;
+    private CurrentConditionsSnapshot snapshot;
+    private Observation ob1026;
+    private Observation ob1326;
+
+    @Before
+    public void setUp() {
+        observationDao = mock(ObservationDao.class);
+        elementDao = mock(ElementDao.class);
+        ob1026 = new Observation(1026, 74123, 12, 1, "fakefile.txt", 125);
+        ob1326 = new Observation(1326, 74123, 12, 1, "fakefile.txt", 126);
+        Map<Integer, Observation> obs = new HashMap<>();
+        obs.put(1026, ob1026);
+        obs.put(1326, ob1326);
+        when(observationDao.getCurrentObservations()).thenReturn(obs);
+        snapshot = new CurrentConditionsSnapshot(observationDao, elementDao);
+        snapshot.setRefreshSeconds(0);
+    }
+
+    @After
+    public void tearDown() {
+        snapshot.destroy();
+    }
+
+    @Test
+    public final void testCurrentObservationsLoadedOnce() {
+        assertEquals(-1, snapshot.getAgeMillis());
+        assertSame(ob1026, snapshot.getCurrentObservation(1026));
+        assertNull(snapshot.getCurrentObservation(999));
+        assertEquals(ImmutableMap.of(1326, ob1326), snapshot.getCurrentObservations(Arrays.asList(1326, 999)));
+        assertEquals(2, snapshot.getCurrentObservations().size());
+        assertTrue(snapshot.getAgeMillis() >= 0);
+        verify(observationDao, times(1)).getCurrentObservations();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public final void testSnapshotImmutable() {
+        snapshot.getCurrentObservations().remove(1026);
+    }
+
+    @Test
+    public final void testCurrentElementValues() {
+        snapshot.setElementIds("439, 440");
+        ElementValue ev1026 = new ElementValue(1026, 74123, 439, new BigDecimal("4.2"), 0, 1, 1);
+        ElementValue ev1326 = new ElementValue(1326, 74123, 439, new BigDecimal("4.3"), 0, 1, 1);
+        Map<StationDateElement, ElementValue> values = new HashMap<>();
+        values.put(ev1026.getStaDateElement(), ev1026);
+        values.put(ev1326.getStaDateElement(), ev1326);
+        when(elementDao.getCurrentElementValues(anyCollectionOf(Integer.class))).thenReturn(values);
+        Map<Integer, ElementValue> other = ImmutableMap.of();
+        when(elementDao.getCurrentElementValues(16)).thenReturn(other);
+
+        assertEquals(ImmutableMap.of(1026, ev1026, 1326, ev1326), snapshot.getCurrentElementValues(439));
+        // configured but without values
+        assertTrue(snapshot.getCurrentElementValues(440).isEmpty());
+        // not configured; read from the database
+        assertSame(other, snapshot.getCurrentElementValues(16));
+        verify(elementDao, times(1)).getCurrentElementValues(anyCollectionOf(Integer.class));
+    }
+
+    @Test
+    public final void testRefresh() {
+        assertSame(ob1026, snapshot.getCurrentObservation(1026));
+        Observation newer = new Observation(1026, 74124, 12, 1, "fakefile.txt", 127);
+        when(observationDao.getCurrentObservations()).thenReturn(ImmutableMap.of(1026, newer));
+        snapshot.refresh();
+        assertSame(newer, snapshot.getCurrentObservation(1026));
+        assertNull(snapshot.getCurrentObservation(1326));
+    }
+
+    @Test
+    public final void testFailedRefreshKeepsSnapshot() {
+        assertSame(ob1026, snapshot.getCurrentObservation(1026));
+        when(observationDao.getCurrentObservations()).thenThrow(new DataRetrievalFailureException("test"));
+        try {
+            snapshot.refresh();
+            fail("expected DataRetrievalFailureException");
+        } catch (DataRetrievalFailureException e) {
+            // expected
+        }
+        assertSame(ob1026, snapshot.getCurrentObservation(1026));
+    }
+
+    @Test
+    public final void testRefreshAfterCommitInBackground() throws InterruptedException {
+        snapshot.setMinRefreshSeconds(0);
+        // nothing to refresh before the first read
+        snapshot.refreshAfterCommit();
+        verify(observationDao, never()).getCurrentObservations();
+
+        assertSame(ob1026, snapshot.getCurrentObservation(1026));
+        Observation newer = new Observation(1026, 74124, 12, 1, "fakefile.txt", 127);
+        when(observationDao.getCurrentObservations()).thenReturn(ImmutableMap.of(1026, newer));
+        // no transaction, so refreshes right away
+        snapshot.refreshAfterCommit();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (snapshot.getCurrentObservation(1026) != newer && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertSame(newer, snapshot.getCurrentObservation(1026));
+    }
+
+    @Test
+    public final void testRefreshAfterCommitHeldBack() throws InterruptedException {
+        snapshot.setMinRefreshSeconds(3600);
+        assertSame(ob1026, snapshot.getCurrentObservation(1026));
+        snapshot.refreshAfterCommit();
+        snapshot.refreshAfterCommit();
+        Thread.sleep(200);
+        // the snapshot was just loaded, so neither insert reloads it yet
+        verify(observationDao, times(1)).getCurrentObservations();
+    }
+}
@@ -8,6 +8,7 @@ import gov.noaa.ncdc.crn.dao.ElementDao;
 import gov.noaa.ncdc.crn.domain.CrnException;
 import gov.noaa.ncdc.crn.domain.CrnExceptionFact;
 import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueChanges;
 import gov.noaa.ncdc.crn.domain.ExceptionReapply;
 import gov.noaa.ncdc.crn.domain.ExceptionResolution;
 import gov.noaa.ncdc.crn.domain.ExceptionResolutionFact;
@@ -148,7 +149,15 @@ public class ExceptionServiceTest {
         ev4 = new ElementValue(ev4.getStationId(), ev4.getDatetimeId(), ev4.getElementId(),
                 null, 0, ev4.getDecimalPlaces(), ev4.getPublishedDecimalPlaces());
         List<ElementValue> vals = Lists.newArrayList(ev1,ev2,ev3,ev4);
-        service.updateFacts(vals);
+        ElementValueChanges changes = service.updateFacts(vals);
+        assertEquals("values changed", 3, changes.getValuesChanged());
+        assertEquals("flags changed", 3, changes.getFlagsChanged());
+        assertEquals("deleted", 1, changes.getDeleted());
+        assertEquals("inserted", 0, changes.getInserted());
+        // reapplying the same values writes nothing
+        changes = service.updateFacts(vals);
+        assertTrue("nothing to write", changes.isEmpty());
+        assertEquals("unchanged", 4, changes.getUnchanged());
 
         ElementValue result = elementDao.getElementValue(
                 new StationDateElement(ob.getStationId(), ob.getDatetimeId(), elementId_1));
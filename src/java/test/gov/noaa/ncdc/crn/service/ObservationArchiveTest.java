@@ -0,0 +1,310 @@
+package gov.noaa.ncdc.crn.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import gov.noaa.ncdc.crn.domain.DatetimeRange;
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueBlock;
+import gov.noaa.ncdc.crn.domain.Observation;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+import gov.noaa.ncdc.crn.domain.StationDateElement;
+import gov.noaa.ncdc.crn.util.DatetimeCodec;
+import gov.noaa.ncdc.crn.util.TimeUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ObservationArchiveTest {
+    private static final int STATION = 1026;
+    private static final int TEMPERATURE = 439;
+    private static final int PRECIPITATION = 440;
+    private static final int STATUS = 441;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private ObservationArchiveWriter writer;
+    private ObservationArchive archive;
+
+    @Before
+    public void setUp() {
+        writer = new ObservationArchiveWriter(folder.getRoot());
+        archive = new ObservationArchive(folder.getRoot());
+    }
+
+    /** the hours of a UTC month with a value of each element, except precipitation in every third hour */
+    private static List<ObservationWithData> month(String yyyymm) {
+        int first = DatetimeCodec.parse(yyyymm + "0101");
+        int last = DatetimeCodec.parse(yyyymm + "0100") + 24 * 28;
+        List<ObservationWithData> obs = new ArrayList<>();
+        for (int datetimeId = first; datetimeId <= last; datetimeId++) {
+            Observation ob = new Observation(STATION, datetimeId, 98, 1, "Crn_" + datetimeId / 24 + ".lrgs",
+                    datetimeId % 24);
+            ob.setInitialLoad(new Timestamp(1230768000000L + datetimeId * 1000L));
+            ob.setTimeLoaded(new Timestamp(1230768000000L + datetimeId * 2000L));
+            ObservationWithData owd = new ObservationWithData(ob);
+            owd.addNewElementValue(TEMPERATURE, BigDecimal.valueOf(datetimeId % 200 - 100, 1));
+            if (datetimeId % 3 != 0) {
+                owd.getElementValues().put(PRECIPITATION, new ElementValue(STATION, datetimeId, PRECIPITATION,
+                        BigDecimal.valueOf(datetimeId % 7, 2), datetimeId % 5, 2, 1));
+            }
+            obs.add(owd);
+        }
+        return obs;
+    }
+
+    @Test
+    public final void testRoundTrip() throws IOException {
+        List<ObservationWithData> obs = month("200902");
+        List<ObservationWithData> shuffled = new ArrayList<>(obs);
+        Collections.reverse(shuffled);
+        File file = writer.write(STATION, "200902", shuffled);
+        assertEquals(ObservationArchive.getPartitionFile(folder.getRoot(), STATION, "200902"), file);
+        assertTrue(archive.isArchived(STATION, "200902"));
+
+        int first = obs.get(0).getDatetimeId();
+        int last = obs.get(obs.size() - 1).getDatetimeId();
+        assertEquals(obs, archive.getObservationsWithData(first, last, STATION));
+        // a range inside the month
+        assertEquals(obs.subList(10, 51), archive.getObservationsWithData(first + 10, first + 50, STATION));
+        // a value for each hour, and two for two thirds of them
+        Map<StationDateElement, ElementValue> values = archive.getElementValues(first, last, STATION, null);
+        int expected = 0;
+        for (ObservationWithData owd : obs) {
+            expected += owd.getElementValues().size();
+            for (ElementValue value : owd.getElementValues().values()) {
+                assertEquals(value, values.get(new StationDateElement(STATION, value.getDatetimeId(), value
+                        .getElementId())));
+            }
+        }
+        assertEquals(expected, values.size());
+        // another station has nothing archived
+        assertTrue(archive.getObservationsWithData(first, last, STATION + 1).isEmpty());
+    }
+
+    @Test
+    public final void testElementValueBlock() throws IOException {
+        List<ObservationWithData> obs = month("200902");
+        writer.write(STATION, "200902", obs);
+        int first = obs.get(0).getDatetimeId();
+        ElementValueBlock block = archive.getElementValueBlock(first + 5, first + 9, STATION, null);
+        // datetime, then element, order
+        int row = 0;
+        for (int datetimeId = first + 5; datetimeId <= first + 9; datetimeId++) {
+            assertEquals(datetimeId, block.getDatetimeId(row));
+            assertEquals(TEMPERATURE, block.getElementId(row++));
+            if (datetimeId % 3 != 0) {
+                assertEquals(datetimeId, block.getDatetimeId(row));
+                assertEquals(PRECIPITATION, block.getElementId(row++));
+            }
+        }
+        assertEquals(row, block.size());
+
+        block = archive.getElementValueBlock(first + 5, first + 9, STATION, Arrays.asList(PRECIPITATION));
+        for (row = 0; row < block.size(); row++) {
+            assertEquals(PRECIPITATION, block.getElementId(row));
+            ElementValue value = obs.get(block.getDatetimeId(row) - first).getElementValue(PRECIPITATION);
+            assertEquals(value, block.toElementValue(row));
+        }
+        assertTrue(archive.getElementValueBlock(first, first + 9, STATION, Arrays.asList(STATUS)).isEmpty());
+    }
+
+    @Test
+    public final void testMonths() throws IOException {
+        writer.write(STATION, "200901", month("200901"));
+        writer.write(STATION, "200903", month("200903"));
+        int begin = DatetimeCodec.parse("2009012101");
+        int end = DatetimeCodec.parse("2009031100");
+        assertEquals(Arrays.asList("200902"), archive.getMissingMonths(begin, end, STATION));
+        assertEquals(Arrays.asList("200901", "200902", "200903"), archive.getMissingMonths(begin, end,
+                STATION + 1));
+        // the hour ending 00Z on the first is the last hour of the month before
+        assertEquals("200812", ObservationArchive.getMonth(DatetimeCodec.parse("2009010100")));
+        assertEquals("200901", ObservationArchive.getMonth(DatetimeCodec.parse("2009010101")));
+
+        List<ObservationWithData> obs = archive.getObservationsWithData(begin, end, STATION);
+        List<ObservationWithData> expected = new ArrayList<>();
+        for (ObservationWithData owd : month("200901")) {
+            if (owd.getDatetimeId() >= begin) {
+                expected.add(owd);
+            }
+        }
+        for (ObservationWithData owd : month("200903")) {
+            if (owd.getDatetimeId() <= end) {
+                expected.add(owd);
+            }
+        }
+        assertEquals(expected, obs);
+    }
+
+    @Test
+    public final void testNullsAndExtremes() throws IOException {
+        int first = DatetimeCodec.parse("2009020101");
+        List<ObservationWithData> obs = new ArrayList<>();
+        long[] unscaled = { Long.MAX_VALUE, Long.MIN_VALUE, 0, -1, Long.MAX_VALUE };
+        for (int i = 0; i < unscaled.length; i++) {
+            Map<Integer, ElementValue> values = new HashMap<>();
+            // differences from the previous value which overflow a long
+            values.put(TEMPERATURE, new ElementValue(STATION, first + i, TEMPERATURE, unscaled[i], i, 0, null, null));
+            values.put(STATUS, new ElementValue(STATION, first + i, STATUS, null, 255, null, 4));
+            obs.add(new ObservationWithData(new Observation(STATION, first + i, 98, 1, null, 0), values));
+        }
+        // an hour with no values at all
+        obs.add(new ObservationWithData(new Observation(STATION, first + 10, 98, 1, null, 0)));
+        writer.write(STATION, "200902", obs);
+
+        List<ObservationWithData> read = archive.getObservationsWithData(first, first + 20, STATION);
+        assertEquals(obs, read);
+        for (int i = 0; i < unscaled.length; i++) {
+            ElementValue value = read.get(i).getElementValue(TEMPERATURE);
+            assertEquals(BigDecimal.valueOf(unscaled[i], i), value.getValue());
+            ElementValue status = read.get(i).getElementValue(STATUS);
+            assertFalse(status.hasValue());
+            assertEquals(255, status.getFlagInt());
+            assertEquals(Integer.valueOf(4), status.getPublishedDecimalPlaces());
+        }
+        assertNull(read.get(5).getElementValues());
+        assertNull(read.get(5).getObservation().getFileName());
+        assertNull(read.get(5).getObservation().getInitialLoad());
+    }
+
+    @Test
+    public final void testRewrite() throws IOException {
+        List<ObservationWithData> obs = month("200902");
+        writer.write(STATION, "200902", obs);
+        int first = obs.get(0).getDatetimeId();
+        assertEquals(obs.get(0), archive.getObservationsWithData(first, first, STATION).get(0));
+        ObservationWithData corrected = month("200902").get(0);
+        corrected.addNewElementValue(TEMPERATURE, new BigDecimal("-40.0"));
+        obs.set(0, corrected);
+        writer.write(STATION, "200902", obs);
+        assertEquals(new BigDecimal("-40.0"), archive.getObservationsWithData(first, first, STATION).get(0)
+                .getElementValue(TEMPERATURE).getValue());
+        assertEquals(1, folder.getRoot().listFiles()[0].listFiles().length);
+    }
+
+    @Test
+    public final void testInvalid() throws IOException {
+        List<ObservationWithData> obs = month("200902");
+        try {
+            writer.write(STATION, "200903", obs);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        try {
+            writer.write(STATION + 1, "200902", obs);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        assertFalse(archive.isArchived(STATION, "200903"));
+
+        File file = writer.write(STATION, "200902", obs);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 4);
+        }
+        int first = obs.get(0).getDatetimeId();
+        try {
+            archive.getObservationsWithData(first, first, STATION);
+            fail("expected IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("not an observation archive"));
+        }
+    }
+
+    @Test
+    public final void testArchiveFromService() throws IOException {
+        List<ObservationWithData> obs = month("200902");
+        DatetimeRange range = TimeUtils.computeLstDateTimeRange("200902", 0);
+        ObservationService service = mock(ObservationService.class);
+        when(service.getObservationsWithData(range.getBegin(), range.getEnd(), STATION)).thenReturn(obs);
+        assertEquals(obs.size(), writer.archive(service, STATION, "200902"));
+        assertTrue(archive.isArchived(STATION, "200902"));
+        assertEquals(obs, archive.getObservationsWithData(range.getBegin(), range.getEnd(), STATION));
+    }
+
+    @Test
+    public final void testFewerMappingsThanPartitions() throws IOException {
+        writer.write(STATION, "200901", month("200901"));
+        writer.write(STATION, "200902", month("200902"));
+        ObservationArchive small = new ObservationArchive(folder.getRoot(), 1);
+        int begin = DatetimeCodec.parse("2009010101");
+        int end = DatetimeCodec.parse("2009030100");
+        List<ObservationWithData> obs = small.getObservationsWithData(begin, end, STATION);
+        assertEquals(obs, small.getObservationsWithData(begin, end, STATION));
+        assertEquals(obs, archive.getObservationsWithData(begin, end, STATION));
+    }
+
+    /** Overwrites an int of a partition and returns the error reading it */
+    private IOException corrupt(List<ObservationWithData> obs, long position, int value) throws IOException {
+        // a new reader, as the shared one keeps the mapping of the file before it was changed
+        File file = writer.write(STATION, "200902", obs);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position < 0 ? raf.length() + position : position);
+            raf.writeInt(value);
+        }
+        int first = obs.get(0).getDatetimeId();
+        try {
+            new ObservationArchive(folder.getRoot()).getObservationsWithData(first, first + 100, STATION);
+            fail("expected IOException");
+            return null;
+        } catch (IOException expected) {
+            return expected;
+        }
+    }
+
+    @Test
+    public final void testCorrupt() throws IOException {
+        List<ObservationWithData> obs = month("200902");
+        // the footer offset, just before the closing magic
+        IOException e = corrupt(obs, -8, Integer.MAX_VALUE - 4);
+        assertTrue(e.getMessage(), e.getMessage().contains("footer offset"));
+        // the element count of the header
+        e = corrupt(obs, 20, Integer.MAX_VALUE);
+        assertTrue(e.getMessage(), e.getMessage().contains("element count"));
+        // the number of Observations, just after the two element ids of the header
+        e = corrupt(obs, 32, Integer.MAX_VALUE / 8);
+        assertTrue(e.getMessage(), e.getMessage().contains("observation count"));
+        // the offset of the last column, the second int of its footer entry
+        e = corrupt(obs, -8 - 12 + 4, Integer.MAX_VALUE);
+        assertTrue(e.getMessage(), e.getMessage().contains("column offset"));
+        // the number of values of the last column
+        e = corrupt(obs, -8 - 12 + 8, 1 << 20);
+        assertTrue(e.getMessage(), e.getMessage().contains("column of element " + PRECIPITATION));
+        // varints which run past the end of the last column, just before the footer
+        File file = writer.write(STATION, "200902", obs);
+        long footer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 8);
+            footer = raf.readInt();
+            raf.seek(footer - 4);
+            raf.writeInt(0x80808080);
+        }
+        try {
+            new ObservationArchive(folder.getRoot()).getElementValueBlock(obs.get(0).getDatetimeId(), obs.get(
+                    obs.size() - 1).getDatetimeId(), STATION, null);
+            fail("expected IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("values of element " + PRECIPITATION));
+        }
+    }
+}
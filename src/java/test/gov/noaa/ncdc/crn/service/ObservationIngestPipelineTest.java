@@ -0,0 +1,177 @@
+package gov.noaa.ncdc.crn.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import gov.noaa.ncdc.crn.dao.ResultCallback;
+import gov.noaa.ncdc.crn.domain.Observation;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+import gov.noaa.ncdc.crn.service.ObservationIngestPipeline.BatchResult;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+
+public class ObservationIngestPipelineTest {
+
+    private ObservationService service;
+    private List<BatchResult> results;
+    private ResultCallback<BatchResult> callback;
+
+    @Before
+    public void setUp() {
+        service = mock(ObservationService.class);
+        results = new CopyOnWriteArrayList<>();
+        callback = new ResultCallback<BatchResult>() {
+            @Override
+            public void handle(BatchResult result) {
+                results.add(result);
+            }
+        };
+    }
+
+    private static ObservationWithData ob(int stationId, int datetimeId) {
+        ObservationWithData ob =
+                new ObservationWithData(new Observation(stationId, datetimeId, 12, 1, "fakefile.txt", 125));
+        ob.addNewElementValue(439, new BigDecimal("4.0"), 0);
+        ob.addNewElementValue(440, new BigDecimal("5.0"), 0);
+        return ob;
+    }
+
+    @Test
+    public final void testWritesAllShardedByStation() throws InterruptedException {
+        ObservationIngestPipeline pipeline = new ObservationIngestPipeline(service, 3, 10, 4, 20, callback);
+        for (int datetimeId = 1; datetimeId <= 10; datetimeId++) {
+            for (int stationId = 1000; stationId < 1006; stationId++) {
+                pipeline.submit(ob(stationId, datetimeId));
+            }
+        }
+        pipeline.shutdown();
+        assertTrue("writers should stop", pipeline.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(60, pipeline.getObservationsWritten());
+        assertEquals(120, pipeline.getValuesWritten());
+        assertEquals(0, pipeline.getQueueDepth());
+        assertEquals(results.size(), pipeline.getBatchesWritten());
+        assertTrue(pipeline.getRowsPerSecond() > 0);
+        Map<Integer, Integer> shards = new HashMap<>();
+        Map<Integer, Integer> lastDatetime = new HashMap<>();
+        int written = 0;
+        for (BatchResult result : results) {
+            assertTrue(result.isSuccess());
+            assertNull(result.getFailure());
+            assertTrue("batch too large", result.getWritten().size() <= 4);
+            for (ObservationWithData ob : result.getWritten()) {
+                Integer shard = shards.put(ob.getStationId(), result.getShard());
+                assertTrue("station written by more than one shard", shard == null || shard == result.getShard());
+                // a station's observations keep their submission order
+                Integer last = lastDatetime.put(ob.getStationId(), ob.getDatetimeId());
+                assertTrue("out of order", last == null || last < ob.getDatetimeId());
+                written++;
+            }
+        }
+        assertEquals(60, written);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public final void testDuplicatesIsolated() throws InterruptedException {
+        ObservationWithData duplicate = ob(1000, 2);
+        doThrow(new DuplicateKeyException("dup")).when(service).insertObservations(
+                anyCollectionOf(ObservationWithData.class));
+        doThrow(new DuplicateKeyException("dup")).when(service).insertObservation(eq(duplicate));
+        ObservationIngestPipeline pipeline = new ObservationIngestPipeline(service, 1, 10, 3, 1000, callback);
+        pipeline.submit(ob(1000, 1));
+        pipeline.submit(duplicate);
+        pipeline.submit(ob(1000, 3));
+        pipeline.shutdown();
+        assertTrue(pipeline.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, results.size());
+        BatchResult result = results.get(0);
+        assertFalse(result.isSuccess());
+        assertEquals(2, result.getWritten().size());
+        assertEquals(1, result.getDuplicates().size());
+        assertEquals(duplicate, result.getDuplicates().get(0));
+        assertTrue(result.getFailed().isEmpty());
+        assertNull(result.getFailure());
+        assertEquals(2, pipeline.getObservationsWritten());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public final void testFailureReported() throws InterruptedException {
+        DataIntegrityViolationException failure = new DataIntegrityViolationException("no station");
+        doThrow(failure).when(service).insertObservations(anyCollectionOf(ObservationWithData.class));
+        ObservationIngestPipeline pipeline = new ObservationIngestPipeline(service, 1, 10, 2, 1000, callback);
+        pipeline.submit(ob(1000, 1));
+        pipeline.submit(ob(1000, 2));
+        pipeline.shutdown();
+        assertTrue(pipeline.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, results.size());
+        assertEquals(2, results.get(0).getFailed().size());
+        assertEquals(failure, results.get(0).getFailure());
+        assertEquals(0, pipeline.getObservationsWritten());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public final void testBackpressure() throws InterruptedException {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                writing.countDown();
+                release.await();
+                return null;
+            }
+        }).when(service).insertObservations(anyCollectionOf(ObservationWithData.class));
+        ObservationIngestPipeline pipeline = new ObservationIngestPipeline(service, 1, 2, 1, 0, callback);
+        pipeline.submit(ob(1000, 1));
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+        // the writer is stuck on the first batch, so the queue fills
+        assertTrue(pipeline.offer(ob(1000, 2), 0, TimeUnit.MILLISECONDS));
+        assertTrue(pipeline.offer(ob(1000, 3), 0, TimeUnit.MILLISECONDS));
+        assertFalse(pipeline.offer(ob(1000, 4), 10, TimeUnit.MILLISECONDS));
+        assertEquals(2, pipeline.getQueueDepth());
+        release.countDown();
+        pipeline.shutdown();
+        assertTrue(pipeline.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(3, pipeline.getObservationsWritten());
+    }
+
+    @Test
+    public final void testSubmitAfterShutdown() throws InterruptedException {
+        ObservationIngestPipeline pipeline = new ObservationIngestPipeline(service, 1, 1, 1, 0, callback);
+        pipeline.shutdown();
+        assertTrue(pipeline.isShutdown());
+        try {
+            pipeline.submit(ob(1000, 1));
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(pipeline.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(results.isEmpty());
+    }
+}
@@ -6,8 +6,11 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import gov.noaa.ncdc.crn.dao.ChangeToken;
 import gov.noaa.ncdc.crn.dao.DatetimeDao;
 import gov.noaa.ncdc.crn.dao.ElementDao;
+import gov.noaa.ncdc.crn.dao.ObservationChanges;
+import gov.noaa.ncdc.crn.dao.ResultCallback;
 import gov.noaa.ncdc.crn.domain.ElementValue;
 import gov.noaa.ncdc.crn.domain.Observation;
 import gov.noaa.ncdc.crn.domain.ObservationWithData;
@@ -16,6 +19,7 @@ import gov.noaa.ncdc.crn.domain.StationDateElement;
 import gov.noaa.ncdc.crn.spring.ApplicationContextProvider;
 import gov.noaa.ncdc.crn.spring.ApplicationContextProvider.Contexts;
 import gov.noaa.ncdc.crn.util.FileUtils;
+import gov.noaa.ncdc.crn.util.JsonUtils;
 import gov.noaa.ncdc.crn.util.TimeUtils;
 
 import java.io.File;
@@ -1840,7 +1844,7 @@ public class ObservationServiceTest {
         final String owdJson = "obs/owd-1021-72258.json";
         File fileOwd = new File(testDir, owdJson);
         String json = FileUtils.readWholeFile(fileOwd.getPath());
-        Gson gson = new Gson();
+        Gson gson = JsonUtils.GSON;
         ObservationWithData owd = gson.fromJson(json, ObservationWithData.class);
         Collection<ElementValue> observedVals = owd.getElementValues().values();
 
@@ -1979,4 +1983,39 @@ public class ObservationServiceTest {
         int result = service.getLastNonmissingDatetimeIdBefore(insertDt + 10, stationId);
         assertEquals("expected second inserted datetime; calc doesn't matter", insertDt + 1, result);
     }
+
+    @Test
+    @DirtiesContext
+    public void testStreamObservationChanges() {
+        // the observations inserted for this class were loaded within the last day
+        ChangeToken from = ChangeToken.since(new Timestamp(System.currentTimeMillis() - 24 * 60 * 60 * 1000L));
+        final List<ObservationWithData> changes = new ArrayList<>();
+        ChangeToken next = service.streamObservationChanges(from, 5, true, new ResultCallback<ObservationWithData>() {
+            @Override
+            public void handle(ObservationWithData result) {
+                changes.add(result);
+            }
+        });
+        ObservationWithData inserted = null;
+        for (int i = 0; i < changes.size(); i++) {
+            ObservationWithData ob = changes.get(i);
+            if (ob.getStationId() == stationId && ob.getDatetimeId() == insertDt) {
+                inserted = ob;
+            }
+            if (i > 0) {
+                assertFalse("not in modification order", ChangeToken.modificationTime(ob.getObservation()).before(
+                        ChangeToken.modificationTime(changes.get(i - 1).getObservation())));
+            }
+        }
+        assertNotNull("inserted observation not among changes", inserted);
+        assertEquals("values not included", new BigDecimal("4.2"), inserted.getElementValue(16).getValue());
+        assertEquals("next token should follow the last change",
+                ChangeToken.after(changes.get(changes.size() - 1).getObservation()), next);
+
+        // the token resumes after the last change
+        ObservationChanges page = service.getObservationChanges(next, 5, false);
+        for (ObservationWithData ob : page.getObservations()) {
+            assertFalse("change read twice", changes.contains(ob));
+        }
+    }
 }
@@ -0,0 +1,145 @@
+package gov.noaa.ncdc.crn.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueBlock;
+import gov.noaa.ncdc.crn.domain.FlagType;
+import gov.noaa.ncdc.crn.domain.Observation;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+import gov.noaa.ncdc.crn.domain.QcDeltaParam;
+import gov.noaa.ncdc.crn.domain.QcParameterTable;
+import gov.noaa.ncdc.crn.domain.QcRangeParam;
+import gov.noaa.ncdc.crn.util.TimeUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class QcEngineTest {
+    private static final int STREAM = 98;
+    private static final int RANGE = 1 << FlagType.RANGE.ordinal();
+    private static final int DELTA = 1 << FlagType.DELTA.ordinal();
+    private static final int DOOR = 1 << FlagType.DOOR.ordinal();
+
+    private QcEngine engine;
+    /** an hour in July */
+    private int july;
+    /** the hour ending at midnight on July 1, observed in June */
+    private int lastOfJune;
+
+    @Before
+    public void setUp() {
+        QcRangeParam temperature = new QcRangeParam(188, -1, -1, -1, new BigDecimal("-60"), new BigDecimal("60"));
+        QcRangeParam summer = new QcRangeParam(188, -1, -1, 7, new BigDecimal("5"), new BigDecimal("50"));
+        QcDeltaParam sensors = new QcDeltaParam(-1, -1, -1, 921, 922, 923, new BigDecimal("0.3"));
+        List<Integer> elements = Arrays.asList(188, 921, 922, 923);
+        engine = new QcEngine(new QcParameterTable(Arrays.asList(temperature, summer), Arrays.asList(sensors),
+                ImmutableMap.of(STREAM, elements)));
+        july = TimeUtils.computeDateTimeId(TimeUtils.createUTCCalendar("2011071012"));
+        lastOfJune = TimeUtils.computeDateTimeId(TimeUtils.createUTCCalendar("2011070100"));
+    }
+
+    private static ObservationWithData observation(int stationId, int datetimeId) {
+        return new ObservationWithData(new Observation(stationId, datetimeId, STREAM, 1, "file", 1));
+    }
+
+    @Test
+    public final void testRange() {
+        ObservationWithData ob = observation(1026, july);
+        ElementValue cold = ob.addNewElementValue(188, new BigDecimal("4.9"));
+        ObservationWithData june = observation(1026, lastOfJune);
+        ElementValue inJune = june.addNewElementValue(188, new BigDecimal("4.9"));
+        List<ElementValue> changed = engine.check(Arrays.asList(ob, june));
+        assertEquals(Arrays.asList(cold), changed);
+        assertTrue(cold.getFlags().isFlagged(FlagType.RANGE));
+        assertFalse("the June range applies", inJune.getFlags().isFlagged(FlagType.RANGE));
+    }
+
+    @Test
+    public final void testRangeCleared() {
+        ObservationWithData ob = observation(1026, july);
+        ElementValue value = ob.addNewElementValue(188, new BigDecimal("5.00"), RANGE | DOOR);
+        ElementValue unchecked = ob.addNewElementValue(189, new BigDecimal("1000"), DOOR);
+        ObservationWithData later = observation(1026, july + 1);
+        ElementValue missing = later.addNewElementValue(188, null, RANGE);
+        assertEquals(Arrays.asList(value), engine.check(Arrays.asList(ob, later)));
+        assertEquals("only the range flag is cleared", DOOR, value.getFlagInt());
+        assertEquals(DOOR, unchecked.getFlagInt());
+        assertEquals(RANGE, missing.getFlagInt());
+        // already correct
+        assertEquals(0, engine.check(Arrays.asList(ob, later)).size());
+    }
+
+    @Test
+    public final void testDelta() {
+        ObservationWithData ob = observation(1026, july);
+        ElementValue first = ob.addNewElementValue(921, new BigDecimal("20.1"));
+        ElementValue second = ob.addNewElementValue(922, new BigDecimal("20.4"), DELTA);
+        ElementValue third = ob.addNewElementValue(923, new BigDecimal("21.25"));
+        assertEquals(Arrays.asList(second, third), engine.check(Arrays.asList(ob)));
+        assertFalse(first.getFlags().isFlagged(FlagType.DELTA));
+        assertFalse("within the delta of the first", second.getFlags().isFlagged(FlagType.DELTA));
+        assertTrue(third.getFlags().isFlagged(FlagType.DELTA));
+
+        ObservationWithData pair = observation(1026, july + 1);
+        first = pair.addNewElementValue(921, new BigDecimal("20.1"));
+        second = pair.addNewElementValue(922, new BigDecimal("20.5"));
+        pair.addNewElementValue(923, null);
+        engine.check(Arrays.asList(pair));
+        assertTrue("two sensors disagree", first.getFlags().isFlagged(FlagType.DELTA));
+        assertTrue(second.getFlags().isFlagged(FlagType.DELTA));
+    }
+
+    @Test
+    public final void testCheckStations() {
+        List<Collection<ObservationWithData>> stations = new ArrayList<>();
+        List<ElementValue> expected = new ArrayList<>();
+        for (int stationId = 1000; stationId < 1050; stationId++) {
+            ObservationWithData ob = observation(stationId, july);
+            ElementValue value = ob.addNewElementValue(188, new BigDecimal(stationId % 2 == 0 ? "70" : "20"));
+            if (stationId % 2 == 0) {
+                expected.add(value);
+            }
+            stations.add(ImmutableList.of(ob));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, engine.checkStations(stations, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public final void testBlock() {
+        ElementValueBlock block = new ElementValueBlock();
+        block.add(1026, july, 921, 201, 1, 0, null, null);
+        block.add(1026, july, 188, 49, 1, RANGE, null, null);
+        block.add(1026, july + 1, 921, 201, 1, 0, null, null);
+        // out of order; still grouped with its hour
+        block.add(1026, july, 922, 240, 1, 0, null, null);
+        block.add(1026, july + 1, 922, 202, 1, DELTA, null, null);
+        BitSet changed = engine.check(block, STREAM);
+        BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(3);
+        expected.set(4);
+        assertEquals(expected, changed);
+        assertEquals(DELTA, block.getFlags(0));
+        assertEquals("unchanged", RANGE, block.getFlags(1));
+        assertEquals(DELTA, block.getFlags(3));
+        assertEquals(0, block.getFlags(4));
+    }
+}
@@ -0,0 +1,244 @@
+package gov.noaa.ncdc.crn.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import gov.noaa.ncdc.crn.domain.ElementSummary;
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.ElementValueBlock;
+import gov.noaa.ncdc.crn.domain.Observation;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+import gov.noaa.ncdc.crn.domain.Station;
+import gov.noaa.ncdc.crn.util.DatetimeCodec;
+import gov.noaa.ncdc.crn.util.MathUtils;
+import gov.noaa.ncdc.crn.util.TimeUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class RollupEngineTest {
+    private static final int TEMPERATURE = 439;
+    private static final int PRECIPITATION = 440;
+
+    private RollupEngine engine;
+    private Station eastern;
+
+    @Before
+    public void setUp() {
+        engine = new RollupEngine(ImmutableMap.of(TEMPERATURE, 1, PRECIPITATION, 2), 0.75);
+        // only the stationId and offset are rolled up
+        eastern = new Station(1026, "NC", "Asheville", "8 SSW", 1, "Asheville 8 SSW", "CD0246CA", "53877", "101", -5,
+                "-82.6142", "35.4945", 650, "Y", "20001114", "O", 0, false, "E", null, false);
+    }
+
+    private static ObservationWithData observation(int stationId, int datetimeId) {
+        return new ObservationWithData(new Observation(stationId, datetimeId, 98, 1, "file", 1));
+    }
+
+    @Test
+    public final void testLstDay() {
+        // the LST day 20090101 at UTC-5 is the hours ending 2009010106 through 2009010205 UTC
+        List<ObservationWithData> obs = new ArrayList<>();
+        int first = DatetimeCodec.parse("2009010106");
+        for (int datetimeId = first - 1; datetimeId <= first + 24; datetimeId++) {
+            ObservationWithData ob = observation(1026, datetimeId);
+            ob.addNewElementValue(TEMPERATURE, new BigDecimal(datetimeId - first));
+            ob.addNewElementValue(PRECIPITATION, new BigDecimal("0.2"));
+            ob.addNewElementValue(441, new BigDecimal("1000"));
+            obs.add(ob);
+        }
+        List<ElementSummary> days = engine.rollup(eastern, obs).getDays();
+        assertEquals(6, days.size());
+        ElementSummary temperature = days.get(2);
+        assertEquals("20090101", temperature.getPeriod());
+        assertEquals(TEMPERATURE, temperature.getElementId());
+        assertEquals(24, temperature.getCount());
+        assertTrue(temperature.isComplete());
+        assertEquals(new BigDecimal("0"), temperature.getMinimum());
+        assertEquals(new BigDecimal("23"), temperature.getMaximum());
+        assertEquals(new BigDecimal("11.5"), temperature.getAverage());
+        ElementSummary precipitation = days.get(3);
+        assertEquals(PRECIPITATION, precipitation.getElementId());
+        assertEquals(new BigDecimal("4.8"), precipitation.getSum());
+        assertEquals(new BigDecimal("0.20"), precipitation.getAverage());
+        // the hours either side fall on the days before and after, and are incomplete
+        assertEquals("20081231", days.get(0).getPeriod());
+        assertEquals(1, days.get(0).getCount());
+        assertFalse(days.get(0).isComplete());
+        assertNull(days.get(0).getAverage());
+        assertEquals("20090102", days.get(5).getPeriod());
+    }
+
+    @Test
+    public final void testCompleteness() {
+        List<ObservationWithData> obs = new ArrayList<>();
+        int first = DatetimeCodec.parse("2009010106");
+        for (int datetimeId = first; datetimeId < first + 24; datetimeId++) {
+            ObservationWithData ob = observation(1026, datetimeId);
+            // 18 of 24 hours have values
+            ob.addNewElementValue(TEMPERATURE, datetimeId - first < 18 ? BigDecimal.ONE : null);
+            // 17 of 24 hours have values
+            ob.addNewElementValue(PRECIPITATION, datetimeId - first < 17 ? BigDecimal.ONE : null);
+            obs.add(ob);
+        }
+        List<ElementSummary> days = engine.rollup(eastern, obs).getDays();
+        assertTrue(days.get(0).isComplete());
+        assertEquals(18, days.get(0).getCount());
+        assertFalse(days.get(1).isComplete());
+        assertEquals(17, days.get(1).getCount());
+        assertNull(days.get(1).getSum());
+    }
+
+    @Test
+    public final void testMonths() {
+        RollupEngine all = new RollupEngine(ImmutableMap.of(TEMPERATURE, 1), 0);
+        RollupEngine.StationRollup rollup = all.newRollup(eastern);
+        // February 2009 LST, and the first hour of March LST
+        int first = TimeUtils.computeLstDateTimeRange("200902", -5).getBegin();
+        for (int datetimeId = first; datetimeId <= first + 28 * 24; datetimeId++) {
+            ObservationWithData ob = observation(1026, datetimeId);
+            ob.addNewElementValue(TEMPERATURE, new BigDecimal(datetimeId % 7 - 3));
+            rollup.handle(ob);
+        }
+        List<ElementSummary> months = rollup.getMonths();
+        assertEquals(2, months.size());
+        ElementSummary february = months.get(0);
+        assertEquals("200902", february.getPeriod());
+        assertEquals(28 * 24, february.getHours());
+        assertEquals(28 * 24, february.getCount());
+        assertEquals(new BigDecimal("-3"), february.getMinimum());
+        assertEquals(new BigDecimal("3"), february.getMaximum());
+        assertEquals("200903", months.get(1).getPeriod());
+        assertEquals(31 * 24, months.get(1).getHours());
+        assertEquals(1, months.get(1).getCount());
+        assertEquals(29, rollup.getDays().size());
+    }
+
+    @Test
+    public final void testMatchesMathUtils() {
+        Random random = new Random(439L);
+        RollupEngine all = new RollupEngine(ImmutableMap.of(TEMPERATURE, 1, PRECIPITATION, 2), 0);
+        for (int trial = 0; trial < 200; trial++) {
+            int count = 1 + random.nextInt(30);
+            List<BigDecimal> values = new ArrayList<>();
+            RollupEngine.StationRollup rollup = all.newRollup(eastern);
+            int datetimeId = DatetimeCodec.parse("2009050606");
+            for (int i = 0; i < count; i++) {
+                BigDecimal value = BigDecimal.valueOf(random.nextInt(2001) - 1000, random.nextInt(3));
+                ElementValue temperature = new ElementValue(1026, datetimeId, TEMPERATURE, value, 0, 1, 1);
+                values.add(temperature.getValue());
+                rollup.add(temperature);
+                rollup.add(new ElementValue(1026, datetimeId, PRECIPITATION, value, 0, 1, 1));
+            }
+            for (ElementSummary summary : rollup.getDays()) {
+                String message = values.toString();
+                assertEquals(message, MathUtils.sum(values), summary.getSum());
+                assertEquals(message, MathUtils.minimum(values), summary.getMinimum());
+                assertEquals(message, MathUtils.maximum(values), summary.getMaximum());
+                BigDecimal average = summary.getElementId() == TEMPERATURE ? MathUtils.AVERAGE_10TH.apply(values)
+                        : MathUtils.AVERAGE_100TH.apply(values);
+                assertEquals(message, average, summary.getAverage());
+            }
+        }
+    }
+
+    @Test
+    public final void testRoundingTies() {
+        // -0.25 rounds half down to -0.2; 0.25 half up to 0.3
+        assertEquals(new BigDecimal("-0.2"), average("-0.2", "-0.3"));
+        assertEquals(new BigDecimal("0.3"), average("0.2", "0.3"));
+        assertEquals(new BigDecimal("0.0"), average("-0.04"));
+    }
+
+    private BigDecimal average(String... values) {
+        RollupEngine all = new RollupEngine(ImmutableMap.of(TEMPERATURE, 1), 0);
+        RollupEngine.StationRollup rollup = all.newRollup(eastern);
+        int datetimeId = DatetimeCodec.parse("2009050606");
+        for (String value : values) {
+            rollup.add(new ElementValue(1026, datetimeId++, TEMPERATURE, new BigDecimal(value), 0, 1, 1));
+        }
+        return rollup.getDays().get(0).getAverage();
+    }
+
+    @Test
+    public final void testOverflow() {
+        RollupEngine all = new RollupEngine(ImmutableMap.of(TEMPERATURE, 1), 0);
+        RollupEngine.StationRollup rollup = all.newRollup(eastern);
+        int datetimeId = DatetimeCodec.parse("2009050606");
+        BigDecimal large = BigDecimal.valueOf(Long.MAX_VALUE - 1);
+        BigDecimal huge = new BigDecimal("1E+30");
+        rollup.add(new ElementValue(1026, datetimeId, TEMPERATURE, large, 0, 1, 1));
+        rollup.add(new ElementValue(1026, datetimeId + 1, TEMPERATURE, large, 0, 1, 1));
+        rollup.add(new ElementValue(1026, datetimeId + 2, TEMPERATURE, new BigDecimal("-1.5"), 0, 1, 1));
+        rollup.add(new ElementValue(1026, datetimeId + 3, TEMPERATURE, huge, 0, 1, 1));
+        List<BigDecimal> values = Arrays.asList(large, large, new BigDecimal("-1.5"), huge);
+        ElementSummary summary = rollup.getDays().get(0);
+        assertEquals(MathUtils.sum(values), summary.getSum());
+        assertEquals(MathUtils.average(values, 1), summary.getAverage());
+        assertEquals(new BigDecimal("-1.5"), summary.getMinimum());
+        assertEquals(0, huge.compareTo(summary.getMaximum()));
+    }
+
+    @Test
+    public final void testBlock() {
+        ElementValueBlock block = new ElementValueBlock();
+        int datetimeId = DatetimeCodec.parse("2009050606");
+        block.add(1026, datetimeId, TEMPERATURE, 123, 1, 0, 1, 1);
+        block.add(1779, datetimeId, TEMPERATURE, 999, 1, 0, 1, 1);
+        block.add(1026, datetimeId + 1, TEMPERATURE, null, 0, 1, 1);
+        block.add(1026, datetimeId + 1, TEMPERATURE, 127, 1, 0, 1, 1);
+        RollupEngine all = new RollupEngine(ImmutableMap.of(TEMPERATURE, 1), 0);
+        RollupEngine.StationRollup rollup = all.newRollup(eastern);
+        rollup.add(block);
+        ElementSummary summary = rollup.getDays().get(0);
+        assertEquals(2, summary.getCount());
+        assertEquals(new BigDecimal("12.5"), summary.getAverage());
+        assertEquals(new BigDecimal("25.0"), summary.getSum());
+    }
+
+    @Test
+    public final void testOtherStationsIgnored() {
+        RollupEngine all = new RollupEngine(ImmutableMap.of(TEMPERATURE, 1), 0);
+        RollupEngine.StationRollup rollup = all.newRollup(eastern);
+        int datetimeId = DatetimeCodec.parse("2009050606");
+        rollup.add(new ElementValue(1026, datetimeId, TEMPERATURE, new BigDecimal("12.3"), 0, 1, 1));
+        rollup.add(new ElementValue(1779, datetimeId, TEMPERATURE, new BigDecimal("99.9"), 0, 1, 1));
+        ObservationWithData west = observation(1779, datetimeId + 1);
+        west.addNewElementValue(TEMPERATURE, new BigDecimal("88.8"));
+        rollup.handle(west);
+        ElementSummary summary = rollup.getDays().get(0);
+        assertEquals(1, summary.getCount());
+        assertEquals(new BigDecimal("12.3"), summary.getMaximum());
+    }
+
+    @Test
+    public final void testRollupStations() {
+        Station pacific = new Station(1779, "CA", "Yosemite Village", "12 W", 1, "Yosemite Village 12 W", "CD05FE46",
+                "53150", "176", -8, "-119.8", "37.8", 2018, "Y", "20040101", "O", 0, false, "W", null, false);
+        int datetimeId = DatetimeCodec.parse("2009050606");
+        ObservationWithData east = observation(1026, datetimeId);
+        east.addNewElementValue(TEMPERATURE, new BigDecimal("10.0"));
+        ObservationWithData west = observation(1779, datetimeId);
+        west.addNewElementValue(TEMPERATURE, new BigDecimal("20.0"));
+        RollupEngine all = new RollupEngine(ImmutableMap.of(TEMPERATURE, 1), 0);
+        Map<Integer, RollupEngine.StationRollup> rollups = all.rollupStations(ImmutableMap.of(eastern, Collections
+                .singletonList(east), pacific, Collections.singletonList(west)), new ForkJoinPool(2));
+        assertEquals(2, rollups.size());
+        assertEquals("20090506", rollups.get(1026).getDays().get(0).getPeriod());
+        // 06 UTC is 22 LST the day before at UTC-8
+        assertEquals("20090505", rollups.get(1779).getDays().get(0).getPeriod());
+        assertEquals(new BigDecimal("20.0"), rollups.get(1779).getDays().get(0).getMaximum());
+    }
+}
@@ -5,11 +5,14 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import gov.noaa.ncdc.crn.dao.ConnectionDao;
 import gov.noaa.ncdc.crn.dao.PorDao;
 import gov.noaa.ncdc.crn.dao.StationDao;
 import gov.noaa.ncdc.crn.domain.POR;
 import gov.noaa.ncdc.crn.domain.Station;
+import gov.noaa.ncdc.crn.domain.StationRegistry;
 import gov.noaa.ncdc.crn.domain.StationWithCompleteCurrentMetadata;
 import gov.noaa.ncdc.crn.spring.ApplicationContextProvider.Contexts;
 import gov.noaa.ncdc.crn.util.TimeUtils;
@@ -413,6 +416,28 @@ public class StationServiceTest {
 			    9997,result.getStationId());
 		}
 	}
+	@Test
+	public final void testStationFromCoopNumber() {
+		// the registry indexes WBAN numbers and GOES ids; coop numbers are looked up in the database
+		StationDao dao = mock(StationDao.class);
+		Station avl = new Station(1026, "NC", "Asheville", "8 SSW", 1, "Asheville 8 SSW", "CD0246CA", "53877", "101",
+				-5, "-82.6142", "35.4945", 650, "Y", "20001114", "O", 0, false, "E", null, false);
+		when(dao.getStationRegistry()).thenReturn(new StationRegistry(Arrays.asList(avl), Arrays.asList(1026)));
+		Map<String, Object> params = new HashMap<>();
+		params.put("id", "310301");
+		when(dao.getStationFromParams(params)).thenReturn(avl);
+		Map<String, Object> listParams = new HashMap<>();
+		listParams.put("ids", Arrays.asList("310301"));
+		Map<Integer, Station> coopStations = new HashMap<>();
+		coopStations.put(1026, avl);
+		when(dao.getStationsFromParams(listParams)).thenReturn(coopStations);
+		StationService coopService = new StationService(dao, porDao);
+
+		assertEquals(avl, coopService.stationFromIdentifier("310301"));
+		assertEquals(avl, coopService.stationFromIdentifier("53877"));
+		assertEquals(Arrays.asList(avl), coopService.stationsFromIdentifiers(Arrays.asList("310301")));
+		assertEquals(Arrays.asList(avl), coopService.stationsFromIdentifiers(Arrays.asList("53877", "310301")));
+	}
 	/*
 	 * ----------- -------- 
 	 * 1026        101
@@ -0,0 +1,94 @@
+package gov.noaa.ncdc.crn.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import gov.noaa.ncdc.crn.domain.Datetime;
+import gov.noaa.ncdc.crn.domain.DatetimeRange;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+import org.junit.Test;
+
+public class DatetimeCodecTest {
+
+    @Test
+    public final void testParse() {
+        // values from the datetime table
+        assertEquals(63471, DatetimeCodec.parse("2008010100"));
+        assertEquals(63472, DatetimeCodec.parse("2008010101"));
+        assertEquals(63495, DatetimeCodec.parse("2008010200"));
+        assertEquals(64984, DatetimeCodec.parse("2008030401"));
+        assertEquals(0, DatetimeCodec.parse("2000100409"));
+        assertEquals(63471, DatetimeCodec.parse("200801010000"));
+        // the end of a day is the beginning of the next
+        assertEquals(63495, DatetimeCodec.parse("2008010124"));
+        assertTrue(DatetimeCodec.parse("1999120101") < 0);
+    }
+
+    @Test
+    public final void testInvalid() {
+        for (String invalid : Arrays.asList("foo", "20080101", "2008010125", "2008130101", "2007022901", "2008043101",
+                "200801010030", "2008-10101")) {
+            try {
+                DatetimeCodec.parse(invalid);
+                fail("parsed " + invalid);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+        assertEquals(DatetimeCodec.parse("2008030100") - 24, DatetimeCodec.parse("2008022900"));
+    }
+
+    @Test
+    public final void testAgreesWithCalendar() {
+        // every hour from before the epoch to 2040, around leap years and century boundaries
+        for (int datetimeId = -2000; datetimeId < 350000; datetimeId += 7) {
+            Calendar calendar = TimeUtils.computeCalendarDate(datetimeId);
+            String expected = TimeUtils.getYYYYMMDDHH24(calendar);
+            assertEquals(expected, DatetimeCodec.format(datetimeId));
+            assertEquals(datetimeId, DatetimeCodec.parse(expected));
+            assertEquals(calendar.getTimeInMillis(), DatetimeCodec.toMillis(datetimeId));
+        }
+        assertEquals("2000022900", DatetimeCodec.format(DatetimeCodec.parse("2000022900")));
+        assertEquals("2100030100", DatetimeCodec.format(DatetimeCodec.parse("2100022824")));
+    }
+
+    @Test
+    public final void testFromMillis() {
+        long millis = DatetimeCodec.toMillis(63471);
+        assertEquals(63471, DatetimeCodec.fromMillis(millis));
+        assertEquals(63471, DatetimeCodec.fromMillis(millis + TimeUtils.MILLISECS_PER_HOUR - 1));
+        assertEquals(TimeUtils.computeDateTimeId(TimeUtils.computeCalendarDate(63471)), DatetimeCodec
+                .fromMillis(millis));
+        // rounds down before the epoch
+        assertEquals(-1, DatetimeCodec.fromMillis(TimeUtils.CRN_EPOCH - 1));
+    }
+
+    @Test
+    public final void testToDatetime() {
+        Datetime datetime = DatetimeCodec.toDatetime(63471);
+        assertEquals(new Datetime(63471, "2008010100"), datetime);
+        assertEquals(datetime.next(), DatetimeCodec.toDatetime(63472));
+    }
+
+    @Test
+    public final void testRange() {
+        DatetimeRange range = DatetimeCodec.range("2008010100", "2008010102");
+        assertEquals(new DatetimeRange(63471, 63473), range);
+        assertEquals(3, range.size());
+        assertTrue(range.contains(63472));
+        assertFalse(range.contains(63474));
+        assertArrayEquals(new int[] { 63471, 63472, 63473 }, range.toArray());
+        assertEquals(Arrays.asList(63471, 63472, 63473), range.asList());
+        assertArrayEquals(new int[] { 63471, 63472, 63473 }, DatetimeCodec.toArray("2008010100", "2008010102"));
+        assertEquals(1440, DatetimeCodec.range("2008010101", "2008030100").size());
+        assertEquals(8784, DatetimeCodec.range("2008010101", "2009010100").size());
+        DatetimeRange empty = DatetimeCodec.range("2008010102", "2008010100");
+        assertTrue(empty.isEmpty());
+        assertEquals(0, empty.toArray().length);
+    }
+}
@@ -10,6 +10,7 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -657,4 +658,105 @@ public class MathUtilsTest {
     	// list is null
     	MathUtils.maximum(null);
     }
+    @Test
+    public final void testRoundUnscaled() {
+        assertEquals(123, MathUtils.roundUnscaled(1234, 3, 2));
+        assertEquals(124, MathUtils.roundUnscaled(1235, 3, 2));
+        assertEquals(-123, MathUtils.roundUnscaled(-1235, 3, 2));
+        assertEquals(-8, MathUtils.roundUnscaled(-7578, 2, -1));
+        assertEquals(12300, MathUtils.roundUnscaled(123, 1, 3));
+        assertEquals(1, MathUtils.roundUnscaled(Long.MAX_VALUE, 19, 0));
+    }
+    @Test
+    public final void testUnscaledMatchesBigDecimal() {
+        Random random = new Random(20120901L);
+        int compared = 0;
+        for (int i = 0; i < 100000; i++) {
+            long unscaled = randomUnscaled(random);
+            int scale = random.nextInt(5);
+            int places = random.nextInt(6) - 1;
+            BigDecimal value = BigDecimal.valueOf(unscaled, scale);
+            long divisor = randomUnscaled(random);
+            int divisorScale = random.nextInt(3);
+            BigDecimal denominator = BigDecimal.valueOf(divisor, divisorScale);
+            try {
+                assertEquals(value + " to " + places, MathUtils.round(value, places),
+                        BigDecimal.valueOf(MathUtils.roundUnscaled(unscaled, scale, places), places));
+                if (divisor != 0) {
+                    assertEquals(value + " / " + denominator, MathUtils.divide(value, denominator, places),
+                            BigDecimal.valueOf(MathUtils.divideUnscaled(unscaled, scale, divisor, divisorScale,
+                                    places), places));
+                }
+                compared++;
+            } catch (ArithmeticException tooLarge) {
+                // the BigDecimal methods remain for values which do not fit in a long
+            }
+        }
+        assertTrue("compared " + compared, compared > 90000);
+    }
+    @Test
+    public final void testArraysMatchCollections() {
+        Random random = new Random(20090506L);
+        for (int i = 0; i < 5000; i++) {
+            int length = random.nextInt(30);
+            int scale = random.nextInt(3);
+            long[] unscaled = new long[length];
+            double[] doubles = new double[length];
+            BitSet nulls = new BitSet();
+            List<BigDecimal> list = new ArrayList<BigDecimal>();
+            for (int j = 0; j < length; j++) {
+                // few distinct values, so ties are common
+                unscaled[j] = random.nextInt(41) - 20;
+                doubles[j] = MathUtils.toDouble(unscaled[j], scale);
+                if (random.nextInt(4) == 0) {
+                    nulls.set(j);
+                    list.add(null);
+                } else {
+                    list.add(BigDecimal.valueOf(unscaled[j], scale));
+                }
+            }
+            String message = list.toString();
+            assertEquals(message, MathUtils.sum(list), MathUtils.sum(unscaled, scale, nulls));
+            assertEquals(message, MathUtils.average(list, 1), MathUtils.average(unscaled, scale, nulls, 1));
+            assertEquals(message, MathUtils.average(list, 2), MathUtils.average(unscaled, scale, nulls, 2));
+            BigDecimal minimum = MathUtils.minimum(list);
+            assertEquals(message, minimum, MathUtils.minimum(unscaled, scale, nulls));
+            BigDecimal maximum = MathUtils.maximum(list);
+            assertEquals(message, maximum, MathUtils.maximum(unscaled, scale, nulls));
+            // the same element is chosen
+            int minIndex = MathUtils.indexOfMinimum(doubles, nulls);
+            int maxIndex = MathUtils.indexOfMaximum(doubles, nulls);
+            if (minimum == null) {
+                assertEquals(-1, minIndex);
+                assertEquals(-1, maxIndex);
+            } else {
+                assertTrue(message, minimum == list.get(minIndex));
+                assertTrue(message, maximum == list.get(maxIndex));
+            }
+        }
+    }
+    @Test
+    public final void testArraysOverflow() {
+        long[] large = { Long.MAX_VALUE, Long.MAX_VALUE, -1 };
+        List<BigDecimal> list = new ArrayList<BigDecimal>();
+        for (long value : large) {
+            list.add(BigDecimal.valueOf(value, 1));
+        }
+        assertEquals(MathUtils.sum(list), MathUtils.sum(large, 1, null));
+        assertEquals(MathUtils.average(list, 1), MathUtils.average(large, 1, null, 1));
+        assertNull(MathUtils.average(new long[0], 1, null, 1));
+        assertEquals(BigDecimal.ZERO, MathUtils.sum(new long[0], 0, null));
+        assertEquals(-1, MathUtils.indexOfMinimum(new double[] { Double.NaN }, null));
+    }
+
+    private static long randomUnscaled(Random random) {
+        switch (random.nextInt(3)) {
+        case 0:
+            return random.nextInt(2001) - 1000;
+        case 1:
+            return random.nextInt();
+        default:
+            return random.nextLong() >> random.nextInt(64);
+        }
+    }
 }
@@ -0,0 +1,183 @@
+package gov.noaa.ncdc.crn.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import gov.noaa.ncdc.crn.dao.ResultCallback;
+import gov.noaa.ncdc.crn.domain.ElementValue;
+import gov.noaa.ncdc.crn.domain.Observation;
+import gov.noaa.ncdc.crn.domain.ObservationWithData;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.gson.JsonSyntaxException;
+
+public class ObservationNdjsonTest {
+
+    private static ObservationWithData owd(int stationId, int datetimeId) {
+        Observation ob = new Observation(stationId, datetimeId, 8, 1, "Crn_201101100602.lrgs", 3);
+        ob.setInitialLoad(new Timestamp(1294675322123L));
+        ob.setLastModified(new Timestamp(1331062659000L));
+        ObservationWithData owd = new ObservationWithData(ob);
+        owd.addNewElementValue(4, new BigDecimal("43.462"));
+        owd.addNewElementValue(5, new BigDecimal("-113.56"), 5);
+        owd.addNewElementValue(6, null, 2);
+        owd.getElementValues().put(7, new ElementValue(stationId, datetimeId, 7, new BigDecimal("12.3"), 0, 3, 1));
+        owd.getElementValues().put(8, new ElementValue(stationId, datetimeId, 8, -7, 0, 0, null, 1));
+        return owd;
+    }
+
+    @Test
+    public final void testRoundTrip() throws IOException {
+        List<ObservationWithData> written = new ArrayList<>();
+        StringWriter out = new StringWriter();
+        try (ObservationNdjsonWriter writer = new ObservationNdjsonWriter(out)) {
+            for (int datetimeId = 72258; datetimeId < 72258 + 24; datetimeId++) {
+                ObservationWithData owd = owd(1021, datetimeId);
+                written.add(owd);
+                writer.write(owd);
+            }
+            // no values at all, as opposed to none
+            ObservationWithData empty = new ObservationWithData(new Observation(1021, 72300, 8, 1, null, 0));
+            written.add(empty);
+            writer.handle(empty);
+            assertEquals(25, writer.getCount());
+        }
+        String ndjson = out.toString();
+        String[] lines = ndjson.split("\n");
+        assertEquals(25, lines.length);
+        assertTrue(lines[0], lines[0].contains("\"4\":[43.462,0]"));
+        assertTrue(lines[0], lines[0].contains("\"6\":[null,2]"));
+        assertTrue(lines[0], lines[0].contains("\"7\":[12.3,0,3,1]"));
+        assertTrue(lines[0], lines[0].contains("\"8\":[-7,0,null,1]"));
+        assertTrue(lines[0], lines[0].contains("\"initialLoad\":1294675322123"));
+        assertEquals("{\"observation\":{\"stationId\":1021,\"datetimeId\":72300,\"streamId\":8,\"dataSourceId\":1,"
+                + "\"lineNumber\":0}}", lines[24]);
+
+        final List<ObservationWithData> read = new ArrayList<>();
+        try (ObservationNdjsonReader reader = new ObservationNdjsonReader(new StringReader(ndjson))) {
+            long count = reader.readAll(new ResultCallback<ObservationWithData>() {
+                @Override
+                public void handle(ObservationWithData owd) {
+                    read.add(owd);
+                }
+            });
+            assertEquals(25, count);
+            assertNull(reader.read());
+        }
+        assertEquals(written, read);
+        assertNull(read.get(24).getElementValues());
+        assertEquals(written.get(0).getObservation().getLastModified(), read.get(0).getObservation()
+                .getLastModified());
+    }
+
+    @Test
+    public final void testValues() throws IOException {
+        Random random = new Random(72258L);
+        Map<Integer, ElementValue> values = new HashMap<>();
+        Observation ob = new Observation(1021, 72258, 8, 1, "file", 1);
+        for (int elementId = 0; elementId < 2000; elementId++) {
+            BigDecimal value;
+            switch (elementId % 4) {
+            case 0:
+                value = BigDecimal.valueOf(random.nextLong(), random.nextInt(20));
+                break;
+            case 1:
+                value = new BigDecimal(random.nextDouble() * 1E12).negate();
+                break;
+            case 2:
+                value = BigDecimal.valueOf(random.nextInt(2001) - 1000, random.nextInt(4));
+                break;
+            default:
+                value = new BigDecimal("1E-" + random.nextInt(12));
+            }
+            values.put(elementId, new ElementValue(1021, 72258, elementId, value, random.nextInt(256), null, null));
+        }
+        ObservationWithData owd = new ObservationWithData(ob, values);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObservationNdjsonWriter writer = new ObservationNdjsonWriter(bytes)) {
+            writer.write(owd);
+        }
+        try (ObservationNdjsonReader reader = new ObservationNdjsonReader(new ByteArrayInputStream(bytes
+                .toByteArray()))) {
+            ObservationWithData read = reader.read();
+            for (ElementValue value : values.values()) {
+                ElementValue readValue = read.getElementValue(value.getElementId());
+                assertEquals(value.toString(), 0, value.getValue().compareTo(readValue.getValue()));
+                assertEquals(value, readValue);
+            }
+        }
+    }
+
+    @Test
+    public final void testSmallerThanGson() throws IOException {
+        ObservationWithData owd = owd(1021, 72258);
+        String compact = new ObservationWithDataTypeAdapter().toJson(owd);
+        assertTrue(compact, compact.length() * 2 < JsonUtils.GSON.toJson(owd).length());
+        assertEquals(owd, new ObservationWithDataTypeAdapter().fromJson(compact));
+    }
+
+    @Test
+    public final void testPlainDecimals() throws IOException {
+        Observation ob = new Observation(1021, 72258, 8, 1, null, 0);
+        Map<Integer, ElementValue> values = new LinkedHashMap<>();
+        String[] decimals = { "43.462", "-0.05", "0.0000001", "-12", "1E+3", "-9.223372036854775808",
+                "123456789012345678901234.5" };
+        for (int elementId = 0; elementId < decimals.length; elementId++) {
+            values.put(elementId, new ElementValue(1021, 72258, elementId, new BigDecimal(decimals[elementId]), 0,
+                    null, null));
+        }
+        String json = new ObservationWithDataTypeAdapter().toJson(new ObservationWithData(ob, values));
+        // written as plain decimals from the unscaled longs; only what does not fit is written by BigDecimal
+        assertTrue(json, json.endsWith("\"values\":{\"0\":[43.462,0],\"1\":[-0.05,0],\"2\":[0.0000001,0],"
+                + "\"3\":[-12,0],\"4\":[1000,0],\"5\":[-9.223372036854775808,0],"
+                + "\"6\":[123456789012345678901234.5,0]}}"));
+        ObservationWithData read = new ObservationWithDataTypeAdapter().fromJson(json);
+        assertEquals(values, read.getElementValues());
+    }
+
+    @Test
+    public final void testGsonTimes() throws IOException {
+        // a default Gson writes times as formatted dates to the second
+        Observation ob = new Observation(1021, 72258, 8, 1, "Crn_201101100602.lrgs", 3);
+        ob.setInitialLoad(new Timestamp(1294675322000L));
+        ob.setTimeLoaded(new Timestamp(1294675322000L));
+        String json = JsonUtils.GSON.toJson(ob);
+        assertTrue(json, json.contains("\"initialLoad\":\""));
+        assertEquals(ob, new ObservationTypeAdapter().fromJson(json));
+    }
+
+    @Test
+    public final void testMalformed() throws IOException {
+        String ndjson = "{\"observation\":{\"stationId\":1021,\"datetimeId\":72258},\"values\":{\"4\":[1.5,0]}}\n"
+                + "{\"observation\":{\"stationId\":1021,\"datetimeId\":72259},\"values\":{\"x\":[1.5,0]}}\n";
+        try (ObservationNdjsonReader reader = new ObservationNdjsonReader(new StringReader(ndjson))) {
+            assertEquals(new BigDecimal("1.5"), reader.read().getElementValue(4).getValue());
+            reader.read();
+            fail("expected JsonSyntaxException");
+        } catch (JsonSyntaxException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("after 1 lines"));
+        }
+        try (ObservationNdjsonReader reader = new ObservationNdjsonReader(new StringReader("[1,2]\n"))) {
+            reader.read();
+            fail("expected JsonSyntaxException");
+        } catch (JsonSyntaxException expected) {
+            // expected
+        }
+    }
+}
@@ -781,4 +781,17 @@ INFO: Pre-instantiating singletons in org.springframework.beans.factory.support.
                 TimeUtils.getYYYYMMDDHH24(cal), expected, result);
     }
 
+    @Test
+    public final void testComputeCeilingDateTimeId() {
+        Calendar cal = TimeUtils.createUTCCalendar("2009010100");
+        int hour = TimeUtils.computeDateTimeId(cal);
+        long millis = cal.getTimeInMillis();
+        assertEquals("on the hour", hour, TimeUtils.computeCeilingDateTimeId(millis));
+        assertEquals("just after the hour", hour + 1, TimeUtils.computeCeilingDateTimeId(millis + 1));
+        assertEquals("just before the hour", hour, TimeUtils.computeCeilingDateTimeId(millis - 1));
+        assertEquals("crn epoch", 0, TimeUtils.computeCeilingDateTimeId(TimeUtils.CRN_EPOCH));
+        assertEquals("before crn epoch", -1, TimeUtils.computeCeilingDateTimeId(TimeUtils.CRN_EPOCH
+                - TimeUtils.MILLISECS_PER_HOUR - 1));
+    }
+
 }
@@ -0,0 +1,180 @@
+package gov.noaa.ncdc.crn.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import gov.noaa.ncdc.crn.domain.DatetimeRange;
+import gov.noaa.ncdc.crn.domain.Station;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ZoneOffsetsTest {
+
+    private static final String[] ZONES = { "US/Eastern", "US/Central", "US/Mountain", "America/Phoenix",
+            "US/Pacific", "US/Alaska", "US/Hawaii", "UTC", "Europe/London", "Australia/Sydney" };
+
+    @Test
+    public final void testOffsets() {
+        ZoneOffsets eastern = ZoneOffsets.forZone("US/Eastern");
+        assertSame(eastern, ZoneOffsets.forZone("US/Eastern"));
+        int summer = DatetimeCodec.parse("2009050618");
+        assertEquals(-4, eastern.getOffset(summer));
+        assertEquals(-5, eastern.getStandardOffset(summer));
+        assertTrue(eastern.inDaylightTime(summer));
+        int winter = DatetimeCodec.parse("2009010619");
+        assertEquals(-5, eastern.getOffset(winter));
+        assertFalse(eastern.inDaylightTime(winter));
+        assertEquals(DatetimeCodec.parse("2009050614"), eastern.toLocalTime(summer));
+        assertEquals(DatetimeCodec.parse("2009050613"), eastern.toLocalStandardTime(summer));
+        assertEquals(summer, eastern.fromLocalTime(DatetimeCodec.parse("2009050614")));
+        assertEquals(summer, eastern.fromLocalStandardTime(DatetimeCodec.parse("2009050613")));
+        // the first hour of daylight saving time is 02 LST, not the 01 LST of the hour before
+        assertEquals("2006040201", TimeUtils.convertLSTFromUTC("2006040206", "US/Eastern"));
+        assertEquals("2006040202", TimeUtils.convertLSTFromUTC("2006040207", "US/Eastern"));
+    }
+
+    @Test
+    public final void testTransitions() {
+        // daylight saving time began 2009-03-08 02:00 EST and ended 2009-11-01 02:00 EDT
+        assertArrayEquals(new int[] { DatetimeCodec.parse("2009030807"), DatetimeCodec.parse("2009110106") },
+                ZoneOffsets.forZone("US/Eastern").getTransitions(2009));
+        // before the 2007 rule change
+        assertArrayEquals(new int[] { DatetimeCodec.parse("2006040210"), DatetimeCodec.parse("2006102909") },
+                ZoneOffsets.forZone("US/Pacific").getTransitions(2006));
+        assertEquals(0, ZoneOffsets.forZone("America/Phoenix").getTransitions(2009).length);
+    }
+
+    @Test
+    public final void testNotHourly() {
+        ZoneOffsets india = ZoneOffsets.forZone("Asia/Kolkata");
+        int datetimeId = DatetimeCodec.parse("2009050618");
+        assertFalse(india.isHourly(datetimeId));
+        assertTrue(ZoneOffsets.forZone("US/Eastern").isHourly(datetimeId));
+        try {
+            india.getOffset(datetimeId);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        // TimeUtils falls back to a Calendar
+        assertEquals("2009050623", TimeUtils.convertFromUTC("2009050618", "Asia/Kolkata"));
+    }
+
+    @Test
+    public final void testEveryHourMatchesCalendar() {
+        // the first year of the 2007 US rules
+        int begin = DatetimeCodec.parse("2006120100");
+        int end = DatetimeCodec.parse("2008020100");
+        for (String zone : ZONES) {
+            ZoneOffsets offsets = ZoneOffsets.forZone(zone);
+            for (int datetimeId = begin; datetimeId <= end; datetimeId++) {
+                assertMatchesCalendar(offsets, datetimeId);
+            }
+        }
+    }
+
+    @Test
+    public final void testRandomHoursMatchCalendar() {
+        Random random = new Random(20090506L);
+        int begin = DatetimeCodec.parse("1950010100");
+        int end = DatetimeCodec.parse("2060010100");
+        for (int i = 0; i < 5000; i++) {
+            String zone = ZONES[random.nextInt(ZONES.length)];
+            assertMatchesCalendar(ZoneOffsets.forZone(zone), begin + random.nextInt(end - begin));
+        }
+    }
+
+    @Test
+    public final void testTimeUtilsMinutes() {
+        // minutes are not converted by ZoneOffsets but give the same hours
+        assertEquals("2009050618", TimeUtils.convertToUTC("200905061430", "US/Eastern"));
+        assertEquals("2009050618", TimeUtils.convertToUTC("200905061400", "US/Eastern"));
+    }
+
+    @Test
+    public final void testComputeLstDateTimeRange() {
+        DatetimeRange day = TimeUtils.computeLstDateTimeRange("20090101", -5);
+        assertEquals(DatetimeCodec.parse("2009010106"), day.getBegin());
+        assertEquals(DatetimeCodec.parse("2009010205"), day.getEnd());
+        assertEquals(24, day.size());
+        DatetimeRange month = TimeUtils.computeLstDateTimeRange("200812", -5);
+        assertEquals(DatetimeCodec.parse("2008120106"), month.getBegin());
+        assertEquals(DatetimeCodec.parse("2009010105"), month.getEnd());
+        assertEquals(31 * 24, month.size());
+        assertEquals(28 * 24, TimeUtils.computeLstDateTimeRange("200902", -10).size());
+        // every hour of the day is observed on that LST day
+        for (int datetimeId : day.toArray()) {
+            String lst = DatetimeCodec.format(datetimeId - 5);
+            assertEquals("20090101", TimeUtils.getObservationDay(lst));
+        }
+    }
+
+    @Test
+    public final void testComputeLstDateTimeRanges() {
+        Station eastern = station(1026, -5);
+        Station pacific = station(1779, -8);
+        Station alsoEastern = station(1610, -5);
+        Map<Integer, DatetimeRange> ranges = TimeUtils.computeLstDateTimeRanges("20090506", Arrays.asList(eastern,
+                pacific, alsoEastern));
+        assertEquals(3, ranges.size());
+        assertEquals(TimeUtils.computeLstDateTimeRange("20090506", -5), ranges.get(1026));
+        assertEquals(TimeUtils.computeLstDateTimeRange("20090506", -8), ranges.get(1779));
+        assertSame(ranges.get(1026), ranges.get(1610));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testComputeLstDateTimeRangeInvalid() {
+        TimeUtils.computeLstDateTimeRange("2009050", -5);
+    }
+
+    private static Station station(int stationId, int offset) {
+        return new Station(stationId, "NC", "Asheville", "8 SSW", 1, null, null, null, null, offset, null, null,
+                null, null, null, null, 0, false, null, null, false);
+    }
+
+    /**
+     * Checks the conversions of one hour against the Calendar arithmetic the TimeUtils conversions used before
+     * ZoneOffsets
+     */
+    private static void assertMatchesCalendar(ZoneOffsets offsets, int datetimeId) {
+        String zone = offsets.getId();
+        String date = DatetimeCodec.format(datetimeId);
+        String message = zone + " " + date;
+        assertEquals(message, calendarFromUTC(date, zone, false),
+                DatetimeCodec.format(offsets.toLocalTime(datetimeId)));
+        assertEquals(message, calendarFromUTC(date, zone, true),
+                DatetimeCodec.format(offsets.toLocalStandardTime(datetimeId)));
+        assertEquals(message, calendarToUTC(date, zone, false),
+                DatetimeCodec.format(offsets.fromLocalTime(datetimeId)));
+        assertEquals(message, calendarToUTC(date, zone, true),
+                DatetimeCodec.format(offsets.fromLocalStandardTime(datetimeId)));
+    }
+
+    private static String calendarToUTC(String yyyymmddhh, String zone, boolean standard) {
+        Calendar cal = TimeUtils.createCalendar(yyyymmddhh, zone);
+        if (standard) {
+            cal.set(Calendar.DST_OFFSET, 0);
+        }
+        return TimeUtils.getYYYYMMDDHH24(TimeUtils.changeTimeZone(cal, "UTC"));
+    }
+
+    private static String calendarFromUTC(String yyyymmddhh, String zone, boolean standard) {
+        Calendar cal = TimeUtils.changeTimeZone(TimeUtils.createCalendar(yyyymmddhh, "UTC"), zone);
+        if (standard) {
+            // subtracting DST_OFFSET in the zone read the first hour of daylight saving time as the hour before, so
+            // shift a UTC Calendar by the standard offset instead
+            Calendar utc = TimeUtils.createCalendar(yyyymmddhh, "UTC");
+            utc.add(Calendar.MILLISECOND, cal.get(Calendar.ZONE_OFFSET));
+            return TimeUtils.getYYYYMMDDHH24(utc);
+        }
+        return TimeUtils.getYYYYMMDDHH24(cal);
+    }
+}